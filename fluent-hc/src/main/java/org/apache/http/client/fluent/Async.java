@@ -26,14 +26,129 @@
  */
 package org.apache.http.client.fluent;
 
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.concurrent.BasicFuture;
 import org.apache.http.concurrent.FutureCallback;
-
+import org.apache.http.util.Args;
+
+/**
+ * Executes fluent requests asynchronously.
+ * <p/>
+ * Unless a {@link java.util.concurrent.Executor} is given with
+ * {@link #use(java.util.concurrent.Executor)}, requests are executed by a
+ * thread pool shared by all instances, which runs at most
+ * {@link #DEFAULT_MAX_THREADS} requests at the same time and queues at most
+ * {@link #DEFAULT_MAX_QUEUED} further requests. The limits can be changed with
+ * {@link #setDefaultConcurrency(int, int)}. Requests rejected by the executor,
+ * for instance because its queue is full, fail right away with a
+ * {@link RejectedExecutionException}.
+ */
 public class Async {
 
+    /**
+     * @since 4.3
+     */
+    public static final int DEFAULT_MAX_THREADS = 20;
+
+    /**
+     * @since 4.3
+     */
+    public static final int DEFAULT_MAX_QUEUED = 1000;
+
+    private static final Lock LOCK = new ReentrantLock();
+    private static int maxThreads = DEFAULT_MAX_THREADS;
+    private static int maxQueued = DEFAULT_MAX_QUEUED;
+    private static ThreadPoolExecutor defaultExec;
+
+    private static java.util.concurrent.Executor getDefaultExecutor() {
+        LOCK.lock();
+        try {
+            if (defaultExec == null) {
+                defaultExec = new ThreadPoolExecutor(
+                        maxThreads, maxThreads,
+                        0L, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<Runnable>(maxQueued),
+                        new DefaultThreadFactory());
+            }
+            return defaultExec;
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * Sets the maximum number of requests executed at the same time and the
+     * maximum number of requests waiting for execution by the shared thread
+     * pool. The current thread pool, if any, is shut down once it has
+     * executed the requests already submitted to it.
+     *
+     * @since 4.3
+     */
+    public static void setDefaultConcurrency(final int maxThreads, final int maxQueued) {
+        Args.positive(maxThreads, "Max threads");
+        Args.positive(maxQueued, "Max queued");
+        LOCK.lock();
+        try {
+            Async.maxThreads = maxThreads;
+            Async.maxQueued = maxQueued;
+            if (defaultExec != null) {
+                defaultExec.shutdown();
+                defaultExec = null;
+            }
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * Shuts down the shared thread pool and waits up to the given time for
+     * the requests already submitted to it to complete. A new thread pool
+     * gets created if requests are submitted afterwards.
+     *
+     * @return <code>true</code> if all submitted requests have completed,
+     *   <code>false</code> if the waiting time elapsed first
+     *
+     * @since 4.3
+     */
+    public static boolean shutdown(
+            final long timeout, final TimeUnit tunit) throws InterruptedException {
+        final ThreadPoolExecutor exec;
+        LOCK.lock();
+        try {
+            exec = defaultExec;
+            defaultExec = null;
+        } finally {
+            LOCK.unlock();
+        }
+        if (exec == null) {
+            return true;
+        }
+        exec.shutdown();
+        return exec.awaitTermination(timeout, tunit);
+    }
+
+    static class DefaultThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger COUNT = new AtomicInteger();
+
+        public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(r, "fluent-async-" + COUNT.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+
+    }
+
     private Executor executor;
     private java.util.concurrent.Executor concurrentExec;
 
@@ -94,12 +209,14 @@ public class Async {
                 request,
                 this.executor != null ? this.executor : Executor.newInstance(),
                 handler);
-        if (this.concurrentExec != null) {
-            this.concurrentExec.execute(runnable);
-        } else {
-            Thread t = new Thread(runnable);
-            t.setDaemon(true);
-            t.start();
+        try {
+            if (this.concurrentExec != null) {
+                this.concurrentExec.execute(runnable);
+            } else {
+                getDefaultExecutor().execute(runnable);
+            }
+        } catch (RejectedExecutionException ex) {
+            future.failed(ex);
         }
         return future;
     }
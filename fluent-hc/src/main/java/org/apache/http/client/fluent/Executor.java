@@ -29,6 +29,9 @@ package org.apache.http.client.fluent;
 import java.io.IOException;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.net.ssl.SSLContext;
 
@@ -60,19 +63,37 @@ import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicHeader;
 import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.util.Args;
 
 /**
  * An Executor for fluent requests
  * <p/>
- * A {@link PoolingHttpClientConnectionManager} with maximum 100 connections per route and
- * a total maximum of 200 connections is used internally.
+ * A {@link PoolingHttpClientConnectionManager} with maximum {@link #DEFAULT_MAX_PER_ROUTE}
+ * connections per route and a total maximum of {@link #DEFAULT_MAX_TOTAL} connections
+ * is used internally by default. The limits can be adjusted at any time with
+ * {@link #setMaxTotal(int)} and {@link #setDefaultMaxPerRoute(int)}. Applications that
+ * are done with the fluent API can release the pooled connections with
+ * {@link #shutdown()}; the pool is created anew when requests are executed afterwards.
  */
 public class Executor {
 
-    final static PoolingHttpClientConnectionManager CONNMGR;
-    final static HttpClient CLIENT;
+    /**
+     * @since 4.3
+     */
+    public static final int DEFAULT_MAX_TOTAL = 200;
+
+    /**
+     * @since 4.3
+     */
+    public static final int DEFAULT_MAX_PER_ROUTE = 100;
+
+    private static final Lock LOCK = new ReentrantLock();
+    private static int maxTotal = DEFAULT_MAX_TOTAL;
+    private static int maxPerRoute = DEFAULT_MAX_PER_ROUTE;
+    private static PoolingHttpClientConnectionManager connmgr;
+    private static HttpClient client;
 
-    static {
+    private static Registry<ConnectionSocketFactory> createSocketFactoryRegistry() {
         LayeredConnectionSocketFactory ssl = null;
         try {
             ssl = SSLSocketFactory.getSystemSocketFactory();
@@ -88,23 +109,118 @@ public class Executor {
             }
         }
 
-        Registry<ConnectionSocketFactory> sfr = RegistryBuilder.<ConnectionSocketFactory>create()
+        return RegistryBuilder.<ConnectionSocketFactory>create()
             .register("http", PlainSocketFactory.getSocketFactory())
             .register("https", ssl != null ? ssl : SSLSocketFactory.getSocketFactory())
             .build();
+    }
+
+    /**
+     * Returns the shared client, creating it along with its connection pool
+     * if there is none yet or the previous one has been shut down.
+     */
+    static HttpClient getClient() {
+        LOCK.lock();
+        try {
+            if (client == null) {
+                connmgr = new PoolingHttpClientConnectionManager(createSocketFactoryRegistry());
+                connmgr.setDefaultMaxPerRoute(maxPerRoute);
+                connmgr.setMaxTotal(maxTotal);
+                client = HttpClientBuilder.create().setConnectionManager(connmgr).build();
+            }
+            return client;
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * Sets the maximum total number of connections of the shared connection pool.
+     *
+     * @since 4.3
+     */
+    public static void setMaxTotal(final int max) {
+        Args.positive(max, "Max total");
+        LOCK.lock();
+        try {
+            maxTotal = max;
+            if (connmgr != null) {
+                connmgr.setMaxTotal(max);
+            }
+        } finally {
+            LOCK.unlock();
+        }
+    }
 
-        CONNMGR = new PoolingHttpClientConnectionManager(sfr);
-        CONNMGR.setDefaultMaxPerRoute(100);
-        CONNMGR.setMaxTotal(200);
-        CLIENT = HttpClientBuilder.create().setConnectionManager(CONNMGR).build();
+    /**
+     * Sets the default maximum number of connections per route of the shared
+     * connection pool.
+     *
+     * @since 4.3
+     */
+    public static void setDefaultMaxPerRoute(final int max) {
+        Args.positive(max, "Max per route");
+        LOCK.lock();
+        try {
+            maxPerRoute = max;
+            if (connmgr != null) {
+                connmgr.setDefaultMaxPerRoute(max);
+            }
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * Closes connections of the shared connection pool that have been idle
+     * longer than the given period of time.
+     *
+     * @since 4.3
+     */
+    public static void closeIdleConnections(final long idletime, final TimeUnit tunit) {
+        final PoolingHttpClientConnectionManager mgr;
+        LOCK.lock();
+        try {
+            mgr = connmgr;
+        } finally {
+            LOCK.unlock();
+        }
+        if (mgr != null) {
+            mgr.closeIdleConnections(idletime, tunit);
+        }
+    }
+
+    /**
+     * Shuts down the shared connection pool and closes all its connections.
+     * Executors obtained with {@link #newInstance()} before the shutdown can
+     * no longer execute requests; a new shared client and connection pool
+     * get created for requests executed afterwards. Asynchronous requests
+     * still pending should be allowed to complete first with
+     * {@link Async#shutdown(long, TimeUnit)}.
+     *
+     * @since 4.3
+     */
+    public static void shutdown() {
+        final PoolingHttpClientConnectionManager mgr;
+        LOCK.lock();
+        try {
+            mgr = connmgr;
+            connmgr = null;
+            client = null;
+        } finally {
+            LOCK.unlock();
+        }
+        if (mgr != null) {
+            mgr.shutdown();
+        }
     }
 
     public static Executor newInstance() {
-        return new Executor(CLIENT);
+        return new Executor(getClient());
     }
 
     public static Executor newInstance(final HttpClient httpclient) {
-        return new Executor(httpclient != null ? httpclient : CLIENT);
+        return new Executor(httpclient != null ? httpclient : getClient());
     }
 
     private final HttpClient httpclient;
@@ -145,7 +145,7 @@ public class Request {
 
     public Response execute() throws ClientProtocolException, IOException {
         this.request.setConfig(HttpClientParamConfig.getRequestConfig(this.localParams));
-        return new Response(Executor.CLIENT.execute(this.request));
+        return new Response(Executor.getClient().execute(this.request));
     }
 
     public void abort() throws UnsupportedOperationException {
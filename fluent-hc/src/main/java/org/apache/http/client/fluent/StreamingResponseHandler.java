@@ -0,0 +1,88 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.client.fluent;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.entity.ContentType;
+
+/**
+ * {@link ResponseHandler} that processes the response content as a stream
+ * instead of buffering it in memory like {@link Response#returnContent()}.
+ * Responses with a status code of 300 or greater cause an
+ * {@link HttpResponseException}.
+ * <p/>
+ * Use with {@link Response#handleResponse(ResponseHandler)} or
+ * {@link Async#execute(Request, ResponseHandler)}. Content not read by
+ * {@link #handleContent(InputStream, ContentType)} gets discarded afterwards,
+ * so that the connection can be reused.
+ *
+ * @param <T> the type of the result
+ *
+ * @since 4.3
+ */
+public abstract class StreamingResponseHandler<T> implements ResponseHandler<T> {
+
+    public T handleResponse(
+            final HttpResponse response) throws ClientProtocolException, IOException {
+        StatusLine statusLine = response.getStatusLine();
+        HttpEntity entity = response.getEntity();
+        if (statusLine.getStatusCode() >= 300) {
+            throw new HttpResponseException(statusLine.getStatusCode(),
+                    statusLine.getReasonPhrase());
+        }
+        if (entity != null) {
+            InputStream instream = entity.getContent();
+            if (instream != null) {
+                try {
+                    return handleContent(instream, ContentType.getOrDefault(entity));
+                } finally {
+                    instream.close();
+                }
+            }
+        }
+        return handleContent(new ByteArrayInputStream(new byte[] {}), ContentType.DEFAULT_BINARY);
+    }
+
+    /**
+     * Processes the response content.
+     *
+     * @param instream the content stream, which gets closed once this method returns
+     * @param contentType the content type of the response
+     */
+    protected abstract T handleContent(
+            InputStream instream, ContentType contentType) throws IOException;
+
+}
@@ -0,0 +1,159 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.client.fluent;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.localserver.LocalServerTestBase;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestAsync extends LocalServerTestBase {
+
+    @Before
+    public void setUp() throws Exception {
+        startServer();
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        Async.setDefaultConcurrency(Async.DEFAULT_MAX_THREADS, Async.DEFAULT_MAX_QUEUED);
+        Async.shutdown(5, TimeUnit.SECONDS);
+    }
+
+    private Request newRequest() {
+        return Request.Get(getServerHttp().toURI() + "/random/100");
+    }
+
+    @Test
+    public void testRejectionWhenQueueIsFull() throws Exception {
+        Async.setDefaultConcurrency(1, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ResponseHandler<Integer> blockingHandler = new ResponseHandler<Integer>() {
+
+            public Integer handleResponse(final HttpResponse response) throws IOException {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return EntityUtils.toByteArray(response.getEntity()).length;
+            }
+
+        };
+        Async async = Async.newInstance();
+        Future<Integer> running = async.execute(newRequest(), blockingHandler);
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<Integer> queued = async.execute(newRequest(), blockingHandler);
+        Future<Integer> rejected = async.execute(newRequest(), blockingHandler);
+
+        Assert.assertTrue(rejected.isDone());
+        try {
+            rejected.get();
+            Assert.fail("ExecutionException expected");
+        } catch (ExecutionException ex) {
+            Assert.assertTrue(ex.getCause() instanceof RejectedExecutionException);
+        }
+        Assert.assertFalse(queued.isDone());
+
+        release.countDown();
+        Assert.assertEquals(Integer.valueOf(100), running.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Integer.valueOf(100), queued.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSetDefaultConcurrencyReplacesPool() throws Exception {
+        ThreadNameHandler handler = new ThreadNameHandler();
+        Async async = Async.newInstance();
+        String thread1 = async.execute(newRequest(), handler).get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(thread1.startsWith("fluent-async-"));
+
+        Async.setDefaultConcurrency(2, 10);
+        String thread2 = async.execute(newRequest(), handler).get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(thread2.startsWith("fluent-async-"));
+        Assert.assertFalse(thread1.equals(thread2));
+    }
+
+    @Test
+    public void testShutdownAndRecreatePool() throws Exception {
+        ThreadNameHandler handler = new ThreadNameHandler();
+        Async async = Async.newInstance();
+        String thread1 = async.execute(newRequest(), handler).get(5, TimeUnit.SECONDS);
+
+        Assert.assertTrue(Async.shutdown(5, TimeUnit.SECONDS));
+        // Nothing left to wait for
+        Assert.assertTrue(Async.shutdown(5, TimeUnit.SECONDS));
+
+        String thread2 = async.execute(newRequest(), handler).get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(thread2.startsWith("fluent-async-"));
+        Assert.assertFalse(thread1.equals(thread2));
+    }
+
+    @Test
+    public void testShutdownWaitsForSubmittedRequests() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        ResponseHandler<Integer> blockingHandler = new ResponseHandler<Integer>() {
+
+            public Integer handleResponse(final HttpResponse response) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return EntityUtils.toByteArray(response.getEntity()).length;
+            }
+
+        };
+        Future<Integer> future = Async.newInstance().execute(newRequest(), blockingHandler);
+
+        Assert.assertFalse(Async.shutdown(100, TimeUnit.MILLISECONDS));
+        release.countDown();
+        Assert.assertEquals(Integer.valueOf(100), future.get(5, TimeUnit.SECONDS));
+    }
+
+    static class ThreadNameHandler implements ResponseHandler<String> {
+
+        public String handleResponse(final HttpResponse response) throws IOException {
+            EntityUtils.consume(response.getEntity());
+            return Thread.currentThread().getName();
+        }
+
+    }
+
+}
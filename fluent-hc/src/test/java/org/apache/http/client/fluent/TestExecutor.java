@@ -0,0 +1,74 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.client.fluent;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.localserver.LocalServerTestBase;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestExecutor extends LocalServerTestBase {
+
+    @Before
+    public void setUp() throws Exception {
+        startServer();
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        Executor.setMaxTotal(Executor.DEFAULT_MAX_TOTAL);
+        Executor.setDefaultMaxPerRoute(Executor.DEFAULT_MAX_PER_ROUTE);
+        Executor.shutdown();
+    }
+
+    private Request newRequest() {
+        return Request.Get(getServerHttp().toURI() + "/random/100");
+    }
+
+    @Test
+    public void testSharedClientIsRecreatedAfterShutdown() throws Exception {
+        Assert.assertEquals(100, newRequest().execute().returnContent().asBytes().length);
+
+        Executor.shutdown();
+        Assert.assertEquals(100, newRequest().execute().returnContent().asBytes().length);
+
+        Executor.shutdown();
+        Assert.assertEquals(100, Executor.newInstance().execute(
+                newRequest()).returnContent().asBytes().length);
+    }
+
+    @Test
+    public void testShutdownWithoutClient() throws Exception {
+        Executor.shutdown();
+        Executor.shutdown();
+        Executor.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.client.fluent;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.localserver.LocalServerTestBase;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestStreamingResponseHandler extends LocalServerTestBase {
+
+    @Before
+    public void setUp() throws Exception {
+        startServer();
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        Executor.shutdown();
+    }
+
+    @Test
+    public void testSuccessfulResponseIsStreamed() throws Exception {
+        CountingHandler handler = new CountingHandler();
+        Long count = Request.Get(getServerHttp().toURI() + "/random/2000")
+            .execute().handleResponse(handler);
+
+        Assert.assertEquals(Long.valueOf(2000), count);
+        Assert.assertEquals("text/plain", handler.contentType.getMimeType());
+    }
+
+    @Test
+    public void testRedirectResponseFails() throws Exception {
+        BasicHttpResponse response = new BasicHttpResponse(
+                HttpVersion.HTTP_1_1, HttpStatus.SC_MOVED_TEMPORARILY, "Found");
+        response.setEntity(new StringEntity("moved"));
+        CountingHandler handler = new CountingHandler();
+        try {
+            handler.handleResponse(response);
+            Assert.fail("HttpResponseException expected");
+        } catch (HttpResponseException ex) {
+            Assert.assertEquals(HttpStatus.SC_MOVED_TEMPORARILY, ex.getStatusCode());
+        }
+        Assert.assertNull(handler.contentType);
+    }
+
+    @Test
+    public void testResponseWithoutEntity() throws Exception {
+        BasicHttpResponse response = new BasicHttpResponse(
+                HttpVersion.HTTP_1_1, HttpStatus.SC_NO_CONTENT, "No Content");
+        CountingHandler handler = new CountingHandler();
+
+        Assert.assertEquals(Long.valueOf(0), handler.handleResponse(response));
+        Assert.assertSame(ContentType.DEFAULT_BINARY, handler.contentType);
+    }
+
+    static class CountingHandler extends StreamingResponseHandler<Long> {
+
+        ContentType contentType;
+
+        @Override
+        protected Long handleContent(
+                final InputStream instream, final ContentType contentType) throws IOException {
+            this.contentType = contentType;
+            long count = 0;
+            byte[] buffer = new byte[256];
+            int l;
+            while ((l = instream.read(buffer)) != -1) {
+                count += l;
+            }
+            return Long.valueOf(count);
+        }
+
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.client.cache;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * {@link HttpCacheStorage} capable of retrieving several cache entries in
+ * a single operation and of storing cache entries asynchronously. Storage
+ * backends where every operation is a network round trip can implement this
+ * interface to let the cache batch its requests.
+ *
+ * @since 4.3
+ */
+public interface BulkHttpCacheStorage extends HttpCacheStorage {
+
+    /**
+     * Retrieves the cache entries stored under the given keys.
+     * @param keys cache keys
+     * @return a map from cache key to {@link HttpCacheEntry} holding only
+     *   the keys for which an entry exists
+     * @throws IOException
+     */
+    Map<String, HttpCacheEntry> getEntries(Collection<String> keys) throws IOException;
+
+    /**
+     * Stores a given cache entry under the given key without waiting for
+     * the operation to complete. The entry, including its response body,
+     * must have been consumed by the time this method returns. The cache
+     * updates entries referring to the stored one while the write is in
+     * progress and reverts that update if the write does not succeed.
+     * @param key where in the cache to store the entry
+     * @param entry cached response to store
+     * @return a {@link Future} yielding {@link Boolean#TRUE} if the entry was
+     *   stored, {@link Boolean#FALSE} or an execution failure otherwise
+     * @throws IOException
+     */
+    Future<Boolean> putEntryAsync(String key, HttpCacheEntry entry) throws IOException;
+
+}
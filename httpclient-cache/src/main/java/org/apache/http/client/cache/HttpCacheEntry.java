@@ -219,6 +219,9 @@ public class HttpCacheEntry implements Serializable {
      * the "parent" entry to hold this index of the other variants.
      */
     public Map<String, String> getVariantMap() {
+        if (variantMap == null) {
+            return Collections.emptyMap();
+        }
         return Collections.unmodifiableMap(variantMap);
     }
 
@@ -32,6 +32,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.HttpException;
 import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpExecutionAware;
 import org.apache.http.client.methods.HttpRequestWrapper;
 import org.apache.http.client.protocol.HttpClientContext;
@@ -50,6 +51,7 @@ class AsynchronousValidationRequest implements Runnable {
     private final HttpExecutionAware execAware;
     private final HttpCacheEntry cacheEntry;
     private final String identifier;
+    private final int priority;
 
     private final Log log = LogFactory.getLog(getClass());
 
@@ -73,6 +75,24 @@ class AsynchronousValidationRequest implements Runnable {
             final HttpExecutionAware execAware,
             final HttpCacheEntry cacheEntry,
             final String identifier) {
+        this(parent, cachingExec, route, request, context, execAware, cacheEntry, identifier, 0);
+    }
+
+    /**
+     * Used internally by {@link AsynchronousValidator} to schedule a
+     * revalidation with the given priority. Requests with a higher
+     * priority are executed first.
+     */
+    AsynchronousValidationRequest(
+            final AsynchronousValidator parent,
+            final CachingExec cachingExec,
+            final HttpRoute route,
+            final HttpRequestWrapper request,
+            final HttpClientContext context,
+            final HttpExecutionAware execAware,
+            final HttpCacheEntry cacheEntry,
+            final String identifier,
+            final int priority) {
         this.parent = parent;
         this.cachingExec = cachingExec;
         this.route = route;
@@ -81,22 +101,50 @@ class AsynchronousValidationRequest implements Runnable {
         this.execAware = execAware;
         this.cacheEntry = cacheEntry;
         this.identifier = identifier;
+        this.priority = priority;
     }
 
     public void run() {
         try {
-            cachingExec.revalidateCacheEntry(route, request, context, execAware, cacheEntry);
+            CloseableHttpResponse response = cachingExec.revalidateCacheEntry(
+                    route, request, context, execAware, cacheEntry);
+            if (response != null) {
+                try {
+                    if (isServerError(response.getStatusLine().getStatusCode())) {
+                        parent.jobFailed(identifier);
+                    } else {
+                        parent.jobSuccessful(identifier);
+                    }
+                } finally {
+                    response.close();
+                }
+            } else {
+                parent.jobSuccessful(identifier);
+            }
         } catch (IOException ioe) {
             log.debug("Asynchronous revalidation failed due to I/O error", ioe);
+            parent.jobFailed(identifier);
         } catch (HttpException pe) {
             log.error("HTTP protocol exception during asynchronous revalidation", pe);
+            parent.jobFailed(identifier);
+        } catch (RuntimeException re) {
+            log.error("RuntimeException thrown during asynchronous revalidation: " + re);
+            parent.jobFailed(identifier);
         } finally {
             parent.markComplete(identifier);
         }
     }
 
+    private boolean isServerError(int statusCode) {
+        return statusCode / 100 == 5;
+    }
+
     String getIdentifier() {
         return identifier;
     }
 
+    int getPriority() {
+        return priority;
+    }
+
 }
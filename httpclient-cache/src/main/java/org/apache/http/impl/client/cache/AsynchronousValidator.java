@@ -27,13 +27,21 @@
 package org.apache.http.impl.client.cache;
 
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -46,13 +54,33 @@ import org.apache.http.conn.routing.HttpRoute;
 /**
  * Class used for asynchronous revalidations to be used when the "stale-
  * while-revalidate" directive is present
+ * <p/>
+ * Revalidations of the same cache entry are de-duplicated; pending
+ * revalidations of frequently requested entries run first. Entries whose
+ * revalidation keeps failing are retried with exponential backoff. While
+ * the scheduler is saturated or backing off, the stale entry continues to
+ * be served.
  */
 class AsynchronousValidator {
+
+    static final long INITIAL_BACKOFF_MILLIS = 1000;
+    static final long MAX_BACKOFF_MILLIS = 5 * 60 * 1000;
+    static final int MAX_TRACKED_FAILURES = 1000;
+
     private final CachingExec cachingExec;
     private final ExecutorService executor;
-    private final Set<String> queued;
+    private final int maxQueued;
+    private final ConcurrentMap<String, Boolean> queued;
+    private final ConcurrentMap<String, Failure> failures;
+    private final FrequencySketch popularity;
+    private final Lock popularityLock;
     private final CacheKeyGenerator cacheKeyGenerator;
 
+    private final AtomicLong scheduled = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
     private final Log log = LogFactory.getLog(getClass());
 
     /**
@@ -69,13 +97,23 @@ class AsynchronousValidator {
      */
     public AsynchronousValidator(CachingExec cachingExect,
             CacheConfig config) {
-        this(cachingExect,
-                new ThreadPoolExecutor(config.getAsynchronousWorkersCore(),
-                        config.getAsynchronousWorkersMax(),
-                        config.getAsynchronousWorkerIdleLifetimeSecs(),
-                        TimeUnit.SECONDS,
-                        new ArrayBlockingQueue<Runnable>(config.getRevalidationQueueSize()))
-                );
+        this(cachingExect, createExecutor(config),
+                config.getAsynchronousWorkersMax() + config.getRevalidationQueueSize());
+    }
+
+    private static ThreadPoolExecutor createExecutor(final CacheConfig config) {
+        // The number of pending revalidations is bounded by the validator
+        // itself, the priority queue merely orders them
+        final RevalidationQueue queue = new RevalidationQueue();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                config.getAsynchronousWorkersCore(),
+                config.getAsynchronousWorkersMax(),
+                config.getAsynchronousWorkerIdleLifetimeSecs(),
+                TimeUnit.SECONDS,
+                queue,
+                new EnqueuePolicy());
+        queue.executor = executor;
+        return executor;
     }
 
     /**
@@ -86,16 +124,24 @@ class AsynchronousValidator {
      * @param executor used to manage a thread pool of revalidation workers
      */
     AsynchronousValidator(CachingExec cachingExec, ExecutorService executor) {
+        this(cachingExec, executor, Integer.MAX_VALUE);
+    }
+
+    AsynchronousValidator(CachingExec cachingExec, ExecutorService executor, int maxQueued) {
         this.cachingExec = cachingExec;
         this.executor = executor;
-        this.queued = new HashSet<String>();
+        this.maxQueued = maxQueued;
+        this.queued = new ConcurrentHashMap<String, Boolean>();
+        this.failures = new ConcurrentHashMap<String, Failure>();
+        this.popularity = new FrequencySketch(1024);
+        this.popularityLock = new ReentrantLock();
         this.cacheKeyGenerator = new CacheKeyGenerator();
     }
 
     /**
      * Schedules an asynchronous revalidation
      */
-    public synchronized void revalidateCacheEntry(
+    public void revalidateCacheEntry(
             final HttpRoute route,
             final HttpRequestWrapper request,
             final HttpClientContext context,
@@ -104,17 +150,45 @@ class AsynchronousValidator {
         // getVariantURI will fall back on getURI if no variants exist
         String uri = cacheKeyGenerator.getVariantURI(route.getTargetHost(), request, entry);
 
-        if (!queued.contains(uri)) {
-            AsynchronousValidationRequest revalidationRequest =
-                new AsynchronousValidationRequest(
-                        this, cachingExec, route, request, context, execAware, entry, uri);
+        int priority;
+        popularityLock.lock();
+        try {
+            popularity.increment(uri);
+            priority = popularity.frequency(uri);
+        } finally {
+            popularityLock.unlock();
+        }
 
-            try {
-                executor.execute(revalidationRequest);
-                queued.add(uri);
-            } catch (RejectedExecutionException ree) {
-                log.debug("Revalidation for [" + uri + "] not scheduled: " + ree);
+        Failure failure = failures.get(uri);
+        if (failure != null && currentTimeMillis() < failure.nextAttempt) {
+            rejected.incrementAndGet();
+            if (log.isDebugEnabled()) {
+                log.debug("Revalidation for [" + uri + "] backed off after "
+                        + failure.count + " failure(s)");
             }
+            return;
+        }
+        if (queued.putIfAbsent(uri, Boolean.TRUE) != null) {
+            deduplicated.incrementAndGet();
+            return;
+        }
+        if (queued.size() > maxQueued) {
+            queued.remove(uri);
+            rejected.incrementAndGet();
+            log.debug("Revalidation for [" + uri + "] not scheduled: too many pending revalidations");
+            return;
+        }
+
+        AsynchronousValidationRequest revalidationRequest =
+            new AsynchronousValidationRequest(
+                    this, cachingExec, route, request, context, execAware, entry, uri, priority);
+        try {
+            executor.execute(revalidationRequest);
+            scheduled.incrementAndGet();
+        } catch (RejectedExecutionException ree) {
+            queued.remove(uri);
+            rejected.incrementAndGet();
+            log.debug("Revalidation for [" + uri + "] not scheduled: " + ree);
         }
     }
 
@@ -125,15 +199,175 @@ class AsynchronousValidator {
      * complete, using the identifier passed in during constructions.
      * @param identifier
      */
-    synchronized void markComplete(String identifier) {
+    void markComplete(String identifier) {
         queued.remove(identifier);
     }
 
+    /**
+     * Clears the failure record of the given identifier.
+     */
+    void jobSuccessful(String identifier) {
+        failures.remove(identifier);
+    }
+
+    /**
+     * Records a failed revalidation, postponing the next attempt for the
+     * given identifier by an exponentially increasing delay.
+     */
+    void jobFailed(String identifier) {
+        failed.incrementAndGet();
+        long now = currentTimeMillis();
+        Failure previous = failures.get(identifier);
+        if (previous == null && failures.size() >= MAX_TRACKED_FAILURES) {
+            purgeFailures(now);
+        }
+        int count = previous != null ? previous.count + 1 : 1;
+        long delay = INITIAL_BACKOFF_MILLIS << Math.min(count - 1, 16);
+        failures.put(identifier, new Failure(count,
+                now + Math.min(delay, MAX_BACKOFF_MILLIS)));
+    }
+
+    /**
+     * Forgets the failures whose backoff has expired. If none has, forgets
+     * the one whose backoff expires first, so that the number of tracked
+     * failures stays bounded.
+     */
+    private void purgeFailures(long now) {
+        Map.Entry<String, Failure> earliest = null;
+        boolean purged = false;
+        for (Iterator<Map.Entry<String, Failure>> it = failures.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, Failure> entry = it.next();
+            if (entry.getValue().nextAttempt <= now) {
+                it.remove();
+                purged = true;
+            } else if (earliest == null || entry.getValue().nextAttempt < earliest.getValue().nextAttempt) {
+                earliest = entry;
+            }
+        }
+        if (!purged && earliest != null) {
+            failures.remove(earliest.getKey(), earliest.getValue());
+        }
+    }
+
+    int getTrackedFailureCount() {
+        return failures.size();
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
     Set<String> getScheduledIdentifiers() {
-        return Collections.unmodifiableSet(queued);
+        return Collections.unmodifiableSet(queued.keySet());
     }
 
     ExecutorService getExecutor() {
         return executor;
     }
+
+    /**
+     * Returns the number of revalidations handed to the executor.
+     */
+    long getScheduledCount() {
+        return scheduled.get();
+    }
+
+    /**
+     * Returns the number of revalidation requests dropped because a
+     * revalidation of the same entry was already pending.
+     */
+    long getDeduplicatedCount() {
+        return deduplicated.get();
+    }
+
+    /**
+     * Returns the number of revalidation requests dropped because the
+     * scheduler was saturated or the entry was backing off.
+     */
+    long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Returns the number of revalidations that failed.
+     */
+    long getFailedCount() {
+        return failed.get();
+    }
+
+    static class Failure {
+
+        final int count;
+        final long nextAttempt;
+
+        Failure(final int count, final long nextAttempt) {
+            this.count = count;
+            this.nextAttempt = nextAttempt;
+        }
+
+    }
+
+    /**
+     * Orders pending revalidations by decreasing popularity.
+     */
+    static class PriorityComparator implements Comparator<Runnable> {
+
+        public int compare(final Runnable r1, final Runnable r2) {
+            return priorityOf(r2) - priorityOf(r1);
+        }
+
+        private static int priorityOf(final Runnable r) {
+            return r instanceof AsynchronousValidationRequest
+                ? ((AsynchronousValidationRequest) r).getPriority() : 0;
+        }
+
+    }
+
+    /**
+     * Queue of pending revalidations that refuses new revalidations while the
+     * pool may still start more workers, so that the pool grows from its core
+     * size up to its maximum size before revalidations get queued.
+     */
+    static class RevalidationQueue extends PriorityBlockingQueue<Runnable> {
+
+        private static final long serialVersionUID = 4180402372542327245L;
+
+        transient volatile ThreadPoolExecutor executor;
+
+        RevalidationQueue() {
+            super(11, new PriorityComparator());
+        }
+
+        @Override
+        public boolean offer(final Runnable r) {
+            final ThreadPoolExecutor exec = this.executor;
+            if (exec != null
+                    && exec.getPoolSize() < exec.getMaximumPoolSize()
+                    && exec.getActiveCount() >= exec.getPoolSize()) {
+                return false;
+            }
+            return super.offer(r);
+        }
+
+        boolean force(final Runnable r) {
+            return super.offer(r);
+        }
+
+    }
+
+    /**
+     * Queues the revalidations refused by a {@link RevalidationQueue} if the
+     * pool has meanwhile reached its maximum size.
+     */
+    static class EnqueuePolicy implements RejectedExecutionHandler {
+
+        public void rejectedExecution(final Runnable r, final ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Executor has been shut down");
+            }
+            ((RevalidationQueue) executor.getQueue()).force(r);
+        }
+
+    }
+
 }
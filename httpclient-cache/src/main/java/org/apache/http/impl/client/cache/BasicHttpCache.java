@@ -26,10 +26,16 @@
  */
 package org.apache.http.impl.client.cache;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -39,6 +45,8 @@ import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.HttpVersion;
+import org.apache.http.StatusLine;
+import org.apache.http.client.cache.BulkHttpCacheStorage;
 import org.apache.http.client.cache.HeaderConstants;
 import org.apache.http.client.cache.HttpCacheEntry;
 import org.apache.http.client.cache.HttpCacheStorage;
@@ -56,6 +64,8 @@ class BasicHttpCache implements HttpCache {
     private final CacheKeyGenerator uriExtractor;
     private final ResourceFactory resourceFactory;
     private final long maxObjectSizeBytes;
+    private final boolean streamThroughEnabled;
+    private final int asynchronousWriteTimeoutMillis;
     private final CacheEntryUpdater cacheEntryUpdater;
     private final CachedHttpResponseGenerator responseGenerator;
     private final CacheInvalidator cacheInvalidator;
@@ -68,6 +78,8 @@ class BasicHttpCache implements HttpCache {
         this.uriExtractor = new CacheKeyGenerator();
         this.cacheEntryUpdater = new CacheEntryUpdater(resourceFactory);
         this.maxObjectSizeBytes = config.getMaxObjectSize();
+        this.streamThroughEnabled = config.isStreamThroughEnabled();
+        this.asynchronousWriteTimeoutMillis = config.getAsynchronousWriteTimeoutMillis();
         this.responseGenerator = new CachedHttpResponseGenerator();
         this.storage = storage;
         this.cacheInvalidator = new CacheInvalidator(this.uriExtractor, this.storage);
@@ -112,15 +124,69 @@ class BasicHttpCache implements HttpCache {
             final HttpCacheEntry entry) throws IOException {
         final String parentURI = uriExtractor.getURI(target, req);
         final String variantURI = uriExtractor.getVariantURI(target, req, entry);
-        storage.putEntry(variantURI, entry);
+        final String variantKey = uriExtractor.getVariantKey(req, entry);
+        Future<Boolean> stored = null;
+        if (storage instanceof BulkHttpCacheStorage) {
+            // Overlap the variant write with the parent update round trip
+            stored = ((BulkHttpCacheStorage) storage).putEntryAsync(variantURI, entry);
+        } else {
+            storage.putEntry(variantURI, entry);
+        }
 
         HttpCacheUpdateCallback callback = new HttpCacheUpdateCallback() {
 
             public HttpCacheEntry update(HttpCacheEntry existing) throws IOException {
                 return doGetUpdatedParentEntry(
                         req.getRequestLine().getUri(), existing, entry,
-                        uriExtractor.getVariantKey(req, entry),
-                        variantURI);
+                        variantKey, variantURI);
+            }
+
+        };
+
+        try {
+            storage.updateEntry(parentURI, callback);
+        } catch (HttpCacheUpdateException e) {
+            log.warn("Could not update key [" + parentURI + "]", e);
+        }
+
+        if (stored != null && !awaitStored(variantURI, stored)) {
+            // The parent must not refer to a variant that never got stored
+            removeVariantReference(req.getRequestLine().getUri(), parentURI,
+                    variantKey, variantURI);
+        }
+    }
+
+    private boolean awaitStored(final String key, final Future<Boolean> future) {
+        try {
+            if (Boolean.TRUE.equals(future.get(asynchronousWriteTimeoutMillis,
+                    TimeUnit.MILLISECONDS))) {
+                return true;
+            }
+            log.warn("Could not store key [" + key + "]");
+        } catch (ExecutionException e) {
+            log.warn("Could not store key [" + key + "]", e.getCause());
+        } catch (TimeoutException e) {
+            log.warn("Timed out storing key [" + key + "]");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while storing key [" + key + "]");
+        } catch (RuntimeException e) {
+            // spymemcached reports operation timeouts this way
+            log.warn("Could not store key [" + key + "]", e);
+        }
+        return false;
+    }
+
+    private void removeVariantReference(
+            final String requestId,
+            final String parentURI,
+            final String variantKey,
+            final String variantURI) throws IOException {
+        HttpCacheUpdateCallback callback = new HttpCacheUpdateCallback() {
+
+            public HttpCacheEntry update(HttpCacheEntry existing) throws IOException {
+                return doGetParentEntryWithoutVariant(
+                        requestId, existing, variantKey, variantURI);
             }
 
         };
@@ -155,12 +221,16 @@ class BasicHttpCache implements HttpCache {
     }
 
     boolean isIncompleteResponse(HttpResponse resp, Resource resource) {
-        int status = resp.getStatusLine().getStatusCode();
+        return isIncompleteResponse(resp.getStatusLine(),
+                resp.getFirstHeader(HTTP.CONTENT_LEN), resource);
+    }
+
+    private boolean isIncompleteResponse(StatusLine statusLine, Header hdr, Resource resource) {
+        int status = statusLine.getStatusCode();
         if (status != HttpStatus.SC_OK
             && status != HttpStatus.SC_PARTIAL_CONTENT) {
             return false;
         }
-        Header hdr = resp.getFirstHeader(HTTP.CONTENT_LEN);
         if (hdr == null) return false;
         int contentLength;
         try {
@@ -214,6 +284,33 @@ class BasicHttpCache implements HttpCache {
                 variantMap);
     }
 
+    HttpCacheEntry doGetParentEntryWithoutVariant(
+            final String requestId,
+            final HttpCacheEntry existing,
+            final String variantKey,
+            final String variantCacheKey) throws IOException {
+        if (existing == null || !variantCacheKey.equals(existing.getVariantMap().get(variantKey))) {
+            return existing;
+        }
+        Map<String,String> variantMap = new HashMap<String,String>(existing.getVariantMap());
+        variantMap.remove(variantKey);
+        if (variantMap.isEmpty()) {
+            // Without variants the parent would be mistaken for a plain entry
+            return null;
+        }
+        Resource resource = null;
+        if (existing.getResource() != null) {
+            resource = resourceFactory.copy(requestId, existing.getResource());
+        }
+        return new HttpCacheEntry(
+                existing.getRequestDate(),
+                existing.getResponseDate(),
+                existing.getStatusLine(),
+                existing.getAllHeaders(),
+                resource,
+                variantMap);
+    }
+
     public HttpCacheEntry updateCacheEntry(HttpHost target, HttpRequest request,
             HttpCacheEntry stale, HttpResponse originResponse,
             Date requestSent, Date responseReceived) throws IOException {
@@ -244,6 +341,9 @@ class BasicHttpCache implements HttpCache {
             HttpResponse originResponse, Date requestSent, Date responseReceived)
             throws IOException {
 
+        if (streamThroughEnabled && originResponse.getEntity() != null) {
+            return streamThroughResponse(host, request, originResponse, requestSent, responseReceived);
+        }
         SizeLimitedResponseReader responseReader = getResponseReader(request, originResponse);
         try {
             responseReader.readResponse();
@@ -274,6 +374,47 @@ class BasicHttpCache implements HttpCache {
         }
     }
 
+    /**
+     * Returns the origin response with its entity wrapped so that the body
+     * is stored in the cache once the caller has read it completely.
+     */
+    HttpResponse streamThroughResponse(
+            final HttpHost host,
+            final HttpRequest request,
+            final HttpResponse originResponse,
+            final Date requestSent,
+            final Date responseReceived) {
+        final Header contentLength = originResponse.getFirstHeader(HTTP.CONTENT_LEN);
+        final StatusLine statusLine = originResponse.getStatusLine();
+        final Header[] headers = originResponse.getAllHeaders();
+        StreamThroughEntity.Callback callback = new StreamThroughEntity.Callback() {
+
+            public void completed(byte[] content, int len) {
+                try {
+                    Resource resource = resourceFactory.generate(request.getRequestLine().getUri(),
+                            new ByteArrayInputStream(content, 0, len), null);
+                    if (isIncompleteResponse(statusLine, contentLength, resource)) {
+                        resource.dispose();
+                        return;
+                    }
+                    HttpCacheEntry entry = new HttpCacheEntry(
+                            requestSent,
+                            responseReceived,
+                            statusLine,
+                            headers,
+                            resource);
+                    storeInCache(host, request, entry);
+                } catch (IOException ex) {
+                    log.warn("Unable to store streamed response in the cache", ex);
+                }
+            }
+
+        };
+        originResponse.setEntity(new StreamThroughEntity(
+                originResponse.getEntity(), maxObjectSizeBytes, callback));
+        return originResponse;
+    }
+
     SizeLimitedResponseReader getResponseReader(HttpRequest request, HttpResponse backEndResponse) {
         return new SizeLimitedResponseReader(
                 resourceFactory, maxObjectSizeBytes, request, backEndResponse);
@@ -298,6 +439,16 @@ class BasicHttpCache implements HttpCache {
         Map<String,Variant> variants = new HashMap<String,Variant>();
         HttpCacheEntry root = storage.getEntry(uriExtractor.getURI(host, request));
         if (root == null || !root.hasVariants()) return variants;
+        if (storage instanceof BulkHttpCacheStorage) {
+            Collection<String> variantCacheKeys = root.getVariantMap().values();
+            Map<String, HttpCacheEntry> entries =
+                ((BulkHttpCacheStorage) storage).getEntries(variantCacheKeys);
+            for(Map.Entry<String, String> variant : root.getVariantMap().entrySet()) {
+                addVariantWithEtag(variant.getKey(), variant.getValue(),
+                        entries.get(variant.getValue()), variants);
+            }
+            return variants;
+        }
         for(Map.Entry<String, String> variant : root.getVariantMap().entrySet()) {
             String variantKey = variant.getKey();
             String variantCacheKey = variant.getValue();
@@ -309,7 +460,12 @@ class BasicHttpCache implements HttpCache {
     private void addVariantWithEtag(String variantKey,
             String variantCacheKey, Map<String, Variant> variants)
             throws IOException {
-        HttpCacheEntry entry = storage.getEntry(variantCacheKey);
+        addVariantWithEtag(variantKey, variantCacheKey,
+                storage.getEntry(variantCacheKey), variants);
+    }
+
+    private void addVariantWithEtag(String variantKey,
+            String variantCacheKey, HttpCacheEntry entry, Map<String, Variant> variants) {
         if (entry == null) return;
         Header etagHeader = entry.getFirstHeader(HeaderConstants.ETAG);
         if (etagHeader == null) return;
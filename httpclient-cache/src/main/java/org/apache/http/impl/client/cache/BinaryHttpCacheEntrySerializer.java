@@ -0,0 +1,374 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.StatusLine;
+import org.apache.http.annotation.Immutable;
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.cache.HttpCacheEntrySerializationException;
+import org.apache.http.client.cache.HttpCacheEntrySerializer;
+import org.apache.http.client.cache.Resource;
+import org.apache.http.client.cache.ResourceFactory;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicStatusLine;
+
+/**
+ * {@link HttpCacheEntrySerializer} implementation that uses a compact,
+ * versioned binary format instead of Java serialization. Lengths and counts
+ * are written as variable length integers, dates as epoch milliseconds and
+ * common header names as indexes into a fixed table. The response body is
+ * appended as is at the end of the record.
+ * <p/>
+ * Unlike {@link DefaultHttpCacheEntrySerializer} this serializer does not
+ * close the streams passed to it.
+ *
+ * @since 4.3
+ */
+@Immutable
+public class BinaryHttpCacheEntrySerializer implements HttpCacheEntrySerializer {
+
+    private static final int MAGIC = 0x4843; // 'HC'
+    private static final int VERSION = 1;
+
+    // Part of the format: entries may only ever be appended
+    private static final String[] COMMON_HEADERS = {
+        HttpHeaders.DATE,
+        HttpHeaders.SERVER,
+        HttpHeaders.CONTENT_TYPE,
+        HttpHeaders.CONTENT_LENGTH,
+        HttpHeaders.CONTENT_ENCODING,
+        HttpHeaders.CONTENT_LANGUAGE,
+        HttpHeaders.CONTENT_LOCATION,
+        HttpHeaders.CONTENT_MD5,
+        HttpHeaders.CONTENT_RANGE,
+        HttpHeaders.CACHE_CONTROL,
+        HttpHeaders.EXPIRES,
+        HttpHeaders.LAST_MODIFIED,
+        HttpHeaders.ETAG,
+        HttpHeaders.VARY,
+        HttpHeaders.AGE,
+        HttpHeaders.VIA,
+        HttpHeaders.WARNING,
+        HttpHeaders.PRAGMA,
+        HttpHeaders.CONNECTION,
+        HttpHeaders.TRANSFER_ENCODING,
+        HttpHeaders.ACCEPT_RANGES,
+        HttpHeaders.LOCATION,
+        HttpHeaders.ALLOW,
+        HttpHeaders.PROXY_AUTHENTICATE,
+        HttpHeaders.WWW_AUTHENTICATE,
+        "Set-Cookie",
+        "Set-Cookie2",
+        "Keep-Alive",
+        "X-Powered-By"
+    };
+
+    private static final Map<String, Integer> COMMON_HEADER_INDEX;
+
+    static {
+        COMMON_HEADER_INDEX = new HashMap<String, Integer>();
+        for (int i = 0; i < COMMON_HEADERS.length; i++) {
+            COMMON_HEADER_INDEX.put(COMMON_HEADERS[i], Integer.valueOf(i));
+        }
+    }
+
+    private static final String CHARSET = "UTF-8";
+
+    private final ResourceFactory resourceFactory;
+
+    /**
+     * Creates a serializer that stores the response body of deserialized
+     * entries using the given factory. If <code>null</code>, response bodies
+     * are held in {@link HeapResource}s.
+     */
+    public BinaryHttpCacheEntrySerializer(final ResourceFactory resourceFactory) {
+        super();
+        this.resourceFactory = resourceFactory;
+    }
+
+    public BinaryHttpCacheEntrySerializer() {
+        this(null);
+    }
+
+    public void writeTo(final HttpCacheEntry entry, final OutputStream os) throws IOException {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+        out.writeShort(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(entry.getRequestDate().getTime());
+        out.writeLong(entry.getResponseDate().getTime());
+
+        final StatusLine statusLine = entry.getStatusLine();
+        final ProtocolVersion ver = statusLine.getProtocolVersion();
+        writeString(out, ver.getProtocol());
+        writeVarLong(out, ver.getMajor());
+        writeVarLong(out, ver.getMinor());
+        writeVarLong(out, statusLine.getStatusCode());
+        writeString(out, statusLine.getReasonPhrase());
+
+        final Header[] headers = entry.getAllHeaders();
+        writeVarLong(out, headers.length);
+        for (final Header header : headers) {
+            final Integer index = COMMON_HEADER_INDEX.get(header.getName());
+            if (index != null) {
+                writeVarLong(out, index.intValue() + 1);
+            } else {
+                out.write(0);
+                writeString(out, header.getName());
+            }
+            writeString(out, header.getValue());
+        }
+
+        final Map<String, String> variantMap = entry.getVariantMap();
+        writeVarLong(out, variantMap.size());
+        for (final Map.Entry<String, String> variant : variantMap.entrySet()) {
+            writeString(out, variant.getKey());
+            writeString(out, variant.getValue());
+        }
+
+        final Resource resource = entry.getResource();
+        if (resource == null) {
+            out.write(0);
+        } else {
+            final long len = resource.length();
+            writeVarLong(out, len + 1);
+            if (resource instanceof HeapResource) {
+                out.write(((HeapResource) resource).getByteArray());
+            } else {
+                final InputStream instream = resource.getInputStream();
+                try {
+                    final byte[] buf = new byte[4096];
+                    long remaining = len;
+                    while (remaining > 0) {
+                        final int l = instream.read(buf, 0, (int) Math.min(buf.length, remaining));
+                        if (l == -1) {
+                            throw new EOFException("Resource shorter than its declared length");
+                        }
+                        out.write(buf, 0, l);
+                        remaining -= l;
+                    }
+                } finally {
+                    instream.close();
+                }
+            }
+        }
+        out.flush();
+    }
+
+    public HttpCacheEntry readFrom(final InputStream is) throws IOException {
+        final DataInputStream in = new DataInputStream(is);
+        final int magic = in.readUnsignedShort();
+        if (magic != MAGIC) {
+            throw new HttpCacheEntrySerializationException("Not a binary cache entry");
+        }
+        final int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new HttpCacheEntrySerializationException(
+                    "Unsupported cache entry format version: " + version);
+        }
+        final Date requestDate = new Date(in.readLong());
+        final Date responseDate = new Date(in.readLong());
+
+        final String protocol = readString(in);
+        final int major = readVarInt(in);
+        final int minor = readVarInt(in);
+        final int statusCode = readVarInt(in);
+        final String reasonPhrase = readString(in);
+        final StatusLine statusLine = new BasicStatusLine(
+                new ProtocolVersion(protocol, major, minor), statusCode, reasonPhrase);
+
+        final int headerCount = readVarInt(in);
+        final Header[] headers = new Header[headerCount];
+        for (int i = 0; i < headerCount; i++) {
+            final int index = readVarInt(in);
+            final String name;
+            if (index == 0) {
+                name = readString(in);
+            } else if (index <= COMMON_HEADERS.length) {
+                name = COMMON_HEADERS[index - 1];
+            } else {
+                throw new HttpCacheEntrySerializationException("Invalid header index: " + index);
+            }
+            headers[i] = new BasicHeader(name, readString(in));
+        }
+
+        final int variantCount = readVarInt(in);
+        final Map<String, String> variantMap = new HashMap<String, String>(
+                Math.max(16, variantCount * 2));
+        for (int i = 0; i < variantCount; i++) {
+            final String key = readString(in);
+            variantMap.put(key, readString(in));
+        }
+
+        final long len = readVarLong(in) - 1;
+        final Resource resource;
+        if (len < 0) {
+            resource = null;
+        } else if (this.resourceFactory == null) {
+            if (len > Integer.MAX_VALUE) {
+                throw new HttpCacheEntrySerializationException("Response body too large: " + len);
+            }
+            final byte[] b = new byte[(int) len];
+            in.readFully(b);
+            resource = new HeapResource(b);
+        } else {
+            final BoundedInputStream body = new BoundedInputStream(in, len);
+            resource = this.resourceFactory.generate("cache-entry", body, null);
+            if (body.remaining > 0) {
+                resource.dispose();
+                throw new EOFException("Response body truncated");
+            }
+        }
+        return new HttpCacheEntry(requestDate, responseDate, statusLine, headers, resource,
+                variantMap);
+    }
+
+    private static void writeVarLong(final DataOutputStream out, final long value) throws IOException {
+        long v = value;
+        while ((v & ~0x7fL) != 0) {
+            out.write((int) ((v & 0x7f) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    private static long readVarLong(final DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new HttpCacheEntrySerializationException("Malformed variable length integer");
+    }
+
+    private static int readVarInt(final DataInputStream in) throws IOException {
+        final long value = readVarLong(in);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new HttpCacheEntrySerializationException("Value out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Writes the length of the UTF-8 encoding plus one, followed by the
+     * encoding itself. <code>null</code> is written as a zero length.
+     */
+    private static void writeString(final DataOutputStream out, final String s) throws IOException {
+        if (s == null) {
+            out.write(0);
+            return;
+        }
+        final byte[] b = s.getBytes(CHARSET);
+        writeVarLong(out, b.length + 1);
+        out.write(b);
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        final int len = readVarInt(in);
+        if (len == 0) {
+            return null;
+        }
+        final byte[] b = new byte[len - 1];
+        in.readFully(b);
+        return new String(b, CHARSET);
+    }
+
+    static class BoundedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        BoundedInputStream(final InputStream in, final long len) {
+            super(in);
+            this.remaining = len;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (this.remaining <= 0) {
+                return -1;
+            }
+            final int b = super.read();
+            if (b != -1) {
+                this.remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (this.remaining <= 0) {
+                return -1;
+            }
+            final int l = super.read(b, off, (int) Math.min(len, this.remaining));
+            if (l > 0) {
+                this.remaining -= l;
+            }
+            return l;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(Math.min(n, this.remaining));
+            this.remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), this.remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // leave the underlying stream open
+        }
+
+    }
+
+}
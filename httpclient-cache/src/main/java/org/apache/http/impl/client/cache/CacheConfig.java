@@ -46,7 +46,10 @@ import org.apache.http.util.Args;
  * <p><b>Cache size.</b> If the backend storage supports these limits, you
  * can specify the {@link CacheConfig#getMaxCacheEntries maximum number of
  * cache entries} as well as the {@link CacheConfig#getMaxObjectSizeBytes
- * maximum cacheable response body size}.</p>
+ * maximum cacheable response body size}. Setting the {@link
+ * CacheConfig#getMaxCacheSize() maximum total cache size} selects the
+ * size-aware {@link ShardedHttpCacheStorage} as the default in-memory
+ * storage.</p>
  *
  * <p><b>Public/private caching.</b> By default, the caching module considers
  * itself to be a shared (public) cache, and will not, for example, cache
@@ -95,6 +98,11 @@ public class CacheConfig implements Cloneable {
      */
     public final static int DEFAULT_MAX_CACHE_ENTRIES = 1000;
 
+    /** Default setting for the maximum total size of the cache entries
+     * in bytes. Zero means no limit.
+     */
+    public final static long DEFAULT_MAX_CACHE_SIZE = 0;
+
     /** Default setting for the number of retries on a failed
      * cache update
      */
@@ -133,11 +141,32 @@ public class CacheConfig implements Cloneable {
      */
     public static final int DEFAULT_REVALIDATION_QUEUE_SIZE = 100;
 
+    /** Default setting for collapsing concurrent cache misses for the same
+     * resource into a single backend request.
+     */
+    public static final boolean DEFAULT_REQUEST_COLLAPSING_ENABLED = false;
+
+    /** Default maximum time in milliseconds a collapsed request waits for
+     * the backend response to the first request.
+     */
+    public static final int DEFAULT_REQUEST_COLLAPSING_TIMEOUT_MILLIS = 5000;
+
+    /** Default setting for streaming response bodies to the caller while
+     * they are being written to the cache.
+     */
+    public static final boolean DEFAULT_STREAM_THROUGH_ENABLED = false;
+
+    /** Default maximum time in milliseconds to wait for an asynchronous
+     * write to a {@link org.apache.http.client.cache.BulkHttpCacheStorage}.
+     */
+    public static final int DEFAULT_ASYNCHRONOUS_WRITE_TIMEOUT_MILLIS = 5000;
+
     public static final CacheConfig DEFAULT = new Builder().build();
 
     // TODO: make final
     private long maxObjectSize;
     private int maxCacheEntries;
+    private long maxCacheSize;
     private int maxUpdateRetries;
     private boolean heuristicCachingEnabled;
     private float heuristicCoefficient;
@@ -148,6 +177,10 @@ public class CacheConfig implements Cloneable {
     private int asynchronousWorkerIdleLifetimeSecs;
     private int revalidationQueueSize;
     private boolean neverCacheHTTP10ResponsesWithQuery;
+    private boolean requestCollapsingEnabled;
+    private int requestCollapsingTimeoutMillis;
+    private boolean streamThroughEnabled;
+    private int asynchronousWriteTimeoutMillis;
 
     /**
      * @deprecated (4.3) use {@link Builder}.
@@ -157,6 +190,7 @@ public class CacheConfig implements Cloneable {
         super();
         this.maxObjectSize = DEFAULT_MAX_OBJECT_SIZE_BYTES;
         this.maxCacheEntries = DEFAULT_MAX_CACHE_ENTRIES;
+        this.maxCacheSize = DEFAULT_MAX_CACHE_SIZE;
         this.maxUpdateRetries = DEFAULT_MAX_UPDATE_RETRIES;
         this.heuristicCachingEnabled = false;
         this.heuristicCoefficient = DEFAULT_HEURISTIC_COEFFICIENT;
@@ -166,11 +200,16 @@ public class CacheConfig implements Cloneable {
         this.asynchronousWorkersCore = DEFAULT_ASYNCHRONOUS_WORKERS_CORE;
         this.asynchronousWorkerIdleLifetimeSecs = DEFAULT_ASYNCHRONOUS_WORKER_IDLE_LIFETIME_SECS;
         this.revalidationQueueSize = DEFAULT_REVALIDATION_QUEUE_SIZE;
+        this.requestCollapsingEnabled = DEFAULT_REQUEST_COLLAPSING_ENABLED;
+        this.requestCollapsingTimeoutMillis = DEFAULT_REQUEST_COLLAPSING_TIMEOUT_MILLIS;
+        this.streamThroughEnabled = DEFAULT_STREAM_THROUGH_ENABLED;
+        this.asynchronousWriteTimeoutMillis = DEFAULT_ASYNCHRONOUS_WRITE_TIMEOUT_MILLIS;
     }
 
     CacheConfig(
             long maxObjectSize,
             int maxCacheEntries,
+            long maxCacheSize,
             int maxUpdateRetries,
             boolean heuristicCachingEnabled,
             float heuristicCoefficient,
@@ -180,10 +219,15 @@ public class CacheConfig implements Cloneable {
             int asynchronousWorkersCore,
             int asynchronousWorkerIdleLifetimeSecs,
             int revalidationQueueSize,
-            boolean neverCacheHTTP10ResponsesWithQuery) {
+            boolean neverCacheHTTP10ResponsesWithQuery,
+            boolean requestCollapsingEnabled,
+            int requestCollapsingTimeoutMillis,
+            boolean streamThroughEnabled,
+            int asynchronousWriteTimeoutMillis) {
         super();
         this.maxObjectSize = maxObjectSize;
         this.maxCacheEntries = maxCacheEntries;
+        this.maxCacheSize = maxCacheSize;
         this.maxUpdateRetries = maxUpdateRetries;
         this.heuristicCachingEnabled = heuristicCachingEnabled;
         this.heuristicCoefficient = heuristicCoefficient;
@@ -193,6 +237,10 @@ public class CacheConfig implements Cloneable {
         this.asynchronousWorkersCore = asynchronousWorkersCore;
         this.asynchronousWorkerIdleLifetimeSecs = asynchronousWorkerIdleLifetimeSecs;
         this.revalidationQueueSize = revalidationQueueSize;
+        this.requestCollapsingEnabled = requestCollapsingEnabled;
+        this.requestCollapsingTimeoutMillis = requestCollapsingTimeoutMillis;
+        this.streamThroughEnabled = streamThroughEnabled;
+        this.asynchronousWriteTimeoutMillis = asynchronousWriteTimeoutMillis;
     }
 
     /**
@@ -270,6 +318,16 @@ public class CacheConfig implements Cloneable {
         this.maxCacheEntries = maxCacheEntries;
     }
 
+    /**
+     * Returns the maximum total size of the cache entries in bytes or
+     * zero if the size of the cache is not limited.
+     *
+     * @since 4.3
+     */
+    public long getMaxCacheSize() {
+        return maxCacheSize;
+    }
+
     /**
      * Returns the number of times to retry a cache update on failure
      */
@@ -461,6 +519,48 @@ public class CacheConfig implements Cloneable {
         this.revalidationQueueSize = size;
     }
 
+    /**
+     * Returns whether concurrent cache misses for the same resource are
+     * collapsed into a single backend request.
+     *
+     * @since 4.3
+     */
+    public boolean isRequestCollapsingEnabled() {
+        return requestCollapsingEnabled;
+    }
+
+    /**
+     * Returns the maximum time in milliseconds a collapsed request waits
+     * for the response to the first request before calling the backend
+     * itself.
+     *
+     * @since 4.3
+     */
+    public int getRequestCollapsingTimeoutMillis() {
+        return requestCollapsingTimeoutMillis;
+    }
+
+    /**
+     * Returns whether cacheable response bodies are handed to the caller
+     * right away and written to the cache as the caller consumes them.
+     *
+     * @since 4.3
+     */
+    public boolean isStreamThroughEnabled() {
+        return streamThroughEnabled;
+    }
+
+    /**
+     * Returns the maximum time in milliseconds the cache waits for an
+     * asynchronous write to a
+     * {@link org.apache.http.client.cache.BulkHttpCacheStorage} to complete.
+     *
+     * @since 4.3
+     */
+    public int getAsynchronousWriteTimeoutMillis() {
+        return asynchronousWriteTimeoutMillis;
+    }
+
     @Override
     protected CacheConfig clone() throws CloneNotSupportedException {
         return (CacheConfig) super.clone();
@@ -475,6 +575,7 @@ public class CacheConfig implements Cloneable {
         return new Builder()
             .setMaxObjectSize(config.getMaxObjectSize())
             .setMaxCacheEntries(config.getMaxCacheEntries())
+            .setMaxCacheSize(config.getMaxCacheSize())
             .setMaxUpdateRetries(config.getMaxUpdateRetries())
             .setHeuristicCachingEnabled(config.isHeuristicCachingEnabled())
             .setHeuristicCoefficient(config.getHeuristicCoefficient())
@@ -484,7 +585,11 @@ public class CacheConfig implements Cloneable {
             .setAsynchronousWorkersCore(config.getAsynchronousWorkersCore())
             .setAsynchronousWorkerIdleLifetimeSecs(config.getAsynchronousWorkerIdleLifetimeSecs())
             .setRevalidationQueueSize(config.getRevalidationQueueSize())
-            .setNeverCacheHTTP10ResponsesWithQueryString(config.isNeverCacheHTTP10ResponsesWithQuery());
+            .setNeverCacheHTTP10ResponsesWithQueryString(config.isNeverCacheHTTP10ResponsesWithQuery())
+            .setRequestCollapsingEnabled(config.isRequestCollapsingEnabled())
+            .setRequestCollapsingTimeoutMillis(config.getRequestCollapsingTimeoutMillis())
+            .setStreamThroughEnabled(config.isStreamThroughEnabled())
+            .setAsynchronousWriteTimeoutMillis(config.getAsynchronousWriteTimeoutMillis());
     }
 
 
@@ -492,6 +597,7 @@ public class CacheConfig implements Cloneable {
 
         private long maxObjectSize;
         private int maxCacheEntries;
+        private long maxCacheSize;
         private int maxUpdateRetries;
         private boolean heuristicCachingEnabled;
         private float heuristicCoefficient;
@@ -502,10 +608,15 @@ public class CacheConfig implements Cloneable {
         private int asynchronousWorkerIdleLifetimeSecs;
         private int revalidationQueueSize;
         private boolean neverCacheHTTP10ResponsesWithQuery;
+        private boolean requestCollapsingEnabled;
+        private int requestCollapsingTimeoutMillis;
+        private boolean streamThroughEnabled;
+        private int asynchronousWriteTimeoutMillis;
 
         Builder() {
             this.maxObjectSize = DEFAULT_MAX_OBJECT_SIZE_BYTES;
             this.maxCacheEntries = DEFAULT_MAX_CACHE_ENTRIES;
+            this.maxCacheSize = DEFAULT_MAX_CACHE_SIZE;
             this.maxUpdateRetries = DEFAULT_MAX_UPDATE_RETRIES;
             this.heuristicCachingEnabled = false;
             this.heuristicCoefficient = DEFAULT_HEURISTIC_COEFFICIENT;
@@ -515,6 +626,10 @@ public class CacheConfig implements Cloneable {
             this.asynchronousWorkersCore = DEFAULT_ASYNCHRONOUS_WORKERS_CORE;
             this.asynchronousWorkerIdleLifetimeSecs = DEFAULT_ASYNCHRONOUS_WORKER_IDLE_LIFETIME_SECS;
             this.revalidationQueueSize = DEFAULT_REVALIDATION_QUEUE_SIZE;
+            this.requestCollapsingEnabled = DEFAULT_REQUEST_COLLAPSING_ENABLED;
+            this.requestCollapsingTimeoutMillis = DEFAULT_REQUEST_COLLAPSING_TIMEOUT_MILLIS;
+            this.streamThroughEnabled = DEFAULT_STREAM_THROUGH_ENABLED;
+            this.asynchronousWriteTimeoutMillis = DEFAULT_ASYNCHRONOUS_WRITE_TIMEOUT_MILLIS;
         }
 
         /**
@@ -534,6 +649,18 @@ public class CacheConfig implements Cloneable {
             return this;
         }
 
+        /**
+         * Sets the maximum total size of the cache entries in bytes. A positive
+         * value makes {@link CachingHttpClientBuilder} use the size-aware
+         * {@link ShardedHttpCacheStorage} unless a storage is given explicitly.
+         *
+         * @since 4.3
+         */
+        public Builder setMaxCacheSize(long maxCacheSize) {
+            this.maxCacheSize = maxCacheSize;
+            return this;
+        }
+
         /**
          * Sets the number of times to retry a cache update on failure
          */
@@ -646,10 +773,65 @@ public class CacheConfig implements Cloneable {
             return this;
         }
 
+        /**
+         * Enables or disables collapsing of concurrent cache misses. If enabled,
+         * the first cacheable request that misses the cache for a resource is
+         * sent to the backend while identical requests arriving in the meantime
+         * wait for its response to be cached and are served from the cache.
+         * If {@link #setStreamThroughEnabled(boolean) stream-through} is
+         * enabled as well, they wait until the first caller has finished
+         * reading the response body, or until the collapsing timeout expires.
+         *
+         * @since 4.3
+         */
+        public Builder setRequestCollapsingEnabled(boolean requestCollapsingEnabled) {
+            this.requestCollapsingEnabled = requestCollapsingEnabled;
+            return this;
+        }
+
+        /**
+         * Sets the maximum time in milliseconds a collapsed request waits for
+         * the response to the first request before calling the backend itself.
+         *
+         * @since 4.3
+         */
+        public Builder setRequestCollapsingTimeoutMillis(int requestCollapsingTimeoutMillis) {
+            this.requestCollapsingTimeoutMillis = requestCollapsingTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * Enables or disables stream-through cache writes. If enabled, the
+         * response to a cacheable request is returned before its body has
+         * been read. The body is written to the cache as the caller consumes
+         * it, and the cache entry is stored only once the body has been read
+         * completely; responses that are closed early are not cached.
+         *
+         * @since 4.3
+         */
+        public Builder setStreamThroughEnabled(boolean streamThroughEnabled) {
+            this.streamThroughEnabled = streamThroughEnabled;
+            return this;
+        }
+
+        /**
+         * Sets the maximum time in milliseconds the cache waits for an
+         * asynchronous write to a
+         * {@link org.apache.http.client.cache.BulkHttpCacheStorage} to complete.
+         * Writes that take longer are treated as failed.
+         *
+         * @since 4.3
+         */
+        public Builder setAsynchronousWriteTimeoutMillis(int asynchronousWriteTimeoutMillis) {
+            this.asynchronousWriteTimeoutMillis = asynchronousWriteTimeoutMillis;
+            return this;
+        }
+
         public CacheConfig build() {
             return new CacheConfig(
                     maxObjectSize,
                     maxCacheEntries,
+                    maxCacheSize,
                     maxUpdateRetries,
                     heuristicCachingEnabled,
                     heuristicCoefficient,
@@ -659,7 +841,11 @@ public class CacheConfig implements Cloneable {
                     asynchronousWorkersCore,
                     asynchronousWorkerIdleLifetimeSecs,
                     revalidationQueueSize,
-                    neverCacheHTTP10ResponsesWithQuery);
+                    neverCacheHTTP10ResponsesWithQuery,
+                    requestCollapsingEnabled,
+                    requestCollapsingTimeoutMillis,
+                    streamThroughEnabled,
+                    asynchronousWriteTimeoutMillis);
         }
 
     }
@@ -669,6 +855,7 @@ public class CacheConfig implements Cloneable {
         StringBuilder builder = new StringBuilder();
         builder.append("[maxObjectSize=").append(this.maxObjectSize)
                 .append(", maxCacheEntries=").append(this.maxCacheEntries)
+                .append(", maxCacheSize=").append(this.maxCacheSize)
                 .append(", maxUpdateRetries=").append(this.heuristicCachingEnabled)
                 .append(", heuristicCoefficient=").append(this.heuristicCoefficient)
                 .append(", heuristicDefaultLifetime=").append(this.heuristicDefaultLifetime)
@@ -678,6 +865,10 @@ public class CacheConfig implements Cloneable {
                 .append(", asynchronousWorkerIdleLifetimeSecs=").append(this.asynchronousWorkerIdleLifetimeSecs)
                 .append(", revalidationQueueSize=").append(this.revalidationQueueSize)
                 .append(", neverCacheHTTP10ResponsesWithQuery=").append(this.neverCacheHTTP10ResponsesWithQuery)
+                .append(", requestCollapsingEnabled=").append(this.requestCollapsingEnabled)
+                .append(", requestCollapsingTimeoutMillis=").append(this.requestCollapsingTimeoutMillis)
+                .append(", streamThroughEnabled=").append(this.streamThroughEnabled)
+                .append(", asynchronousWriteTimeoutMillis=").append(this.asynchronousWriteTimeoutMillis)
                 .append("]");
         return builder.toString();
     }
@@ -26,15 +26,23 @@
  */
 package org.apache.http.impl.client.cache;
 
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.annotation.Immutable;
+import org.apache.http.client.cache.ByteBufferResource;
 import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.cache.Resource;
 import org.apache.http.protocol.HTTP;
 import org.apache.http.util.Args;
 
@@ -76,9 +84,57 @@ class CacheEntity implements HttpEntity, Serializable {
 
     public void writeTo(final OutputStream outstream) throws IOException {
         Args.notNull(outstream, "Output stream");
-        InputStream instream = this.cacheEntry.getResource().getInputStream();
+        Resource resource = this.cacheEntry.getResource();
+        // Hand the cached body over without copying it where the resource
+        // type permits
+        if (resource instanceof HeapResource) {
+            outstream.write(((HeapResource) resource).getByteArray());
+        } else if (resource instanceof ByteBufferResource) {
+            write(((ByteBufferResource) resource).getByteBuffer(), outstream);
+        } else if (resource instanceof FileResource) {
+            transfer((FileResource) resource, outstream);
+        } else {
+            InputStream instream = resource.getInputStream();
+            try {
+                IOUtils.copy(instream, outstream);
+            } finally {
+                instream.close();
+            }
+        }
+    }
+
+    private static WritableByteChannel getChannel(final OutputStream outstream) {
+        if (outstream instanceof FileOutputStream) {
+            return ((FileOutputStream) outstream).getChannel();
+        }
+        return Channels.newChannel(outstream);
+    }
+
+    private static void write(final ByteBuffer buffer, final OutputStream outstream) throws IOException {
+        if (buffer.hasArray()) {
+            outstream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            WritableByteChannel channel = getChannel(outstream);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    private static void transfer(final FileResource resource, final OutputStream outstream) throws IOException {
+        FileInputStream instream = new FileInputStream(resource.getFile());
         try {
-            IOUtils.copy(instream, outstream);
+            FileChannel channel = instream.getChannel();
+            WritableByteChannel target = getChannel(outstream);
+            long len = channel.size();
+            long pos = 0;
+            while (pos < len) {
+                long n = channel.transferTo(pos, len - pos, target);
+                if (n <= 0) {
+                    break;
+                }
+                pos += n;
+            }
         } finally {
             instream.close();
         }
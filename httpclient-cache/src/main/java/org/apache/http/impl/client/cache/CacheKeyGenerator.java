@@ -36,22 +36,36 @@ import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.http.Consts;
 import org.apache.http.Header;
 import org.apache.http.HeaderElement;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
-import org.apache.http.annotation.Immutable;
+import org.apache.http.annotation.ThreadSafe;
 import org.apache.http.client.cache.HeaderConstants;
 import org.apache.http.client.cache.HttpCacheEntry;
 
 /**
  * @since 4.1
  */
-@Immutable
+@ThreadSafe
 class CacheKeyGenerator {
 
+    /**
+     * Upper bound on the number of distinct <code>Vary</code> header values
+     * whose parsed header names are retained.
+     */
+    static final int MAX_MEMOIZED_VARY_VALUES = 1000;
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private final ConcurrentMap<String, String[]> varyHeaderNames =
+        new ConcurrentHashMap<String, String[]>();
+
     /**
      * For a given {@link HttpHost} and {@link HttpRequest} get a URI from the
      * pair that I can use as an identifier KEY into my HttpCache
@@ -62,12 +76,22 @@ class CacheKeyGenerator {
      */
     public String getURI(HttpHost host, HttpRequest req) {
         if (isRelativeRequest(req)) {
-            return canonicalizeUri(String.format("%s%s", host.toString(), req.getRequestLine().getUri()));
+            final String requestUri = req.getRequestLine().getUri();
+            final String key = canonicalizeSimpleUri(
+                    host.getSchemeName(), host.getHostName(), host.getPort(), requestUri, 0);
+            if (key != null) {
+                return key;
+            }
+            return canonicalizeUri(String.format("%s%s", host.toString(), requestUri));
         }
         return canonicalizeUri(req.getRequestLine().getUri());
     }
 
     public String canonicalizeUri(String uri) {
+        final String key = canonicalizeSimpleAbsoluteUri(uri);
+        if (key != null) {
+            return key;
+        }
         try {
             URL u = new URL(uri);
             String protocol = u.getProtocol().toLowerCase();
@@ -84,6 +108,129 @@ class CacheKeyGenerator {
         }
     }
 
+    /**
+     * Canonicalizes an absolute http or https URI made of a plain host name,
+     * an optional port and a path that needs no decoding, without going
+     * through {@link URL}. Returns <code>null</code> for any other URI.
+     */
+    private String canonicalizeSimpleAbsoluteUri(final String uri) {
+        final int schemeEnd = uri.indexOf("://");
+        if (schemeEnd <= 0) {
+            return null;
+        }
+        final int authorityStart = schemeEnd + 3;
+        int authorityEnd = authorityStart;
+        int portStart = -1;
+        while (authorityEnd < uri.length()) {
+            final char ch = uri.charAt(authorityEnd);
+            if (ch == '/' || ch == '?') {
+                break;
+            }
+            if (ch == ':' && portStart == -1) {
+                portStart = authorityEnd + 1;
+            }
+            authorityEnd++;
+        }
+        final String hostname;
+        int port = -1;
+        if (portStart != -1) {
+            if (portStart == authorityEnd || authorityEnd - portStart > 5) {
+                return null;
+            }
+            port = 0;
+            for (int i = portStart; i < authorityEnd; i++) {
+                final char ch = uri.charAt(i);
+                if (ch < '0' || ch > '9') {
+                    return null;
+                }
+                port = port * 10 + (ch - '0');
+            }
+            hostname = uri.substring(authorityStart, portStart - 1);
+        } else {
+            hostname = uri.substring(authorityStart, authorityEnd);
+        }
+        return canonicalizeSimpleUri(
+                uri.substring(0, schemeEnd), hostname, port, uri, authorityEnd);
+    }
+
+    /**
+     * Builds the canonical form of a URI given its scheme, host, port and
+     * the offset of its path within <code>uri</code>, provided the result
+     * would be the same as the one produced by {@link #canonicalizeUri(String)}.
+     * Returns <code>null</code> otherwise.
+     */
+    private String canonicalizeSimpleUri(
+            final String scheme, final String hostname, final int port,
+            final String uri, final int pathStart) {
+        final String protocol;
+        if ("http".equalsIgnoreCase(scheme)) {
+            protocol = "http";
+        } else if ("https".equalsIgnoreCase(scheme)) {
+            protocol = "https";
+        } else {
+            return null;
+        }
+        if (!isSimpleHostname(hostname)) {
+            return null;
+        }
+        int queryStart = uri.indexOf('?', pathStart);
+        if (queryStart == -1) {
+            queryStart = uri.length();
+        }
+        if (!isSimplePath(uri, pathStart, queryStart)
+                || uri.indexOf('#', queryStart) != -1) {
+            return null;
+        }
+        final StringBuilder buf = new StringBuilder(
+                protocol.length() + hostname.length() + uri.length() - pathStart + 10);
+        buf.append(protocol).append("://").append(hostname.toLowerCase(Locale.ENGLISH));
+        buf.append(':').append(canonicalizePort(port, protocol));
+        if (pathStart == queryStart) {
+            buf.append('/');
+        }
+        buf.append(uri, pathStart, uri.length());
+        return buf.toString();
+    }
+
+    private static boolean isSimpleHostname(final String hostname) {
+        if (hostname.length() == 0) {
+            return false;
+        }
+        for (int i = 0; i < hostname.length(); i++) {
+            final char ch = hostname.charAt(i);
+            if (!isAsciiAlphaNumeric(ch) && ch != '-' && ch != '.' && ch != '_') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the given path is left unchanged by
+     * {@link #canonicalizePath(String)}: it has to be empty or absolute, not
+     * look like an authority, and consist of characters that neither need
+     * decoding nor are rejected by {@link URI}.
+     */
+    private static boolean isSimplePath(final String uri, final int start, final int end) {
+        if (start == end) {
+            return true;
+        }
+        if (uri.charAt(start) != '/' || uri.startsWith("//", start)) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            final char ch = uri.charAt(i);
+            if (!isAsciiAlphaNumeric(ch) && "-._~!$&'()*,;=:@/".indexOf(ch) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAsciiAlphaNumeric(final char ch) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9');
+    }
+
     private String canonicalizePath(String path) {
         try {
             String decoded = URLDecoder.decode(path, "UTF-8");
@@ -150,14 +297,7 @@ class CacheKeyGenerator {
      * @return a <code>String</code> variant key
      */
     public String getVariantKey(HttpRequest req, HttpCacheEntry entry) {
-        List<String> variantHeaderNames = new ArrayList<String>();
-        for (Header varyHdr : entry.getHeaders(HeaderConstants.VARY)) {
-            for (HeaderElement elt : varyHdr.getElements()) {
-                variantHeaderNames.add(elt.getName());
-            }
-        }
-        Collections.sort(variantHeaderNames);
-
+        final String[] variantHeaderNames = getVariantHeaderNames(entry);
         StringBuilder buf;
         try {
             buf = new StringBuilder("{");
@@ -166,10 +306,9 @@ class CacheKeyGenerator {
                 if (!first) {
                     buf.append("&");
                 }
-                buf.append(URLEncoder.encode(headerName, Consts.UTF_8.name()));
+                encode(headerName, buf);
                 buf.append("=");
-                buf.append(URLEncoder.encode(getFullHeaderValue(req.getHeaders(headerName)),
-                        Consts.UTF_8.name()));
+                encode(getFullHeaderValue(req.getHeaders(headerName)), buf);
                 first = false;
             }
             buf.append("}");
@@ -179,4 +318,67 @@ class CacheKeyGenerator {
         return buf.toString();
     }
 
+    /**
+     * Returns the sorted names of the headers covered by the Vary header of
+     * the given entry. Names are parsed once per distinct Vary header value
+     * and shared by all entries carrying it.
+     */
+    private String[] getVariantHeaderNames(HttpCacheEntry entry) {
+        final Header[] varyHdrs = entry.getHeaders(HeaderConstants.VARY);
+        final String vary;
+        if (varyHdrs.length == 1) {
+            vary = varyHdrs[0].getValue();
+        } else {
+            StringBuilder buf = new StringBuilder();
+            for (Header varyHdr : varyHdrs) {
+                if (varyHdr.getValue() == null) {
+                    buf = null;
+                    break;
+                }
+                buf.append(varyHdr.getValue()).append(',');
+            }
+            vary = buf != null ? buf.toString() : null;
+        }
+        String[] names = vary != null ? this.varyHeaderNames.get(vary) : null;
+        if (names == null) {
+            List<String> variantHeaderNames = new ArrayList<String>();
+            for (Header varyHdr : varyHdrs) {
+                for (HeaderElement elt : varyHdr.getElements()) {
+                    variantHeaderNames.add(elt.getName());
+                }
+            }
+            Collections.sort(variantHeaderNames);
+            names = variantHeaderNames.toArray(new String[variantHeaderNames.size()]);
+            if (vary != null && this.varyHeaderNames.size() < MAX_MEMOIZED_VARY_VALUES) {
+                this.varyHeaderNames.putIfAbsent(vary, names);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Appends the <code>application/x-www-form-urlencoded</code> form of the
+     * given value, as produced by {@link URLEncoder} with UTF-8, without
+     * going through it for ASCII values.
+     */
+    private static void encode(
+            final String value, final StringBuilder buf) throws UnsupportedEncodingException {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                buf.append(URLEncoder.encode(value, Consts.UTF_8.name()));
+                return;
+            }
+        }
+        for (int i = 0; i < value.length(); i++) {
+            final char ch = value.charAt(i);
+            if (isAsciiAlphaNumeric(ch) || ch == '.' || ch == '-' || ch == '*' || ch == '_') {
+                buf.append(ch);
+            } else if (ch == ' ') {
+                buf.append('+');
+            } else {
+                buf.append('%').append(HEX_DIGITS[ch >> 4]).append(HEX_DIGITS[ch & 0x0f]);
+            }
+        }
+    }
+
 }
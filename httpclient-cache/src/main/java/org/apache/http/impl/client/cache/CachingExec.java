@@ -27,16 +27,22 @@
 package org.apache.http.impl.client.cache;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.Header;
 import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpException;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpMessage;
@@ -96,6 +102,11 @@ public class CachingExec implements ClientExecChain {
     private final AtomicLong cacheHits = new AtomicLong();
     private final AtomicLong cacheMisses = new AtomicLong();
     private final AtomicLong cacheUpdates = new AtomicLong();
+    private final AtomicLong collapsedRequests = new AtomicLong();
+
+    private final CacheKeyGenerator keyGenerator = new CacheKeyGenerator();
+    private final ConcurrentMap<String, CountDownLatch> pendingMisses =
+        new ConcurrentHashMap<String, CountDownLatch>();
 
     private final Map<ProtocolVersion, String> viaHeaders = new HashMap<ProtocolVersion, String>(4);
 
@@ -211,6 +222,17 @@ public class CachingExec implements ClientExecChain {
         return cacheUpdates.get();
     }
 
+    /**
+     * Reports the number of cache misses that were served from the cache
+     * after waiting for the response to a concurrent identical request.
+     * @return the number of collapsed requests
+     *
+     * @see CacheConfig#isRequestCollapsingEnabled()
+     */
+    public long getCollapsedRequests() {
+        return collapsedRequests.get();
+    }
+
     public CloseableHttpResponse execute(
             final HttpRoute route,
             final HttpRequestWrapper request) throws IOException, HttpException {
@@ -342,9 +364,88 @@ public class CachingExec implements ClientExecChain {
                     negotiateResponseFromVariants(route, request, context, execAware, variants));
         }
 
+        if (cacheConfig.isRequestCollapsingEnabled()) {
+            return callBackendCollapsing(route, request, context, execAware);
+        }
+        return callBackend(route, request, context, execAware);
+    }
+
+    /**
+     * Lets the first miss for a given resource call the backend while
+     * concurrent misses for the same resource wait for its response to be
+     * cached and are then served from the cache. If the response body is
+     * streamed through to the caller, the waiting misses are released only
+     * once it has been stored or discarded.
+     */
+    private CloseableHttpResponse callBackendCollapsing(
+            final HttpRoute route,
+            final HttpRequestWrapper request,
+            final HttpClientContext context,
+            final HttpExecutionAware execAware) throws IOException, HttpException {
+        HttpHost target = route.getTargetHost();
+        final String key = keyGenerator.getURI(target, request);
+        final CountDownLatch latch = new CountDownLatch(1);
+        CountDownLatch pending = pendingMisses.putIfAbsent(key, latch);
+        if (pending == null) {
+            boolean handedOff = false;
+            try {
+                CloseableHttpResponse response = callBackend(route, request, context, execAware);
+                HttpEntity entity = response.getEntity();
+                if (entity instanceof StreamThroughEntity) {
+                    ((StreamThroughEntity) entity).setFinishListener(new Runnable() {
+
+                        public void run() {
+                            releasePendingMiss(key, latch);
+                        }
+
+                    });
+                    handedOff = true;
+                }
+                return response;
+            } finally {
+                if (!handedOff) {
+                    releasePendingMiss(key, latch);
+                }
+            }
+        }
+
+        boolean completed;
+        try {
+            completed = pending.await(
+                    cacheConfig.getRequestCollapsingTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        if (completed) {
+            HttpCacheEntry entry = satisfyFromCache(target, request);
+            Date now = getCurrentDate();
+            if (entry != null && suitabilityChecker.canCachedResponseBeUsed(target, request, entry, now)) {
+                log.debug("Collapsed request served from cache");
+                collapsedRequests.getAndIncrement();
+                CloseableHttpResponse out = Proxies.enhanceResponse(
+                        generateCachedResponse(request, context, entry, now));
+                context.setAttribute(ClientContext.ROUTE, route);
+                context.setAttribute(ExecutionContext.HTTP_TARGET_HOST, target);
+                context.setAttribute(ExecutionContext.HTTP_REQUEST, request);
+                context.setAttribute(ExecutionContext.HTTP_RESPONSE, out);
+                context.setAttribute(ExecutionContext.HTTP_REQ_SENT, Boolean.TRUE);
+                return out;
+            }
+        } else {
+            log.debug("Timed out waiting for collapsed request; calling backend");
+            // A streamed response the caller never consumed must not hold
+            // up later misses as well
+            pendingMisses.remove(key, pending);
+        }
         return callBackend(route, request, context, execAware);
     }
 
+    private void releasePendingMiss(final String key, final CountDownLatch latch) {
+        pendingMisses.remove(key, latch);
+        latch.countDown();
+    }
+
     private HttpCacheEntry satisfyFromCache(
             final HttpHost target, final HttpRequestWrapper request) {
         HttpCacheEntry entry = null;
@@ -799,11 +900,21 @@ public class CachingExec implements ClientExecChain {
         boolean cacheable = responseCachingPolicy.isResponseCacheable(request, backendResponse);
         responseCache.flushInvalidatedCacheEntriesFor(target, request, backendResponse);
         if (cacheable && !alreadyHaveNewerCacheEntry(target, request, backendResponse)) {
+            boolean streaming = false;
             try {
-                return Proxies.enhanceResponse(responseCache.cacheAndReturnResponse(
-                        target, request, backendResponse, requestDate, responseDate));
+                HttpResponse response = responseCache.cacheAndReturnResponse(
+                        target, request, backendResponse, requestDate, responseDate);
+                if (response == backendResponse) {
+                    // The body is cached as the caller consumes it, so the
+                    // backend connection must be kept open until then
+                    streaming = true;
+                    return backendResponse;
+                }
+                return Proxies.enhanceResponse(response);
             } finally {
-                backendResponse.close();
+                if (!streaming) {
+                    backendResponse.close();
+                }
             }
         }
         if (!cacheable) {
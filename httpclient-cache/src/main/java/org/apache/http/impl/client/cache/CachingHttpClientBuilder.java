@@ -89,13 +89,16 @@ public class CachingHttpClientBuilder extends HttpClientBuilder {
         HttpCacheStorage storage = this.storage;
         if (storage == null) {
             if (this.cacheDir == null) {
-                storage = new BasicHttpCacheStorage(cacheConfig);
+                if (config.getMaxCacheSize() > 0) {
+                    storage = new ShardedHttpCacheStorage(config);
+                } else {
+                    storage = new BasicHttpCacheStorage(config);
+                }
             } else {
-                ManagedHttpCacheStorage managedStorage = new ManagedHttpCacheStorage(cacheConfig);
+                ManagedHttpCacheStorage managedStorage = new ManagedHttpCacheStorage(config);
                 addCloseable(managedStorage);
                 storage = managedStorage;
             }
-            storage = new BasicHttpCacheStorage(cacheConfig);
         }
         return new CachingExec(mainExec,
                 new BasicHttpCache(resourceFactory, storage, config), config);
@@ -28,9 +28,10 @@ package org.apache.http.impl.client.cache;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 import org.apache.http.annotation.Immutable;
-import org.apache.http.client.cache.Resource;
+import org.apache.http.client.cache.ByteBufferResource;
 
 /**
  * Cache resource backed by a byte array on the heap.
@@ -38,7 +39,7 @@ import org.apache.http.client.cache.Resource;
  * @since 4.1
  */
 @Immutable
-public class HeapResource implements Resource {
+public class HeapResource implements ByteBufferResource {
 
     private static final long serialVersionUID = -2078599905620463394L;
 
@@ -57,6 +58,10 @@ public class HeapResource implements Resource {
         return new ByteArrayInputStream(this.b);
     }
 
+    public ByteBuffer getByteBuffer() {
+        return ByteBuffer.wrap(this.b).asReadOnlyBuffer();
+    }
+
     public long length() {
         return this.b.length;
     }
@@ -0,0 +1,426 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.annotation.GuardedBy;
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.cache.HttpCacheStorage;
+import org.apache.http.client.cache.HttpCacheUpdateCallback;
+import org.apache.http.client.cache.Resource;
+import org.apache.http.util.Args;
+
+/**
+ * Persistent {@link HttpCacheStorage} implementation keeping response bodies
+ * in the segment files of a {@link MappedFileResourceFactory}.
+ * <p/>
+ * Cache entries are held in memory and every modification is appended to an
+ * index log in the cache directory. On start-up the log is replayed, so the
+ * cache content survives restarts. The log is rewritten once most of its
+ * records are obsolete. Entries whose bodies were generated by another
+ * {@link org.apache.http.client.cache.ResourceFactory} are copied into the
+ * segment files when stored.
+ * <p/>
+ * Space of removed entries is reclaimed once a segment holds no more live
+ * bodies. The consumer may periodically call {@link #compact()} to move the
+ * remaining bodies out of mostly empty segments.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class MappedFileHttpCacheStorage implements HttpCacheStorage, Closeable {
+
+    private static final String INDEX_FILE = "index.log";
+    private static final String INDEX_TMP_FILE = "index.tmp";
+    private static final int PUT = 1;
+    private static final int REMOVE = 2;
+    private static final int MIN_INDEX_RECORDS = 1024;
+
+    private final MappedFileResourceFactory resourceFactory;
+    private final int maxEntries;
+    private final BinaryHttpCacheEntrySerializer serializer;
+    private final File indexFile;
+
+    @GuardedBy("this")
+    private final LinkedHashMap<String, HttpCacheEntry> entries;
+    @GuardedBy("this")
+    private final Map<MappedFileResource, Integer> references;
+    @GuardedBy("this")
+    private DataOutputStream index;
+    @GuardedBy("this")
+    private int indexRecords;
+    @GuardedBy("this")
+    private boolean shutdown;
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    /**
+     * Creates a storage keeping at most {@link CacheConfig#getMaxCacheEntries()}
+     * entries and restores the entries persisted in the directory of the given
+     * resource factory.
+     */
+    public MappedFileHttpCacheStorage(
+            final CacheConfig config,
+            final MappedFileResourceFactory resourceFactory) throws IOException {
+        super();
+        Args.notNull(config, "Cache config");
+        Args.notNull(resourceFactory, "Resource factory");
+        this.resourceFactory = resourceFactory;
+        this.maxEntries = config.getMaxCacheEntries();
+        this.serializer = new BinaryHttpCacheEntrySerializer();
+        this.indexFile = new File(resourceFactory.getCacheDir(), INDEX_FILE);
+        this.entries = new LinkedHashMap<String, HttpCacheEntry>(16, 0.75f, true);
+        this.references = new IdentityHashMap<MappedFileResource, Integer>();
+        synchronized (this) {
+            restore();
+            resourceFactory.purge();
+            rewriteIndex();
+        }
+    }
+
+    private void restore() throws IOException {
+        if (!this.indexFile.exists()) {
+            return;
+        }
+        final Map<String, Record> records = new LinkedHashMap<String, Record>();
+        final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(this.indexFile)));
+        try {
+            int op;
+            while ((op = in.read()) != -1) {
+                final String key = in.readUTF();
+                if (op == PUT) {
+                    final Record record = new Record(in.readInt(), in.readLong(), in.readLong());
+                    final byte[] meta = new byte[in.readInt()];
+                    in.readFully(meta);
+                    record.entry = this.serializer.readFrom(new ByteArrayInputStream(meta));
+                    records.remove(key);
+                    records.put(key, record);
+                } else if (op == REMOVE) {
+                    records.remove(key);
+                } else {
+                    this.log.warn("Corrupt cache index record; ignoring the rest of " + this.indexFile);
+                    break;
+                }
+            }
+        } catch (final EOFException ex) {
+            this.log.debug("Truncated cache index record; ignoring the rest of " + this.indexFile);
+        } finally {
+            in.close();
+        }
+        // Bodies shared by several entries must map onto a single resource
+        final Map<String, MappedFileResource> restored = new HashMap<String, MappedFileResource>();
+        for (final Map.Entry<String, Record> e : records.entrySet()) {
+            final Record record = e.getValue();
+            MappedFileResource resource = null;
+            if (record.segmentId >= 0) {
+                final String location = record.segmentId + ":" + record.offset;
+                resource = restored.get(location);
+                if (resource == null) {
+                    resource = this.resourceFactory.restore(
+                            record.segmentId, record.offset, record.length);
+                    if (resource == null) {
+                        continue;
+                    }
+                    restored.put(location, resource);
+                }
+            }
+            final HttpCacheEntry meta = record.entry;
+            this.entries.put(e.getKey(), new HttpCacheEntry(meta.getRequestDate(),
+                    meta.getResponseDate(), meta.getStatusLine(), meta.getAllHeaders(),
+                    resource, meta.getVariantMap()));
+            retain(resource);
+        }
+        evictExcessEntries(false);
+    }
+
+    private void ensureValidState() throws IllegalStateException {
+        if (this.shutdown) {
+            throw new IllegalStateException("Cache has been shut down");
+        }
+    }
+
+    public void putEntry(final String key, final HttpCacheEntry entry) throws IOException {
+        Args.notNull(key, "URL");
+        Args.notNull(entry, "Cache entry");
+        synchronized (this) {
+            ensureValidState();
+            store(key, entry);
+        }
+    }
+
+    public HttpCacheEntry getEntry(final String key) throws IOException {
+        Args.notNull(key, "URL");
+        synchronized (this) {
+            ensureValidState();
+            return this.entries.get(key);
+        }
+    }
+
+    public void removeEntry(final String key) throws IOException {
+        Args.notNull(key, "URL");
+        synchronized (this) {
+            ensureValidState();
+            final HttpCacheEntry removed = this.entries.remove(key);
+            if (removed != null) {
+                writeRemove(key);
+                release(removed.getResource());
+                maybeRewriteIndex();
+            }
+        }
+    }
+
+    public void updateEntry(
+            final String key,
+            final HttpCacheUpdateCallback callback) throws IOException {
+        Args.notNull(key, "URL");
+        Args.notNull(callback, "Callback");
+        synchronized (this) {
+            ensureValidState();
+            final HttpCacheEntry existing = this.entries.get(key);
+            store(key, callback.update(existing));
+        }
+    }
+
+    private void store(final String key, final HttpCacheEntry entry) throws IOException {
+        final Resource original = entry.getResource();
+        final MappedFileResource resource;
+        if (original == null) {
+            resource = null;
+        } else if (original instanceof MappedFileResource
+                && ((MappedFileResource) original).getFactory() == this.resourceFactory) {
+            resource = (MappedFileResource) original;
+        } else {
+            resource = this.resourceFactory.copy(key, original);
+        }
+        final HttpCacheEntry stored = resource == original ? entry : new HttpCacheEntry(
+                entry.getRequestDate(), entry.getResponseDate(), entry.getStatusLine(),
+                entry.getAllHeaders(), resource, entry.getVariantMap());
+        writePut(key, stored);
+        retain(resource);
+        final HttpCacheEntry previous = this.entries.put(key, stored);
+        if (previous != null) {
+            release(previous.getResource());
+        }
+        evictExcessEntries(true);
+        maybeRewriteIndex();
+    }
+
+    private void evictExcessEntries(final boolean logged) throws IOException {
+        final Iterator<Map.Entry<String, HttpCacheEntry>> it = this.entries.entrySet().iterator();
+        while (this.entries.size() > this.maxEntries && it.hasNext()) {
+            final Map.Entry<String, HttpCacheEntry> eldest = it.next();
+            it.remove();
+            if (logged) {
+                writeRemove(eldest.getKey());
+            }
+            release(eldest.getValue().getResource());
+        }
+    }
+
+    private void retain(final MappedFileResource resource) {
+        if (resource != null) {
+            resource.setManaged();
+            final Integer count = this.references.get(resource);
+            this.references.put(resource,
+                    Integer.valueOf(count != null ? count.intValue() + 1 : 1));
+        }
+    }
+
+    private void release(final Resource resource) {
+        if (resource != null) {
+            final MappedFileResource mapped = (MappedFileResource) resource;
+            final Integer count = this.references.remove(mapped);
+            if (count != null && count.intValue() > 1) {
+                this.references.put(mapped, Integer.valueOf(count.intValue() - 1));
+            } else {
+                mapped.release();
+            }
+        }
+    }
+
+    /**
+     * Moves the bodies held in mostly empty segment files into the current
+     * segment, allowing the old segments to be deleted.
+     *
+     * @return the number of relocated entries
+     */
+    public synchronized int compact() throws IOException {
+        ensureValidState();
+        final List<String> keys = new ArrayList<String>();
+        for (final Map.Entry<String, HttpCacheEntry> e : this.entries.entrySet()) {
+            final Resource resource = e.getValue().getResource();
+            if (resource != null && this.resourceFactory.isSparse((MappedFileResource) resource)) {
+                keys.add(e.getKey());
+            }
+        }
+        final Map<Resource, MappedFileResource> relocated =
+            new IdentityHashMap<Resource, MappedFileResource>();
+        for (final String key : keys) {
+            final HttpCacheEntry entry = this.entries.get(key);
+            MappedFileResource resource = relocated.get(entry.getResource());
+            if (resource == null) {
+                resource = this.resourceFactory.copy(key, entry.getResource());
+                relocated.put(entry.getResource(), resource);
+            }
+            store(key, new HttpCacheEntry(entry.getRequestDate(), entry.getResponseDate(),
+                    entry.getStatusLine(), entry.getAllHeaders(), resource, entry.getVariantMap()));
+        }
+        this.resourceFactory.purge();
+        return keys.size();
+    }
+
+    /**
+     * Returns the number of entries currently held.
+     */
+    public synchronized int getEntryCount() {
+        return this.entries.size();
+    }
+
+    private void writePut(final String key, final HttpCacheEntry entry) throws IOException {
+        final ByteArrayOutputStream meta = new ByteArrayOutputStream();
+        this.serializer.writeTo(new HttpCacheEntry(entry.getRequestDate(), entry.getResponseDate(),
+                entry.getStatusLine(), entry.getAllHeaders(), null, entry.getVariantMap()), meta);
+        final MappedFileResource resource = (MappedFileResource) entry.getResource();
+        final DataOutputStream out = this.index;
+        out.write(PUT);
+        out.writeUTF(key);
+        if (resource != null) {
+            out.writeInt(resource.getSegment().id);
+            out.writeLong(resource.getOffset());
+            out.writeLong(resource.length());
+        } else {
+            out.writeInt(-1);
+            out.writeLong(0);
+            out.writeLong(0);
+        }
+        out.writeInt(meta.size());
+        meta.writeTo(out);
+        out.flush();
+        this.indexRecords++;
+    }
+
+    private void writeRemove(final String key) throws IOException {
+        final DataOutputStream out = this.index;
+        out.write(REMOVE);
+        out.writeUTF(key);
+        out.flush();
+        this.indexRecords++;
+    }
+
+    private void maybeRewriteIndex() throws IOException {
+        if (this.indexRecords > MIN_INDEX_RECORDS && this.indexRecords > 2 * this.entries.size()) {
+            rewriteIndex();
+        }
+    }
+
+    /**
+     * Replaces the index log with one holding a single record per entry.
+     */
+    private void rewriteIndex() throws IOException {
+        if (this.index != null) {
+            this.index.close();
+            this.index = null;
+        }
+        final File tmp = new File(this.indexFile.getParentFile(), INDEX_TMP_FILE);
+        this.index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        this.indexRecords = 0;
+        try {
+            for (final Map.Entry<String, HttpCacheEntry> e : this.entries.entrySet()) {
+                writePut(e.getKey(), e.getValue());
+            }
+        } finally {
+            this.index.close();
+        }
+        this.indexFile.delete();
+        if (!tmp.renameTo(this.indexFile)) {
+            throw new IOException("Unable to replace cache index " + this.indexFile);
+        }
+        this.index = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(this.indexFile, true)));
+    }
+
+    /**
+     * Closes the index log. Cached bodies are left in place so that they
+     * can be restored by a new instance; the resource factory has to be
+     * closed separately.
+     */
+    public synchronized void shutdown() {
+        if (this.shutdown) {
+            return;
+        }
+        this.shutdown = true;
+        this.entries.clear();
+        this.references.clear();
+        if (this.index != null) {
+            IOUtils.closeSilently(this.index);
+            this.index = null;
+        }
+    }
+
+    public void close() {
+        shutdown();
+    }
+
+    static class Record {
+
+        final int segmentId;
+        final long offset;
+        final long length;
+        HttpCacheEntry entry;
+
+        Record(final int segmentId, final long offset, final long length) {
+            this.segmentId = segmentId;
+            this.offset = offset;
+            this.length = length;
+        }
+
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.client.cache.ByteBufferResource;
+
+/**
+ * Cache resource backed by a region of a memory mapped segment file
+ * managed by {@link MappedFileResourceFactory}.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class MappedFileResource implements ByteBufferResource {
+
+    private static final long serialVersionUID = -2468143519352707358L;
+
+    private final transient MappedFileResourceFactory factory;
+    private final transient MappedFileResourceFactory.Segment segment;
+    private final File file;
+    private final long offset;
+    private final long length;
+
+    private boolean managed;
+    private boolean released;
+
+    MappedFileResource(
+            final MappedFileResourceFactory factory,
+            final MappedFileResourceFactory.Segment segment,
+            final long offset,
+            final long length) {
+        super();
+        this.factory = factory;
+        this.segment = segment;
+        this.file = segment.file;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    MappedFileResourceFactory getFactory() {
+        return this.factory;
+    }
+
+    MappedFileResourceFactory.Segment getSegment() {
+        return this.segment;
+    }
+
+    File getFile() {
+        return this.file;
+    }
+
+    long getOffset() {
+        return this.offset;
+    }
+
+    /**
+     * Returns a read-only view of the mapped segment file holding the
+     * response body; no content is copied.
+     */
+    public ByteBuffer getByteBuffer() throws IOException {
+        if (this.segment != null) {
+            return this.segment.slice(this.offset, this.length);
+        }
+        // De-serialized instance: map the region directly
+        final RandomAccessFile raf = new RandomAccessFile(this.file, "r");
+        try {
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, this.offset, this.length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    public InputStream getInputStream() throws IOException {
+        return new ByteBufferInputStream(getByteBuffer());
+    }
+
+    public long length() {
+        return this.length;
+    }
+
+    /**
+     * Releases the space held by this resource unless the resource is
+     * held by a {@link MappedFileHttpCacheStorage}, which releases it
+     * once no cache entry refers to it any more.
+     */
+    public synchronized void dispose() {
+        if (!this.managed) {
+            release();
+        }
+    }
+
+    synchronized void setManaged() {
+        this.managed = true;
+    }
+
+    synchronized void release() {
+        if (this.released) {
+            return;
+        }
+        this.released = true;
+        if (this.factory != null) {
+            this.factory.release(this);
+        }
+    }
+
+}
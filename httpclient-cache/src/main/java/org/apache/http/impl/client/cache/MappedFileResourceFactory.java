@@ -0,0 +1,354 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.http.annotation.GuardedBy;
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.client.cache.InputLimit;
+import org.apache.http.client.cache.Resource;
+import org.apache.http.client.cache.ResourceFactory;
+import org.apache.http.util.Args;
+
+/**
+ * Generates {@link MappedFileResource} instances whose bodies are appended
+ * to large segment files and read back through memory mapped buffers.
+ * <p/>
+ * Disposed resources only mark their space in the segment as dead; a segment
+ * file is deleted once none of its content is live any more. Segments that
+ * are mostly dead can be compacted by {@link MappedFileHttpCacheStorage#compact()},
+ * which also persists the location of cached bodies so that they survive
+ * restarts. When used on its own this factory should be given a fresh
+ * directory as segments left behind by earlier runs are never reclaimed.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class MappedFileResourceFactory implements ResourceFactory, Closeable {
+
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    private final File cacheDir;
+    private final long maxSegmentSize;
+
+    @GuardedBy("this")
+    private final Map<Integer, Segment> segments;
+    @GuardedBy("this")
+    private Segment active;
+    @GuardedBy("this")
+    private int nextSegmentId;
+    @GuardedBy("this")
+    private boolean closed;
+
+    /**
+     * Creates a factory storing bodies in segment files of at most
+     * <code>maxSegmentSize</code> bytes in the given directory. Segment files
+     * already present in the directory are re-opened.
+     */
+    public MappedFileResourceFactory(final File cacheDir, final long maxSegmentSize) throws IOException {
+        super();
+        Args.notNull(cacheDir, "Cache directory");
+        Args.positive(maxSegmentSize, "Max segment size");
+        Args.check(maxSegmentSize <= Integer.MAX_VALUE, "Max segment size may not exceed 2 GB");
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            throw new IOException("Unable to create cache directory " + cacheDir);
+        }
+        this.cacheDir = cacheDir;
+        this.maxSegmentSize = maxSegmentSize;
+        this.segments = new TreeMap<Integer, Segment>();
+        final File[] files = cacheDir.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                final int id = parseSegmentId(file.getName());
+                if (id >= 0) {
+                    this.segments.put(Integer.valueOf(id), new Segment(id, file));
+                    this.nextSegmentId = Math.max(this.nextSegmentId, id + 1);
+                }
+            }
+        }
+    }
+
+    public MappedFileResourceFactory(final File cacheDir) throws IOException {
+        this(cacheDir, DEFAULT_SEGMENT_SIZE);
+    }
+
+    File getCacheDir() {
+        return this.cacheDir;
+    }
+
+    private static int parseSegmentId(final String name) {
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(
+                    SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (final NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    public MappedFileResource generate(
+            final String requestId,
+            final InputStream instream,
+            final InputLimit limit) throws IOException {
+        final ByteArrayOutputStream outstream = new ByteArrayOutputStream();
+        final byte[] buf = new byte[2048];
+        long total = 0;
+        int l;
+        while ((l = instream.read(buf)) != -1) {
+            outstream.write(buf, 0, l);
+            total += l;
+            if (limit != null && total > limit.getValue()) {
+                limit.reached();
+                break;
+            }
+        }
+        return append(ByteBuffer.wrap(outstream.toByteArray()));
+    }
+
+    public MappedFileResource copy(
+            final String requestId,
+            final Resource resource) throws IOException {
+        if (resource instanceof MappedFileResource) {
+            return append(((MappedFileResource) resource).getByteBuffer());
+        }
+        final ByteArrayOutputStream outstream = new ByteArrayOutputStream();
+        IOUtils.copyAndClose(resource.getInputStream(), outstream);
+        return append(ByteBuffer.wrap(outstream.toByteArray()));
+    }
+
+    private MappedFileResource append(final ByteBuffer body) throws IOException {
+        final int len = body.remaining();
+        final Segment segment;
+        final long offset;
+        // Only the space allocation is serialized; the content is written
+        // to its reserved region concurrently
+        synchronized (this) {
+            ensureOpen();
+            if (this.active == null
+                    || (this.active.size > 0 && this.active.size + len > this.maxSegmentSize)) {
+                final Segment previous = this.active;
+                final int id = this.nextSegmentId++;
+                this.active = new Segment(id,
+                        new File(this.cacheDir, SEGMENT_PREFIX + id + SEGMENT_SUFFIX));
+                this.segments.put(Integer.valueOf(id), this.active);
+                if (previous != null && previous.liveBytes == 0) {
+                    deleteSegment(previous);
+                }
+            }
+            segment = this.active;
+            offset = segment.size;
+            segment.size += len;
+            segment.liveBytes += len;
+        }
+        try {
+            segment.write(body, offset);
+        } catch (final IOException ex) {
+            synchronized (this) {
+                segment.liveBytes -= len;
+            }
+            throw ex;
+        }
+        return new MappedFileResource(this, segment, offset, len);
+    }
+
+    /**
+     * Re-creates the resource stored at the given location of a segment
+     * left behind by an earlier run, or returns <code>null</code> if the
+     * location is no longer valid.
+     */
+    synchronized MappedFileResource restore(
+            final int segmentId, final long offset, final long length) {
+        final Segment segment = this.segments.get(Integer.valueOf(segmentId));
+        if (segment == null || offset < 0 || length < 0 || offset + length > segment.size) {
+            return null;
+        }
+        segment.liveBytes += length;
+        return new MappedFileResource(this, segment, offset, length);
+    }
+
+    /**
+     * Deletes all inactive segments without live content.
+     */
+    synchronized void purge() {
+        final List<Segment> dead = new ArrayList<Segment>();
+        for (final Segment segment : this.segments.values()) {
+            if (segment != this.active && segment.liveBytes <= 0) {
+                dead.add(segment);
+            }
+        }
+        for (final Segment segment : dead) {
+            deleteSegment(segment);
+        }
+    }
+
+    /**
+     * Determines whether the given resource lives in an inactive segment
+     * whose live content has dropped below half of its size.
+     */
+    synchronized boolean isSparse(final MappedFileResource resource) {
+        final Segment segment = resource.getSegment();
+        return segment != null && segment != this.active
+            && this.segments.get(Integer.valueOf(segment.id)) == segment
+            && segment.liveBytes * 2 < segment.size;
+    }
+
+    synchronized void release(final MappedFileResource resource) {
+        final Segment segment = resource.getSegment();
+        if (segment == null) {
+            return;
+        }
+        segment.liveBytes -= resource.length();
+        if (segment != this.active && segment.liveBytes <= 0) {
+            deleteSegment(segment);
+        }
+    }
+
+    private void deleteSegment(final Segment segment) {
+        if (this.segments.remove(Integer.valueOf(segment.id)) != null) {
+            segment.close();
+            segment.file.delete();
+        }
+    }
+
+    /**
+     * Returns the number of segment files currently in use.
+     */
+    public synchronized int getSegmentCount() {
+        return this.segments.size();
+    }
+
+    private void ensureOpen() {
+        if (this.closed) {
+            throw new IllegalStateException("Resource factory has been closed");
+        }
+    }
+
+    /**
+     * Closes all segment files. Resources generated by this factory
+     * can no longer be read afterwards.
+     */
+    public synchronized void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        for (final Segment segment : this.segments.values()) {
+            segment.close();
+        }
+    }
+
+    static class Segment {
+
+        final int id;
+        final File file;
+
+        /** Number of bytes allocated; guarded by the factory */
+        long size;
+        /** Number of bytes referenced by live resources; guarded by the factory */
+        long liveBytes;
+
+        @GuardedBy("this")
+        private RandomAccessFile raf;
+        @GuardedBy("this")
+        private FileChannel channel;
+        @GuardedBy("this")
+        private MappedByteBuffer mapped;
+        @GuardedBy("this")
+        private boolean closed;
+
+        Segment(final int id, final File file) {
+            super();
+            this.id = id;
+            this.file = file;
+            this.size = file.length();
+        }
+
+        private synchronized FileChannel getChannel() throws IOException {
+            if (this.closed) {
+                throw new IOException("Segment " + this.file + " has been closed");
+            }
+            if (this.channel == null) {
+                this.raf = new RandomAccessFile(this.file, "rw");
+                this.channel = this.raf.getChannel();
+            }
+            return this.channel;
+        }
+
+        void write(final ByteBuffer src, final long offset) throws IOException {
+            final FileChannel ch = getChannel();
+            long pos = offset;
+            while (src.hasRemaining()) {
+                pos += ch.write(src, pos);
+            }
+        }
+
+        /**
+         * Returns a read-only view of the given region. The whole segment
+         * is mapped once and re-mapped only as it grows.
+         */
+        synchronized ByteBuffer slice(final long offset, final long length) throws IOException {
+            final FileChannel ch = getChannel();
+            if (this.mapped == null || offset + length > this.mapped.capacity()) {
+                this.mapped = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            }
+            final ByteBuffer dup = this.mapped.duplicate();
+            dup.limit((int) (offset + length));
+            dup.position((int) offset);
+            return dup.slice();
+        }
+
+        synchronized void close() {
+            this.closed = true;
+            this.mapped = null;
+            if (this.raf != null) {
+                IOUtils.closeSilently(this.raf);
+                this.raf = null;
+                this.channel = null;
+            }
+        }
+
+    }
+
+}
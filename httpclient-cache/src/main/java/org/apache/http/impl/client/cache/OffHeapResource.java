@@ -0,0 +1,215 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectStreamException;
+import java.nio.ByteBuffer;
+
+import org.apache.http.annotation.GuardedBy;
+import org.apache.http.annotation.NotThreadSafe;
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.client.cache.Resource;
+
+/**
+ * Cache resource backed by pages of direct memory handed out by an
+ * {@link OffHeapResourceFactory}. The content of a disposed resource may no
+ * longer be read: streams still open fail with an {@link IOException} on
+ * their next read. The pages are given back to the factory once the resource
+ * has been disposed of and all its streams have been closed, so that they
+ * never get reused while a stream could still read them.
+ * <p/>
+ * Serializing the resource produces a {@link HeapResource} with the same
+ * content.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class OffHeapResource implements Resource {
+
+    private static final long serialVersionUID = 6434813281914128396L;
+
+    private final transient OffHeapResourceFactory factory;
+    private final transient int[] pages;
+    private final long length;
+
+    private transient volatile boolean disposed;
+    @GuardedBy("this")
+    private transient int openStreams;
+
+    OffHeapResource(final OffHeapResourceFactory factory, final int[] pages, final long length) {
+        super();
+        this.factory = factory;
+        this.pages = pages;
+        this.length = length;
+    }
+
+    int[] getPages() {
+        return this.pages;
+    }
+
+    private void ensureNotDisposed() throws IOException {
+        if (this.disposed) {
+            throw new IOException("Resource has been disposed of");
+        }
+    }
+
+    public InputStream getInputStream() throws IOException {
+        synchronized (this) {
+            ensureNotDisposed();
+            this.openStreams++;
+        }
+        return new PageInputStream();
+    }
+
+    public long length() {
+        return this.length;
+    }
+
+    public void dispose() {
+        synchronized (this) {
+            if (this.disposed) {
+                return;
+            }
+            this.disposed = true;
+            if (this.openStreams > 0) {
+                return;
+            }
+        }
+        this.factory.release(this);
+    }
+
+    private void streamClosed() {
+        synchronized (this) {
+            this.openStreams--;
+            if (!this.disposed || this.openStreams > 0) {
+                return;
+            }
+        }
+        this.factory.release(this);
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        final ByteArrayOutputStream outstream = new ByteArrayOutputStream((int) this.length);
+        try {
+            IOUtils.copyAndClose(getInputStream(), outstream);
+        } catch (final IOException ex) {
+            throw new IllegalStateException(ex.getMessage());
+        }
+        return new HeapResource(outstream.toByteArray());
+    }
+
+    @NotThreadSafe
+    class PageInputStream extends InputStream {
+
+        private int index;
+        private long remaining;
+        private ByteBuffer current;
+        private boolean closed;
+
+        PageInputStream() {
+            super();
+            this.remaining = length;
+        }
+
+        private ByteBuffer nextChunk() throws IOException {
+            if (this.closed) {
+                throw new IOException("Stream closed");
+            }
+            ensureNotDisposed();
+            if (this.current != null && this.current.hasRemaining()) {
+                return this.current;
+            }
+            if (this.remaining == 0) {
+                return null;
+            }
+            this.current = factory.getPage(pages[this.index++]);
+            if (this.current.remaining() > this.remaining) {
+                this.current.limit((int) this.remaining);
+            }
+            this.remaining -= this.current.remaining();
+            return this.current;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final ByteBuffer chunk = nextChunk();
+            if (chunk == null) {
+                return -1;
+            }
+            return chunk.get() & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            final ByteBuffer chunk = nextChunk();
+            if (chunk == null) {
+                return -1;
+            }
+            final int n = Math.min(len, chunk.remaining());
+            chunk.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            if (n <= 0) {
+                return 0;
+            }
+            final ByteBuffer chunk = nextChunk();
+            if (chunk == null) {
+                return 0;
+            }
+            final int count = (int) Math.min(n, chunk.remaining());
+            chunk.position(chunk.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            final long total = this.remaining + (this.current != null ? this.current.remaining() : 0);
+            return (int) Math.min(total, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public void close() {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.current = null;
+            streamClosed();
+        }
+
+    }
+
+}
@@ -0,0 +1,306 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.annotation.GuardedBy;
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.client.cache.InputLimit;
+import org.apache.http.client.cache.Resource;
+import org.apache.http.client.cache.ResourceFactory;
+import org.apache.http.util.Args;
+
+/**
+ * Generates {@link Resource} instances whose content is stored outside of
+ * the Java heap, in an arena of direct {@link ByteBuffer}s.
+ * <p/>
+ * The arena consists of slabs reserved on demand up to a fixed byte budget.
+ * Each slab is divided into pages of equal size; a resource occupies as many
+ * pages as its content requires and returns them to the arena as soon as it
+ * gets disposed of. Resources should therefore be disposed of
+ * deterministically, for instance by using this factory in combination with
+ * {@link ManagedHttpCacheStorage}. Once the budget has been exhausted, new
+ * content is kept on the heap instead.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class OffHeapResourceFactory implements ResourceFactory {
+
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+    public static final int DEFAULT_PAGES_PER_SLAB = 256;
+
+    private final int pageSize;
+    private final int pagesPerSlab;
+    private final int maxSlabs;
+
+    @GuardedBy("this")
+    private final List<ByteBuffer> slabs;
+    @GuardedBy("this")
+    private int[] freePages;
+    @GuardedBy("this")
+    private int freeCount;
+    @GuardedBy("this")
+    private long usedBytes;
+    @GuardedBy("this")
+    private long fallbackCount;
+
+    /**
+     * Creates a factory that stores content in pages of <code>pageSize</code>
+     * bytes, reserving direct memory <code>pagesPerSlab</code> pages at a time
+     * and never more than <code>maxSize</code> bytes in total.
+     */
+    public OffHeapResourceFactory(final long maxSize, final int pageSize, final int pagesPerSlab) {
+        super();
+        Args.positive(maxSize, "Max size");
+        Args.positive(pageSize, "Page size");
+        Args.positive(pagesPerSlab, "Pages per slab");
+        final long slabSize = (long) pageSize * pagesPerSlab;
+        Args.check(slabSize <= Integer.MAX_VALUE, "Slab size may not exceed 2GB");
+        this.pageSize = pageSize;
+        this.pagesPerSlab = pagesPerSlab;
+        this.maxSlabs = (int) Math.min(maxSize / slabSize, Integer.MAX_VALUE / pagesPerSlab);
+        this.slabs = new ArrayList<ByteBuffer>();
+        this.freePages = new int[0];
+    }
+
+    public OffHeapResourceFactory(final long maxSize) {
+        this(maxSize, DEFAULT_PAGE_SIZE, DEFAULT_PAGES_PER_SLAB);
+    }
+
+    public Resource generate(
+            final String requestId,
+            final InputStream instream,
+            final InputLimit limit) throws IOException {
+        int[] pages = new int[4];
+        int pageCount = 0;
+        ByteBuffer page = null;
+        final byte[] buf = new byte[2048];
+        long total = 0;
+        int l;
+        try {
+            while ((l = instream.read(buf)) != -1) {
+                int off = 0;
+                while (off < l) {
+                    if (page == null || !page.hasRemaining()) {
+                        final int id = allocatePage();
+                        if (id == -1) {
+                            final byte[] head = readPages(pages, pageCount, total + off);
+                            freePages(pages, pageCount);
+                            pageCount = 0;
+                            return fallback(head, buf, off, l - off, instream, limit);
+                        }
+                        if (pageCount == pages.length) {
+                            final int[] tmp = new int[pages.length * 2];
+                            System.arraycopy(pages, 0, tmp, 0, pageCount);
+                            pages = tmp;
+                        }
+                        pages[pageCount++] = id;
+                        page = getPage(id);
+                    }
+                    final int chunk = Math.min(l - off, page.remaining());
+                    page.put(buf, off, chunk);
+                    off += chunk;
+                }
+                total += l;
+                if (limit != null && total > limit.getValue()) {
+                    limit.reached();
+                    break;
+                }
+            }
+        } catch (final IOException ex) {
+            freePages(pages, pageCount);
+            throw ex;
+        } catch (final RuntimeException ex) {
+            freePages(pages, pageCount);
+            throw ex;
+        }
+        final int[] ids = new int[pageCount];
+        System.arraycopy(pages, 0, ids, 0, pageCount);
+        synchronized (this) {
+            this.usedBytes += total;
+        }
+        return new OffHeapResource(this, ids, total);
+    }
+
+    public Resource copy(
+            final String requestId,
+            final Resource resource) throws IOException {
+        final InputStream instream = resource.getInputStream();
+        try {
+            return generate(requestId, instream, null);
+        } finally {
+            instream.close();
+        }
+    }
+
+    private Resource fallback(
+            final byte[] head,
+            final byte[] buf, final int off, final int len,
+            final InputStream instream,
+            final InputLimit limit) throws IOException {
+        synchronized (this) {
+            this.fallbackCount++;
+        }
+        final ByteArrayOutputStream outstream = new ByteArrayOutputStream();
+        outstream.write(head);
+        outstream.write(buf, off, len);
+        long total = head.length + len;
+        if (limit != null && total > limit.getValue()) {
+            limit.reached();
+            return new HeapResource(outstream.toByteArray());
+        }
+        int l;
+        while ((l = instream.read(buf)) != -1) {
+            outstream.write(buf, 0, l);
+            total += l;
+            if (limit != null && total > limit.getValue()) {
+                limit.reached();
+                break;
+            }
+        }
+        return new HeapResource(outstream.toByteArray());
+    }
+
+    private byte[] readPages(final int[] pages, final int pageCount, final long length) {
+        final byte[] b = new byte[(int) length];
+        int off = 0;
+        for (int i = 0; i < pageCount && off < b.length; i++) {
+            final ByteBuffer page = getPage(pages[i]);
+            final int chunk = Math.min(b.length - off, page.remaining());
+            page.get(b, off, chunk);
+            off += chunk;
+        }
+        return b;
+    }
+
+    int getPageSize() {
+        return this.pageSize;
+    }
+
+    /**
+     * Returns a view of the given page, positioned at its start.
+     */
+    synchronized ByteBuffer getPage(final int id) {
+        final ByteBuffer slab = this.slabs.get(id / this.pagesPerSlab).duplicate();
+        final int offset = (id % this.pagesPerSlab) * this.pageSize;
+        slab.limit(offset + this.pageSize);
+        slab.position(offset);
+        return slab.slice();
+    }
+
+    /**
+     * Takes a page off the free list, reserving a new slab if necessary.
+     * Returns <code>-1</code> if the budget has been exhausted.
+     */
+    private synchronized int allocatePage() {
+        if (this.freeCount == 0) {
+            if (this.slabs.size() >= this.maxSlabs) {
+                return -1;
+            }
+            final int base = this.slabs.size() * this.pagesPerSlab;
+            this.slabs.add(ByteBuffer.allocateDirect(this.pageSize * this.pagesPerSlab));
+            final int[] tmp = new int[base + this.pagesPerSlab];
+            System.arraycopy(this.freePages, 0, tmp, 0, this.freeCount);
+            this.freePages = tmp;
+            for (int i = this.pagesPerSlab - 1; i >= 0; i--) {
+                this.freePages[this.freeCount++] = base + i;
+            }
+        }
+        return this.freePages[--this.freeCount];
+    }
+
+    private synchronized void freePages(final int[] pages, final int pageCount) {
+        for (int i = 0; i < pageCount; i++) {
+            this.freePages[this.freeCount++] = pages[i];
+        }
+    }
+
+    synchronized void release(final OffHeapResource resource) {
+        final int[] pages = resource.getPages();
+        freePages(pages, pages.length);
+        this.usedBytes -= resource.length();
+    }
+
+    /**
+     * Returns the maximum amount of direct memory, in bytes, the arena may
+     * reserve.
+     */
+    public long getMaxSize() {
+        return (long) this.maxSlabs * this.pagesPerSlab * this.pageSize;
+    }
+
+    /**
+     * Returns the amount of direct memory, in bytes, reserved by the arena so
+     * far.
+     */
+    public synchronized long getReservedSize() {
+        return (long) this.slabs.size() * this.pagesPerSlab * this.pageSize;
+    }
+
+    /**
+     * Returns the amount of memory, in bytes, held by the pages currently
+     * allocated to live resources.
+     */
+    public synchronized long getAllocatedSize() {
+        return getReservedSize() - (long) this.freeCount * this.pageSize;
+    }
+
+    /**
+     * Returns the amount of content, in bytes, stored by live resources.
+     */
+    public synchronized long getUsedSize() {
+        return this.usedBytes;
+    }
+
+    /**
+     * Returns the fraction of allocated memory that does not hold content
+     * because it lies past the end of the last page of a resource.
+     */
+    public synchronized double getFragmentation() {
+        final long allocated = getAllocatedSize();
+        if (allocated == 0) {
+            return 0.0d;
+        }
+        return (double) (allocated - this.usedBytes) / allocated;
+    }
+
+    /**
+     * Returns the number of resources that had to be kept on the heap because
+     * the budget had been exhausted.
+     */
+    public synchronized long getFallbackCount() {
+        return this.fallbackCount;
+    }
+
+}
@@ -26,8 +26,6 @@
  */
 package org.apache.http.impl.client.cache;
 
-import java.lang.reflect.Proxy;
-
 import org.apache.http.HttpResponse;
 import org.apache.http.annotation.NotThreadSafe;
 import org.apache.http.client.methods.CloseableHttpResponse;
@@ -46,10 +44,7 @@ class Proxies {
         if (original instanceof CloseableHttpResponse) {
             return (CloseableHttpResponse) original;
         } else {
-            return (CloseableHttpResponse) Proxy.newProxyInstance(
-                    ResponseProxyHandler.class.getClassLoader(),
-                    new Class<?>[] { CloseableHttpResponse.class },
-                    new ResponseProxyHandler(original));
+            return new HttpResponseProxy(original);
         }
     }
 
@@ -0,0 +1,391 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client.cache;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.http.Header;
+import org.apache.http.annotation.GuardedBy;
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.cache.HttpCacheStorage;
+import org.apache.http.client.cache.HttpCacheUpdateCallback;
+import org.apache.http.client.cache.HttpCacheUpdateException;
+import org.apache.http.client.cache.Resource;
+import org.apache.http.util.Args;
+
+/**
+ * In-memory {@link HttpCacheStorage} implementation split into a number of
+ * independently locked segments, bounded by both the number of entries and
+ * the total size of the cached entries in bytes.
+ * <p/>
+ * Each segment admits new entries into a small LRU window. Entries evicted
+ * from the window are only admitted into the main LRU area if they have been
+ * requested more frequently than the entry they would replace, as estimated
+ * by a compact frequency sketch (W-TinyLFU). This prevents a burst of one-off
+ * responses, large ones in particular, from flushing frequently used entries
+ * out of the cache.
+ * <p/>
+ * Like {@link BasicHttpCacheStorage} this cache does NOT deallocate resources
+ * associated with the cache entries; it is intended for use with
+ * {@link HeapResource} and similar.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class ShardedHttpCacheStorage implements HttpCacheStorage {
+
+    public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+
+    /**
+     * Creates a cache bounded by {@link CacheConfig#getMaxCacheSize()} bytes
+     * and {@link CacheConfig#getMaxCacheEntries()} entries.
+     */
+    public ShardedHttpCacheStorage(final CacheConfig config) {
+        this(config.getMaxCacheSize(), config.getMaxCacheEntries(), DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * @param maxCacheSize maximum total size of the cache entries in bytes.
+     *   A value of zero or less disables the size limit.
+     * @param maxCacheEntries maximum number of cache entries.
+     * @param concurrencyLevel expected number of concurrently updating threads.
+     */
+    public ShardedHttpCacheStorage(
+            final long maxCacheSize,
+            final int maxCacheEntries,
+            final int concurrencyLevel) {
+        super();
+        Args.positive(maxCacheEntries, "Max cache entries");
+        Args.positive(concurrencyLevel, "Concurrency level");
+        int n = 1;
+        while (n < concurrencyLevel && n < maxCacheEntries && n < (1 << 16)) {
+            n <<= 1;
+        }
+        final long maxSegmentSize = maxCacheSize > 0 ? (maxCacheSize + n - 1) / n : Long.MAX_VALUE;
+        final int maxSegmentEntries = (maxCacheEntries + n - 1) / n;
+        this.segments = new Segment[n];
+        for (int i = 0; i < n; i++) {
+            this.segments[i] = new Segment(maxSegmentSize, maxSegmentEntries);
+        }
+        this.segmentMask = n - 1;
+    }
+
+    private Segment segmentFor(final String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return this.segments[h & this.segmentMask];
+    }
+
+    /**
+     * Estimates the amount of memory occupied by the given cache entry. This
+     * implementation counts the length of the response body, header names and
+     * values and the cache key.
+     */
+    protected long weigh(final String key, final HttpCacheEntry entry) {
+        long weight = key.length();
+        final Resource resource = entry.getResource();
+        if (resource != null) {
+            weight += resource.length();
+        }
+        for (final Header header : entry.getAllHeaders()) {
+            weight += header.getName().length();
+            final String value = header.getValue();
+            if (value != null) {
+                weight += value.length();
+            }
+        }
+        return weight;
+    }
+
+    public void putEntry(final String key, final HttpCacheEntry entry) throws IOException {
+        Args.notNull(key, "Key");
+        Args.notNull(entry, "Cache entry");
+        segmentFor(key).put(key, entry, weigh(key, entry));
+    }
+
+    public HttpCacheEntry getEntry(final String key) throws IOException {
+        Args.notNull(key, "Key");
+        return segmentFor(key).get(key);
+    }
+
+    public void removeEntry(final String key) throws IOException {
+        Args.notNull(key, "Key");
+        segmentFor(key).remove(key);
+    }
+
+    public void updateEntry(
+            final String key,
+            final HttpCacheUpdateCallback callback) throws IOException, HttpCacheUpdateException {
+        Args.notNull(key, "Key");
+        Args.notNull(callback, "Callback");
+        final Segment segment = segmentFor(key);
+        synchronized (segment) {
+            final HttpCacheEntry existing = segment.peek(key);
+            final HttpCacheEntry updated = callback.update(existing);
+            if (updated != null) {
+                segment.put(key, updated, weigh(key, updated));
+            } else {
+                segment.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of entries currently held by the cache.
+     */
+    public int getEntryCount() {
+        int count = 0;
+        for (final Segment segment : this.segments) {
+            synchronized (segment) {
+                count += segment.window.size() + segment.main.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the estimated total size of the entries currently held by the
+     * cache in bytes.
+     *
+     * @see #weigh(String, HttpCacheEntry)
+     */
+    public long getCacheSize() {
+        long size = 0;
+        for (final Segment segment : this.segments) {
+            synchronized (segment) {
+                size += segment.windowSize + segment.mainSize;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of lookups that found a cache entry.
+     */
+    public long getHitCount() {
+        long count = 0;
+        for (final Segment segment : this.segments) {
+            synchronized (segment) {
+                count += segment.hitCount;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of lookups that did not find a cache entry.
+     */
+    public long getMissCount() {
+        long count = 0;
+        for (final Segment segment : this.segments) {
+            synchronized (segment) {
+                count += segment.missCount;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of entries evicted from the cache or denied
+     * admission due to the size constraints.
+     */
+    public long getEvictionCount() {
+        long count = 0;
+        for (final Segment segment : this.segments) {
+            synchronized (segment) {
+                count += segment.evictionCount;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[entries: ").append(getEntryCount());
+        buffer.append("; size: ").append(getCacheSize());
+        buffer.append("; hits: ").append(getHitCount());
+        buffer.append("; misses: ").append(getMissCount());
+        buffer.append("; evictions: ").append(getEvictionCount());
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+    static class Node {
+
+        final HttpCacheEntry entry;
+        final long weight;
+
+        Node(final HttpCacheEntry entry, final long weight) {
+            this.entry = entry;
+            this.weight = weight;
+        }
+
+    }
+
+    static class Segment {
+
+        private final long maxSize;
+        private final int maxEntries;
+        private final long maxWindowSize;
+        private final int maxWindowEntries;
+        private final long maxMainSize;
+        private final int maxMainEntries;
+        @GuardedBy("this")
+        private final LinkedHashMap<String, Node> window;
+        @GuardedBy("this")
+        private final LinkedHashMap<String, Node> main;
+        @GuardedBy("this")
+        private final FrequencySketch sketch;
+
+        @GuardedBy("this")
+        private long windowSize;
+        @GuardedBy("this")
+        private long mainSize;
+        @GuardedBy("this")
+        private long hitCount;
+        @GuardedBy("this")
+        private long missCount;
+        @GuardedBy("this")
+        private long evictionCount;
+
+        Segment(final long maxSize, final int maxEntries) {
+            super();
+            this.maxSize = maxSize;
+            this.maxEntries = maxEntries;
+            // The admission window takes 1% of the capacity
+            this.maxWindowSize = maxSize == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(1, maxSize / 100);
+            this.maxWindowEntries = Math.max(1, maxEntries / 100);
+            this.maxMainSize = maxSize == Long.MAX_VALUE ? Long.MAX_VALUE : maxSize - this.maxWindowSize;
+            this.maxMainEntries = Math.max(1, maxEntries - this.maxWindowEntries);
+            this.window = new LinkedHashMap<String, Node>(16, 0.75f, true);
+            this.main = new LinkedHashMap<String, Node>(16, 0.75f, true);
+            this.sketch = new FrequencySketch(maxEntries);
+        }
+
+        synchronized HttpCacheEntry get(final String key) {
+            this.sketch.increment(key);
+            final HttpCacheEntry entry = peek(key);
+            if (entry != null) {
+                this.hitCount++;
+            } else {
+                this.missCount++;
+            }
+            return entry;
+        }
+
+        synchronized HttpCacheEntry peek(final String key) {
+            Node node = this.window.get(key);
+            if (node == null) {
+                node = this.main.get(key);
+            }
+            return node != null ? node.entry : null;
+        }
+
+        synchronized void put(final String key, final HttpCacheEntry entry, final long weight) {
+            this.sketch.increment(key);
+            if (weight > this.maxSize) {
+                remove(key);
+                this.evictionCount++;
+                return;
+            }
+            final Node node = new Node(entry, weight);
+            Node old = this.main.get(key);
+            if (old != null) {
+                this.main.put(key, node);
+                this.mainSize += weight - old.weight;
+                // Replaced entry may have grown beyond the capacity
+                while (this.main.size() > 0
+                        && (this.mainSize > this.maxMainSize || this.main.size() > this.maxMainEntries)) {
+                    evictEldest();
+                }
+                return;
+            }
+            old = this.window.put(key, node);
+            this.windowSize += old != null ? weight - old.weight : weight;
+            while (this.windowSize > this.maxWindowSize || this.window.size() > this.maxWindowEntries) {
+                final Iterator<Map.Entry<String, Node>> it = this.window.entrySet().iterator();
+                final Map.Entry<String, Node> eldest = it.next();
+                it.remove();
+                this.windowSize -= eldest.getValue().weight;
+                admit(eldest.getKey(), eldest.getValue());
+            }
+        }
+
+        /**
+         * Moves an entry evicted from the admission window into the main area
+         * if it is used more frequently than the entries it would displace.
+         */
+        private void admit(final String key, final Node candidate) {
+            if (candidate.weight > this.maxMainSize) {
+                this.evictionCount++;
+                return;
+            }
+            while (this.mainSize + candidate.weight > this.maxMainSize
+                    || this.main.size() >= this.maxMainEntries) {
+                final String victim = this.main.keySet().iterator().next();
+                if (this.sketch.frequency(key) > this.sketch.frequency(victim)) {
+                    evictEldest();
+                } else {
+                    this.evictionCount++;
+                    return;
+                }
+            }
+            this.main.put(key, candidate);
+            this.mainSize += candidate.weight;
+        }
+
+        private void evictEldest() {
+            final Iterator<Node> it = this.main.values().iterator();
+            final Node eldest = it.next();
+            it.remove();
+            this.mainSize -= eldest.weight;
+            this.evictionCount++;
+        }
+
+        synchronized void remove(final String key) {
+            Node node = this.window.remove(key);
+            if (node != null) {
+                this.windowSize -= node.weight;
+            }
+            node = this.main.remove(key);
+            if (node != null) {
+                this.mainSize -= node.weight;
+            }
+        }
+
+    }
+
+}
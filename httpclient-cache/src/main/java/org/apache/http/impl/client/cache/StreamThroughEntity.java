@@ -0,0 +1,231 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.annotation.NotThreadSafe;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.util.Args;
+
+/**
+ * Entity passing the content of the original entity to the caller while
+ * retaining a copy of it, up to a given limit. The copy is handed to a
+ * {@link Callback} once the content has been read completely; it is
+ * discarded if the content is closed early, skipped, fails to be read
+ * or exceeds the limit. An optional listener is notified once either has
+ * happened.
+ *
+ * @since 4.3
+ */
+@NotThreadSafe
+class StreamThroughEntity extends HttpEntityWrapper {
+
+    interface Callback {
+
+        void completed(byte[] content, int len);
+
+    }
+
+    private final long maxLength;
+    private final Callback callback;
+
+    private TeeInputStream content;
+    private Runnable finishListener;
+    private boolean finished;
+
+    StreamThroughEntity(final HttpEntity original, final long maxLength, final Callback callback) {
+        super(original);
+        this.maxLength = maxLength;
+        this.callback = callback;
+    }
+
+    /**
+     * Sets the listener to notify once the content has been handed to the
+     * callback or discarded. The listener is notified right away if that has
+     * already happened.
+     */
+    void setFinishListener(final Runnable listener) {
+        if (this.finished) {
+            listener.run();
+        } else {
+            this.finishListener = listener;
+        }
+    }
+
+    private void finish() {
+        if (this.finished) {
+            return;
+        }
+        this.finished = true;
+        final Runnable listener = this.finishListener;
+        this.finishListener = null;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return false;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return true;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        if (this.content == null) {
+            this.content = new TeeInputStream(super.getContent());
+        }
+        return this.content;
+    }
+
+    @Override
+    public void writeTo(final OutputStream outstream) throws IOException {
+        Args.notNull(outstream, "Output stream");
+        InputStream instream = getContent();
+        try {
+            int l;
+            byte[] tmp = new byte[2048];
+            while ((l = instream.read(tmp)) != -1) {
+                outstream.write(tmp, 0, l);
+            }
+        } finally {
+            instream.close();
+        }
+    }
+
+    @Override
+    public void consumeContent() throws IOException {
+        if (this.content != null) {
+            this.content.close();
+        } else {
+            try {
+                super.consumeContent();
+            } finally {
+                finish();
+            }
+        }
+    }
+
+    static class Buffer extends ByteArrayOutputStream {
+
+        byte[] getBuffer() {
+            return this.buf;
+        }
+
+    }
+
+    class TeeInputStream extends FilterInputStream {
+
+        private final byte[] single;
+        private Buffer buffer;
+
+        TeeInputStream(final InputStream in) {
+            super(in);
+            this.single = new byte[1];
+            this.buffer = new Buffer();
+        }
+
+        private void append(final byte[] b, final int off, final int len) {
+            if (this.buffer != null) {
+                if (this.buffer.size() + len > maxLength) {
+                    discard();
+                } else {
+                    this.buffer.write(b, off, len);
+                }
+            }
+        }
+
+        private void discard() {
+            this.buffer = null;
+            finish();
+        }
+
+        private void complete() {
+            final Buffer completed = this.buffer;
+            this.buffer = null;
+            try {
+                if (completed != null) {
+                    callback.completed(completed.getBuffer(), completed.size());
+                }
+            } finally {
+                finish();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int l = read(this.single, 0, 1);
+            return l == -1 ? -1 : this.single[0] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int l;
+            try {
+                l = this.in.read(b, off, len);
+            } catch (final IOException ex) {
+                discard();
+                throw ex;
+            }
+            if (l == -1) {
+                complete();
+            } else {
+                append(b, off, l);
+            }
+            return l;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            discard();
+            return this.in.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            discard();
+            this.in.close();
+        }
+
+    }
+
+}
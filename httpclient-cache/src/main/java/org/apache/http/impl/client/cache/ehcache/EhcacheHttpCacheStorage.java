@@ -53,6 +53,11 @@ import org.apache.http.impl.client.cache.DefaultHttpCacheEntrySerializer;
  * {@link CacheConfig#setMaxCacheEntries(int) maximum cache entries}
  * specified by a provided {@link CacheConfig}.</p>
  *
+ * <p>This storage relies on the thread safety of the Ehcache itself and
+ * does not serialize access. Updates are applied optimistically and
+ * retried up to {@link CacheConfig#getMaxUpdateRetries() maximum update
+ * retries} times if the entry was modified concurrently.</p>
+ *
  * <p>Please refer to the <a href="http://ehcache.org/documentation/index.html">
  * Ehcache documentation</a> for details on how to configure the Ehcache
  * itself.</p>
@@ -101,13 +106,11 @@ public class EhcacheHttpCacheStorage implements HttpCacheStorage {
         this.serializer = serializer;
     }
 
-    public synchronized void putEntry(String key, HttpCacheEntry entry) throws IOException {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        serializer.writeTo(entry, bos);
-        cache.put(new Element(key, bos.toByteArray()));
+    public void putEntry(String key, HttpCacheEntry entry) throws IOException {
+        cache.put(new Element(key, serializeEntry(entry)));
     }
 
-    public synchronized HttpCacheEntry getEntry(String key) throws IOException {
+    public HttpCacheEntry getEntry(String key) throws IOException {
         Element e = cache.get(key);
         if(e == null){
             return null;
@@ -117,11 +120,11 @@ public class EhcacheHttpCacheStorage implements HttpCacheStorage {
         return serializer.readFrom(new ByteArrayInputStream(data));
     }
 
-    public synchronized void removeEntry(String key) {
+    public void removeEntry(String key) {
         cache.remove(key);
     }
 
-    public synchronized void updateEntry(String key, HttpCacheUpdateCallback callback)
+    public void updateEntry(String key, HttpCacheUpdateCallback callback)
             throws IOException, HttpCacheUpdateException {
         int numRetries = 0;
         do{
@@ -134,24 +137,26 @@ public class EhcacheHttpCacheStorage implements HttpCacheStorage {
             }
 
             HttpCacheEntry updatedEntry = callback.update(existingEntry);
+            Element newElement = new Element(key, serializeEntry(updatedEntry));
 
-            if (existingEntry == null) {
-                putEntry(key, updatedEntry);
-                return;
-            } else {
-                // Attempt to do a CAS replace, if we fail then retry
-                // While this operation should work fine within this instance, multiple instances
-                //  could trample each others' data
-                ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                serializer.writeTo(updatedEntry, bos);
-                Element newElement = new Element(key, bos.toByteArray());
-                if (cache.replace(oldElement, newElement)) {
+            // Attempt to do a CAS insert or replace, if we fail then retry.
+            // Ehcache compares array values by reference, so the element
+            // read above must be handed back unchanged
+            if (oldElement == null) {
+                if (cache.putIfAbsent(newElement) == null) {
                     return;
-                }else{
-                    numRetries++;
                 }
+            } else if (cache.replace(oldElement, newElement)) {
+                return;
             }
+            numRetries++;
         }while(numRetries <= maxUpdateRetries);
         throw new HttpCacheUpdateException("Failed to update");
     }
+
+    private byte[] serializeEntry(HttpCacheEntry entry) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        serializer.writeTo(entry, bos);
+        return bos.toByteArray();
+    }
 }
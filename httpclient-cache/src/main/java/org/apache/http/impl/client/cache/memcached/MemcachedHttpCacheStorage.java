@@ -28,6 +28,10 @@ package org.apache.http.impl.client.cache.memcached;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
 
 import net.spy.memcached.CASResponse;
 import net.spy.memcached.CASValue;
@@ -37,11 +41,12 @@ import net.spy.memcached.OperationTimeoutException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.http.client.cache.BulkHttpCacheStorage;
 import org.apache.http.client.cache.HttpCacheEntry;
 import org.apache.http.client.cache.HttpCacheEntrySerializer;
-import org.apache.http.client.cache.HttpCacheStorage;
 import org.apache.http.client.cache.HttpCacheUpdateCallback;
 import org.apache.http.client.cache.HttpCacheUpdateException;
+import org.apache.http.concurrent.BasicFuture;
 import org.apache.http.impl.client.cache.CacheConfig;
 
 /**
@@ -81,9 +86,14 @@ import org.apache.http.impl.client.cache.CacheConfig;
  * documentation</a> for details about how to set up and configure memcached
  * and the Java client used here, respectively.</p>
  *
+ * <p>This storage implements {@link BulkHttpCacheStorage}, so the entries of
+ * all variants of a resource are fetched with a single multi-get, and
+ * variant entries are stored without waiting for the <i>memcached</i>
+ * reply.</p>
+ *
  * @since 4.1
  */
-public class MemcachedHttpCacheStorage implements HttpCacheStorage {
+public class MemcachedHttpCacheStorage implements BulkHttpCacheStorage {
 
     private static final Log log = LogFactory.getLog(MemcachedHttpCacheStorage.class);
 
@@ -169,6 +179,21 @@ public class MemcachedHttpCacheStorage implements HttpCacheStorage {
         }
     }
 
+    public Future<Boolean> putEntryAsync(String url, HttpCacheEntry entry) throws IOException {
+        byte[] bytes = serializeEntry(url, entry);
+        String key = getCacheKey(url);
+        if (key == null) {
+            BasicFuture<Boolean> future = new BasicFuture<Boolean>(null);
+            future.completed(Boolean.FALSE);
+            return future;
+        }
+        try {
+            return client.set(key, 0, bytes);
+        } catch (OperationTimeoutException ex) {
+            throw new MemcachedOperationTimeoutException(ex);
+        }
+    }
+
     private String getCacheKey(String url) {
         try {
             return keyHashingScheme.hash(url);
@@ -221,6 +246,33 @@ public class MemcachedHttpCacheStorage implements HttpCacheStorage {
         }
     }
 
+    public Map<String, HttpCacheEntry> getEntries(Collection<String> urls) throws IOException {
+        Map<String, String> urlsByKey = new HashMap<String, String>(urls.size() * 2);
+        for (String url : urls) {
+            String key = getCacheKey(url);
+            if (key != null) {
+                urlsByKey.put(key, url);
+            }
+        }
+        Map<String, HttpCacheEntry> entries = new HashMap<String, HttpCacheEntry>(urlsByKey.size() * 2);
+        if (urlsByKey.isEmpty()) {
+            return entries;
+        }
+        try {
+            Map<String, Object> values = client.getBulk(urlsByKey.keySet());
+            for (Map.Entry<String, Object> value : values.entrySet()) {
+                String url = urlsByKey.get(value.getKey());
+                MemcachedCacheEntry mce = reconstituteEntry(value.getValue());
+                if (url != null && mce != null && url.equals(mce.getStorageKey())) {
+                    entries.put(url, mce.getHttpCacheEntry());
+                }
+            }
+        } catch (OperationTimeoutException ex) {
+            throw new MemcachedOperationTimeoutException(ex);
+        }
+        return entries;
+    }
+
     public void removeEntry(String url) throws IOException {
         String key = getCacheKey(url);
         if (key == null) return;
@@ -0,0 +1,122 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client.cache.memcached;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.cache.HttpCacheEntrySerializer;
+import org.apache.http.impl.client.cache.BinaryHttpCacheEntrySerializer;
+import org.apache.http.util.Args;
+
+/**
+ * {@link MemcachedCacheEntryFactory} implementation that stores the storage
+ * key followed by the {@link HttpCacheEntry} written by the given
+ * {@link HttpCacheEntrySerializer}. By default entries are written using
+ * the compact {@link BinaryHttpCacheEntrySerializer} format.
+ *
+ * @since 4.3
+ */
+public class SerializingMemcachedCacheEntryFactory implements MemcachedCacheEntryFactory {
+
+    private final HttpCacheEntrySerializer serializer;
+
+    public SerializingMemcachedCacheEntryFactory(final HttpCacheEntrySerializer serializer) {
+        super();
+        this.serializer = Args.notNull(serializer, "Serializer");
+    }
+
+    public SerializingMemcachedCacheEntryFactory() {
+        this(new BinaryHttpCacheEntrySerializer());
+    }
+
+    public MemcachedCacheEntry getMemcachedCacheEntry(final String key, final HttpCacheEntry entry) {
+        return new SerializingMemcachedCacheEntry(this.serializer, key, entry);
+    }
+
+    public MemcachedCacheEntry getUnsetCacheEntry() {
+        return new SerializingMemcachedCacheEntry(this.serializer, null, null);
+    }
+
+    static class SerializingMemcachedCacheEntry implements MemcachedCacheEntry {
+
+        private final HttpCacheEntrySerializer serializer;
+
+        private String key;
+        private HttpCacheEntry httpCacheEntry;
+
+        SerializingMemcachedCacheEntry(
+                final HttpCacheEntrySerializer serializer,
+                final String key,
+                final HttpCacheEntry httpCacheEntry) {
+            this.serializer = serializer;
+            this.key = key;
+            this.httpCacheEntry = httpCacheEntry;
+        }
+
+        public synchronized byte[] toByteArray() {
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try {
+                final DataOutputStream out = new DataOutputStream(bos);
+                out.writeUTF(this.key);
+                out.flush();
+                this.serializer.writeTo(this.httpCacheEntry, bos);
+            } catch (IOException ex) {
+                throw new MemcachedSerializationException(ex);
+            }
+            return bos.toByteArray();
+        }
+
+        public synchronized String getStorageKey() {
+            return this.key;
+        }
+
+        public synchronized HttpCacheEntry getHttpCacheEntry() {
+            return this.httpCacheEntry;
+        }
+
+        public synchronized void set(final byte[] bytes) {
+            final ByteArrayInputStream bis = new ByteArrayInputStream(bytes);
+            final String s;
+            final HttpCacheEntry entry;
+            try {
+                s = new DataInputStream(bis).readUTF();
+                entry = this.serializer.readFrom(bis);
+            } catch (IOException ex) {
+                throw new MemcachedSerializationException(ex);
+            }
+            this.key = s;
+            this.httpCacheEntry = entry;
+        }
+
+    }
+
+}
@@ -26,8 +26,10 @@
  */
 package org.apache.http.impl.client.cache;
 
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import junit.framework.Assert;
@@ -195,6 +197,186 @@ public class TestAsynchronousValidator {
         }
     }
 
+    @Test
+    public void testFailingRevalidationIsBackedOff() {
+        final long[] now = new long[] { 0 };
+        impl = new AsynchronousValidator(mockClient, mockExecutor) {
+            @Override
+            long currentTimeMillis() {
+                return now[0];
+            }
+        };
+
+        EasyMock.expect(mockCacheEntry.hasVariants()).andReturn(false).anyTimes();
+        Capture<AsynchronousValidationRequest> cap = new Capture<AsynchronousValidationRequest>();
+        mockExecutor.execute(EasyMock.capture(cap));
+        EasyMock.expectLastCall().times(2);
+
+        replayMocks();
+        impl.revalidateCacheEntry(route, request, context, mockExecAware, mockCacheEntry);
+        final String identifier = cap.getValue().getIdentifier();
+        impl.jobFailed(identifier);
+        impl.markComplete(identifier);
+
+        now[0] = AsynchronousValidator.INITIAL_BACKOFF_MILLIS - 1;
+        impl.revalidateCacheEntry(route, request, context, mockExecAware, mockCacheEntry);
+        Assert.assertEquals(0, impl.getScheduledIdentifiers().size());
+
+        now[0] = AsynchronousValidator.INITIAL_BACKOFF_MILLIS;
+        impl.revalidateCacheEntry(route, request, context, mockExecAware, mockCacheEntry);
+        verifyMocks();
+
+        Assert.assertEquals(1, impl.getScheduledIdentifiers().size());
+        Assert.assertEquals(2, impl.getScheduledCount());
+        Assert.assertEquals(1, impl.getRejectedCount());
+        Assert.assertEquals(1, impl.getFailedCount());
+    }
+
+    @Test
+    public void testBackoffDoublesAndIsClearedOnSuccess() {
+        final long[] now = new long[] { 0 };
+        impl = new AsynchronousValidator(mockClient, mockExecutor) {
+            @Override
+            long currentTimeMillis() {
+                return now[0];
+            }
+        };
+
+        EasyMock.expect(mockCacheEntry.hasVariants()).andReturn(false).anyTimes();
+        mockExecutor.execute(EasyMock.isA(AsynchronousValidationRequest.class));
+        EasyMock.expectLastCall().times(2);
+
+        replayMocks();
+        final String identifier = "http://foo.example.com:80/";
+
+        impl.jobFailed(identifier);
+        impl.jobFailed(identifier);
+        now[0] = 2 * AsynchronousValidator.INITIAL_BACKOFF_MILLIS - 1;
+        impl.revalidateCacheEntry(route, request, context, mockExecAware, mockCacheEntry);
+        Assert.assertEquals(0, impl.getScheduledIdentifiers().size());
+
+        now[0] = 2 * AsynchronousValidator.INITIAL_BACKOFF_MILLIS;
+        impl.revalidateCacheEntry(route, request, context, mockExecAware, mockCacheEntry);
+        Assert.assertEquals(1, impl.getScheduledIdentifiers().size());
+
+        impl.jobSuccessful(identifier);
+        impl.markComplete(identifier);
+        impl.revalidateCacheEntry(route, request, context, mockExecAware, mockCacheEntry);
+        verifyMocks();
+
+        Assert.assertEquals(2, impl.getScheduledCount());
+        Assert.assertEquals(1, impl.getRejectedCount());
+    }
+
+    @Test
+    public void testRevalidationsAreRejectedWhenSaturated() {
+        impl = new AsynchronousValidator(mockClient, mockExecutor, 1);
+
+        final HttpRequestWrapper otherRequest = HttpRequestWrapper.wrap(new HttpGet("/other"));
+        EasyMock.expect(mockCacheEntry.hasVariants()).andReturn(false).anyTimes();
+        mockExecutor.execute(EasyMock.isA(AsynchronousValidationRequest.class));
+
+        replayMocks();
+        impl.revalidateCacheEntry(route, request, context, mockExecAware, mockCacheEntry);
+        impl.revalidateCacheEntry(route, request, context, mockExecAware, mockCacheEntry);
+        impl.revalidateCacheEntry(route, otherRequest, context, mockExecAware, mockCacheEntry);
+        verifyMocks();
+
+        Assert.assertEquals(1, impl.getScheduledIdentifiers().size());
+        Assert.assertEquals(1, impl.getScheduledCount());
+        Assert.assertEquals(1, impl.getDeduplicatedCount());
+        Assert.assertEquals(1, impl.getRejectedCount());
+    }
+
+    @Test
+    public void testPopularEntriesAreRevalidatedFirst() {
+        impl = new AsynchronousValidator(mockClient, mockExecutor);
+
+        final HttpRequestWrapper otherRequest = HttpRequestWrapper.wrap(new HttpGet("/other"));
+        EasyMock.expect(mockCacheEntry.hasVariants()).andReturn(false).anyTimes();
+        Capture<AsynchronousValidationRequest> cap1 = new Capture<AsynchronousValidationRequest>();
+        Capture<AsynchronousValidationRequest> cap2 = new Capture<AsynchronousValidationRequest>();
+        Capture<AsynchronousValidationRequest> cap3 = new Capture<AsynchronousValidationRequest>();
+        mockExecutor.execute(EasyMock.capture(cap1));
+        mockExecutor.execute(EasyMock.capture(cap2));
+        mockExecutor.execute(EasyMock.capture(cap3));
+
+        replayMocks();
+        impl.revalidateCacheEntry(route, otherRequest, context, mockExecAware, mockCacheEntry);
+        impl.revalidateCacheEntry(route, request, context, mockExecAware, mockCacheEntry);
+        impl.revalidateCacheEntry(route, request, context, mockExecAware, mockCacheEntry);
+        impl.revalidateCacheEntry(route, request, context, mockExecAware, mockCacheEntry);
+        impl.markComplete(cap2.getValue().getIdentifier());
+        impl.revalidateCacheEntry(route, request, context, mockExecAware, mockCacheEntry);
+        verifyMocks();
+
+        final AsynchronousValidator.PriorityComparator comparator =
+            new AsynchronousValidator.PriorityComparator();
+        Assert.assertEquals(0, comparator.compare(cap1.getValue(), cap2.getValue()));
+        Assert.assertTrue(comparator.compare(cap3.getValue(), cap1.getValue()) < 0);
+    }
+
+    @Test
+    public void testTrackedFailuresAreBounded() {
+        final long[] now = new long[] { 0 };
+        impl = new AsynchronousValidator(mockClient, mockExecutor) {
+            @Override
+            long currentTimeMillis() {
+                return now[0];
+            }
+        };
+        for (int i = 0; i < AsynchronousValidator.MAX_TRACKED_FAILURES + 10; i++) {
+            impl.jobFailed("http://foo.example.com/" + i);
+        }
+        Assert.assertEquals(AsynchronousValidator.MAX_TRACKED_FAILURES, impl.getTrackedFailureCount());
+
+        now[0] = AsynchronousValidator.INITIAL_BACKOFF_MILLIS;
+        impl.jobFailed("http://bar.example.com/");
+        Assert.assertEquals(1, impl.getTrackedFailureCount());
+    }
+
+    @Test
+    public void testWorkerPoolGrowsFromCoreToMaxSize() throws Exception {
+        final CacheConfig config = CacheConfig.custom()
+            .setAsynchronousWorkersCore(1)
+            .setAsynchronousWorkersMax(3)
+            .setAsynchronousWorkerIdleLifetimeSecs(1)
+            .build();
+        impl = new AsynchronousValidator(mockClient, config);
+        final ThreadPoolExecutor executor = (ThreadPoolExecutor) impl.getExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+        final Runnable task = new Runnable() {
+
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+        };
+        try {
+            for (int i = 0; i < 3; i++) {
+                executor.execute(task);
+            }
+            Assert.assertEquals(3, executor.getPoolSize());
+            executor.execute(task);
+            Assert.assertEquals(3, executor.getPoolSize());
+            Assert.assertEquals(1, executor.getQueue().size());
+            release.countDown();
+
+            // workers beyond the core size are reclaimed once idle
+            for (int i = 0; i < 50 && executor.getPoolSize() > 1; i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertEquals(1, executor.getPoolSize());
+            Assert.assertEquals(4, executor.getCompletedTaskCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     public void replayMocks() {
         EasyMock.replay(mockExecutor);
         EasyMock.replay(mockClient);
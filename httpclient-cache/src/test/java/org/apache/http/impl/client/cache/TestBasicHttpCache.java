@@ -34,10 +34,14 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
@@ -46,10 +50,12 @@ import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.HttpVersion;
+import org.apache.http.client.cache.BulkHttpCacheStorage;
 import org.apache.http.client.cache.HttpCacheEntry;
 import org.apache.http.client.cache.Resource;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.BasicFuture;
 import org.apache.http.entity.BasicHttpEntity;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.impl.cookie.DateUtils;
@@ -383,6 +389,227 @@ public class TestBasicHttpCache {
 
     }
 
+    static class SimpleBulkHttpCacheStorage extends SimpleHttpCacheStorage
+        implements BulkHttpCacheStorage {
+
+        int getEntryCalls;
+        int getEntriesCalls;
+        int putEntryAsyncCalls;
+        Boolean putResult = Boolean.TRUE;
+        Exception putFailure;
+        Future<Boolean> putFuture;
+
+        @Override
+        public HttpCacheEntry getEntry(String key) throws IOException {
+            getEntryCalls++;
+            return super.getEntry(key);
+        }
+
+        public Map<String, HttpCacheEntry> getEntries(Collection<String> keys) {
+            getEntriesCalls++;
+            Map<String, HttpCacheEntry> entries = new HashMap<String, HttpCacheEntry>();
+            for (String key : keys) {
+                if (map.containsKey(key)) {
+                    entries.put(key, map.get(key));
+                }
+            }
+            return entries;
+        }
+
+        public Future<Boolean> putEntryAsync(String key, HttpCacheEntry entry) {
+            putEntryAsyncCalls++;
+            if (putFuture != null) {
+                return putFuture;
+            }
+            BasicFuture<Boolean> future = new BasicFuture<Boolean>(null);
+            if (putFailure != null) {
+                future.failed(putFailure);
+            } else {
+                if (putResult.booleanValue()) {
+                    map.put(key, entry);
+                }
+                future.completed(putResult);
+            }
+            return future;
+        }
+
+    }
+
+    @Test
+    public void testGetVariantCacheEntriesUsesBulkRetrievalIfSupported() throws Exception {
+        SimpleBulkHttpCacheStorage bulkStorage = new SimpleBulkHttpCacheStorage();
+        impl = new BasicHttpCache(new HeapResourceFactory(), bulkStorage, CacheConfig.DEFAULT);
+        HttpHost host = new HttpHost("foo.example.com");
+
+        for (String encoding : new String[] { "gzip", "identity", "deflate" }) {
+            HttpRequest req = new HttpGet("http://foo.example.com/bar");
+            req.setHeader("Accept-Encoding", encoding);
+            HttpResponse resp = HttpTestUtils.make200Response();
+            resp.setHeader("Date", DateUtils.formatDate(new Date()));
+            resp.setHeader("Cache-Control", "max-age=3600, public");
+            resp.setHeader("ETag", "\"" + encoding + "\"");
+            resp.setHeader("Vary", "Accept-Encoding");
+            impl.cacheAndReturnResponse(host, req, resp, new Date(), new Date());
+        }
+        assertEquals(3, bulkStorage.putEntryAsyncCalls);
+
+        bulkStorage.getEntryCalls = 0;
+        HttpRequest req = new HttpGet("http://foo.example.com/bar");
+        Map<String,Variant> variants = impl.getVariantCacheEntriesWithEtags(host, req);
+
+        assertEquals(3, variants.size());
+        assertEquals(1, bulkStorage.getEntryCalls);
+        assertEquals(1, bulkStorage.getEntriesCalls);
+    }
+
+    private HttpResponse makeVariantResponse() {
+        HttpResponse resp = HttpTestUtils.make200Response();
+        resp.setHeader("Date", DateUtils.formatDate(new Date()));
+        resp.setHeader("Cache-Control", "max-age=3600, public");
+        resp.setHeader("ETag", "\"etag\"");
+        resp.setHeader("Vary", "Accept-Encoding");
+        return resp;
+    }
+
+    private void assertNoVariantReferenced(
+            final SimpleBulkHttpCacheStorage bulkStorage,
+            final HttpHost host,
+            final HttpRequest req) throws Exception {
+        impl.cacheAndReturnResponse(host, req, makeVariantResponse(), new Date(), new Date());
+
+        assertEquals(1, bulkStorage.putEntryAsyncCalls);
+        for (HttpCacheEntry entry : bulkStorage.map.values()) {
+            assertNull(entry);
+        }
+        assertNull(impl.getCacheEntry(host, req));
+    }
+
+    @Test
+    public void testParentIsRevertedIfVariantIsNotStored() throws Exception {
+        SimpleBulkHttpCacheStorage bulkStorage = new SimpleBulkHttpCacheStorage();
+        bulkStorage.putResult = Boolean.FALSE;
+        impl = new BasicHttpCache(new HeapResourceFactory(), bulkStorage, CacheConfig.DEFAULT);
+        HttpRequest req = new HttpGet("http://foo.example.com/bar");
+        req.setHeader("Accept-Encoding", "gzip");
+
+        assertNoVariantReferenced(bulkStorage, new HttpHost("foo.example.com"), req);
+    }
+
+    @Test
+    public void testParentIsRevertedIfVariantWriteFails() throws Exception {
+        SimpleBulkHttpCacheStorage bulkStorage = new SimpleBulkHttpCacheStorage();
+        bulkStorage.putFailure = new IOException("Server unavailable");
+        impl = new BasicHttpCache(new HeapResourceFactory(), bulkStorage, CacheConfig.DEFAULT);
+        HttpRequest req = new HttpGet("http://foo.example.com/bar");
+        req.setHeader("Accept-Encoding", "gzip");
+
+        assertNoVariantReferenced(bulkStorage, new HttpHost("foo.example.com"), req);
+    }
+
+    @Test
+    public void testParentIsRevertedIfVariantWriteTimesOut() throws Exception {
+        SimpleBulkHttpCacheStorage bulkStorage = new SimpleBulkHttpCacheStorage();
+        bulkStorage.putFuture = new BasicFuture<Boolean>(null);
+        impl = new BasicHttpCache(new HeapResourceFactory(), bulkStorage,
+                CacheConfig.custom().setAsynchronousWriteTimeoutMillis(50).build());
+        HttpRequest req = new HttpGet("http://foo.example.com/bar");
+        req.setHeader("Accept-Encoding", "gzip");
+
+        assertNoVariantReferenced(bulkStorage, new HttpHost("foo.example.com"), req);
+    }
+
+    @Test
+    public void testParentIsRevertedIfVariantWriteThrowsRuntimeException() throws Exception {
+        SimpleBulkHttpCacheStorage bulkStorage = new SimpleBulkHttpCacheStorage();
+        bulkStorage.putFuture = new BasicFuture<Boolean>(null) {
+
+            @Override
+            public Boolean get(final long timeout, final TimeUnit unit) {
+                throw new RuntimeException("Timed out waiting for operation");
+            }
+
+        };
+        impl = new BasicHttpCache(new HeapResourceFactory(), bulkStorage, CacheConfig.DEFAULT);
+        HttpRequest req = new HttpGet("http://foo.example.com/bar");
+        req.setHeader("Accept-Encoding", "gzip");
+
+        assertNoVariantReferenced(bulkStorage, new HttpHost("foo.example.com"), req);
+    }
+
+    @Test
+    public void testRevertingParentKeepsOtherVariants() throws Exception {
+        SimpleBulkHttpCacheStorage bulkStorage = new SimpleBulkHttpCacheStorage();
+        impl = new BasicHttpCache(new HeapResourceFactory(), bulkStorage, CacheConfig.DEFAULT);
+        HttpHost host = new HttpHost("foo.example.com");
+        HttpRequest req1 = new HttpGet("http://foo.example.com/bar");
+        req1.setHeader("Accept-Encoding", "gzip");
+        HttpRequest req2 = new HttpGet("http://foo.example.com/bar");
+        req2.setHeader("Accept-Encoding", "identity");
+
+        impl.cacheAndReturnResponse(host, req1, makeVariantResponse(), new Date(), new Date());
+        bulkStorage.putResult = Boolean.FALSE;
+        impl.cacheAndReturnResponse(host, req2, makeVariantResponse(), new Date(), new Date());
+
+        assertNotNull(impl.getCacheEntry(host, req1));
+        assertNull(impl.getCacheEntry(host, req2));
+        assertEquals(1, impl.getVariantCacheEntriesWithEtags(host, req1).size());
+    }
+
+    @Test
+    public void testStreamThroughStoresEntryOnceBodyIsConsumed() throws Exception {
+        impl = new BasicHttpCache(new HeapResourceFactory(), backing,
+                CacheConfig.custom().setStreamThroughEnabled(true).build());
+        HttpHost host = new HttpHost("foo.example.com");
+        HttpRequest request = new HttpGet("http://foo.example.com/bar");
+        byte[] body = HttpTestUtils.getRandomBytes(1000);
+        HttpResponse originResponse = HttpTestUtils.make200Response();
+        originResponse.setEntity(new ByteArrayEntity(body));
+        originResponse.setHeader("Content-Length", "1000");
+
+        HttpResponse result = impl.cacheAndReturnResponse(host, request, originResponse,
+                new Date(), new Date());
+        assertSame(originResponse, result);
+        assertNull(impl.getCacheEntry(host, request));
+
+        Assert.assertArrayEquals(body, EntityUtils.toByteArray(result.getEntity()));
+        HttpCacheEntry entry = impl.getCacheEntry(host, request);
+        assertNotNull(entry);
+        assertEquals(1000, entry.getResource().length());
+    }
+
+    @Test
+    public void testStreamThroughDoesNotStoreIncompleteBody() throws Exception {
+        impl = new BasicHttpCache(new HeapResourceFactory(), backing,
+                CacheConfig.custom().setStreamThroughEnabled(true).build());
+        HttpHost host = new HttpHost("foo.example.com");
+        HttpRequest request = new HttpGet("http://foo.example.com/bar");
+        HttpResponse originResponse = HttpTestUtils.make200Response();
+        originResponse.setEntity(new ByteArrayEntity(HttpTestUtils.getRandomBytes(500)));
+        originResponse.setHeader("Content-Length", "1000");
+
+        HttpResponse result = impl.cacheAndReturnResponse(host, request, originResponse,
+                new Date(), new Date());
+        EntityUtils.consume(result.getEntity());
+        assertNull(impl.getCacheEntry(host, request));
+    }
+
+    @Test
+    public void testStreamThroughDoesNotStoreBodyClosedEarly() throws Exception {
+        impl = new BasicHttpCache(new HeapResourceFactory(), backing,
+                CacheConfig.custom().setStreamThroughEnabled(true).build());
+        HttpHost host = new HttpHost("foo.example.com");
+        HttpRequest request = new HttpGet("http://foo.example.com/bar");
+        HttpResponse originResponse = HttpTestUtils.make200Response();
+        originResponse.setEntity(new ByteArrayEntity(HttpTestUtils.getRandomBytes(1000)));
+
+        HttpResponse result = impl.cacheAndReturnResponse(host, request, originResponse,
+                new Date(), new Date());
+        InputStream instream = result.getEntity().getContent();
+        instream.read(new byte[10]);
+        instream.close();
+        assertNull(impl.getCacheEntry(host, request));
+    }
+
     @Test
     public void testOriginalResponseWithNoContentSizeHeaderIsReleased() throws Exception {
         HttpHost host = new HttpHost("foo.example.com");
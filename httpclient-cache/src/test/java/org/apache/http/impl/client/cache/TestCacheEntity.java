@@ -0,0 +1,142 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.apache.http.Header;
+import org.apache.http.client.cache.ByteBufferResource;
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.cache.Resource;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestCacheEntity {
+
+    private static CacheEntity makeEntity(final Resource resource) {
+        final HttpCacheEntry entry = HttpTestUtils.makeCacheEntry();
+        return new CacheEntity(new HttpCacheEntry(entry.getRequestDate(), entry.getResponseDate(),
+                entry.getStatusLine(), new Header[] {}, resource));
+    }
+
+    private static byte[] writeOut(final CacheEntity entity) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+        return out.toByteArray();
+    }
+
+    static class DirectBufferResource implements ByteBufferResource {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ByteBuffer buffer;
+
+        DirectBufferResource(final byte[] b) {
+            this.buffer = ByteBuffer.allocateDirect(b.length);
+            this.buffer.put(b);
+            this.buffer.flip();
+        }
+
+        public ByteBuffer getByteBuffer() {
+            return this.buffer.asReadOnlyBuffer();
+        }
+
+        public InputStream getInputStream() {
+            throw new UnsupportedOperationException();
+        }
+
+        public long length() {
+            return this.buffer.remaining();
+        }
+
+        public void dispose() {
+        }
+
+    }
+
+    @Test
+    public void testWriteToFromHeapResource() throws Exception {
+        final byte[] body = HttpTestUtils.getRandomBytes(5000);
+        final CacheEntity entity = makeEntity(new HeapResource(body));
+        Assert.assertEquals(5000, entity.getContentLength());
+        Assert.assertArrayEquals(body, writeOut(entity));
+    }
+
+    @Test
+    public void testHeapResourceBufferIsReadOnly() throws Exception {
+        final byte[] body = HttpTestUtils.getRandomBytes(100);
+        final ByteBuffer buffer = new HeapResource(body).getByteBuffer();
+        Assert.assertTrue(buffer.isReadOnly());
+        Assert.assertEquals(100, buffer.remaining());
+    }
+
+    @Test
+    public void testWriteToUsesByteBufferOfResource() throws Exception {
+        final byte[] body = HttpTestUtils.getRandomBytes(20000);
+        final CacheEntity entity = makeEntity(new DirectBufferResource(body));
+        Assert.assertArrayEquals(body, writeOut(entity));
+        // the entity is repeatable
+        Assert.assertArrayEquals(body, writeOut(entity));
+    }
+
+    @Test
+    public void testWriteToFromFileResource() throws Exception {
+        final byte[] body = HttpTestUtils.getRandomBytes(20000);
+        final File src = File.createTempFile("cache", ".src");
+        final File dst = File.createTempFile("cache", ".dst");
+        try {
+            final FileOutputStream out = new FileOutputStream(src);
+            try {
+                out.write(body);
+            } finally {
+                out.close();
+            }
+            final CacheEntity entity = makeEntity(new FileResource(src));
+            Assert.assertArrayEquals(body, writeOut(entity));
+
+            final FileOutputStream fileOut = new FileOutputStream(dst);
+            try {
+                entity.writeTo(fileOut);
+            } finally {
+                fileOut.close();
+            }
+            final ByteArrayOutputStream copy = new ByteArrayOutputStream();
+            IOUtils.copyAndClose(new FileInputStream(dst), copy);
+            Assert.assertArrayEquals(body, copy.toByteArray());
+        } finally {
+            src.delete();
+            dst.delete();
+        }
+    }
+
+}
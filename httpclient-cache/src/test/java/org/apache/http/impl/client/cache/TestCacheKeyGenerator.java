@@ -26,6 +26,8 @@
  */
 package org.apache.http.impl.client.cache;
 
+import java.net.URLEncoder;
+
 import org.apache.http.Header;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
@@ -372,4 +374,69 @@ public class TestCacheKeyGenerator {
         HttpRequest req2 = new BasicHttpRequest("GET", "/%7Esmith%2Fhome.html", HttpVersion.HTTP_1_1);
         Assert.assertEquals(extractor.getURI(host, req1), extractor.getURI(host, req2));
     }
+
+    @Test
+    public void testCanonicalizesSimpleAbsoluteUris() {
+        Assert.assertEquals("http://foo.example.com:80/bar?baz=1",
+                extractor.canonicalizeUri("HTTP://Foo.Example.COM/bar?baz=1"));
+        Assert.assertEquals("https://foo.example.com:8443/",
+                extractor.canonicalizeUri("https://foo.example.com:8443"));
+        Assert.assertEquals("http://foo.example.com:80/?q",
+                extractor.canonicalizeUri("http://foo.example.com?q"));
+        Assert.assertEquals("http://foo.example.com:80/a/b;c=d/e.html?x=/y",
+                extractor.canonicalizeUri("http://foo.example.com/a/b;c=d/e.html?x=/y"));
+    }
+
+    @Test
+    public void testCanonicalizesUrisThatNeedDecoding() {
+        Assert.assertEquals("http://foo.example.com:80/a+b",
+                extractor.canonicalizeUri("http://foo.example.com/a+b"));
+        Assert.assertEquals("http://foo.example.com:80/~smith",
+                extractor.canonicalizeUri("http://foo.example.com/%7Esmith"));
+        Assert.assertEquals("http://foo.example.com:80/page",
+                extractor.canonicalizeUri("http://foo.example.com/page#frag"));
+        Assert.assertEquals("http://foo.example.com:80/",
+                extractor.canonicalizeUri("http://foo.example.com//bar"));
+        Assert.assertEquals("http://foo.example.com:80/",
+                extractor.canonicalizeUri("http://user@foo.example.com/"));
+    }
+
+    @Test
+    public void testRelativeRequestWithUppercaseHost() {
+        HttpHost host = new HttpHost("Foo.Example.COM", 8080, "HTTP");
+        HttpRequest req = new BasicHttpRequest("GET", "/bar?baz", HttpVersion.HTTP_1_1);
+        Assert.assertEquals("http://foo.example.com:8080/bar?baz", extractor.getURI(host, req));
+    }
+
+    @Test
+    public void testVariantKeyEncodingMatchesURLEncoder() throws Exception {
+        String value = "text/html; q=0.9, *+~\u00e9\u4e2d";
+        HttpRequest req = new BasicHttpRequest("GET", "/", HttpVersion.HTTP_1_1);
+        req.setHeader("Accept", value);
+        req.setHeader("X-Ascii", "a b,c/d");
+        HttpCacheEntry entry = HttpTestUtils.makeCacheEntry(new Header[] {
+                new BasicHeader("Vary", "X-Ascii, Accept") });
+        Assert.assertEquals("{Accept=" + URLEncoder.encode(value, "UTF-8")
+                + "&X-Ascii=" + URLEncoder.encode("a b,c/d", "UTF-8") + "}",
+                extractor.getVariantKey(req, entry));
+    }
+
+    @Test
+    public void testVariantHeaderNamesAreSharedBetweenEntries() {
+        HttpRequest req = new BasicHttpRequest("GET", "/", HttpVersion.HTTP_1_1);
+        req.setHeader("Accept-Encoding", "gzip");
+        req.setHeader("User-Agent", "browser");
+        HttpCacheEntry entry1 = HttpTestUtils.makeCacheEntry(new Header[] {
+                new BasicHeader("Vary", "User-Agent, Accept-Encoding") });
+        HttpCacheEntry entry2 = HttpTestUtils.makeCacheEntry(new Header[] {
+                new BasicHeader("Vary", "User-Agent, Accept-Encoding") });
+        HttpCacheEntry entry3 = HttpTestUtils.makeCacheEntry(new Header[] {
+                new BasicHeader("Vary", "User-Agent"),
+                new BasicHeader("Vary", "Accept-Encoding") });
+        String expected = "{Accept-Encoding=gzip&User-Agent=browser}";
+        Assert.assertEquals(expected, extractor.getVariantKey(req, entry1));
+        Assert.assertEquals(expected, extractor.getVariantKey(req, entry2));
+        Assert.assertEquals(expected, extractor.getVariantKey(req, entry3));
+        Assert.assertEquals(expected, extractor.getVariantKey(req, entry3));
+    }
 }
@@ -44,13 +44,18 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.http.Header;
 import org.apache.http.HttpHost;
@@ -613,6 +618,120 @@ public class TestCachingExec {
                 "1.0".equalsIgnoreCase(proto));
     }
 
+    private static class BlockingBackend implements ClientExecChain {
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+
+        public CloseableHttpResponse execute(
+                final HttpRoute route,
+                final HttpRequestWrapper request,
+                final HttpClientContext clientContext,
+                final HttpExecutionAware execAware) throws IOException {
+            calls.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                throw new InterruptedIOException();
+            }
+            return Proxies.enhanceResponse(
+                    HttpTestUtils.make200Response(new Date(), "max-age=3600"));
+        }
+
+    }
+
+    private List<Thread> executeConcurrently(
+            final int n, final List<HttpResponse> responses) {
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < n; i++) {
+            Thread t = new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        HttpResponse response = impl.execute(route,
+                                HttpRequestWrapper.wrap(new HttpGet("http://foo.example.com/")),
+                                HttpClientContext.create());
+                        EntityUtils.toByteArray(response.getEntity());
+                        responses.add(response);
+                    } catch (Exception ex) {
+                        // response missing
+                    }
+                }
+
+            };
+            threads.add(t);
+            t.start();
+        }
+        return threads;
+    }
+
+    @Test
+    public void testConcurrentMissesAreCollapsed() throws Exception {
+        BlockingBackend backend = new BlockingBackend();
+        impl = new CachingExec(backend, new BasicHttpCache(), CacheConfig.custom()
+                .setRequestCollapsingEnabled(true)
+                .build());
+        List<HttpResponse> responses = Collections.synchronizedList(new ArrayList<HttpResponse>());
+        List<Thread> threads = executeConcurrently(4, responses);
+        for (int i = 0; i < 100 && impl.getCacheMisses() < 4; i++) {
+            Thread.sleep(20);
+        }
+        backend.release.countDown();
+        for (Thread t : threads) {
+            t.join(5000);
+        }
+        assertEquals(4, responses.size());
+        for (HttpResponse response : responses) {
+            assertEquals(HttpStatus.SC_OK, response.getStatusLine().getStatusCode());
+        }
+        assertEquals(1, backend.calls.get());
+        assertEquals(3, impl.getCollapsedRequests());
+    }
+
+    @Test
+    public void testConcurrentMissesAreCollapsedWithStreamThrough() throws Exception {
+        BlockingBackend backend = new BlockingBackend();
+        CacheConfig config = CacheConfig.custom()
+                .setRequestCollapsingEnabled(true)
+                .setStreamThroughEnabled(true)
+                .build();
+        impl = new CachingExec(backend, new BasicHttpCache(config), config);
+        List<HttpResponse> responses = Collections.synchronizedList(new ArrayList<HttpResponse>());
+        List<Thread> threads = executeConcurrently(4, responses);
+        for (int i = 0; i < 100 && impl.getCacheMisses() < 4; i++) {
+            Thread.sleep(20);
+        }
+        backend.release.countDown();
+        for (Thread t : threads) {
+            t.join(5000);
+        }
+        assertEquals(4, responses.size());
+        assertEquals(1, backend.calls.get());
+        assertEquals(3, impl.getCollapsedRequests());
+    }
+
+    @Test
+    public void testCollapsedRequestsCallBackendAfterTimeout() throws Exception {
+        BlockingBackend backend = new BlockingBackend();
+        impl = new CachingExec(backend, new BasicHttpCache(), CacheConfig.custom()
+                .setRequestCollapsingEnabled(true)
+                .setRequestCollapsingTimeoutMillis(50)
+                .build());
+        List<HttpResponse> responses = Collections.synchronizedList(new ArrayList<HttpResponse>());
+        List<Thread> threads = executeConcurrently(2, responses);
+        for (int i = 0; i < 100 && backend.calls.get() < 2; i++) {
+            Thread.sleep(20);
+        }
+        backend.release.countDown();
+        for (Thread t : threads) {
+            t.join(5000);
+        }
+        assertEquals(2, responses.size());
+        assertEquals(2, backend.calls.get());
+        assertEquals(0, impl.getCollapsedRequests());
+    }
+
     @Test
     public void testSetsCacheMissContextIfRequestNotServableFromCache()
         throws Exception {
@@ -26,10 +26,13 @@
  */
 package org.apache.http.impl.client.cache;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
@@ -44,6 +47,7 @@ import org.apache.http.Header;
 import org.apache.http.ProtocolVersion;
 import org.apache.http.StatusLine;
 import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.cache.HttpCacheEntrySerializationException;
 import org.apache.http.client.cache.HttpCacheEntrySerializer;
 import org.apache.http.client.cache.Resource;
 import org.apache.http.message.BasicHeader;
@@ -67,6 +71,86 @@ public class TestHttpCacheEntrySerializers {
         readWriteVerify(makeCacheEntryWithVariantMap());
     }
 
+    @Test
+    public void canSerializeEntriesInBinaryFormat() throws Exception {
+        impl = new BinaryHttpCacheEntrySerializer();
+        readWriteVerify(makeCacheEntryWithVariantMap());
+        readWriteVerify(HttpTestUtils.makeCacheEntry());
+    }
+
+    @Test
+    public void binaryFormatPreservesAllFields() throws Exception {
+        impl = new BinaryHttpCacheEntrySerializer();
+        Header[] headers = new Header[] {
+                new BasicHeader("Date", "Fri, 14 Oct 2005 00:00:00 GMT"),
+                new BasicHeader("X-Custom", "\u00e9t\u00e9"),
+                new BasicHeader("content-type", "text/plain"),
+                new BasicHeader("Set-Cookie", "a=b"),
+                new BasicHeader("Set-Cookie", "c=d")
+        };
+        StatusLine statusLine = new BasicStatusLine(new ProtocolVersion("HTTP", 1, 0), 404, null);
+        HttpCacheEntry entry = new HttpCacheEntry(new Date(1234567L), new Date(2345678L),
+                statusLine, headers, null, new HashMap<String, String>());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        impl.writeTo(entry, out);
+        HttpCacheEntry result = impl.readFrom(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(1234567L, result.getRequestDate().getTime());
+        assertEquals(2345678L, result.getResponseDate().getTime());
+        assertEquals(new ProtocolVersion("HTTP", 1, 0), result.getProtocolVersion());
+        assertEquals(404, result.getStatusCode());
+        assertNull(result.getReasonPhrase());
+        assertNull(result.getResource());
+        Header[] resultHeaders = result.getAllHeaders();
+        assertEquals(headers.length, resultHeaders.length);
+        for (int i = 0; i < headers.length; i++) {
+            assertEquals(headers[i].getName(), resultHeaders[i].getName());
+            assertEquals(headers[i].getValue(), resultHeaders[i].getValue());
+        }
+    }
+
+    @Test
+    public void binaryFormatIsMoreCompact() throws Exception {
+        HttpCacheEntry entry = HttpTestUtils.makeCacheEntry();
+        ByteArrayOutputStream out1 = new ByteArrayOutputStream();
+        new DefaultHttpCacheEntrySerializer().writeTo(entry, out1);
+        ByteArrayOutputStream out2 = new ByteArrayOutputStream();
+        new BinaryHttpCacheEntrySerializer().writeTo(entry, out2);
+        assertTrue(out2.size() * 3 < out1.size());
+    }
+
+    @Test
+    public void canReadBinaryFormatIntoFileResource() throws Exception {
+        File dir = File.createTempFile("cache", ".dir");
+        dir.delete();
+        dir.mkdir();
+        try {
+            impl = new BinaryHttpCacheEntrySerializer(new FileResourceFactory(dir));
+            HttpCacheEntry entry = makeCacheEntryWithVariantMap();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            impl.writeTo(entry, out);
+            out.write(42);
+
+            ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+            HttpCacheEntry result = impl.readFrom(in);
+            assertTrue(result.getResource() instanceof FileResource);
+            assertTrue(areEqual(entry, result));
+            assertEquals(entry.getVariantMap(), result.getVariantMap());
+            // the trailing byte is left unread
+            assertEquals(42, in.read());
+            result.getResource().dispose();
+        } finally {
+            dir.delete();
+        }
+    }
+
+    @Test(expected=HttpCacheEntrySerializationException.class)
+    public void binaryFormatRejectsGarbage() throws Exception {
+        impl = new BinaryHttpCacheEntrySerializer();
+        impl.readFrom(new ByteArrayInputStream("garbage".getBytes("US-ASCII")));
+    }
+
     public void readWriteVerify(HttpCacheEntry writeEntry) throws IOException {
         // write the entry
         ByteArrayOutputStream out = new ByteArrayOutputStream();
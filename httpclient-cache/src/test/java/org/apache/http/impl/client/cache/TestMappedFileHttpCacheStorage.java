@@ -0,0 +1,242 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.http.Header;
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.cache.HttpCacheUpdateCallback;
+import org.apache.http.client.cache.Resource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestMappedFileHttpCacheStorage {
+
+    private File cacheDir;
+    private MappedFileResourceFactory resourceFactory;
+    private MappedFileHttpCacheStorage storage;
+
+    @Before
+    public void setUp() throws Exception {
+        cacheDir = File.createTempFile("cachedir", "");
+        if (cacheDir.exists()) {
+            cacheDir.delete();
+        }
+        cacheDir.mkdir();
+        open(1000);
+    }
+
+    @After
+    public void cleanUp() {
+        close();
+        File[] files = cacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        cacheDir.delete();
+    }
+
+    private void open(final long segmentSize) throws IOException {
+        resourceFactory = new MappedFileResourceFactory(cacheDir, segmentSize);
+        storage = new MappedFileHttpCacheStorage(
+                CacheConfig.custom().setMaxCacheEntries(5).build(), resourceFactory);
+    }
+
+    private void close() {
+        storage.shutdown();
+        resourceFactory.close();
+    }
+
+    private static byte[] makeBody(final int size, final int seed) {
+        final byte[] b = new byte[size];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) (i + seed);
+        }
+        return b;
+    }
+
+    private static byte[] readBody(final HttpCacheEntry entry) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IOUtils.copyAndClose(entry.getResource().getInputStream(), out);
+        return out.toByteArray();
+    }
+
+    private static void assertSameEntry(final HttpCacheEntry expected, final HttpCacheEntry actual)
+            throws IOException {
+        Assert.assertNotNull(actual);
+        Assert.assertEquals(expected.getRequestDate(), actual.getRequestDate());
+        Assert.assertEquals(expected.getResponseDate(), actual.getResponseDate());
+        Assert.assertEquals(expected.getStatusLine().toString(), actual.getStatusLine().toString());
+        Assert.assertEquals(expected.getAllHeaders().length, actual.getAllHeaders().length);
+        Assert.assertArrayEquals(readBody(expected), readBody(actual));
+    }
+
+    @Test
+    public void testBodiesAreStoredInSegments() throws Exception {
+        final HttpCacheEntry entry = HttpTestUtils.makeCacheEntry(makeBody(100, 1));
+        storage.putEntry("a", entry);
+
+        final HttpCacheEntry stored = storage.getEntry("a");
+        Assert.assertTrue(stored.getResource() instanceof MappedFileResource);
+        assertSameEntry(entry, stored);
+        Assert.assertEquals(100, ((MappedFileResource) stored.getResource()).getByteBuffer().remaining());
+
+        storage.removeEntry("a");
+        Assert.assertNull(storage.getEntry("a"));
+        Assert.assertEquals(0, storage.getEntryCount());
+    }
+
+    @Test
+    public void testUpdateEntry() throws Exception {
+        final HttpCacheEntry entry1 = HttpTestUtils.makeCacheEntry(makeBody(100, 1));
+        final HttpCacheEntry entry2 = HttpTestUtils.makeCacheEntry(makeBody(200, 2));
+        storage.putEntry("a", entry1);
+        storage.updateEntry("a", new HttpCacheUpdateCallback() {
+
+            public HttpCacheEntry update(final HttpCacheEntry existing) throws IOException {
+                Assert.assertNotNull(existing);
+                return entry2;
+            }
+
+        });
+        assertSameEntry(entry2, storage.getEntry("a"));
+    }
+
+    @Test
+    public void testEntriesSurviveRestart() throws Exception {
+        final HttpCacheEntry entry1 = HttpTestUtils.makeCacheEntry(makeBody(100, 1));
+        final HttpCacheEntry entry2 = HttpTestUtils.makeCacheEntry(makeBody(600, 2));
+        final HttpCacheEntry entry3 = HttpTestUtils.makeCacheEntry(makeBody(300, 3));
+        storage.putEntry("a", entry1);
+        storage.putEntry("b", entry2);
+        storage.putEntry("c", entry3);
+        storage.removeEntry("b");
+
+        close();
+        open(1000);
+
+        Assert.assertEquals(2, storage.getEntryCount());
+        assertSameEntry(entry1, storage.getEntry("a"));
+        Assert.assertNull(storage.getEntry("b"));
+        assertSameEntry(entry3, storage.getEntry("c"));
+    }
+
+    @Test
+    public void testTruncatedIndexRecordIsIgnored() throws Exception {
+        final HttpCacheEntry entry = HttpTestUtils.makeCacheEntry(makeBody(100, 1));
+        storage.putEntry("a", entry);
+        close();
+
+        final FileOutputStream out = new FileOutputStream(new File(cacheDir, "index.log"), true);
+        try {
+            out.write(new byte[] { 1, 0, 5, 'a' });
+        } finally {
+            out.close();
+        }
+
+        open(1000);
+        Assert.assertEquals(1, storage.getEntryCount());
+        assertSameEntry(entry, storage.getEntry("a"));
+    }
+
+    @Test
+    public void testEldestEntriesAreEvicted() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            storage.putEntry("key" + i, HttpTestUtils.makeCacheEntry(makeBody(10, i)));
+        }
+        Assert.assertEquals(5, storage.getEntryCount());
+        Assert.assertNull(storage.getEntry("key4"));
+        Assert.assertNotNull(storage.getEntry("key5"));
+
+        close();
+        open(1000);
+        Assert.assertEquals(5, storage.getEntryCount());
+        Assert.assertNull(storage.getEntry("key4"));
+        Assert.assertNotNull(storage.getEntry("key9"));
+    }
+
+    @Test
+    public void testEmptySegmentsAreDeleted() throws Exception {
+        storage.putEntry("a", HttpTestUtils.makeCacheEntry(makeBody(600, 1)));
+        storage.putEntry("b", HttpTestUtils.makeCacheEntry(makeBody(600, 2)));
+        storage.putEntry("c", HttpTestUtils.makeCacheEntry(makeBody(600, 3)));
+        Assert.assertEquals(3, resourceFactory.getSegmentCount());
+
+        storage.removeEntry("a");
+        Assert.assertEquals(2, resourceFactory.getSegmentCount());
+    }
+
+    @Test
+    public void testCompactionRelocatesSparseSegments() throws Exception {
+        final HttpCacheEntry entry = HttpTestUtils.makeCacheEntry(makeBody(100, 1));
+        storage.putEntry("a", entry);
+        storage.putEntry("b", HttpTestUtils.makeCacheEntry(makeBody(800, 2)));
+        storage.putEntry("c", HttpTestUtils.makeCacheEntry(makeBody(800, 3)));
+        Assert.assertEquals(2, resourceFactory.getSegmentCount());
+
+        storage.removeEntry("b");
+        Assert.assertEquals(1, storage.compact());
+        Assert.assertEquals(1, resourceFactory.getSegmentCount());
+        assertSameEntry(entry, storage.getEntry("a"));
+
+        close();
+        open(1000);
+        assertSameEntry(entry, storage.getEntry("a"));
+        Assert.assertEquals(2, storage.getEntryCount());
+    }
+
+    @Test
+    public void testDisposingStoredResourceDoesNotReleaseIt() throws Exception {
+        storage.putEntry("a", HttpTestUtils.makeCacheEntry(makeBody(600, 1)));
+        final Resource resource = storage.getEntry("a").getResource();
+        storage.putEntry("b", HttpTestUtils.makeCacheEntry(makeBody(600, 2)));
+
+        resource.dispose();
+        Assert.assertEquals(2, resourceFactory.getSegmentCount());
+        Assert.assertEquals(600, readBody(storage.getEntry("a")).length);
+    }
+
+    @Test
+    public void testEntriesWithoutBody() throws Exception {
+        final HttpCacheEntry entry = HttpTestUtils.makeCacheEntry(new Header[] {}, new byte[] {});
+        final HttpCacheEntry bodiless = new HttpCacheEntry(entry.getRequestDate(),
+                entry.getResponseDate(), entry.getStatusLine(), entry.getAllHeaders(), null);
+        storage.putEntry("a", bodiless);
+        close();
+        open(1000);
+        Assert.assertNull(storage.getEntry("a").getResource());
+    }
+
+}
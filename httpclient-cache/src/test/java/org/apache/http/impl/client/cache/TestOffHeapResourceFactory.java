@@ -0,0 +1,231 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.cache.HttpCacheEntry;
+
+import org.apache.http.client.cache.InputLimit;
+import org.apache.http.client.cache.Resource;
+import org.apache.http.message.BasicStatusLine;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestOffHeapResourceFactory {
+
+    private OffHeapResourceFactory impl;
+
+    @Before
+    public void setUp() {
+        // 2 slabs of 4 pages of 16 bytes
+        impl = new OffHeapResourceFactory(128, 16, 4);
+    }
+
+    private static byte[] content(final int len) {
+        final byte[] b = new byte[len];
+        for (int i = 0; i < len; i++) {
+            b[i] = (byte) i;
+        }
+        return b;
+    }
+
+    private static HttpCacheEntry makeCacheEntry(final Resource resource) {
+        final Date now = new Date();
+        return new HttpCacheEntry(now, now,
+                new BasicStatusLine(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK"),
+                HttpTestUtils.getStockHeaders(now), resource);
+    }
+
+    private static byte[] read(final Resource resource) throws IOException {
+        final ByteArrayOutputStream outstream = new ByteArrayOutputStream();
+        IOUtils.copyAndClose(resource.getInputStream(), outstream);
+        return outstream.toByteArray();
+    }
+
+    @Test
+    public void testStoresContentAcrossPages() throws Exception {
+        final byte[] body = content(40);
+        final Resource resource = impl.generate("id", new ByteArrayInputStream(body), null);
+        Assert.assertTrue(resource instanceof OffHeapResource);
+        Assert.assertEquals(40, resource.length());
+        Assert.assertArrayEquals(body, read(resource));
+        Assert.assertArrayEquals(body, read(resource));
+    }
+
+    @Test
+    public void testReportsOccupancyAndFragmentation() throws Exception {
+        Assert.assertEquals(128, impl.getMaxSize());
+        Assert.assertEquals(0, impl.getReservedSize());
+        Assert.assertEquals(0.0d, impl.getFragmentation(), 0.0d);
+
+        final Resource resource = impl.generate("id", new ByteArrayInputStream(content(40)), null);
+        Assert.assertEquals(64, impl.getReservedSize());
+        Assert.assertEquals(48, impl.getAllocatedSize());
+        Assert.assertEquals(40, impl.getUsedSize());
+        Assert.assertEquals(8.0d / 48.0d, impl.getFragmentation(), 0.0001d);
+
+        resource.dispose();
+        Assert.assertEquals(64, impl.getReservedSize());
+        Assert.assertEquals(0, impl.getAllocatedSize());
+        Assert.assertEquals(0, impl.getUsedSize());
+    }
+
+    @Test
+    public void testDisposeReturnsPagesForReuse() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            final Resource resource = impl.generate("id", new ByteArrayInputStream(content(100)), null);
+            Assert.assertTrue(resource instanceof OffHeapResource);
+            resource.dispose();
+            resource.dispose();
+        }
+        Assert.assertEquals(128, impl.getReservedSize());
+        Assert.assertEquals(0, impl.getAllocatedSize());
+        Assert.assertEquals(0, impl.getFallbackCount());
+    }
+
+    @Test(expected=IOException.class)
+    public void testDisposedResourceCannotBeRead() throws Exception {
+        final Resource resource = impl.generate("id", new ByteArrayInputStream(content(10)), null);
+        resource.dispose();
+        resource.getInputStream();
+    }
+
+    @Test
+    public void testDisposeWhileReadingDoesNotHandOutPagesOfOpenStream() throws Exception {
+        final Resource first = impl.generate("id", new ByteArrayInputStream(content(40)), null);
+        final InputStream instream = first.getInputStream();
+        final byte[] b = new byte[10];
+        Assert.assertEquals(10, instream.read(b));
+        first.dispose();
+
+        final byte[] other = new byte[40];
+        Arrays.fill(other, (byte) 0xff);
+        final Resource second = impl.generate("id", new ByteArrayInputStream(other), null);
+        Assert.assertEquals(96, impl.getAllocatedSize());
+        try {
+            final ByteArrayOutputStream outstream = new ByteArrayOutputStream();
+            IOUtils.copy(instream, outstream);
+            Assert.fail("IOException expected");
+        } catch (IOException expected) {
+        }
+        instream.close();
+        instream.close();
+        Assert.assertEquals(48, impl.getAllocatedSize());
+        Assert.assertArrayEquals(other, read(second));
+    }
+
+    @Test
+    public void testPagesAreReleasedWhenLastStreamIsClosed() throws Exception {
+        final Resource resource = impl.generate("id", new ByteArrayInputStream(content(40)), null);
+        final InputStream instream1 = resource.getInputStream();
+        final InputStream instream2 = resource.getInputStream();
+        resource.dispose();
+        instream1.close();
+        Assert.assertEquals(48, impl.getAllocatedSize());
+        instream2.close();
+        Assert.assertEquals(0, impl.getAllocatedSize());
+        Assert.assertEquals(0, impl.getUsedSize());
+    }
+
+    @Test
+    public void testFallsBackToHeapWhenBudgetExhausted() throws Exception {
+        final Resource first = impl.generate("id", new ByteArrayInputStream(content(100)), null);
+        final byte[] body = content(50);
+        final Resource second = impl.generate("id", new ByteArrayInputStream(body), null);
+        Assert.assertTrue(second instanceof HeapResource);
+        Assert.assertArrayEquals(body, read(second));
+        Assert.assertEquals(1, impl.getFallbackCount());
+        Assert.assertEquals(112, impl.getAllocatedSize());
+        Assert.assertEquals(100, impl.getUsedSize());
+        first.dispose();
+        Assert.assertEquals(0, impl.getAllocatedSize());
+    }
+
+    @Test
+    public void testFallbackPreservesContentAlreadyStoredOffHeap() throws Exception {
+        final byte[] body = content(200);
+        final Resource resource = impl.generate("id", new ByteArrayInputStream(body), null);
+        Assert.assertTrue(resource instanceof HeapResource);
+        Assert.assertArrayEquals(body, read(resource));
+        Assert.assertEquals(0, impl.getAllocatedSize());
+    }
+
+    @Test
+    public void testInputLimitIsEnforced() throws Exception {
+        final InputLimit limit = new InputLimit(20);
+        impl.generate("id", new ByteArrayInputStream(content(100)), limit);
+        Assert.assertTrue(limit.isReached());
+    }
+
+    @Test
+    public void testCopy() throws Exception {
+        final byte[] body = content(30);
+        final Resource original = impl.generate("id", new ByteArrayInputStream(body), null);
+        final Resource copy = impl.copy("id", original);
+        original.dispose();
+        Assert.assertArrayEquals(body, read(copy));
+    }
+
+    @Test
+    public void testSerializesAsHeapResource() throws Exception {
+        final byte[] body = content(30);
+        final Resource resource = impl.generate("id", new ByteArrayInputStream(body), null);
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final ObjectOutputStream outstream = new ObjectOutputStream(buffer);
+        outstream.writeObject(resource);
+        outstream.close();
+        final ObjectInputStream instream = new ObjectInputStream(
+                new ByteArrayInputStream(buffer.toByteArray()));
+        final Object copy = instream.readObject();
+        Assert.assertTrue(copy instanceof HeapResource);
+        Assert.assertArrayEquals(body, read((Resource) copy));
+    }
+
+    @Test
+    public void testDisposalThroughManagedStorage() throws Exception {
+        final ManagedHttpCacheStorage storage = new ManagedHttpCacheStorage(
+                CacheConfig.custom().setMaxCacheEntries(1).build());
+        final Resource first = impl.generate("id", new ByteArrayInputStream(content(40)), null);
+        storage.putEntry("first", makeCacheEntry(first));
+        final Resource second = impl.generate("id", new ByteArrayInputStream(content(40)), null);
+        storage.putEntry("second", makeCacheEntry(second));
+        storage.shutdown();
+        Assert.assertEquals(0, impl.getAllocatedSize());
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client.cache;
+
+import java.io.IOException;
+
+import org.apache.http.Header;
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.cache.HttpCacheUpdateCallback;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestShardedHttpCacheStorage {
+
+    private static HttpCacheEntry makeEntry(final int size) {
+        return HttpTestUtils.makeCacheEntry(new Header[] {}, new byte[size]);
+    }
+
+    @Test
+    public void testBasics() throws Exception {
+        final ShardedHttpCacheStorage storage = new ShardedHttpCacheStorage(100000, 100, 4);
+        final HttpCacheEntry entry1 = makeEntry(100);
+        final HttpCacheEntry entry2 = makeEntry(200);
+        storage.putEntry("a", entry1);
+        Assert.assertSame(entry1, storage.getEntry("a"));
+        Assert.assertNull(storage.getEntry("b"));
+        Assert.assertEquals(1, storage.getEntryCount());
+        Assert.assertEquals(101, storage.getCacheSize());
+
+        storage.updateEntry("a", new HttpCacheUpdateCallback() {
+
+            public HttpCacheEntry update(final HttpCacheEntry existing) throws IOException {
+                Assert.assertSame(entry1, existing);
+                return entry2;
+            }
+
+        });
+        Assert.assertSame(entry2, storage.getEntry("a"));
+        Assert.assertEquals(201, storage.getCacheSize());
+
+        storage.removeEntry("a");
+        Assert.assertNull(storage.getEntry("a"));
+        Assert.assertEquals(0, storage.getEntryCount());
+        Assert.assertEquals(0, storage.getCacheSize());
+
+        Assert.assertEquals(2, storage.getHitCount());
+        Assert.assertEquals(2, storage.getMissCount());
+        Assert.assertEquals(0, storage.getEvictionCount());
+    }
+
+    @Test
+    public void testSizeLimit() throws Exception {
+        final ShardedHttpCacheStorage storage = new ShardedHttpCacheStorage(10000, 1000, 1);
+        for (int i = 0; i < 100; i++) {
+            storage.putEntry("key" + i, makeEntry(1000));
+            Assert.assertTrue(storage.getCacheSize() <= 10000);
+        }
+        Assert.assertTrue(storage.getEntryCount() > 0);
+        Assert.assertTrue(storage.getEvictionCount() > 0);
+    }
+
+    @Test
+    public void testEntryLimit() throws Exception {
+        final ShardedHttpCacheStorage storage = new ShardedHttpCacheStorage(0, 10, 1);
+        for (int i = 0; i < 100; i++) {
+            storage.putEntry("key" + i, makeEntry(10));
+            Assert.assertTrue(storage.getEntryCount() <= 10);
+        }
+        Assert.assertEquals(90, storage.getEvictionCount());
+    }
+
+    @Test
+    public void testOversizedEntryRejected() throws Exception {
+        final ShardedHttpCacheStorage storage = new ShardedHttpCacheStorage(1000, 10, 1);
+        storage.putEntry("big", makeEntry(2000));
+        Assert.assertNull(storage.getEntry("big"));
+        Assert.assertEquals(1, storage.getEvictionCount());
+    }
+
+    @Test
+    public void testFrequentEntriesSurviveScan() throws Exception {
+        final ShardedHttpCacheStorage storage = new ShardedHttpCacheStorage(10000, 1000, 1);
+        for (int i = 0; i < 8; i++) {
+            storage.putEntry("hot" + i, makeEntry(1000));
+        }
+        for (int n = 0; n < 3; n++) {
+            for (int i = 0; i < 8; i++) {
+                Assert.assertNotNull(storage.getEntry("hot" + i));
+            }
+        }
+        // One-off large responses must not flush the frequently used entries
+        for (int i = 0; i < 100; i++) {
+            storage.putEntry("cold" + i, makeEntry(5000));
+        }
+        for (int i = 0; i < 8; i++) {
+            Assert.assertNotNull(storage.getEntry("hot" + i));
+        }
+        Assert.assertTrue(storage.getCacheSize() <= 10000);
+    }
+
+}
@@ -0,0 +1,204 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.http.entity.InputStreamEntity;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestStreamThroughEntity {
+
+    private byte[] body;
+    private byte[] cached;
+    private int calls;
+    private int finished;
+
+    private final Runnable listener = new Runnable() {
+
+        public void run() {
+            finished++;
+        }
+
+    };
+
+    private final StreamThroughEntity.Callback callback = new StreamThroughEntity.Callback() {
+
+        public void completed(final byte[] content, final int len) {
+            calls++;
+            cached = new byte[len];
+            System.arraycopy(content, 0, cached, 0, len);
+        }
+
+    };
+
+    @Before
+    public void setUp() {
+        body = HttpTestUtils.getRandomBytes(10000);
+    }
+
+    private StreamThroughEntity makeEntity(final long maxLength) {
+        return new StreamThroughEntity(
+                new InputStreamEntity(new ByteArrayInputStream(body), body.length),
+                maxLength, callback);
+    }
+
+    @Test
+    public void testCompleteReadIsPassedToCallback() throws Exception {
+        final StreamThroughEntity entity = makeEntity(body.length);
+        Assert.assertFalse(entity.isRepeatable());
+        Assert.assertEquals(body.length, entity.getContentLength());
+
+        final InputStream instream = entity.getContent();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertEquals(body[0] & 0xff, instream.read());
+        out.write(body[0]);
+        Assert.assertEquals(0, calls);
+        IOUtils.copy(instream, out);
+        instream.close();
+
+        Assert.assertArrayEquals(body, out.toByteArray());
+        Assert.assertEquals(1, calls);
+        Assert.assertArrayEquals(body, cached);
+    }
+
+    @Test
+    public void testListenerIsNotifiedOnceContentIsStored() throws Exception {
+        final StreamThroughEntity entity = makeEntity(body.length);
+        entity.setFinishListener(listener);
+        final InputStream instream = entity.getContent();
+        instream.read(new byte[100]);
+        Assert.assertEquals(0, finished);
+        IOUtils.copy(instream, new ByteArrayOutputStream());
+        Assert.assertEquals(1, calls);
+        Assert.assertEquals(1, finished);
+        instream.close();
+        Assert.assertEquals(1, finished);
+    }
+
+    @Test
+    public void testListenerIsNotifiedOnceContentIsDiscarded() throws Exception {
+        final StreamThroughEntity entity = makeEntity(body.length);
+        entity.setFinishListener(listener);
+        final InputStream instream = entity.getContent();
+        instream.read(new byte[100]);
+        instream.close();
+        Assert.assertEquals(0, calls);
+        Assert.assertEquals(1, finished);
+    }
+
+    @Test
+    public void testListenerSetAfterFinishIsNotifiedRightAway() throws Exception {
+        final StreamThroughEntity entity = makeEntity(body.length);
+        entity.writeTo(new ByteArrayOutputStream());
+        entity.setFinishListener(listener);
+        Assert.assertEquals(1, finished);
+    }
+
+    @Test
+    public void testWriteToPassesContentToCallback() throws Exception {
+        final StreamThroughEntity entity = makeEntity(body.length);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+
+        Assert.assertArrayEquals(body, out.toByteArray());
+        Assert.assertEquals(1, calls);
+        Assert.assertArrayEquals(body, cached);
+    }
+
+    @Test
+    public void testEarlyCloseDiscardsContent() throws Exception {
+        final StreamThroughEntity entity = makeEntity(body.length);
+        final InputStream instream = entity.getContent();
+        instream.read(new byte[100]);
+        instream.close();
+        Assert.assertEquals(0, calls);
+    }
+
+    @Test
+    public void testSkipDiscardsContent() throws Exception {
+        final StreamThroughEntity entity = makeEntity(body.length);
+        final InputStream instream = entity.getContent();
+        instream.skip(100);
+        IOUtils.copy(instream, new ByteArrayOutputStream());
+        Assert.assertEquals(0, calls);
+    }
+
+    @Test
+    public void testContentExceedingLimitIsDiscarded() throws Exception {
+        final StreamThroughEntity entity = makeEntity(body.length - 1);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+
+        Assert.assertArrayEquals(body, out.toByteArray());
+        Assert.assertEquals(0, calls);
+    }
+
+    @Test
+    public void testReadFailureDiscardsContent() throws Exception {
+        final InputStream failing = new InputStream() {
+
+            private int count;
+
+            @Override
+            public int read() throws IOException {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                switch (count++) {
+                case 0:
+                    return 10;
+                case 1:
+                    throw new IOException("Oops");
+                default:
+                    return -1;
+                }
+            }
+
+        };
+        final StreamThroughEntity entity = new StreamThroughEntity(
+                new InputStreamEntity(failing, -1), 100, callback);
+        final InputStream instream = entity.getContent();
+        final byte[] tmp = new byte[100];
+        Assert.assertEquals(10, instream.read(tmp));
+        try {
+            instream.read(tmp);
+            Assert.fail("IOException should have been thrown");
+        } catch (final IOException expected) {
+        }
+        Assert.assertEquals(-1, instream.read(tmp));
+        Assert.assertEquals(0, calls);
+    }
+
+}
@@ -29,17 +29,24 @@ package org.apache.http.impl.client.cache.ehcache;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 
 import junit.framework.TestCase;
+import net.sf.ehcache.Cache;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
 
+import org.apache.http.Header;
 import org.apache.http.client.cache.HttpCacheEntry;
 import org.apache.http.client.cache.HttpCacheEntrySerializer;
 import org.apache.http.client.cache.HttpCacheUpdateCallback;
 import org.apache.http.client.cache.HttpCacheUpdateException;
 import org.apache.http.impl.client.cache.CacheConfig;
 import org.apache.http.impl.client.cache.HttpTestUtils;
+import org.apache.http.message.BasicHeader;
 import org.easymock.EasyMock;
 import org.junit.Test;
 
@@ -144,7 +151,7 @@ public class TestEhcacheHttpCacheStorage extends TestCase {
 
         // put new entry
         mockSerializer.writeTo(EasyMock.same(updatedValue), EasyMock.isA(OutputStream.class));
-        mockCache.put(element);
+        EasyMock.expect(mockCache.putIfAbsent(element)).andReturn(null);
 
         replayMocks();
         impl.updateEntry(key, callback);
@@ -242,4 +249,84 @@ public class TestEhcacheHttpCacheStorage extends TestCase {
         } catch (HttpCacheUpdateException e) { }
         verifyMocks();
     }
+
+    @Test
+    public void testCacheUpdateNullEntryRetriesWhenEntryInsertedConcurrently()
+            throws IOException, HttpCacheUpdateException {
+        final String key = "foo";
+        final HttpCacheEntry existingValue = HttpTestUtils.makeCacheEntry();
+        final HttpCacheEntry updatedValue = HttpTestUtils.makeCacheEntry();
+
+        Element existingElement = new Element(key, new byte[]{});
+
+        HttpCacheUpdateCallback callback = new HttpCacheUpdateCallback(){
+            public HttpCacheEntry update(HttpCacheEntry old){
+                return updatedValue;
+            }
+        };
+
+        // no entry yet, but another thread inserts one
+        EasyMock.expect(mockCache.get(key)).andReturn(null);
+        EasyMock.expect(mockCache.putIfAbsent(EasyMock.isA(Element.class))).andReturn(existingElement);
+
+        // retry against the inserted entry
+        EasyMock.expect(mockCache.get(key)).andReturn(existingElement);
+        EasyMock.expect(mockSerializer.readFrom(EasyMock.isA(InputStream.class))).andReturn(existingValue);
+        EasyMock.expect(mockCache.replace(EasyMock.same(existingElement), EasyMock.isA(Element.class))).andReturn(true);
+
+        replayMocks();
+        impl.updateEntry(key, callback);
+        verifyMocks();
+    }
+
+    @Test
+    public void testConcurrentUpdatesAreNotLost() throws Exception {
+        final Cache cache = new Cache(new CacheConfiguration("concurrent-updates", 100)
+            .overflowToDisk(false));
+        cache.initialise();
+        try {
+            final EhcacheHttpCacheStorage storage = new EhcacheHttpCacheStorage(cache,
+                    CacheConfig.custom().setMaxUpdateRetries(10000).build());
+            final HttpCacheUpdateCallback increment = new HttpCacheUpdateCallback() {
+                public HttpCacheEntry update(final HttpCacheEntry existing) {
+                    final int count = existing != null
+                        ? Integer.parseInt(existing.getFirstHeader("X-Count").getValue()) : 0;
+                    final Date now = new Date();
+                    return HttpTestUtils.makeCacheEntry(now, now, new Header[] {
+                            new BasicHeader("X-Count", Integer.toString(count + 1)) },
+                            new byte[] {});
+                }
+            };
+
+            final int threadCount = 8;
+            final int updates = 50;
+            final List<Throwable> failures = new ArrayList<Throwable>();
+            final Thread[] threads = new Thread[threadCount];
+            for (int i = 0; i < threadCount; i++) {
+                threads[i] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int j = 0; j < updates; j++) {
+                                storage.updateEntry("foo", increment);
+                            }
+                        } catch (final Throwable t) {
+                            synchronized (failures) {
+                                failures.add(t);
+                            }
+                        }
+                    }
+                };
+                threads[i].start();
+            }
+            for (final Thread thread : threads) {
+                thread.join();
+            }
+            assertTrue(failures.toString(), failures.isEmpty());
+            assertEquals(Integer.toString(threadCount * updates),
+                    storage.getEntry("foo").getFirstHeader("X-Count").getValue());
+        } finally {
+            cache.dispose();
+        }
+    }
 }
@@ -0,0 +1,214 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client.cache.memcached;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal in-process stand-in for a <i>memcached</i> server speaking the
+ * text protocol. Supports the get, gets, set, cas and delete commands.
+ */
+class InProcessMemcached {
+
+    private final ServerSocket serverSocket;
+    private final ConcurrentMap<String, Item> items;
+    private final AtomicLong casCounter;
+    private final AtomicInteger getCommands;
+    private volatile boolean shutdown;
+
+    InProcessMemcached() throws IOException {
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        this.items = new ConcurrentHashMap<String, Item>();
+        this.casCounter = new AtomicLong();
+        this.getCommands = new AtomicInteger();
+    }
+
+    InetSocketAddress getAddress() {
+        return new InetSocketAddress(this.serverSocket.getInetAddress(),
+                this.serverSocket.getLocalPort());
+    }
+
+    int getGetCommandCount() {
+        return this.getCommands.get();
+    }
+
+    void start() {
+        final Thread listener = new Thread() {
+
+            @Override
+            public void run() {
+                while (!shutdown) {
+                    try {
+                        final Socket socket = serverSocket.accept();
+                        final Thread worker = new Thread() {
+
+                            @Override
+                            public void run() {
+                                try {
+                                    serve(socket);
+                                } catch (final IOException ignore) {
+                                } finally {
+                                    try {
+                                        socket.close();
+                                    } catch (final IOException ignore) {
+                                    }
+                                }
+                            }
+
+                        };
+                        worker.setDaemon(true);
+                        worker.start();
+                    } catch (final IOException ex) {
+                        return;
+                    }
+                }
+            }
+
+        };
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    void shutdown() throws IOException {
+        this.shutdown = true;
+        this.serverSocket.close();
+    }
+
+    private void serve(final Socket socket) throws IOException {
+        final InputStream in = new BufferedInputStream(socket.getInputStream());
+        final OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+        String line;
+        while ((line = readLine(in)) != null) {
+            final String[] tokens = line.split(" ");
+            final String command = tokens[0];
+            if ("get".equals(command) || "gets".equals(command)) {
+                this.getCommands.incrementAndGet();
+                for (int i = 1; i < tokens.length; i++) {
+                    final Item item = this.items.get(tokens[i]);
+                    if (item != null) {
+                        String header = "VALUE " + tokens[i] + " " + item.flags + " " + item.data.length;
+                        if ("gets".equals(command)) {
+                            header += " " + item.cas;
+                        }
+                        writeLine(out, header);
+                        out.write(item.data);
+                        writeLine(out, "");
+                    }
+                }
+                writeLine(out, "END");
+            } else if ("set".equals(command) || "cas".equals(command)) {
+                final byte[] data = readData(in, Integer.parseInt(tokens[4]));
+                final Item item = new Item(Integer.parseInt(tokens[2]), data,
+                        this.casCounter.incrementAndGet());
+                if ("set".equals(command)) {
+                    this.items.put(tokens[1], item);
+                    writeLine(out, "STORED");
+                } else {
+                    final Item current = this.items.get(tokens[1]);
+                    if (current == null) {
+                        writeLine(out, "NOT_FOUND");
+                    } else if (current.cas == Long.parseLong(tokens[5])
+                            && this.items.replace(tokens[1], current, item)) {
+                        writeLine(out, "STORED");
+                    } else {
+                        writeLine(out, "EXISTS");
+                    }
+                }
+            } else if ("delete".equals(command)) {
+                writeLine(out, this.items.remove(tokens[1]) != null ? "DELETED" : "NOT_FOUND");
+            } else if ("version".equals(command)) {
+                writeLine(out, "VERSION 1.4.0");
+            } else {
+                writeLine(out, "ERROR");
+            }
+            out.flush();
+        }
+    }
+
+    private static String readLine(final InputStream in) throws IOException {
+        final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                final byte[] line = buf.toByteArray();
+                final int len = line.length > 0 && line[line.length - 1] == '\r'
+                    ? line.length - 1 : line.length;
+                return new String(line, 0, len, "US-ASCII");
+            }
+            buf.write(b);
+        }
+        return null;
+    }
+
+    private static byte[] readData(final InputStream in, final int len) throws IOException {
+        final byte[] data = new byte[len];
+        int off = 0;
+        while (off < len) {
+            final int l = in.read(data, off, len - off);
+            if (l == -1) {
+                throw new IOException("Unexpected end of stream");
+            }
+            off += l;
+        }
+        readLine(in);
+        return data;
+    }
+
+    private static void writeLine(final OutputStream out, final String line) throws IOException {
+        out.write(line.getBytes("US-ASCII"));
+        out.write('\r');
+        out.write('\n');
+    }
+
+    static class Item {
+
+        final int flags;
+        final byte[] data;
+        final long cas;
+
+        Item(final int flags, final byte[] data, final long cas) {
+            this.flags = flags;
+            this.data = data;
+            this.cas = cas;
+        }
+
+    }
+
+}
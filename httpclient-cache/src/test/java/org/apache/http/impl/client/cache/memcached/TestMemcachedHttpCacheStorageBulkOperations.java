@@ -0,0 +1,150 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client.cache.memcached;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+
+import net.spy.memcached.MemcachedClient;
+
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.cache.HttpCacheUpdateCallback;
+import org.apache.http.impl.client.cache.CacheConfig;
+import org.apache.http.impl.client.cache.HttpTestUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestMemcachedHttpCacheStorageBulkOperations {
+
+    private InProcessMemcached server;
+    private MemcachedClient client;
+    private MemcachedHttpCacheStorage impl;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new InProcessMemcached();
+        server.start();
+        client = new MemcachedClient(server.getAddress());
+        impl = new MemcachedHttpCacheStorage(client);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.shutdown();
+        server.shutdown();
+    }
+
+    private static byte[] readBody(final InputStream instream) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            final byte[] buf = new byte[2048];
+            int l;
+            while ((l = instream.read(buf)) != -1) {
+                out.write(buf, 0, l);
+            }
+        } finally {
+            instream.close();
+        }
+        return out.toByteArray();
+    }
+
+    private static void assertEquivalent(final HttpCacheEntry expected, final HttpCacheEntry actual)
+            throws IOException {
+        Assert.assertNotNull(actual);
+        Assert.assertEquals(expected.getStatusLine().toString(), actual.getStatusLine().toString());
+        Assert.assertEquals(expected.getAllHeaders().length, actual.getAllHeaders().length);
+        Assert.assertArrayEquals(
+                readBody(expected.getResource().getInputStream()),
+                readBody(actual.getResource().getInputStream()));
+    }
+
+    @Test
+    public void testPutAndGetEntry() throws Exception {
+        final HttpCacheEntry entry = HttpTestUtils.makeCacheEntry();
+        impl.putEntry("http://foo.example.com/", entry);
+        assertEquivalent(entry, impl.getEntry("http://foo.example.com/"));
+        impl.removeEntry("http://foo.example.com/");
+        Assert.assertNull(impl.getEntry("http://foo.example.com/"));
+    }
+
+    @Test
+    public void testGetEntriesUsesSingleRoundTrip() throws Exception {
+        final HttpCacheEntry entry1 = HttpTestUtils.makeCacheEntry();
+        final HttpCacheEntry entry2 = HttpTestUtils.makeCacheEntry();
+        Assert.assertTrue(impl.putEntryAsync("http://foo.example.com/1", entry1).get().booleanValue());
+        Assert.assertTrue(impl.putEntryAsync("http://foo.example.com/2", entry2).get().booleanValue());
+
+        final int gets = server.getGetCommandCount();
+        final Map<String, HttpCacheEntry> entries = impl.getEntries(Arrays.asList(
+                "http://foo.example.com/1", "http://foo.example.com/2", "http://foo.example.com/3"));
+        Assert.assertEquals(1, server.getGetCommandCount() - gets);
+
+        Assert.assertEquals(2, entries.size());
+        assertEquivalent(entry1, entries.get("http://foo.example.com/1"));
+        assertEquivalent(entry2, entries.get("http://foo.example.com/2"));
+        Assert.assertFalse(entries.containsKey("http://foo.example.com/3"));
+    }
+
+    @Test
+    public void testGetEntriesIgnoresEntriesStoredUnderCollidingKey() throws Exception {
+        impl = new MemcachedHttpCacheStorage(client, CacheConfig.DEFAULT,
+                new MemcachedCacheEntryFactoryImpl(), new KeyHashingScheme() {
+
+                    public String hash(final String storageKey) {
+                        return "collision";
+                    }
+
+                });
+        impl.putEntry("http://foo.example.com/1", HttpTestUtils.makeCacheEntry());
+
+        final Map<String, HttpCacheEntry> entries = impl.getEntries(Arrays.asList(
+                "http://foo.example.com/2"));
+        Assert.assertTrue(entries.isEmpty());
+    }
+
+    @Test
+    public void testUpdateEntry() throws Exception {
+        final HttpCacheEntry entry1 = HttpTestUtils.makeCacheEntry();
+        final HttpCacheEntry entry2 = HttpTestUtils.makeCacheEntry();
+        impl.putEntry("http://foo.example.com/", entry1);
+        impl.updateEntry("http://foo.example.com/", new HttpCacheUpdateCallback() {
+
+            public HttpCacheEntry update(final HttpCacheEntry existing) throws IOException {
+                assertEquivalent(entry1, existing);
+                return entry2;
+            }
+
+        });
+        assertEquivalent(entry2, impl.getEntry("http://foo.example.com/"));
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.client;
+
+import java.util.Date;
+import java.util.List;
+
+import org.apache.http.cookie.Cookie;
+import org.apache.http.cookie.CookieOrigin;
+
+/**
+ * Extended {@link CookieStore} interface for stores that can efficiently
+ * look up the cookies that are relevant to a particular request
+ * without enumerating all cookies they contain.
+ *
+ * @since 4.3
+ */
+public interface IndexedCookieStore extends CookieStore {
+
+    /**
+     * Returns cookies that may match the given origin and have not expired
+     * by the given date. The result may include cookies that do not match
+     * the origin; the final decision is left to
+     * {@link org.apache.http.cookie.CookieSpec#match(Cookie, CookieOrigin)}.
+     * However, no cookie that matches the origin may be left out.
+     *
+     * @param origin the cookie origin of the request.
+     * @param date the date used to determine cookie expiry.
+     * @return candidate cookies for the given origin.
+     */
+    List<Cookie> getCookies(CookieOrigin origin, Date date);
+
+}
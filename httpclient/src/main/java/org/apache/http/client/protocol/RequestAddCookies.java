@@ -43,6 +43,7 @@ import org.apache.http.HttpRequest;
 import org.apache.http.HttpRequestInterceptor;
 import org.apache.http.annotation.Immutable;
 import org.apache.http.client.CookieStore;
+import org.apache.http.client.IndexedCookieStore;
 import org.apache.http.client.config.CookieSpecs;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.config.Lookup;
@@ -145,11 +146,17 @@ public class RequestAddCookies implements HttpRequestInterceptor {
             throw new HttpException("Unsupported cookie policy: " + policy);
         }
         CookieSpec cookieSpec = provider.create(clientContext);
-        // Get all cookies available in the HTTP state
-        List<Cookie> cookies = new ArrayList<Cookie>(cookieStore.getCookies());
+        Date now = new Date();
+        List<Cookie> cookies;
+        if (cookieStore instanceof IndexedCookieStore) {
+            // Get only those cookies that can possibly match the origin
+            cookies = ((IndexedCookieStore) cookieStore).getCookies(cookieOrigin, now);
+        } else {
+            // Get all cookies available in the HTTP state
+            cookies = new ArrayList<Cookie>(cookieStore.getCookies());
+        }
         // Find cookies matching the given origin
         List<Cookie> matchedCookies = new ArrayList<Cookie>();
-        Date now = new Date();
         for (Cookie cookie : cookies) {
             if (!cookie.isExpired(now)) {
                 if (cookieSpec.match(cookie, cookieOrigin)) {
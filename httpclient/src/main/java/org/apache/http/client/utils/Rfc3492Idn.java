@@ -78,6 +78,100 @@ public class Rfc3492Idn implements Idn {
         return unicode.toString();
     }
 
+    private char encodeDigit(int d) {
+        if (d < 26) return (char) ('a' + d);
+        return (char) ('0' + (d - 26));
+    }
+
+    /**
+     * Converts a Unicode domain name to its ASCII compatible (Punycode) form.
+     * Labels consisting of ASCII characters only are left unchanged.
+     *
+     * @since 4.3
+     */
+    public String toASCII(String unicode) {
+        StringBuilder ascii = new StringBuilder(unicode.length() + 8);
+        StringTokenizer tok = new StringTokenizer(unicode, ".");
+        while (tok.hasMoreTokens()) {
+            String t = tok.nextToken();
+            if (ascii.length() > 0) ascii.append('.');
+            boolean basic = true;
+            for (int i = 0; i < t.length(); i++) {
+                if (t.charAt(i) >= initial_n) {
+                    basic = false;
+                    break;
+                }
+            }
+            if (basic) {
+                ascii.append(t);
+            } else {
+                ascii.append(ACE_PREFIX).append(encode(t));
+            }
+        }
+        return ascii.toString();
+    }
+
+    /**
+     * @since 4.3
+     */
+    protected String encode(String input) {
+        int n = initial_n;
+        int delta = 0;
+        int bias = initial_bias;
+        StringBuilder output = new StringBuilder(input.length() + 8);
+        for (int j = 0; j < input.length(); j++) {
+            char c = input.charAt(j);
+            if (c < initial_n) output.append(c);
+        }
+        int b = output.length();
+        int h = b;
+        if (b > 0) output.append(delimiter);
+        while (h < input.length()) {
+            int m = Integer.MAX_VALUE;
+            for (int j = 0; j < input.length(); j++) {
+                char c = input.charAt(j);
+                if (c >= n && c < m) m = c;
+            }
+            if (m - n > (Integer.MAX_VALUE - delta) / (h + 1)) {
+                throw new IllegalArgumentException("Punycode overflow: " + input);
+            }
+            delta = delta + (m - n) * (h + 1);
+            n = m;
+            for (int j = 0; j < input.length(); j++) {
+                char c = input.charAt(j);
+                if (c < n) {
+                    if (delta == Integer.MAX_VALUE) {
+                        throw new IllegalArgumentException("Punycode overflow: " + input);
+                    }
+                    delta++;
+                }
+                if (c == n) {
+                    int q = delta;
+                    for (int k = base;; k += base) {
+                        int t;
+                        if (k <= bias + tmin) {
+                            t = tmin;
+                        } else if (k >= bias + tmax) {
+                            t = tmax;
+                        } else {
+                            t = k - bias;
+                        }
+                        if (q < t) break;
+                        output.append(encodeDigit(t + (q - t) % (base - t)));
+                        q = (q - t) / (base - t);
+                    }
+                    output.append(encodeDigit(q));
+                    bias = adapt(delta, h + 1, h == b);
+                    delta = 0;
+                    h++;
+                }
+            }
+            delta++;
+            n++;
+        }
+        return output.toString();
+    }
+
     protected String decode(String input) {
         int n = initial_n;
         int i = 0;
@@ -0,0 +1,90 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.conn;
+
+import org.apache.http.conn.routing.HttpRoute;
+
+/**
+ * Listener notified of connection pool events such as connection leases,
+ * lease timeouts and connection closures. Events are fired on the thread
+ * that triggered them, usually a request execution thread. Implementations
+ * must be thread-safe and should do no more than cheap counter updates.
+ *
+ * @since 4.3
+ */
+public interface ConnPoolListener {
+
+    /**
+     * Triggered when a connection has been leased from the pool.
+     *
+     * @param route the route of the connection.
+     * @param waitTime time in milliseconds spent waiting for the connection.
+     * @param reused <code>true</code> if an open persistent connection has
+     *   been leased, <code>false</code> if a new connection has to be opened.
+     */
+    void connectionLeased(HttpRoute route, long waitTime, boolean reused);
+
+    /**
+     * Triggered when a connection request has timed out waiting for
+     * a connection from the pool.
+     *
+     * @param route the requested route.
+     * @param waitTime time in milliseconds spent waiting for a connection.
+     */
+    void connectionLeaseTimeout(HttpRoute route, long waitTime);
+
+    /**
+     * Triggered when a connection to the route has been established.
+     *
+     * @param route the route of the connection.
+     * @param connectTime time in milliseconds spent opening the connection.
+     */
+    void connectionOpened(HttpRoute route, long connectTime);
+
+    /**
+     * Triggered when a connection has been released back to the pool.
+     *
+     * @param route the route of the connection.
+     * @param reusable <code>true</code> if the connection can be kept alive.
+     */
+    void connectionReleased(HttpRoute route, boolean reusable);
+
+    /**
+     * Triggered when an idle connection has been found stale.
+     *
+     * @param route the route of the connection.
+     */
+    void connectionStale(HttpRoute route);
+
+    /**
+     * Triggered when a pooled connection has expired.
+     *
+     * @param route the route of the connection.
+     */
+    void connectionExpired(HttpRoute route);
+
+}
@@ -0,0 +1,346 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.conn.util;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.http.annotation.Immutable;
+import org.apache.http.client.utils.Rfc3492Idn;
+import org.apache.http.util.Args;
+
+/**
+ * Utility class that can test if DNS names match the content of the Public
+ * Suffix List (<a href="http://publicsuffix.org/">publicsuffix.org</a>).
+ * <p/>
+ * Suffix and exception rules are compiled into an immutable trie of domain
+ * labels in reverse order. Rules may contain the <code>*</code> wildcard
+ * in place of a label. Every rule containing non-ASCII characters is added
+ * to the trie both in its Unicode and its ASCII compatible (Punycode) form,
+ * so names can be looked up in either form. Lookups do not allocate any
+ * intermediate objects and are case-insensitive.
+ *
+ * @since 4.3
+ */
+@Immutable
+public final class PublicSuffixMatcher {
+
+    private static final String WILDCARD = "*";
+
+    private final Node root;
+
+    public PublicSuffixMatcher(final Collection<String> rules, final Collection<String> exceptions) {
+        super();
+        Args.notNull(rules, "Domain suffix rules");
+        Rfc3492Idn idn = new Rfc3492Idn();
+        NodeBuilder builder = new NodeBuilder();
+        for (String rule: rules) {
+            add(builder, idn, rule, false);
+        }
+        if (exceptions != null) {
+            for (String exception: exceptions) {
+                add(builder, idn, exception, true);
+            }
+        }
+        this.root = builder.build();
+    }
+
+    private static void add(
+            final NodeBuilder root, final Rfc3492Idn idn, final String rule, final boolean exception) {
+        String s = rule.toLowerCase(Locale.ENGLISH);
+        if (s.startsWith(".")) {
+            s = s.substring(1);
+        }
+        if (s.length() == 0) {
+            return;
+        }
+        root.add(s, exception);
+        String ascii = idn.toASCII(s);
+        if (!ascii.equals(s)) {
+            root.add(ascii, exception);
+        }
+    }
+
+    /**
+     * Determines the start index of the public suffix of the given domain
+     * or <code>-1</code> if no rule matches the domain.
+     */
+    private int publicSuffixStart(final String domain, final int offset) {
+        int end = domain.length();
+        if (end > offset && domain.charAt(end - 1) == '.') {
+            end--;
+        }
+        int match = match(this.root, domain, offset, end, end);
+        return match < -1 ? -2 - match : match;
+    }
+
+    /**
+     * Matches the label of the given domain ending at <code>end</code>
+     * against both the exact and the wildcard child of the given node, and
+     * the remaining labels against their descendants.
+     *
+     * @return the start index of the longest matching suffix rule,
+     *   <code>-2 - index</code> of the public suffix determined by the
+     *   longest matching exception rule, or <code>-1</code> if no rule matches
+     */
+    private static int match(
+            final Node node, final String domain, final int offset, final int end, final int limit) {
+        if (end <= offset) {
+            return -1;
+        }
+        int dot = domain.lastIndexOf('.', end - 1);
+        int start = dot >= offset ? dot + 1 : offset;
+        int result = -1;
+        Node child = node.find(domain, start, end);
+        if (child != null) {
+            result = visit(child, domain, offset, start, end, limit);
+        }
+        if (node.wildcard != null) {
+            result = prevailing(result, visit(node.wildcard, domain, offset, start, end, limit));
+        }
+        return result;
+    }
+
+    private static int visit(
+            final Node node, final String domain, final int offset,
+            final int start, final int end, final int limit) {
+        if (node.exception) {
+            // The public suffix of an exception rule is the rule without its leftmost label
+            return end < limit ? -2 - (end + 1) : -1;
+        }
+        return prevailing(node.rule ? start : -1, match(node, domain, offset, start - 1, limit));
+    }
+
+    /**
+     * Selects the prevailing one of two match results: exception rules take
+     * priority over suffix rules, otherwise the longer rule wins.
+     */
+    private static int prevailing(final int match1, final int match2) {
+        if (match1 < -1 && match2 < -1) {
+            return Math.max(match1, match2);
+        }
+        if (match1 < -1 || match2 < -1) {
+            return Math.min(match1, match2);
+        }
+        if (match1 == -1) {
+            return match2;
+        }
+        if (match2 == -1) {
+            return match1;
+        }
+        return Math.min(match1, match2);
+    }
+
+    private static int skipLeadingDot(final String domain) {
+        return domain.length() > 0 && domain.charAt(0) == '.' ? 1 : 0;
+    }
+
+    /**
+     * Tests whether the given domain is a public suffix, that is, whether
+     * the entire domain is matched by a suffix rule and not by an exception
+     * rule. A leading dot is ignored.
+     */
+    public boolean isPublicSuffix(final String domain) {
+        if (domain == null) {
+            return false;
+        }
+        int offset = skipLeadingDot(domain);
+        return domain.length() > offset && publicSuffixStart(domain, offset) == offset;
+    }
+
+    /**
+     * Returns the public suffix of the given domain. If no rule matches
+     * the domain, its last label is considered the public suffix as
+     * required by the Public Suffix List algorithm.
+     *
+     * @return the public suffix or <code>null</code> if the domain is empty.
+     */
+    public String getPublicSuffix(final String domain) {
+        if (domain == null) {
+            return null;
+        }
+        int offset = skipLeadingDot(domain);
+        int end = domain.length();
+        if (end > offset && domain.charAt(end - 1) == '.') {
+            end--;
+        }
+        if (end <= offset) {
+            return null;
+        }
+        int start = publicSuffixStart(domain, offset);
+        if (start == -1) {
+            start = Math.max(domain.lastIndexOf('.', end - 1) + 1, offset);
+        }
+        return domain.substring(start, end).toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Returns the registrable domain of the given domain, that is, its public
+     * suffix plus one more label.
+     *
+     * @return the registrable domain or <code>null</code> if the domain is empty
+     *   or is itself a public suffix.
+     */
+    public String getRegistrableDomain(final String domain) {
+        if (domain == null) {
+            return null;
+        }
+        int offset = skipLeadingDot(domain);
+        int end = domain.length();
+        if (end > offset && domain.charAt(end - 1) == '.') {
+            end--;
+        }
+        if (end <= offset) {
+            return null;
+        }
+        int start = publicSuffixStart(domain, offset);
+        if (start == -1) {
+            start = Math.max(domain.lastIndexOf('.', end - 1) + 1, offset);
+        }
+        if (start <= offset) {
+            return null;
+        }
+        int dot = domain.lastIndexOf('.', start - 2);
+        int registrableStart = dot >= offset ? dot + 1 : offset;
+        return domain.substring(registrableStart, end).toLowerCase(Locale.ENGLISH);
+    }
+
+    static final class Node {
+
+        private static final String[] NO_LABELS = new String[0];
+        private static final Node[] NO_NODES = new Node[0];
+
+        final String[] labels;
+        final Node[] children;
+        final Node wildcard;
+        final boolean rule;
+        final boolean exception;
+
+        Node(final String[] labels, final Node[] children, final Node wildcard,
+                final boolean rule, final boolean exception) {
+            super();
+            this.labels = labels != null ? labels : NO_LABELS;
+            this.children = children != null ? children : NO_NODES;
+            this.wildcard = wildcard;
+            this.rule = rule;
+            this.exception = exception;
+        }
+
+        /**
+         * Finds the child node for the label spanning
+         * <code>[start, end)</code> of the given domain.
+         */
+        Node find(final String domain, final int start, final int end) {
+            int low = 0;
+            int high = this.labels.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compare(this.labels[mid], domain, start, end);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return this.children[mid];
+                }
+            }
+            return null;
+        }
+
+        private static int compare(
+                final String label, final String domain, final int start, final int end) {
+            int len1 = label.length();
+            int len2 = end - start;
+            int n = Math.min(len1, len2);
+            for (int i = 0; i < n; i++) {
+                char c1 = label.charAt(i);
+                char c2 = domain.charAt(start + i);
+                if (c2 >= 'A' && c2 <= 'Z') {
+                    c2 = (char) (c2 + ('a' - 'A'));
+                } else if (c2 >= 0x80) {
+                    c2 = Character.toLowerCase(c2);
+                }
+                if (c1 != c2) {
+                    return c1 - c2;
+                }
+            }
+            return len1 - len2;
+        }
+
+    }
+
+    static final class NodeBuilder {
+
+        private final Map<String, NodeBuilder> children = new TreeMap<String, NodeBuilder>();
+        private boolean rule;
+        private boolean exception;
+
+        void add(final String domain, final boolean exception) {
+            NodeBuilder node = this;
+            int end = domain.length();
+            while (end > 0) {
+                int dot = domain.lastIndexOf('.', end - 1);
+                String label = domain.substring(dot + 1, end);
+                NodeBuilder child = node.children.get(label);
+                if (child == null) {
+                    child = new NodeBuilder();
+                    node.children.put(label, child);
+                }
+                node = child;
+                end = dot;
+            }
+            if (exception) {
+                node.exception = true;
+            } else {
+                node.rule = true;
+            }
+        }
+
+        Node build() {
+            NodeBuilder wildcardBuilder = this.children.get(WILDCARD);
+            int size = this.children.size() - (wildcardBuilder != null ? 1 : 0);
+            String[] labels = new String[size];
+            Node[] nodes = new Node[size];
+            int i = 0;
+            // TreeMap keys are sorted in the same order as used by Node#compare
+            for (Map.Entry<String, NodeBuilder> entry: this.children.entrySet()) {
+                if (entry.getValue() != wildcardBuilder) {
+                    labels[i] = entry.getKey();
+                    nodes[i] = entry.getValue().build();
+                    i++;
+                }
+            }
+            return new Node(labels, nodes,
+                    wildcardBuilder != null ? wildcardBuilder.build() : null,
+                    this.rule, this.exception);
+        }
+
+    }
+
+}
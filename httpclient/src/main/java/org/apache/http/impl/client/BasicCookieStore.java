@@ -26,12 +26,17 @@
  */
 package org.apache.http.impl.client;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.http.annotation.GuardedBy;
 import org.apache.http.annotation.ThreadSafe;
@@ -50,12 +55,29 @@ public class BasicCookieStore implements CookieStore, Serializable {
 
     private static final long serialVersionUID = -7581093305228232025L;
 
-    @GuardedBy("this")
+    @GuardedBy("lock")
     private final TreeSet<Cookie> cookies;
 
+    private transient ReadWriteLock lock;
+
     public BasicCookieStore() {
         super();
         this.cookies = new TreeSet<Cookie>(new CookieIdentityComparator());
+        this.lock = new ReentrantReadWriteLock();
+    }
+
+    private void writeObject(final ObjectOutputStream stream) throws IOException {
+        this.lock.readLock().lock();
+        try {
+            stream.defaultWriteObject();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    private void readObject(final ObjectInputStream stream) throws IOException, ClassNotFoundException {
+        stream.defaultReadObject();
+        this.lock = new ReentrantReadWriteLock();
     }
 
     /**
@@ -68,12 +90,17 @@ public class BasicCookieStore implements CookieStore, Serializable {
      * @see #addCookies(Cookie[])
      *
      */
-    public synchronized void addCookie(Cookie cookie) {
+    public void addCookie(Cookie cookie) {
         if (cookie != null) {
-            // first remove any old cookie that is equivalent
-            cookies.remove(cookie);
-            if (!cookie.isExpired(new Date())) {
-                cookies.add(cookie);
+            this.lock.writeLock().lock();
+            try {
+                // first remove any old cookie that is equivalent
+                cookies.remove(cookie);
+                if (!cookie.isExpired(new Date())) {
+                    cookies.add(cookie);
+                }
+            } finally {
+                this.lock.writeLock().unlock();
             }
         }
     }
@@ -88,10 +115,15 @@ public class BasicCookieStore implements CookieStore, Serializable {
      * @see #addCookie(Cookie)
      *
      */
-    public synchronized void addCookies(Cookie[] cookies) {
+    public void addCookies(Cookie[] cookies) {
         if (cookies != null) {
-            for (Cookie cooky : cookies) {
-                this.addCookie(cooky);
+            this.lock.writeLock().lock();
+            try {
+                for (Cookie cooky : cookies) {
+                    this.addCookie(cooky);
+                }
+            } finally {
+                this.lock.writeLock().unlock();
             }
         }
     }
@@ -102,9 +134,14 @@ public class BasicCookieStore implements CookieStore, Serializable {
      *
      * @return an array of {@link Cookie cookies}.
      */
-    public synchronized List<Cookie> getCookies() {
-        //create defensive copy so it won't be concurrently modified
-        return new ArrayList<Cookie>(cookies);
+    public List<Cookie> getCookies() {
+        this.lock.readLock().lock();
+        try {
+            //create defensive copy so it won't be concurrently modified
+            return new ArrayList<Cookie>(cookies);
+        } finally {
+            this.lock.readLock().unlock();
+        }
     }
 
     /**
@@ -115,30 +152,45 @@ public class BasicCookieStore implements CookieStore, Serializable {
      *
      * @see Cookie#isExpired(Date)
      */
-    public synchronized boolean clearExpired(final Date date) {
+    public boolean clearExpired(final Date date) {
         if (date == null) {
             return false;
         }
-        boolean removed = false;
-        for (Iterator<Cookie> it = cookies.iterator(); it.hasNext();) {
-            if (it.next().isExpired(date)) {
-                it.remove();
-                removed = true;
+        this.lock.writeLock().lock();
+        try {
+            boolean removed = false;
+            for (Iterator<Cookie> it = cookies.iterator(); it.hasNext();) {
+                if (it.next().isExpired(date)) {
+                    it.remove();
+                    removed = true;
+                }
             }
+            return removed;
+        } finally {
+            this.lock.writeLock().unlock();
         }
-        return removed;
     }
 
     /**
      * Clears all cookies.
      */
-    public synchronized void clear() {
-        cookies.clear();
+    public void clear() {
+        this.lock.writeLock().lock();
+        try {
+            cookies.clear();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
     }
 
     @Override
-    public synchronized String toString() {
-        return cookies.toString();
+    public String toString() {
+        this.lock.readLock().lock();
+        try {
+            return cookies.toString();
+        } finally {
+            this.lock.readLock().unlock();
+        }
     }
 
 }
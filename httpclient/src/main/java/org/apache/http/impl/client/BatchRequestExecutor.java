@@ -0,0 +1,293 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.ProtocolException;
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.routing.HttpRoutePlanner;
+import org.apache.http.impl.conn.DefaultRoutePlanner;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.util.Args;
+
+/**
+ * Executes batches of requests in parallel using a blocking
+ * {@link HttpClient}.
+ * <p/>
+ * Requests of a batch are grouped by the route determined by the given
+ * {@link HttpRoutePlanner}. At most a fixed number of requests per route,
+ * by default the maximum number of connections per route of the
+ * connection pool, are executed at the same time; further requests for
+ * the same route wait for one of them to complete rather than for a
+ * pooled connection. The limit applies to each batch individually.
+ * <p/>
+ * Each batch may be given a deadline, upon which the requests that have
+ * not completed yet get cancelled.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class BatchRequestExecutor implements Closeable {
+
+    private final HttpClient httpclient;
+    private final HttpRoutePlanner routePlanner;
+    private final ExecutorService executorService;
+    private final ConnPoolControl<HttpRoute> connPool;
+    private final int maxPerRoute;
+    private final ScheduledExecutorService scheduler;
+
+    BatchRequestExecutor(
+            final HttpClient httpclient,
+            final HttpRoutePlanner routePlanner,
+            final ExecutorService executorService,
+            final ConnPoolControl<HttpRoute> connPool,
+            final int maxPerRoute) {
+        super();
+        Args.notNull(httpclient, "HTTP client");
+        Args.notNull(executorService, "Executor service");
+        this.httpclient = httpclient;
+        this.routePlanner = routePlanner != null ? routePlanner : new DefaultRoutePlanner(null);
+        this.executorService = executorService;
+        this.connPool = connPool;
+        this.maxPerRoute = maxPerRoute;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory());
+    }
+
+    /**
+     * Creates an executor limiting the number of concurrent requests per
+     * route to the maximum number of connections per route of the given
+     * connection pool.
+     *
+     * @param httpclient the client executing the requests
+     * @param routePlanner the route planner the client has been configured
+     *   with, or <code>null</code> for the default one
+     * @param executorService the executor service running the requests
+     * @param connPool the connection pool of the client
+     */
+    public BatchRequestExecutor(
+            final HttpClient httpclient,
+            final HttpRoutePlanner routePlanner,
+            final ExecutorService executorService,
+            final ConnPoolControl<HttpRoute> connPool) {
+        this(httpclient, routePlanner, executorService,
+                Args.notNull(connPool, "Connection pool"), 0);
+    }
+
+    /**
+     * Creates an executor running at most <code>maxPerRoute</code> requests
+     * per route at the same time.
+     */
+    public BatchRequestExecutor(
+            final HttpClient httpclient,
+            final HttpRoutePlanner routePlanner,
+            final ExecutorService executorService,
+            final int maxPerRoute) {
+        this(httpclient, routePlanner, executorService, null,
+                Args.positive(maxPerRoute, "Max per route"));
+    }
+
+    /**
+     * Starts executing the given requests, whose responses are processed
+     * by the given response handler.
+     *
+     * @param requests the requests to execute; their URIs must be absolute
+     * @param responseHandler the response handler
+     * @param timeout the time after which unfinished requests get cancelled,
+     *   or a non-positive value for no deadline
+     * @param tunit the unit of the timeout
+     */
+    public <T> RequestBatch<T> execute(
+            final Collection<? extends HttpUriRequest> requests,
+            final ResponseHandler<T> responseHandler,
+            final long timeout, final TimeUnit tunit) {
+        Args.notNull(requests, "Requests");
+        Args.notNull(responseHandler, "Response handler");
+        final RequestBatch<T> batch = new RequestBatch<T>(this.executorService);
+        final List<HttpRoute> routes = new ArrayList<HttpRoute>(requests.size());
+        for (final HttpUriRequest request: requests) {
+            Args.notNull(request, "HTTP request");
+            HttpRoute route;
+            Callable<T> callable;
+            try {
+                route = determineRoute(request);
+                callable = new RequestCallable<T>(request, responseHandler);
+            } catch (HttpException ex) {
+                route = null;
+                callable = new FailedCallable<T>(ex);
+            }
+            final BatchCallback<T> callback = new BatchCallback<T>(batch);
+            final HttpRequestFutureTask<T> task = new HttpRequestFutureTask<T>(
+                    request, callable, callback, null);
+            callback.task = task;
+            batch.add(task);
+            routes.add(route);
+        }
+        if (timeout > 0) {
+            batch.setDeadline(this.scheduler.schedule(new Runnable() {
+
+                public void run() {
+                    batch.cancel();
+                }
+
+            }, timeout, tunit != null ? tunit : TimeUnit.MILLISECONDS));
+        }
+        final Map<HttpRoute, RequestBatch.RouteQueue<T>> queues =
+            new HashMap<HttpRoute, RequestBatch.RouteQueue<T>>();
+        final List<HttpRequestFutureTask<T>> tasks = batch.getTasks();
+        for (int i = 0; i < tasks.size(); i++) {
+            final HttpRoute route = routes.get(i);
+            if (route != null) {
+                RequestBatch.RouteQueue<T> queue = queues.get(route);
+                if (queue == null) {
+                    queue = new RequestBatch.RouteQueue<T>(getMaxPerRoute(route));
+                    queues.put(route, queue);
+                }
+                batch.dispatch(tasks.get(i), queue);
+            } else {
+                tasks.get(i).run();
+            }
+        }
+        return batch;
+    }
+
+    private HttpRoute determineRoute(final HttpUriRequest request) throws HttpException {
+        final URI uri = request.getURI();
+        final HttpHost target = uri.isAbsolute() ? URIUtils.extractHost(uri) : null;
+        if (target == null) {
+            throw new ProtocolException("URI does not specify a valid host name: " + uri);
+        }
+        return this.routePlanner.determineRoute(target, request, new BasicHttpContext());
+    }
+
+    private int getMaxPerRoute(final HttpRoute route) {
+        if (this.connPool != null) {
+            return Math.max(this.connPool.getMaxPerRoute(route), 1);
+        }
+        return this.maxPerRoute;
+    }
+
+    /**
+     * Shuts down the executor service. Requests already scheduled are still
+     * executed, but batch deadlines are no longer enforced. The HTTP client
+     * is left open.
+     */
+    public void close() throws IOException {
+        this.scheduler.shutdownNow();
+        this.executorService.shutdown();
+    }
+
+    class RequestCallable<V> implements Callable<V> {
+
+        private final HttpUriRequest request;
+        private final ResponseHandler<V> responseHandler;
+
+        RequestCallable(final HttpUriRequest request, final ResponseHandler<V> responseHandler) {
+            super();
+            this.request = request;
+            this.responseHandler = responseHandler;
+        }
+
+        public V call() throws Exception {
+            return httpclient.execute(this.request, this.responseHandler);
+        }
+
+    }
+
+    static class FailedCallable<V> implements Callable<V> {
+
+        private final HttpException cause;
+
+        FailedCallable(final HttpException cause) {
+            super();
+            this.cause = cause;
+        }
+
+        public V call() throws Exception {
+            throw new ClientProtocolException(this.cause);
+        }
+
+    }
+
+    static class BatchCallback<T> implements FutureCallback<T> {
+
+        private final RequestBatch<T> batch;
+        private volatile HttpRequestFutureTask<T> task;
+
+        BatchCallback(final RequestBatch<T> batch) {
+            super();
+            this.batch = batch;
+        }
+
+        public void completed(final T result) {
+            this.batch.taskDone(this.task);
+        }
+
+        public void failed(final Exception ex) {
+            this.batch.taskDone(this.task);
+        }
+
+        public void cancelled() {
+            this.batch.taskDone(this.task);
+        }
+
+    }
+
+    static class DefaultThreadFactory implements ThreadFactory {
+
+        public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(r, "Batch deadline scheduler");
+            t.setDaemon(true);
+            return t;
+        }
+
+    }
+
+}
@@ -24,26 +24,31 @@
  * <http://www.apache.org/>.
  *
  */
-
 package org.apache.http.impl.client;
 
 import java.io.IOException;
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
+import java.util.Locale;
 
+import org.apache.http.Header;
+import org.apache.http.HeaderIterator;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.StatusLine;
 import org.apache.http.annotation.NotThreadSafe;
 import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.params.HttpParams;
 import org.apache.http.util.EntityUtils;
 
 /**
+ * A proxy class that enhances an arbitrary {@link HttpResponse} with
+ * a {@link java.io.Closeable#close()} method that consumes the response
+ * content.
+ *
  * @since 4.3
  */
 @NotThreadSafe
-class CloseableHttpResponseProxy implements InvocationHandler {
+class CloseableHttpResponseProxy implements CloseableHttpResponse {
 
     private final HttpResponse original;
 
@@ -57,31 +62,126 @@ class CloseableHttpResponseProxy implements InvocationHandler {
         EntityUtils.consume(entity);
     }
 
-    public Object invoke(
-            final Object proxy, final Method method, final Object[] args) throws Throwable {
-        String mname = method.getName();
-        if (mname.equals("close")) {
-            close();
-            return null;
-        } else {
-            try {
-                return method.invoke(original, args);
-            } catch (InvocationTargetException ex) {
-                Throwable cause = ex.getCause();
-                if (cause != null) {
-                    throw cause;
-                } else {
-                    throw ex;
-                }
-            }
-        }
+    public StatusLine getStatusLine() {
+        return original.getStatusLine();
+    }
+
+    public void setStatusLine(final StatusLine statusline) {
+        original.setStatusLine(statusline);
+    }
+
+    public void setStatusLine(final ProtocolVersion ver, final int code) {
+        original.setStatusLine(ver, code);
+    }
+
+    public void setStatusLine(final ProtocolVersion ver, final int code, final String reason) {
+        original.setStatusLine(ver, code, reason);
+    }
+
+    public void setStatusCode(final int code) throws IllegalStateException {
+        original.setStatusCode(code);
+    }
+
+    public void setReasonPhrase(final String reason) throws IllegalStateException {
+        original.setReasonPhrase(reason);
+    }
+
+    public HttpEntity getEntity() {
+        return original.getEntity();
+    }
+
+    public void setEntity(final HttpEntity entity) {
+        original.setEntity(entity);
+    }
+
+    public Locale getLocale() {
+        return original.getLocale();
+    }
+
+    public void setLocale(final Locale loc) {
+        original.setLocale(loc);
+    }
+
+    public ProtocolVersion getProtocolVersion() {
+        return original.getProtocolVersion();
+    }
+
+    public boolean containsHeader(final String name) {
+        return original.containsHeader(name);
+    }
+
+    public Header[] getHeaders(final String name) {
+        return original.getHeaders(name);
+    }
+
+    public Header getFirstHeader(final String name) {
+        return original.getFirstHeader(name);
+    }
+
+    public Header getLastHeader(final String name) {
+        return original.getLastHeader(name);
+    }
+
+    public Header[] getAllHeaders() {
+        return original.getAllHeaders();
+    }
+
+    public void addHeader(final Header header) {
+        original.addHeader(header);
+    }
+
+    public void addHeader(final String name, final String value) {
+        original.addHeader(name, value);
+    }
+
+    public void setHeader(final Header header) {
+        original.setHeader(header);
+    }
+
+    public void setHeader(final String name, final String value) {
+        original.setHeader(name, value);
+    }
+
+    public void setHeaders(final Header[] headers) {
+        original.setHeaders(headers);
+    }
+
+    public void removeHeader(final Header header) {
+        original.removeHeader(header);
+    }
+
+    public void removeHeaders(final String name) {
+        original.removeHeaders(name);
+    }
+
+    public HeaderIterator headerIterator() {
+        return original.headerIterator();
+    }
+
+    public HeaderIterator headerIterator(final String name) {
+        return original.headerIterator(name);
+    }
+
+    @Deprecated
+    public HttpParams getParams() {
+        return original.getParams();
+    }
+
+    @Deprecated
+    public void setParams(final HttpParams params) {
+        original.setParams(params);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("CloseableHttpResponseProxy{");
+        sb.append(original);
+        sb.append('}');
+        return sb.toString();
     }
 
     public static CloseableHttpResponse newProxy(final HttpResponse original) {
-        return (CloseableHttpResponse) Proxy.newProxyInstance(
-                CloseableHttpResponseProxy.class.getClassLoader(),
-                new Class<?>[] { CloseableHttpResponse.class },
-                new CloseableHttpResponseProxy(original));
+        return new CloseableHttpResponseProxy(original);
     }
 
 }
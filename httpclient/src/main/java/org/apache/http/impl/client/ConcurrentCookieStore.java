@@ -0,0 +1,290 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.client.CookieStore;
+import org.apache.http.client.IndexedCookieStore;
+import org.apache.http.conn.util.InetAddressUtils;
+import org.apache.http.cookie.Cookie;
+import org.apache.http.cookie.CookieIdentityComparator;
+import org.apache.http.cookie.CookieOrigin;
+import org.apache.http.util.Args;
+
+/**
+ * {@link CookieStore} implementation optimized for large numbers of cookies
+ * and concurrent access.
+ * <p/>
+ * Cookies are indexed by the registrable part of their domain (approximated
+ * as the last two domain labels) so that looking up cookies for a request
+ * only examines cookies that could possibly match the request host. Each
+ * index bucket is an immutable array replaced atomically on modification,
+ * hence lookups never block. Expired cookies are purged lazily whenever
+ * a lookup encounters them.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class ConcurrentCookieStore implements IndexedCookieStore, Serializable {
+
+    private static final long serialVersionUID = 2840592573218428374L;
+
+    private static final Cookie[] EMPTY = new Cookie[0];
+
+    private final ConcurrentHashMap<String, Cookie[]> buckets;
+    private final CookieIdentityComparator comparator;
+
+    public ConcurrentCookieStore() {
+        super();
+        this.buckets = new ConcurrentHashMap<String, Cookie[]>();
+        this.comparator = new CookieIdentityComparator();
+    }
+
+    private static boolean isIPAddress(final String host) {
+        return InetAddressUtils.isIPv4Address(host) || InetAddressUtils.isIPv6Address(host);
+    }
+
+    /**
+     * Computes the index key for the given host or cookie domain. Single label
+     * domains are treated as belonging to the <code>local</code> domain
+     * consistently with {@link CookieIdentityComparator}.
+     */
+    static String indexKey(final String domain) {
+        if (domain == null) {
+            return "";
+        }
+        String s = domain.toLowerCase(Locale.ENGLISH);
+        if (s.startsWith(".")) {
+            s = s.substring(1);
+        }
+        if (s.length() == 0 || isIPAddress(s)) {
+            return s;
+        }
+        int last = s.lastIndexOf('.');
+        if (last == -1) {
+            return s + ".local";
+        }
+        int prev = s.lastIndexOf('.', last - 1);
+        return prev == -1 ? s : s.substring(prev + 1);
+    }
+
+    private static boolean pathMatches(final String cookiePath, final String requestPath) {
+        if (cookiePath == null || requestPath == null) {
+            return true;
+        }
+        String path = cookiePath;
+        if (path.length() > 1 && path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return requestPath.startsWith(path);
+    }
+
+    private Cookie[] without(final Cookie[] current, final Cookie cookie) {
+        for (int i = 0; i < current.length; i++) {
+            if (this.comparator.compare(current[i], cookie) == 0) {
+                Cookie[] updated = new Cookie[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                return updated;
+            }
+        }
+        return current;
+    }
+
+    private boolean swap(final String key, final Cookie[] current, final Cookie[] updated) {
+        if (current == null) {
+            return updated.length == 0 || this.buckets.putIfAbsent(key, updated) == null;
+        }
+        if (current == updated) {
+            return true;
+        }
+        if (updated.length == 0) {
+            return this.buckets.remove(key, current);
+        }
+        return this.buckets.replace(key, current, updated);
+    }
+
+    /**
+     * Adds an {@link Cookie HTTP cookie}, replacing any existing equivalent cookies.
+     * If the given cookie has already expired it will not be added, but existing
+     * values will still be removed.
+     *
+     * @param cookie the {@link Cookie cookie} to be added
+     */
+    public void addCookie(final Cookie cookie) {
+        if (cookie == null) {
+            return;
+        }
+        String key = indexKey(cookie.getDomain());
+        boolean expired = cookie.isExpired(new Date());
+        for (;;) {
+            Cookie[] current = this.buckets.get(key);
+            Cookie[] updated = current != null ? without(current, cookie) : EMPTY;
+            if (!expired) {
+                Cookie[] tmp = new Cookie[updated.length + 1];
+                System.arraycopy(updated, 0, tmp, 0, updated.length);
+                tmp[updated.length] = cookie;
+                updated = tmp;
+            }
+            if (swap(key, current, updated)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Adds an array of {@link Cookie HTTP cookies}. Cookies are added individually and
+     * in the given array order.
+     *
+     * @see #addCookie(Cookie)
+     */
+    public void addCookies(final Cookie[] cookies) {
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                addCookie(cookie);
+            }
+        }
+    }
+
+    /**
+     * Returns all cookies contained in this store ordered by their identity.
+     */
+    public List<Cookie> getCookies() {
+        List<Cookie> result = new ArrayList<Cookie>();
+        for (Cookie[] bucket: this.buckets.values()) {
+            for (Cookie cookie: bucket) {
+                result.add(cookie);
+            }
+        }
+        Collections.sort(result, this.comparator);
+        return result;
+    }
+
+    public List<Cookie> getCookies(final CookieOrigin origin, final Date date) {
+        Args.notNull(origin, "Cookie origin");
+        List<Cookie> result = new ArrayList<Cookie>();
+        String host = origin.getHost();
+        String key = indexKey(host);
+        collect(key, origin.getPath(), date, result);
+        // Cookies set for a single label domain (such as a top level domain)
+        // are indexed separately
+        if (!isIPAddress(key)) {
+            int i = key.lastIndexOf('.');
+            if (i != -1) {
+                String topKey = indexKey(key.substring(i + 1));
+                if (!topKey.equals(key)) {
+                    collect(topKey, origin.getPath(), date, result);
+                }
+            }
+        }
+        // Keep the same ordering as BasicCookieStore
+        if (result.size() > 1) {
+            Collections.sort(result, this.comparator);
+        }
+        return result;
+    }
+
+    private void collect(
+            final String key, final String path, final Date date, final List<Cookie> result) {
+        Cookie[] bucket = this.buckets.get(key);
+        if (bucket == null) {
+            return;
+        }
+        boolean expired = false;
+        for (Cookie cookie: bucket) {
+            if (date != null && cookie.isExpired(date)) {
+                expired = true;
+            } else if (pathMatches(cookie.getPath(), path)) {
+                result.add(cookie);
+            }
+        }
+        if (expired) {
+            purge(key, date);
+        }
+    }
+
+    private boolean purge(final String key, final Date date) {
+        for (;;) {
+            Cookie[] current = this.buckets.get(key);
+            if (current == null) {
+                return false;
+            }
+            List<Cookie> retained = new ArrayList<Cookie>(current.length);
+            for (Cookie cookie: current) {
+                if (!cookie.isExpired(date)) {
+                    retained.add(cookie);
+                }
+            }
+            if (retained.size() == current.length) {
+                return false;
+            }
+            if (swap(key, current, retained.toArray(new Cookie[retained.size()]))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes all of {@link Cookie cookies} in this store that have expired by
+     * the specified {@link java.util.Date date}.
+     *
+     * @return true if any cookies were purged.
+     */
+    public boolean clearExpired(final Date date) {
+        if (date == null) {
+            return false;
+        }
+        boolean removed = false;
+        for (String key: this.buckets.keySet()) {
+            if (purge(key, date)) {
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Clears all cookies.
+     */
+    public void clear() {
+        this.buckets.clear();
+    }
+
+    @Override
+    public String toString() {
+        return getCookies().toString();
+    }
+
+}
@@ -0,0 +1,293 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.Args;
+
+/**
+ * Executes HTTP requests asynchronously by running them on an
+ * {@link ExecutorService} with a blocking {@link HttpClient}.
+ * <p/>
+ * Every request is represented by an {@link HttpRequestFutureTask}, which
+ * notifies an optional {@link FutureCallback} on completion and aborts the
+ * request when cancelled. When constructed with request limits, the service
+ * manages its own pool of worker threads and applies back-pressure: once the
+ * maximum number of requests are being executed or waiting for a worker,
+ * {@link #execute(HttpUriRequest, HttpContext, ResponseHandler, FutureCallback)}
+ * blocks until one of them completes. Concurrency should not exceed the
+ * number of connections the client may open, otherwise workers merely wait
+ * for connections to be released back to the pool.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class FutureRequestExecutionService implements Closeable {
+
+    private final HttpClient httpclient;
+    private final ExecutorService executorService;
+    private final Semaphore permits;
+
+    private final AtomicInteger activeCount;
+    private final AtomicLong successfulCount;
+    private final AtomicLong failedCount;
+    private final AtomicLong cancelledCount;
+
+    FutureRequestExecutionService(
+            final HttpClient httpclient,
+            final ExecutorService executorService,
+            final Semaphore permits) {
+        super();
+        Args.notNull(httpclient, "HTTP client");
+        Args.notNull(executorService, "Executor service");
+        this.httpclient = httpclient;
+        this.executorService = executorService;
+        this.permits = permits;
+        this.activeCount = new AtomicInteger();
+        this.successfulCount = new AtomicLong();
+        this.failedCount = new AtomicLong();
+        this.cancelledCount = new AtomicLong();
+    }
+
+    /**
+     * Creates a service running requests on the given executor service,
+     * which is shut down when the service gets closed. No limit is imposed
+     * on the number of pending requests besides the ones enforced by the
+     * executor service itself.
+     */
+    public FutureRequestExecutionService(
+            final HttpClient httpclient,
+            final ExecutorService executorService) {
+        this(httpclient, executorService, null);
+    }
+
+    /**
+     * Creates a service running at most <code>maxConcurrentRequests</code>
+     * requests at a time on worker threads created by the given thread
+     * factory, with at most <code>maxQueuedRequests</code> further requests
+     * waiting for a worker.
+     * <p/>
+     * Request execution never holds a monitor while blocking on I/O or on a
+     * connection lease, so the factory may also create lightweight threads
+     * where the runtime provides them.
+     */
+    public FutureRequestExecutionService(
+            final HttpClient httpclient,
+            final int maxConcurrentRequests,
+            final int maxQueuedRequests,
+            final ThreadFactory threadFactory) {
+        this(httpclient,
+                createExecutorService(maxConcurrentRequests, threadFactory),
+                new Semaphore(maxConcurrentRequests + Args.notNegative(maxQueuedRequests,
+                        "Max queued requests"), true));
+    }
+
+    /**
+     * Creates a service running at most <code>maxConcurrentRequests</code>
+     * requests at a time on its own daemon worker threads, with at most
+     * <code>maxQueuedRequests</code> further requests waiting for a worker.
+     */
+    public FutureRequestExecutionService(
+            final HttpClient httpclient,
+            final int maxConcurrentRequests,
+            final int maxQueuedRequests) {
+        this(httpclient, maxConcurrentRequests, maxQueuedRequests, null);
+    }
+
+    private static ExecutorService createExecutorService(
+            final int maxConcurrentRequests, final ThreadFactory threadFactory) {
+        Args.positive(maxConcurrentRequests, "Max concurrent requests");
+        return new ThreadPoolExecutor(
+                maxConcurrentRequests, maxConcurrentRequests,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                threadFactory != null ? threadFactory : new DefaultThreadFactory());
+    }
+
+    /**
+     * Schedules the execution of the given request and returns the task
+     * representing it. The response is processed by the given response
+     * handler, which is also responsible for the result of the task. If
+     * the service has been constructed with request limits and these have
+     * been reached, the method blocks until a request completes.
+     *
+     * @throws RejectedExecutionException if the service has been closed or
+     *   the calling thread was interrupted while waiting for a request to
+     *   complete
+     */
+    public <T> HttpRequestFutureTask<T> execute(
+            final HttpUriRequest request,
+            final HttpContext context,
+            final ResponseHandler<T> responseHandler,
+            final FutureCallback<T> callback) {
+        Args.notNull(request, "HTTP request");
+        Args.notNull(responseHandler, "Response handler");
+        if (this.executorService.isShutdown()) {
+            throw new RejectedExecutionException("Execution service has been closed");
+        }
+        if (this.permits != null) {
+            try {
+                this.permits.acquire();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for a request to complete");
+            }
+        }
+        final HttpRequestFutureTask<T> task = new HttpRequestFutureTask<T>(
+                request, new RequestCallable<T>(request, context, responseHandler), callback, this);
+        try {
+            this.executorService.execute(task);
+        } catch (RejectedExecutionException ex) {
+            if (this.permits != null) {
+                this.permits.release();
+            }
+            throw ex;
+        }
+        return task;
+    }
+
+    public <T> HttpRequestFutureTask<T> execute(
+            final HttpUriRequest request,
+            final HttpContext context,
+            final ResponseHandler<T> responseHandler) {
+        return execute(request, context, responseHandler, null);
+    }
+
+    void taskDone(final HttpRequestFutureTask<?> task) {
+        if (this.permits != null) {
+            this.permits.release();
+        }
+        if (task.isCancelled()) {
+            this.cancelledCount.incrementAndGet();
+            return;
+        }
+        try {
+            task.get();
+            this.successfulCount.incrementAndGet();
+        } catch (ExecutionException ex) {
+            this.failedCount.incrementAndGet();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the number of requests currently being executed.
+     */
+    public int getActiveCount() {
+        return this.activeCount.get();
+    }
+
+    /**
+     * Returns the number of requests whose response has been processed
+     * successfully.
+     */
+    public long getSuccessfulCount() {
+        return this.successfulCount.get();
+    }
+
+    /**
+     * Returns the number of requests that failed with an exception.
+     */
+    public long getFailedCount() {
+        return this.failedCount.get();
+    }
+
+    /**
+     * Returns the number of requests that have been cancelled.
+     */
+    public long getCancelledCount() {
+        return this.cancelledCount.get();
+    }
+
+    /**
+     * Shuts down the executor service. Requests already scheduled are still
+     * executed. The HTTP client is left open.
+     */
+    public void close() throws IOException {
+        this.executorService.shutdown();
+    }
+
+    class RequestCallable<V> implements Callable<V> {
+
+        private final HttpUriRequest request;
+        private final HttpContext context;
+        private final ResponseHandler<V> responseHandler;
+
+        RequestCallable(
+                final HttpUriRequest request,
+                final HttpContext context,
+                final ResponseHandler<V> responseHandler) {
+            super();
+            this.request = request;
+            this.context = context;
+            this.responseHandler = responseHandler;
+        }
+
+        public V call() throws Exception {
+            activeCount.incrementAndGet();
+            try {
+                return httpclient.execute(this.request, this.responseHandler, this.context);
+            } finally {
+                activeCount.decrementAndGet();
+            }
+        }
+
+    }
+
+    static class DefaultThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(r, "http-request-executor-" + this.count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+
+    }
+
+}
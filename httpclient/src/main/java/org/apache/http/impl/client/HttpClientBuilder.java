@@ -35,6 +35,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.ConnectionReuseStrategy;
 import org.apache.http.Header;
@@ -68,6 +69,7 @@ import org.apache.http.config.Lookup;
 import org.apache.http.config.RegistryBuilder;
 import org.apache.http.config.SocketConfig;
 import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.DnsResolver;
 import org.apache.http.conn.HttpClientConnectionManager;
 import org.apache.http.conn.SchemePortResolver;
 import org.apache.http.conn.routing.HttpRoutePlanner;
@@ -90,6 +92,7 @@ import org.apache.http.impl.client.execchain.ProtocolExec;
 import org.apache.http.impl.client.execchain.RedirectExec;
 import org.apache.http.impl.client.execchain.RetryExec;
 import org.apache.http.impl.client.execchain.ServiceUnavailableRetryExec;
+import org.apache.http.impl.conn.CachingDnsResolver;
 import org.apache.http.impl.conn.DefaultRoutePlanner;
 import org.apache.http.impl.conn.DefaultSchemePortResolver;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
@@ -143,6 +146,7 @@ public class HttpClientBuilder {
     private LayeredConnectionSocketFactory sslSocketFactory;
     private HttpClientConnectionManager connManager;
     private SchemePortResolver schemePortResolver;
+    private DnsResolver dnsResolver;
     private ConnectionReuseStrategy reuseStrategy;
     private ConnectionKeepAliveStrategy keepAliveStrategy;
     private AuthenticationStrategy targetAuthStrategy;
@@ -180,9 +184,17 @@ public class HttpClientBuilder {
     private boolean cookieManagementDisabled;
     private boolean authCachingDisabled;
     private boolean connectionStateDisabled;
+    private boolean dnsCacheEnabled;
 
     private int maxConnTotal = 0;
     private int maxConnPerRoute = 0;
+    private int validateAfterInactivity = -1;
+    private int connectStaggerDelay = -1;
+
+    private boolean evictExpiredConnections;
+    private boolean evictIdleConnections;
+    private long maxIdleTime;
+    private TimeUnit maxIdleTimeUnit;
 
     private List<Closeable> closeables;
 
@@ -217,6 +229,17 @@ public class HttpClientBuilder {
         return this;
     }
 
+    /**
+     * Assigns {@link DnsResolver} instance.
+     * <p/>
+     * Please note this value has no effect if the connection manager is
+     * set explicitly with {@link #setConnectionManager(HttpClientConnectionManager)}.
+     */
+    public final HttpClientBuilder setDnsResolver(final DnsResolver dnsResolver) {
+        this.dnsResolver = dnsResolver;
+        return this;
+    }
+
     public final HttpClientBuilder setMaxConnTotal(int maxConnTotal) {
         this.maxConnTotal = maxConnTotal;
         return this;
@@ -227,6 +250,33 @@ public class HttpClientBuilder {
         return this;
     }
 
+    /**
+     * Enables re-validation of persistent connections that have been idle
+     * for longer than the given period (in milliseconds) when they are leased
+     * from the pool. Unless a default request config is given explicitly,
+     * the per-request stale connection check is disabled in favor of this one.
+     * <p/>
+     * Please note this value has no effect if the connection manager is
+     * set explicitly with {@link #setConnectionManager(HttpClientConnectionManager)}.
+     */
+    public final HttpClientBuilder setValidateAfterInactivity(int validateAfterInactivity) {
+        this.validateAfterInactivity = validateAfterInactivity;
+        return this;
+    }
+
+    /**
+     * Enables staggered parallel connects to multi-homed hosts: a new attempt
+     * to the next resolved address is started every <code>connectStaggerDelay</code>
+     * milliseconds and the first connection to succeed is used.
+     * <p/>
+     * Please note this value has no effect if the connection manager is
+     * set explicitly with {@link #setConnectionManager(HttpClientConnectionManager)}.
+     */
+    public final HttpClientBuilder setConnectStaggerDelay(int connectStaggerDelay) {
+        this.connectStaggerDelay = connectStaggerDelay;
+        return this;
+    }
+
     public final HttpClientBuilder setConnectionReuseStrategy(
             final ConnectionReuseStrategy reuseStrategy) {
         this.reuseStrategy = reuseStrategy;
@@ -423,6 +473,50 @@ public class HttpClientBuilder {
         return this;
     }
 
+    /**
+     * Makes this instance of HttpClient proactively evict expired connections
+     * from the connection pool using a background thread.
+     * <p/>
+     * The background thread is shut down when the client is closed.
+     */
+    public final HttpClientBuilder evictExpiredConnections() {
+        evictExpiredConnections = true;
+        return this;
+    }
+
+    /**
+     * Makes this instance of HttpClient proactively evict idle connections
+     * from the connection pool using a background thread.
+     * <p/>
+     * The background thread is shut down when the client is closed.
+     *
+     * @param maxIdleTime maximum time persistent connections can stay idle
+     *  while kept alive in the connection pool. Connections whose inactivity
+     *  period exceeds this value will get closed and evicted from the pool.
+     * @param maxIdleTimeUnit time unit for the above parameter.
+     */
+    public final HttpClientBuilder evictIdleConnections(
+            final long maxIdleTime, final TimeUnit maxIdleTimeUnit) {
+        this.evictIdleConnections = true;
+        this.maxIdleTime = maxIdleTime;
+        this.maxIdleTimeUnit = maxIdleTimeUnit;
+        return this;
+    }
+
+    /**
+     * Makes this instance of HttpClient cache the results of host name
+     * resolution with {@link CachingDnsResolver} using its default settings.
+     * The DNS resolver set with {@link #setDnsResolver(DnsResolver)}, if any,
+     * is used to resolve cache misses.
+     * <p/>
+     * Please note this value has no effect if the connection manager is
+     * set explicitly with {@link #setConnectionManager(HttpClientConnectionManager)}.
+     */
+    public final HttpClientBuilder useDnsCache() {
+        dnsCacheEnabled = true;
+        return this;
+    }
+
     public final HttpClientBuilder useSystemProperties() {
         systemProperties = true;
         return this;
@@ -453,6 +547,7 @@ public class HttpClientBuilder {
         if (requestExec == null) {
             requestExec = new HttpRequestExecutor();
         }
+        CachingDnsResolver cachingDnsResolver = null;
         HttpClientConnectionManager connManager = this.connManager;
         if (connManager == null) {
             LayeredConnectionSocketFactory sslSocketFactory = this.sslSocketFactory;
@@ -463,11 +558,18 @@ public class HttpClientBuilder {
                     sslSocketFactory = SSLSocketFactory.getSocketFactory();
                 }
             }
+            DnsResolver dnsResolver = this.dnsResolver;
+            if (dnsCacheEnabled) {
+                cachingDnsResolver = dnsResolver != null ?
+                        new CachingDnsResolver(dnsResolver) : new CachingDnsResolver();
+                dnsResolver = cachingDnsResolver;
+            }
             PoolingHttpClientConnectionManager poolingmgr = new PoolingHttpClientConnectionManager(
                     RegistryBuilder.<ConnectionSocketFactory>create()
                         .register("http", PlainSocketFactory.getSocketFactory())
                         .register("https", sslSocketFactory)
-                        .build());
+                        .build(),
+                    dnsResolver);
             if (defaultSocketConfig != null) {
                 poolingmgr.setDefaultSocketConfig(defaultSocketConfig);
             }
@@ -490,6 +592,12 @@ public class HttpClientBuilder {
                     poolingmgr.setDefaultMaxPerRoute(maxConnPerRoute);
                 }
             }
+            if (validateAfterInactivity >= 0) {
+                poolingmgr.setValidateAfterInactivity(validateAfterInactivity);
+            }
+            if (connectStaggerDelay > 0) {
+                poolingmgr.setConnectStaggerDelay(connectStaggerDelay);
+            }
             connManager = poolingmgr;
         }
         ConnectionReuseStrategy reuseStrategy = this.reuseStrategy;
@@ -687,6 +795,37 @@ public class HttpClientBuilder {
             defaultCredentialsProvider = new BasicCredentialsProvider();
         }
 
+        RequestConfig defaultRequestConfig = this.defaultRequestConfig;
+        if (defaultRequestConfig == null) {
+            if (validateAfterInactivity >= 0 && this.connManager == null) {
+                defaultRequestConfig = RequestConfig.custom()
+                        .setStaleConnectionCheckEnabled(false)
+                        .build();
+            } else {
+                defaultRequestConfig = RequestConfig.DEFAULT;
+            }
+        }
+
+        List<Closeable> closeables = this.closeables != null ?
+                new ArrayList<Closeable>(this.closeables) : new ArrayList<Closeable>(2);
+        if (cachingDnsResolver != null) {
+            closeables.add(cachingDnsResolver);
+        }
+        if (evictExpiredConnections || evictIdleConnections) {
+            long sleepTime = 10;
+            TimeUnit sleepTimeUnit = TimeUnit.SECONDS;
+            if (evictIdleConnections && maxIdleTime > 0 && maxIdleTimeUnit != null) {
+                sleepTime = maxIdleTime;
+                sleepTimeUnit = maxIdleTimeUnit;
+            }
+            IdleConnectionEvictor connectionEvictor = new IdleConnectionEvictor(connManager,
+                    sleepTime, sleepTimeUnit,
+                    evictIdleConnections ? maxIdleTime : -1,
+                    maxIdleTimeUnit != null ? maxIdleTimeUnit : TimeUnit.MILLISECONDS);
+            closeables.add(connectionEvictor);
+            connectionEvictor.start();
+        }
+
         return new InternalHttpClient(
                 execChain,
                 connManager,
@@ -695,8 +834,8 @@ public class HttpClientBuilder {
                 authSchemeRegistry,
                 defaultCookieStore,
                 defaultCredentialsProvider,
-                defaultRequestConfig != null ? defaultRequestConfig : RequestConfig.DEFAULT,
-                closeables != null ? new ArrayList<Closeable>(closeables) : null);
+                defaultRequestConfig,
+                !closeables.isEmpty() ? closeables : null);
     }
 
 }
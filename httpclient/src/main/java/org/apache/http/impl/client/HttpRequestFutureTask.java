@@ -0,0 +1,108 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+
+/**
+ * {@link FutureTask} representing the execution of an HTTP request by a
+ * {@link FutureRequestExecutionService}. Cancelling the task aborts the
+ * request, which releases a pending connection lease or shuts down the
+ * connection the request is being executed over.
+ *
+ * @param <V> the type of the result produced by the response handler
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class HttpRequestFutureTask<V> extends FutureTask<V> {
+
+    private final HttpUriRequest request;
+    private final FutureCallback<V> callback;
+    private final FutureRequestExecutionService service;
+
+    HttpRequestFutureTask(
+            final HttpUriRequest request,
+            final Callable<V> callable,
+            final FutureCallback<V> callback,
+            final FutureRequestExecutionService service) {
+        super(callable);
+        this.request = request;
+        this.callback = callback;
+        this.service = service;
+    }
+
+    public HttpUriRequest getRequest() {
+        return this.request;
+    }
+
+    @Override
+    protected void done() {
+        // abort the request before the callback gets notified of the cancellation
+        if (isCancelled()) {
+            try {
+                this.request.abort();
+            } catch (UnsupportedOperationException ignore) {
+            }
+        }
+        if (this.service != null) {
+            this.service.taskDone(this);
+        }
+        if (this.callback == null) {
+            return;
+        }
+        if (isCancelled()) {
+            this.callback.cancelled();
+            return;
+        }
+        final V result;
+        try {
+            result = get();
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            this.callback.failed(cause instanceof Exception ? (Exception) cause : ex);
+            return;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            this.callback.failed(ex);
+            return;
+        }
+        this.callback.completed(result);
+    }
+
+    @Override
+    public String toString() {
+        return this.request.getRequestLine().toString();
+    }
+
+}
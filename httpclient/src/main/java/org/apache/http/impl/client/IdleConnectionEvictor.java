@@ -0,0 +1,137 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.util.Args;
+
+/**
+ * This class periodically evicts expired connections and, optionally,
+ * connections that have been idle longer than the given maximum from
+ * the connection pool. A single background thread is used to run
+ * both eviction policies.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public final class IdleConnectionEvictor implements Closeable {
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final HttpClientConnectionManager connManager;
+    private final ScheduledExecutorService scheduler;
+    private final long sleepTimeMs;
+    private final long maxIdleTimeMs;
+
+    public IdleConnectionEvictor(
+            final HttpClientConnectionManager connManager,
+            final ThreadFactory threadFactory,
+            final long sleepTime, final TimeUnit sleepTimeUnit,
+            final long maxIdleTime, final TimeUnit maxIdleTimeUnit) {
+        super();
+        Args.notNull(connManager, "Connection manager");
+        this.connManager = connManager;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                threadFactory != null ? threadFactory : new DefaultThreadFactory());
+        this.sleepTimeMs = sleepTimeUnit != null ? sleepTimeUnit.toMillis(sleepTime) : sleepTime;
+        this.maxIdleTimeMs = maxIdleTimeUnit != null ? maxIdleTimeUnit.toMillis(maxIdleTime) : maxIdleTime;
+        Args.check(this.sleepTimeMs > 0, "Sleep time must be positive");
+    }
+
+    public IdleConnectionEvictor(
+            final HttpClientConnectionManager connManager,
+            final long sleepTime, final TimeUnit sleepTimeUnit,
+            final long maxIdleTime, final TimeUnit maxIdleTimeUnit) {
+        this(connManager, null, sleepTime, sleepTimeUnit, maxIdleTime, maxIdleTimeUnit);
+    }
+
+    /**
+     * Creates an evictor that only closes expired connections.
+     */
+    public IdleConnectionEvictor(
+            final HttpClientConnectionManager connManager,
+            final long sleepTime, final TimeUnit sleepTimeUnit) {
+        this(connManager, null, sleepTime, sleepTimeUnit, -1, TimeUnit.MILLISECONDS);
+    }
+
+    public void start() {
+        this.scheduler.scheduleWithFixedDelay(new Runnable() {
+
+            public void run() {
+                evict();
+            }
+
+        }, this.sleepTimeMs, this.sleepTimeMs, TimeUnit.MILLISECONDS);
+    }
+
+    void evict() {
+        try {
+            this.connManager.closeExpiredConnections();
+            if (this.maxIdleTimeMs > 0) {
+                this.connManager.closeIdleConnections(this.maxIdleTimeMs, TimeUnit.MILLISECONDS);
+            }
+        } catch (RuntimeException ex) {
+            this.log.debug("Unexpected exception evicting connections", ex);
+        }
+    }
+
+    public void shutdown() {
+        this.scheduler.shutdownNow();
+    }
+
+    public boolean isRunning() {
+        return !this.scheduler.isShutdown();
+    }
+
+    public void awaitTermination(final long time, final TimeUnit tunit) throws InterruptedException {
+        this.scheduler.awaitTermination(time, tunit != null ? tunit : TimeUnit.MILLISECONDS);
+    }
+
+    public void close() {
+        shutdown();
+    }
+
+    static class DefaultThreadFactory implements ThreadFactory {
+
+        public Thread newThread(final Runnable r) {
+            Thread t = new Thread(r, "Connection evictor");
+            t.setDaemon(true);
+            return t;
+        }
+
+    }
+
+}
@@ -0,0 +1,331 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.ConnectionReuseStrategy;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestWrapper;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.ClientContext;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.protocol.RequestClientConnControl;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.entity.BufferedHttpEntity;
+import org.apache.http.impl.DefaultConnectionReuseStrategy;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpProcessor;
+import org.apache.http.protocol.ImmutableHttpProcessor;
+import org.apache.http.protocol.RequestContent;
+import org.apache.http.protocol.RequestTargetHost;
+import org.apache.http.protocol.RequestUserAgent;
+import org.apache.http.util.Args;
+import org.apache.http.util.VersionInfo;
+
+/**
+ * Executes batches of requests to the same origin server using HTTP/1.1
+ * pipelining. All requests of a batch are written back-to-back over a
+ * single pooled connection before their responses are read in order.
+ * <p/>
+ * Only requests with safe methods and without an enclosed entity can be
+ * pipelined. Response content is buffered in memory, so that the
+ * connection can move on to the next response. If the connection fails
+ * or gets closed by the server before all responses have been received,
+ * the unanswered requests are sent again over a fresh connection.
+ * <p/>
+ * Only direct routes are supported. Authentication, redirects and cookies
+ * are not handled.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class PipeliningHttpClient implements Closeable {
+
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    private static final List<String> PIPELINABLE_METHODS = Arrays.asList(
+            "GET", "HEAD", "OPTIONS", "TRACE");
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final HttpClientConnectionManager connManager;
+    private final ConnectionReuseStrategy reuseStrategy;
+    private final ConnectionKeepAliveStrategy keepAliveStrategy;
+    private final HttpProcessor httpProcessor;
+    private final int maxRetries;
+
+    /**
+     * @param connManager the connection manager to lease connections from
+     * @param maxRetries the maximum number of times a batch is resumed
+     *   after a connection failure that yielded no response
+     */
+    public PipeliningHttpClient(
+            final HttpClientConnectionManager connManager,
+            final int maxRetries) {
+        super();
+        Args.notNull(connManager, "HTTP connection manager");
+        Args.notNegative(maxRetries, "Max retries");
+        this.connManager = connManager;
+        this.maxRetries = maxRetries;
+        this.reuseStrategy = DefaultConnectionReuseStrategy.INSTANCE;
+        this.keepAliveStrategy = DefaultConnectionKeepAliveStrategy.INSTANCE;
+        this.httpProcessor = new ImmutableHttpProcessor(new HttpRequestInterceptor[] {
+                new RequestContent(),
+                new RequestTargetHost(),
+                new RequestClientConnControl(),
+                new RequestUserAgent(VersionInfo.getUserAgent(
+                        "Apache-HttpClient", "org.apache.http.client", getClass())),
+        } );
+    }
+
+    public PipeliningHttpClient(final HttpClientConnectionManager connManager) {
+        this(connManager, DEFAULT_MAX_RETRIES);
+    }
+
+    public List<HttpResponse> executePipelined(
+            final List<? extends HttpUriRequest> requests) throws IOException {
+        return executePipelined(requests, null);
+    }
+
+    /**
+     * Executes the given requests, which must all be addressed to the same
+     * absolute origin, and returns their responses in the same order.
+     */
+    public List<HttpResponse> executePipelined(
+            final List<? extends HttpUriRequest> requests,
+            final HttpContext localContext) throws IOException {
+        Args.notEmpty(requests, "Requests");
+        final HttpHost target = determineTarget(requests);
+        final HttpClientContext context = HttpClientContext.adapt(
+                localContext != null ? localContext : new BasicHttpContext());
+        final HttpRoute route = new HttpRoute(target);
+        final HttpRequestWrapper[] wrappers = new HttpRequestWrapper[requests.size()];
+        for (int i = 0; i < wrappers.length; i++) {
+            wrappers[i] = wrap(requests.get(i));
+        }
+        final HttpResponse[] responses = new HttpResponse[wrappers.length];
+        int next = 0;
+        int retries = 0;
+        while (next < wrappers.length) {
+            final int before = next;
+            try {
+                next = executeBatch(route, wrappers, next, responses, context);
+            } catch (IOException ex) {
+                next = findFirstUnanswered(responses, before);
+                if (next == before && ++retries > this.maxRetries) {
+                    throw ex;
+                }
+                if (this.log.isDebugEnabled()) {
+                    this.log.debug("I/O exception (" + ex.getClass().getName()
+                            + ") caught when pipelining requests: " + ex.getMessage());
+                }
+            } catch (HttpException ex) {
+                throw new ClientProtocolException(ex);
+            }
+            if (next > before) {
+                retries = 0;
+            }
+        }
+        return Arrays.asList(responses);
+    }
+
+    private static int findFirstUnanswered(final HttpResponse[] responses, final int start) {
+        int i = start;
+        while (i < responses.length && responses[i] != null) {
+            i++;
+        }
+        return i;
+    }
+
+    private static HttpHost determineTarget(
+            final List<? extends HttpUriRequest> requests) throws ClientProtocolException {
+        HttpHost target = null;
+        for (HttpUriRequest request: requests) {
+            Args.notNull(request, "HTTP request");
+            Args.check(PIPELINABLE_METHODS.contains(request.getMethod()),
+                    "Request method may not be pipelined: " + request.getMethod());
+            Args.check(!(request instanceof HttpEntityEnclosingRequest)
+                    || ((HttpEntityEnclosingRequest) request).getEntity() == null,
+                    "Requests enclosing an entity may not be pipelined");
+            final URI uri = request.getURI();
+            final HttpHost host = uri.isAbsolute() ? URIUtils.extractHost(uri) : null;
+            if (host == null) {
+                throw new ClientProtocolException("URI does not specify a valid host name: " + uri);
+            }
+            if (target == null) {
+                target = host;
+            } else {
+                Args.check(target.equals(host), "Pipelined requests must share the same target");
+            }
+        }
+        return target;
+    }
+
+    private static HttpRequestWrapper wrap(final HttpUriRequest request) throws ClientProtocolException {
+        final HttpRequestWrapper wrapper = HttpRequestWrapper.wrap(request);
+        try {
+            wrapper.setURI(URIUtils.rewriteURI(request.getURI(), null, true));
+        } catch (URISyntaxException ex) {
+            throw new ClientProtocolException("Invalid URI: " + request.getURI(), ex);
+        }
+        return wrapper;
+    }
+
+    /**
+     * Sends the requests starting at <code>start</code> over a single
+     * connection and reads as many responses as the connection delivers.
+     * Returns the index of the first request that is still unanswered.
+     */
+    private int executeBatch(
+            final HttpRoute route,
+            final HttpRequestWrapper[] requests,
+            final int start,
+            final HttpResponse[] responses,
+            final HttpClientContext context) throws IOException, HttpException {
+        final RequestConfig config = context.getRequestConfig();
+        final ConnectionRequest connRequest = this.connManager.requestConnection(route, null);
+        final HttpClientConnection conn;
+        try {
+            final int timeout = config.getConnectionRequestTimeout();
+            conn = connRequest.get(timeout > 0 ? timeout : 0, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            final InterruptedIOException ioex = new InterruptedIOException("Request aborted");
+            ioex.initCause(ex);
+            throw ioex;
+        }
+        boolean reusable = false;
+        long keepAlive = 0;
+        try {
+            if (!conn.isOpen()) {
+                final int timeout = config.getConnectTimeout();
+                this.connManager.connect(
+                        conn, route.getTargetHost(), route.getLocalAddress(),
+                        timeout > 0 ? timeout : 0, context);
+            }
+            final int timeout = config.getSocketTimeout();
+            if (timeout >= 0) {
+                conn.setSocketTimeout(timeout);
+            }
+            context.setAttribute(ExecutionContext.HTTP_TARGET_HOST, route.getTargetHost());
+            context.setAttribute(ExecutionContext.HTTP_CONNECTION, conn);
+            context.setAttribute(ClientContext.ROUTE, route);
+
+            for (int i = start; i < requests.length; i++) {
+                context.setAttribute(ExecutionContext.HTTP_REQUEST, requests[i]);
+                this.httpProcessor.process(requests[i], context);
+                conn.sendRequestHeader(requests[i]);
+            }
+            conn.flush();
+            if (this.log.isDebugEnabled()) {
+                this.log.debug("Pipelined " + (requests.length - start) + " requests to " + route);
+            }
+
+            int next = start;
+            while (next < requests.length) {
+                final HttpResponse response = receiveResponse(conn, requests[next], context);
+                responses[next++] = response;
+                reusable = this.reuseStrategy.keepAlive(response, context);
+                if (!reusable) {
+                    break;
+                }
+                keepAlive = this.keepAliveStrategy.getKeepAliveDuration(response, context);
+            }
+            return next;
+        } finally {
+            if (!reusable) {
+                try {
+                    conn.shutdown();
+                } catch (IOException ex) {
+                    this.log.debug("I/O exception shutting down connection", ex);
+                }
+            }
+            this.connManager.releaseConnection(conn, null,
+                    reusable ? keepAlive : 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private HttpResponse receiveResponse(
+            final HttpClientConnection conn,
+            final HttpRequestWrapper request,
+            final HttpClientContext context) throws IOException, HttpException {
+        HttpResponse response;
+        int status;
+        do {
+            response = conn.receiveResponseHeader();
+            status = response.getStatusLine().getStatusCode();
+        } while (status < HttpStatus.SC_OK);
+        if (canResponseHaveBody(request, status)) {
+            conn.receiveResponseEntity(response);
+            final HttpEntity entity = response.getEntity();
+            if (entity != null) {
+                response.setEntity(new BufferedHttpEntity(entity));
+            }
+        }
+        context.setAttribute(ExecutionContext.HTTP_RESPONSE, response);
+        this.httpProcessor.process(response, context);
+        return response;
+    }
+
+    private static boolean canResponseHaveBody(final HttpRequestWrapper request, final int status) {
+        return !"HEAD".equalsIgnoreCase(request.getRequestLine().getMethod())
+                && status != HttpStatus.SC_NO_CONTENT
+                && status != HttpStatus.SC_NOT_MODIFIED
+                && status != HttpStatus.SC_RESET_CONTENT;
+    }
+
+    public void close() {
+        this.connManager.shutdown();
+    }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.http.annotation.GuardedBy;
+import org.apache.http.annotation.ThreadSafe;
+
+/**
+ * Batch of requests being executed by a {@link BatchRequestExecutor}.
+ * Results can be consumed in order of completion with {@link #poll(long, TimeUnit)}
+ * or in order of submission with {@link #getTasks()}. Requests that are
+ * still pending or running when the batch deadline expires get cancelled.
+ *
+ * @param <T> the type of the result produced by the response handler
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class RequestBatch<T> {
+
+    static class RouteQueue<T> {
+
+        final int maxActive;
+        final LinkedList<HttpRequestFutureTask<T>> pending;
+        int active;
+
+        RouteQueue(final int maxActive) {
+            super();
+            this.maxActive = maxActive;
+            this.pending = new LinkedList<HttpRequestFutureTask<T>>();
+        }
+
+    }
+
+    private final ExecutorService executorService;
+    private final List<HttpRequestFutureTask<T>> tasks;
+    private final BlockingQueue<HttpRequestFutureTask<T>> completed;
+    private final AtomicInteger doneCount;
+    private final AtomicInteger retrievedCount;
+    private final Lock lock;
+
+    @GuardedBy("lock")
+    private final Map<HttpRequestFutureTask<T>, RouteQueue<T>> assignments;
+    @GuardedBy("lock")
+    private Future<?> deadline;
+
+    RequestBatch(final ExecutorService executorService) {
+        super();
+        this.executorService = executorService;
+        this.tasks = new ArrayList<HttpRequestFutureTask<T>>();
+        this.completed = new LinkedBlockingQueue<HttpRequestFutureTask<T>>();
+        this.doneCount = new AtomicInteger();
+        this.retrievedCount = new AtomicInteger();
+        this.lock = new ReentrantLock();
+        this.assignments = new IdentityHashMap<HttpRequestFutureTask<T>, RouteQueue<T>>();
+    }
+
+    void add(final HttpRequestFutureTask<T> task) {
+        this.tasks.add(task);
+    }
+
+    void setDeadline(final Future<?> deadline) {
+        this.lock.lock();
+        try {
+            if (this.doneCount.get() == this.tasks.size()) {
+                deadline.cancel(false);
+            } else {
+                this.deadline = deadline;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Executes the task right away if fewer than the maximum number of tasks
+     * are active for its route, or queues it otherwise.
+     */
+    void dispatch(final HttpRequestFutureTask<T> task, final RouteQueue<T> queue) {
+        this.lock.lock();
+        try {
+            if (task.isDone()) {
+                return;
+            }
+            this.assignments.put(task, queue);
+            if (queue.active >= queue.maxActive) {
+                queue.pending.add(task);
+                return;
+            }
+            queue.active++;
+        } finally {
+            this.lock.unlock();
+        }
+        execute(task);
+    }
+
+    private void execute(final HttpRequestFutureTask<T> task) {
+        try {
+            this.executorService.execute(task);
+        } catch (RejectedExecutionException ex) {
+            task.cancel(true);
+        }
+    }
+
+    void taskDone(final HttpRequestFutureTask<T> task) {
+        HttpRequestFutureTask<T> next = null;
+        this.lock.lock();
+        try {
+            final RouteQueue<T> queue = this.assignments.remove(task);
+            if (queue != null && !queue.pending.remove(task)) {
+                next = queue.pending.poll();
+                if (next == null) {
+                    queue.active--;
+                }
+            }
+            if (this.doneCount.incrementAndGet() == this.tasks.size() && this.deadline != null) {
+                this.deadline.cancel(false);
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        this.completed.add(task);
+        if (next != null) {
+            execute(next);
+        }
+    }
+
+    /**
+     * Returns the tasks of the batch in order of submission.
+     */
+    public List<HttpRequestFutureTask<T>> getTasks() {
+        return Collections.unmodifiableList(this.tasks);
+    }
+
+    /**
+     * Returns the next task to complete, waiting up to the given time if
+     * none has completed yet. Returns <code>null</code> if the waiting time
+     * elapses or if all tasks have already been returned.
+     */
+    public HttpRequestFutureTask<T> poll(
+            final long timeout, final TimeUnit tunit) throws InterruptedException {
+        if (this.retrievedCount.get() >= this.tasks.size()) {
+            return null;
+        }
+        final HttpRequestFutureTask<T> task = this.completed.poll(timeout, tunit);
+        if (task != null) {
+            this.retrievedCount.incrementAndGet();
+        }
+        return task;
+    }
+
+    /**
+     * Returns <code>true</code> if all tasks of the batch have completed.
+     */
+    public boolean isDone() {
+        return this.doneCount.get() == this.tasks.size();
+    }
+
+    /**
+     * Cancels all tasks that have not completed yet.
+     */
+    public void cancel() {
+        for (HttpRequestFutureTask<T> task: this.tasks) {
+            task.cancel(true);
+        }
+    }
+
+}
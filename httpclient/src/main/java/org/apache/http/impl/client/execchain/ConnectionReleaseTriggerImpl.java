@@ -30,6 +30,8 @@ package org.apache.http.impl.client.execchain;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.logging.Log;
 import org.apache.http.HttpClientConnection;
@@ -50,6 +52,7 @@ class ConnectionReleaseTriggerImpl implements ConnectionReleaseTrigger, Cancella
 
     private final HttpClientConnectionManager manager;
     private final HttpClientConnection managedConn;
+    private final Lock lock;
     private volatile boolean reusable;
     private volatile Object state;
     private volatile long validDuration;
@@ -65,6 +68,7 @@ class ConnectionReleaseTriggerImpl implements ConnectionReleaseTrigger, Cancella
         this.log = log;
         this.manager = manager;
         this.managedConn = managedConn;
+        this.lock = new ReentrantLock();
     }
 
     public boolean isReusable() {
@@ -84,14 +88,18 @@ class ConnectionReleaseTriggerImpl implements ConnectionReleaseTrigger, Cancella
     }
 
     public void setValidFor(final long duration, final TimeUnit tunit) {
-        synchronized (this.managedConn) {
+        this.lock.lock();
+        try {
             this.validDuration = duration;
             this.tunit = tunit;
+        } finally {
+            this.lock.unlock();
         }
     }
 
     public void releaseConnection() {
-        synchronized (this.managedConn) {
+        this.lock.lock();
+        try {
             if (this.released) {
                 return;
             }
@@ -112,11 +120,14 @@ class ConnectionReleaseTriggerImpl implements ConnectionReleaseTrigger, Cancella
                             this.managedConn, null, 0, TimeUnit.MILLISECONDS);
                 }
             }
+        } finally {
+            this.lock.unlock();
         }
     }
 
     public void abortConnection() {
-        synchronized (this.managedConn) {
+        this.lock.lock();
+        try {
             if (this.released) {
                 return;
             }
@@ -132,6 +143,8 @@ class ConnectionReleaseTriggerImpl implements ConnectionReleaseTrigger, Cancella
                 this.manager.releaseConnection(
                         this.managedConn, null, 0, TimeUnit.MILLISECONDS);
             }
+        } finally {
+            this.lock.unlock();
         }
     }
 
@@ -26,9 +26,6 @@
  */
 package org.apache.http.impl.client.execchain;
 
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Proxy;
-
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpRequest;
@@ -47,21 +44,12 @@ class Proxies {
     static void enhanceEntity(final HttpEntityEnclosingRequest request) {
         HttpEntity entity = request.getEntity();
         if (entity != null && !entity.isRepeatable() && !isEnhanced(entity)) {
-            HttpEntity proxy = (HttpEntity) Proxy.newProxyInstance(
-                    HttpEntity.class.getClassLoader(),
-                    new Class<?>[] { HttpEntity.class },
-                    new RequestEntityExecHandler(entity));
-            request.setEntity(proxy);
+            request.setEntity(new RequestEntityWrapper(entity));
         }
     }
 
     static boolean isEnhanced(final HttpEntity entity) {
-        if (entity != null && Proxy.isProxyClass(entity.getClass())) {
-            InvocationHandler handler = Proxy.getInvocationHandler(entity);
-            return handler instanceof RequestEntityExecHandler;
-        } else {
-            return false;
-        }
+        return entity instanceof RequestEntityWrapper;
     }
 
     static boolean isRepeatable(final HttpRequest request) {
@@ -69,9 +57,8 @@ class Proxies {
             HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
             if (entity != null) {
                 if (isEnhanced(entity)) {
-                    RequestEntityExecHandler handler = (RequestEntityExecHandler)
-                            Proxy.getInvocationHandler(entity);
-                    if (!handler.isConsumed()) {
+                    RequestEntityWrapper wrapper = (RequestEntityWrapper) entity;
+                    if (!wrapper.isConsumed()) {
                         return true;
                     }
                 }
@@ -84,10 +71,7 @@ class Proxies {
     public static CloseableHttpResponse enhanceResponse(
             final HttpResponse original,
             final ConnectionReleaseTriggerImpl connReleaseTrigger) {
-        return (CloseableHttpResponse) Proxy.newProxyInstance(
-                ResponseProxyHandler.class.getClassLoader(),
-                new Class<?>[] { CloseableHttpResponse.class },
-                new ResponseProxyHandler(original, connReleaseTrigger));
+        return new HttpResponseProxy(original, connReleaseTrigger);
     }
 
 }
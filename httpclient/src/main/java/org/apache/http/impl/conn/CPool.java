@@ -32,6 +32,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.conn.ConnPoolListener;
 import org.apache.http.conn.HttpClientConnectionManager;
 import org.apache.http.conn.SocketClientConnection;
 import org.apache.http.conn.routing.HttpRoute;
@@ -42,27 +43,38 @@ import org.apache.http.pool.ConnFactory;
  * @since 4.3
  */
 @ThreadSafe
-class CPool extends AbstractConnPool<HttpRoute, SocketClientConnection, CPoolEntry> {
+class CPool extends AbstractConnPool<HttpRoute, SocketClientConnection, CPoolEntry>
+        implements ManagedConnPool {
 
     private static AtomicLong COUNTER = new AtomicLong();
 
     private final Log log = LogFactory.getLog(HttpClientConnectionManager.class);
     private final long timeToLive;
     private final TimeUnit tunit;
+    private final ConnPoolListener listener;
 
     public CPool(
             final ConnFactory<HttpRoute, SocketClientConnection> connFactory,
             final int defaultMaxPerRoute, final int maxTotal,
-            final long timeToLive, final TimeUnit tunit) {
+            final long timeToLive, final TimeUnit tunit,
+            final ConnPoolListener listener) {
         super(connFactory, defaultMaxPerRoute, maxTotal);
         this.timeToLive = timeToLive;
         this.tunit = tunit;
+        this.listener = listener;
+    }
+
+    public CPool(
+            final ConnFactory<HttpRoute, SocketClientConnection> connFactory,
+            final int defaultMaxPerRoute, final int maxTotal,
+            final long timeToLive, final TimeUnit tunit) {
+        this(connFactory, defaultMaxPerRoute, maxTotal, timeToLive, tunit, null);
     }
 
     @Override
     protected CPoolEntry createEntry(final HttpRoute route, final SocketClientConnection conn) {
         String id = Long.toString(COUNTER.getAndIncrement());
-        return new CPoolEntry(this.log, id, route, conn, this.timeToLive, this.tunit);
+        return new CPoolEntry(this.log, id, route, conn, this.timeToLive, this.tunit, this.listener);
     }
 
 }
@@ -33,6 +33,7 @@ import java.util.concurrent.TimeUnit;
 import org.apache.commons.logging.Log;
 import org.apache.http.HttpClientConnection;
 import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.conn.ConnPoolListener;
 import org.apache.http.conn.SocketClientConnection;
 import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.pool.PoolEntry;
@@ -44,22 +45,43 @@ import org.apache.http.pool.PoolEntry;
 class CPoolEntry extends PoolEntry<HttpRoute, SocketClientConnection> {
 
     private final Log log;
+    private final ConnPoolListener listener;
 
     public CPoolEntry(
             final Log log,
             final String id,
             final HttpRoute route,
             final SocketClientConnection conn,
-            final long timeToLive, final TimeUnit tunit) {
+            final long timeToLive, final TimeUnit tunit,
+            final ConnPoolListener listener) {
         super(id, route, conn, timeToLive, tunit);
         this.log = log;
+        this.listener = listener;
+    }
+
+    public CPoolEntry(
+            final Log log,
+            final String id,
+            final HttpRoute route,
+            final SocketClientConnection conn,
+            final long timeToLive, final TimeUnit tunit) {
+        this(log, id, route, conn, timeToLive, tunit, null);
+    }
+
+    ConnPoolListener getListener() {
+        return this.listener;
     }
 
     @Override
     public boolean isExpired(long now) {
         boolean expired = super.isExpired(now);
-        if (expired && this.log.isDebugEnabled()) {
-            this.log.debug("Connection " + this + " expired @ " + new Date(getExpiry()));
+        if (expired) {
+            if (this.log.isDebugEnabled()) {
+                this.log.debug("Connection " + this + " expired @ " + new Date(getExpiry()));
+            }
+            if (this.listener != null) {
+                this.listener.connectionExpired(getRoute());
+            }
         }
         return expired;
     }
@@ -27,21 +27,35 @@
 package org.apache.http.impl.conn;
 
 import java.io.IOException;
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import javax.net.ssl.SSLSession;
 
 import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpConnectionMetrics;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
 import org.apache.http.annotation.NotThreadSafe;
+import org.apache.http.conn.ConnPoolListener;
 import org.apache.http.conn.SocketClientConnection;
 import org.apache.http.protocol.HttpContext;
 
 /**
+ * Managed connection handed out by {@link PoolingHttpClientConnectionManager}.
+ * It delegates all calls to the connection of the pool entry it is bound to
+ * until it gets detached from the entry upon connection release.
+ *
  * @since 4.3
  */
 @NotThreadSafe
-class CPoolProxy implements InvocationHandler {
+class CPoolProxy implements SocketClientConnection, HttpContext {
+
+    private static final AtomicReferenceFieldUpdater<CPoolProxy, CPoolEntry> POOL_ENTRY_UPDATER =
+        AtomicReferenceFieldUpdater.newUpdater(CPoolProxy.class, CPoolEntry.class, "poolEntry");
 
     private volatile CPoolEntry poolEntry;
 
@@ -55,12 +69,10 @@ class CPoolProxy implements InvocationHandler {
     }
 
     CPoolEntry detach() {
-        CPoolEntry local = this.poolEntry;
-        this.poolEntry = null;
-        return local;
+        return POOL_ENTRY_UPDATER.getAndSet(this, null);
     }
 
-    HttpClientConnection getConnection() {
+    SocketClientConnection getConnection() {
         CPoolEntry local = this.poolEntry;
         if (local == null) {
             return null;
@@ -68,6 +80,14 @@ class CPoolProxy implements InvocationHandler {
         return local.getConnection();
     }
 
+    SocketClientConnection getValidConnection() {
+        SocketClientConnection conn = getConnection();
+        if (conn == null) {
+            throw new ConnectionShutdownException();
+        }
+        return conn;
+    }
+
     public void close() throws IOException {
         CPoolEntry local = this.poolEntry;
         if (local != null) {
@@ -94,64 +114,139 @@ class CPoolProxy implements InvocationHandler {
     }
 
     public boolean isStale() {
-        HttpClientConnection conn = getConnection();
-        if (conn != null) {
-            return conn.isStale();
+        CPoolEntry local = this.poolEntry;
+        if (local != null) {
+            boolean stale = local.getConnection().isStale();
+            if (stale) {
+                ConnPoolListener listener = local.getListener();
+                if (listener != null) {
+                    listener.connectionStale(local.getRoute());
+                }
+            }
+            return stale;
         } else {
             return true;
         }
     }
 
-    public Object invoke(
-            final Object proxy, final Method method, final Object[] args) throws Throwable {
-        String mname = method.getName();
-        if (mname.equals("close")) {
-            close();
+    public void setSocketTimeout(final int timeout) {
+        getValidConnection().setSocketTimeout(timeout);
+    }
+
+    public int getSocketTimeout() {
+        return getValidConnection().getSocketTimeout();
+    }
+
+    public HttpConnectionMetrics getMetrics() {
+        return getValidConnection().getMetrics();
+    }
+
+    public InetAddress getLocalAddress() {
+        return getValidConnection().getLocalAddress();
+    }
+
+    public int getLocalPort() {
+        return getValidConnection().getLocalPort();
+    }
+
+    public InetAddress getRemoteAddress() {
+        return getValidConnection().getRemoteAddress();
+    }
+
+    public int getRemotePort() {
+        return getValidConnection().getRemotePort();
+    }
+
+    public boolean isResponseAvailable(final int timeout) throws IOException {
+        return getValidConnection().isResponseAvailable(timeout);
+    }
+
+    public void sendRequestHeader(final HttpRequest request) throws HttpException, IOException {
+        getValidConnection().sendRequestHeader(request);
+    }
+
+    public void sendRequestEntity(final HttpEntityEnclosingRequest request)
+            throws HttpException, IOException {
+        getValidConnection().sendRequestEntity(request);
+    }
+
+    public HttpResponse receiveResponseHeader() throws HttpException, IOException {
+        return getValidConnection().receiveResponseHeader();
+    }
+
+    public void receiveResponseEntity(final HttpResponse response) throws HttpException, IOException {
+        getValidConnection().receiveResponseEntity(response);
+    }
+
+    public void flush() throws IOException {
+        getValidConnection().flush();
+    }
+
+    public void bind(final Socket socket) throws IOException {
+        getValidConnection().bind(socket);
+    }
+
+    public Socket getSocket() {
+        return getValidConnection().getSocket();
+    }
+
+    public SSLSession getSSLSession() {
+        return getValidConnection().getSSLSession();
+    }
+
+    public Object getAttribute(final String id) {
+        SocketClientConnection conn = getValidConnection();
+        if (conn instanceof HttpContext) {
+            return ((HttpContext) conn).getAttribute(id);
+        } else {
             return null;
-        } else if (mname.equals("shutdown")) {
-            shutdown();
+        }
+    }
+
+    public void setAttribute(final String id, final Object obj) {
+        SocketClientConnection conn = getValidConnection();
+        if (conn instanceof HttpContext) {
+            ((HttpContext) conn).setAttribute(id, obj);
+        }
+    }
+
+    public Object removeAttribute(final String id) {
+        SocketClientConnection conn = getValidConnection();
+        if (conn instanceof HttpContext) {
+            return ((HttpContext) conn).removeAttribute(id);
+        } else {
             return null;
-        } else if (mname.equals("isOpen")) {
-            return Boolean.valueOf(isOpen());
-        } else if (mname.equals("isStale")) {
-            return Boolean.valueOf(isStale());
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("CPoolProxy{");
+        SocketClientConnection conn = getConnection();
+        if (conn != null) {
+            sb.append(conn);
         } else {
-            HttpClientConnection conn = getConnection();
-            if (conn == null) {
-                throw new ConnectionShutdownException();
-            }
-            try {
-                return method.invoke(conn, args);
-            } catch (InvocationTargetException ex) {
-                Throwable cause = ex.getCause();
-                if (cause != null) {
-                    throw cause;
-                } else {
-                    throw ex;
-                }
-            }
+            sb.append("detached");
         }
+        sb.append('}');
+        return sb.toString();
     }
 
     public static HttpClientConnection newProxy(
             final CPoolEntry poolEntry) {
-        return (HttpClientConnection) Proxy.newProxyInstance(
-                CPoolProxy.class.getClassLoader(),
-                new Class<?>[] { HttpClientConnection.class, SocketClientConnection.class, HttpContext.class },
-                new CPoolProxy(poolEntry));
+        return new CPoolProxy(poolEntry);
     }
 
-    private static CPoolProxy getHandler(
-            final HttpClientConnection proxy) {
-        InvocationHandler handler = Proxy.getInvocationHandler(proxy);
-        if (!CPoolProxy.class.isInstance(handler)) {
-            throw new IllegalStateException("Unexpected proxy handler class: " + handler);
+    private static CPoolProxy getProxy(
+            final HttpClientConnection conn) {
+        if (!CPoolProxy.class.isInstance(conn)) {
+            throw new IllegalStateException("Unexpected connection proxy class: " + conn.getClass());
         }
-        return CPoolProxy.class.cast(handler);
+        return CPoolProxy.class.cast(conn);
     }
 
     public static CPoolEntry getPoolEntry(final HttpClientConnection proxy) {
-        CPoolEntry entry = getHandler(proxy).getPoolEntry();
+        CPoolEntry entry = getProxy(proxy).getPoolEntry();
         if (entry == null) {
             throw new ConnectionShutdownException();
         }
@@ -159,7 +254,7 @@ class CPoolProxy implements InvocationHandler {
     }
 
     public static CPoolEntry detach(final HttpClientConnection proxy) {
-        return getHandler(proxy).detach();
+        return getProxy(proxy).detach();
     }
 
 }
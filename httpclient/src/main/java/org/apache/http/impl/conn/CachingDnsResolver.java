@@ -0,0 +1,489 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.util.Args;
+
+/**
+ * {@link DnsResolver} that caches the results of another resolver.
+ * <p/>
+ * Successful lookups are kept for a configurable time to live, which can be
+ * overridden on a per host basis. Failed lookups are cached for a separate
+ * (usually shorter) period. The cache holds no more than the given number of
+ * hosts; once that number is exceeded, expired entries and then the least
+ * recently used ones are evicted in a batch. Concurrent lookups of a host
+ * missing from the cache share a single call to the underlying resolver.
+ * Cache hits do not take any lock. Optionally, hosts that
+ * keep being looked up are re-resolved in the background shortly before their
+ * entries expire, so that callers never block on the underlying resolver for
+ * them.
+ * <p/>
+ * The order of returned addresses can be rotated or shuffled on every call
+ * in order to spread connections across all records of a host.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class CachingDnsResolver implements DnsResolver, Closeable {
+
+    /**
+     * Order in which cached addresses are returned.
+     */
+    public enum AddressOrder {
+
+        /** Addresses are returned in the order given by the underlying resolver */
+        AS_RESOLVED,
+        /** The first address is moved to the end of the list on every lookup */
+        ROTATE,
+        /** Addresses are returned in random order */
+        SHUFFLE
+
+    }
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+    public static final long DEFAULT_TIME_TO_LIVE = 60000;
+    public static final long DEFAULT_NEGATIVE_TIME_TO_LIVE = 10000;
+    public static final float DEFAULT_REFRESH_AHEAD_FACTOR = 0.75f;
+
+    private static final Comparator<Map.Entry<String, CacheEntry>> LEAST_RECENTLY_USED =
+        new Comparator<Map.Entry<String, CacheEntry>>() {
+
+            public int compare(
+                    final Map.Entry<String, CacheEntry> e1, final Map.Entry<String, CacheEntry> e2) {
+                long t1 = e1.getValue().lastAccess;
+                long t2 = e2.getValue().lastAccess;
+                return t1 < t2 ? -1 : (t1 > t2 ? 1 : 0);
+            }
+
+        };
+
+    private final Log log = LogFactory.getLog(getClass());
+
+    private final DnsResolver dnsResolver;
+    private final int maxEntries;
+    private final long timeToLive;
+    private final long negativeTimeToLive;
+    private final float refreshAheadFactor;
+    private final AddressOrder addressOrder;
+    private final ExecutorService refreshExecutor;
+
+    private final ConcurrentMap<String, CacheEntry> cache;
+    private final ConcurrentMap<String, FutureTask<CacheEntry>> pendingLookups;
+    private final AtomicBoolean evicting;
+    private final Map<String, Long> hostTimeToLive;
+
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong refreshes;
+
+    /**
+     * @param dnsResolver the resolver whose results are to be cached.
+     * @param maxEntries maximum number of hosts to be kept in the cache.
+     * @param timeToLive default time to live of successful lookups.
+     * @param negativeTimeToLive time to live of failed lookups. Zero or
+     *   a negative value disables negative caching.
+     * @param tunit time unit of the time to live parameters.
+     * @param refreshAheadFactor fraction of the time to live after which
+     *   a cache hit triggers background re-resolution of the host. Values
+     *   outside the <code>(0, 1)</code> range disable refresh-ahead.
+     * @param addressOrder order in which addresses are returned to the caller.
+     */
+    public CachingDnsResolver(
+            final DnsResolver dnsResolver,
+            final int maxEntries,
+            final long timeToLive,
+            final long negativeTimeToLive,
+            final TimeUnit tunit,
+            final float refreshAheadFactor,
+            final AddressOrder addressOrder) {
+        super();
+        Args.notNull(dnsResolver, "DNS resolver");
+        Args.notNull(tunit, "Time unit");
+        Args.check(maxEntries > 0, "Max entries must be positive");
+        this.dnsResolver = dnsResolver;
+        this.maxEntries = maxEntries;
+        this.timeToLive = tunit.toMillis(timeToLive);
+        this.negativeTimeToLive = tunit.toMillis(negativeTimeToLive);
+        this.refreshAheadFactor = refreshAheadFactor;
+        this.addressOrder = addressOrder != null ? addressOrder : AddressOrder.AS_RESOLVED;
+        if (refreshAheadFactor > 0.0f && refreshAheadFactor < 1.0f) {
+            this.refreshExecutor = Executors.newSingleThreadExecutor(new RefreshThreadFactory());
+        } else {
+            this.refreshExecutor = null;
+        }
+        this.cache = new ConcurrentHashMap<String, CacheEntry>();
+        this.pendingLookups = new ConcurrentHashMap<String, FutureTask<CacheEntry>>();
+        this.evicting = new AtomicBoolean(false);
+        this.hostTimeToLive = new ConcurrentHashMap<String, Long>();
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.refreshes = new AtomicLong();
+    }
+
+    public CachingDnsResolver(final DnsResolver dnsResolver) {
+        this(dnsResolver, DEFAULT_MAX_ENTRIES,
+                DEFAULT_TIME_TO_LIVE, DEFAULT_NEGATIVE_TIME_TO_LIVE, TimeUnit.MILLISECONDS,
+                DEFAULT_REFRESH_AHEAD_FACTOR, AddressOrder.AS_RESOLVED);
+    }
+
+    public CachingDnsResolver() {
+        this(SystemDefaultDnsResolver.INSTANCE);
+    }
+
+    /**
+     * Overrides the default time to live of successful lookups for the given host.
+     */
+    public void setTimeToLive(final String host, final long timeToLive, final TimeUnit tunit) {
+        Args.notNull(host, "Host name");
+        Args.notNull(tunit, "Time unit");
+        this.hostTimeToLive.put(
+                host.toLowerCase(Locale.ENGLISH), Long.valueOf(tunit.toMillis(timeToLive)));
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private CacheEntry getEntry(final String key) {
+        CacheEntry entry = this.cache.get(key);
+        if (entry != null) {
+            entry.lastAccess = System.nanoTime();
+        }
+        return entry;
+    }
+
+    private void putEntry(final String key, final CacheEntry entry) {
+        entry.lastAccess = System.nanoTime();
+        this.cache.put(key, entry);
+        if (this.cache.size() > this.maxEntries) {
+            evict();
+        }
+    }
+
+    /**
+     * Evicts expired entries and, if the cache still holds too many, the
+     * least recently used ones. Eviction removes an eighth of the capacity
+     * at once so that its cost is spread over many insertions.
+     */
+    private void evict() {
+        if (!this.evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long now = currentTimeMillis();
+            List<Map.Entry<String, CacheEntry>> entries =
+                new ArrayList<Map.Entry<String, CacheEntry>>(this.cache.entrySet());
+            List<Map.Entry<String, CacheEntry>> live =
+                new ArrayList<Map.Entry<String, CacheEntry>>(entries.size());
+            for (Map.Entry<String, CacheEntry> e: entries) {
+                if (e.getValue().isValid(now)) {
+                    live.add(e);
+                } else {
+                    this.cache.remove(e.getKey(), e.getValue());
+                }
+            }
+            int excess = live.size() - (this.maxEntries - this.maxEntries / 8);
+            if (live.size() > this.maxEntries && excess > 0) {
+                Collections.sort(live, LEAST_RECENTLY_USED);
+                for (int i = 0; i < excess; i++) {
+                    Map.Entry<String, CacheEntry> e = live.get(i);
+                    this.cache.remove(e.getKey(), e.getValue());
+                }
+            }
+        } finally {
+            this.evicting.set(false);
+        }
+    }
+
+    private long getTimeToLive(final String key) {
+        Long ttl = this.hostTimeToLive.get(key);
+        return ttl != null ? ttl.longValue() : this.timeToLive;
+    }
+
+    public InetAddress[] resolve(final String host) throws UnknownHostException {
+        Args.notNull(host, "Host name");
+        String key = host.toLowerCase(Locale.ENGLISH);
+        long now = currentTimeMillis();
+        CacheEntry entry = getEntry(key);
+        if (entry != null && entry.isValid(now)) {
+            this.hits.incrementAndGet();
+            if (entry.addresses == null) {
+                throw new UnknownHostException(entry.message);
+            }
+            if (this.refreshExecutor != null && entry.isRefreshDue(now)) {
+                scheduleRefresh(host, key, entry);
+            }
+            return arrange(entry);
+        }
+        this.misses.incrementAndGet();
+        return arrange(sharedLookup(host, key));
+    }
+
+    /**
+     * Looks up the given host unless another thread is already doing so,
+     * in which case the result of that lookup is returned.
+     */
+    private CacheEntry sharedLookup(final String host, final String key) throws UnknownHostException {
+        FutureTask<CacheEntry> task = new FutureTask<CacheEntry>(new Callable<CacheEntry>() {
+
+            public CacheEntry call() throws UnknownHostException {
+                return lookup(host, key, false);
+            }
+
+        });
+        FutureTask<CacheEntry> pending = this.pendingLookups.putIfAbsent(key, task);
+        if (pending == null) {
+            try {
+                // The entry may have been stored since this thread missed it
+                CacheEntry entry = this.cache.get(key);
+                if (entry != null && entry.isValid(currentTimeMillis()) && entry.addresses != null) {
+                    return entry;
+                }
+                task.run();
+            } finally {
+                this.pendingLookups.remove(key, task);
+            }
+            pending = task;
+        }
+        try {
+            return pending.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new UnknownHostException("Interrupted while resolving " + host);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof UnknownHostException) {
+                throw (UnknownHostException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Resolves the given host and caches the outcome. A failed refresh is not
+     * cached, so the entry being refreshed keeps being served until it expires.
+     */
+    private CacheEntry lookup(
+            final String host, final String key, final boolean refresh) throws UnknownHostException {
+        InetAddress[] addresses;
+        try {
+            addresses = this.dnsResolver.resolve(host);
+            if (addresses == null || addresses.length == 0) {
+                throw new UnknownHostException(host + " cannot be resolved");
+            }
+        } catch (UnknownHostException ex) {
+            if (!refresh && this.negativeTimeToLive > 0) {
+                putEntry(key, new CacheEntry(
+                        ex.getMessage(), currentTimeMillis(), this.negativeTimeToLive));
+            }
+            throw ex;
+        }
+        long ttl = getTimeToLive(key);
+        CacheEntry entry = new CacheEntry(addresses.clone(), currentTimeMillis(), ttl,
+                this.refreshExecutor != null ? (long) (ttl * this.refreshAheadFactor) : ttl);
+        if (ttl > 0) {
+            putEntry(key, entry);
+        }
+        return entry;
+    }
+
+    private void scheduleRefresh(final String host, final String key, final CacheEntry entry) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            this.refreshExecutor.execute(new Runnable() {
+
+                public void run() {
+                    try {
+                        lookup(host, key, true);
+                        refreshes.incrementAndGet();
+                    } catch (UnknownHostException ex) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("Background refresh of " + host + " failed: " + ex.getMessage());
+                        }
+                    } finally {
+                        entry.refreshing.set(false);
+                    }
+                }
+
+            });
+        } catch (RejectedExecutionException ex) {
+            entry.refreshing.set(false);
+        }
+    }
+
+    private InetAddress[] arrange(final CacheEntry entry) {
+        InetAddress[] addresses = entry.addresses;
+        int len = addresses.length;
+        InetAddress[] result = new InetAddress[len];
+        switch (this.addressOrder) {
+        case ROTATE:
+            int offset = (entry.counter.getAndIncrement() & Integer.MAX_VALUE) % len;
+            System.arraycopy(addresses, offset, result, 0, len - offset);
+            System.arraycopy(addresses, 0, result, len - offset, offset);
+            break;
+        case SHUFFLE:
+            System.arraycopy(addresses, 0, result, 0, len);
+            List<InetAddress> list = Arrays.asList(result);
+            Collections.shuffle(list);
+            break;
+        default:
+            System.arraycopy(addresses, 0, result, 0, len);
+        }
+        return result;
+    }
+
+    /**
+     * Removes the given host from the cache.
+     */
+    public void remove(final String host) {
+        Args.notNull(host, "Host name");
+        this.cache.remove(host.toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public void clear() {
+        this.cache.clear();
+    }
+
+    public int size() {
+        return this.cache.size();
+    }
+
+    public long getHitCount() {
+        return this.hits.get();
+    }
+
+    public long getMissCount() {
+        return this.misses.get();
+    }
+
+    public long getRefreshCount() {
+        return this.refreshes.get();
+    }
+
+    /**
+     * Stops the background refresh thread, if any.
+     */
+    public void shutdown() {
+        if (this.refreshExecutor != null) {
+            this.refreshExecutor.shutdownNow();
+        }
+    }
+
+    public void close() {
+        shutdown();
+    }
+
+    static class CacheEntry {
+
+        final InetAddress[] addresses;
+        final String message;
+        final long expiry;
+        final long refreshAt;
+        final AtomicBoolean refreshing;
+        final AtomicInteger counter;
+        volatile long lastAccess;
+
+        CacheEntry(final InetAddress[] addresses, final long now, final long ttl, final long refreshAfter) {
+            super();
+            this.addresses = addresses;
+            this.message = null;
+            this.expiry = now + ttl;
+            this.refreshAt = now + refreshAfter;
+            this.refreshing = new AtomicBoolean(false);
+            this.counter = new AtomicInteger(0);
+        }
+
+        CacheEntry(final String message, final long now, final long ttl) {
+            super();
+            this.addresses = null;
+            this.message = message;
+            this.expiry = now + ttl;
+            this.refreshAt = this.expiry;
+            this.refreshing = new AtomicBoolean(false);
+            this.counter = new AtomicInteger(0);
+        }
+
+        boolean isValid(final long now) {
+            return now < this.expiry;
+        }
+
+        boolean isRefreshDue(final long now) {
+            return now >= this.refreshAt;
+        }
+
+    }
+
+    static class RefreshThreadFactory implements ThreadFactory {
+
+        public Thread newThread(final Runnable r) {
+            Thread t = new Thread(r, "DNS cache refresh");
+            t.setDaemon(true);
+            return t;
+        }
+
+    }
+
+}
@@ -0,0 +1,352 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.conn.ConnPoolListener;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.Args;
+
+/**
+ * {@link ConnPoolListener} that collects connection pool statistics using
+ * atomic counters only. Current pool occupancy is read from the
+ * {@link ConnPoolControl} the metrics are bound to.
+ * <p/>
+ * The metrics can be exported through JMX by registering the instance with
+ * an MBean server:
+ * <pre>
+ * PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager();
+ * ConnPoolMetrics metrics = new ConnPoolMetrics(cm);
+ * cm.setConnPoolListener(metrics);
+ * ManagementFactory.getPlatformMBeanServer().registerMBean(
+ *     metrics, new ObjectName("org.apache.http.conn:type=ConnPool,name=default"));
+ * </pre>
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+public class ConnPoolMetrics implements ConnPoolListener, ConnPoolMetricsMBean {
+
+    private static final long[] BUCKETS = new long[] {
+        1, 5, 10, 50, 100, 500, 1000, 5000 };
+
+    private final ConnPoolControl<HttpRoute> pool;
+    private final ConcurrentMap<HttpRoute, RouteMetrics> routeMetrics;
+
+    private final AtomicLong leaseCount;
+    private final AtomicLong reusedCount;
+    private final AtomicLong leaseTimeoutCount;
+    private final AtomicLong leaseWaitTotal;
+    private final AtomicLong leaseWaitMax;
+    private final AtomicLongArray leaseWaitHistogram;
+    private final AtomicLong openedCount;
+    private final AtomicLong releasedCount;
+    private final AtomicLong staleCount;
+    private final AtomicLong expiredCount;
+
+    public ConnPoolMetrics(final ConnPoolControl<HttpRoute> pool) {
+        super();
+        this.pool = Args.notNull(pool, "Connection pool");
+        this.routeMetrics = new ConcurrentHashMap<HttpRoute, RouteMetrics>();
+        this.leaseCount = new AtomicLong();
+        this.reusedCount = new AtomicLong();
+        this.leaseTimeoutCount = new AtomicLong();
+        this.leaseWaitTotal = new AtomicLong();
+        this.leaseWaitMax = new AtomicLong();
+        this.leaseWaitHistogram = new AtomicLongArray(BUCKETS.length + 1);
+        this.openedCount = new AtomicLong();
+        this.releasedCount = new AtomicLong();
+        this.staleCount = new AtomicLong();
+        this.expiredCount = new AtomicLong();
+    }
+
+    private static void updateMax(final AtomicLong max, final long value) {
+        for (;;) {
+            long current = max.get();
+            if (value <= current || max.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    private static int bucketOf(final long value) {
+        for (int i = 0; i < BUCKETS.length; i++) {
+            if (value < BUCKETS[i]) {
+                return i;
+            }
+        }
+        return BUCKETS.length;
+    }
+
+    private RouteMetrics getRouteMetrics(final HttpRoute route) {
+        RouteMetrics metrics = this.routeMetrics.get(route);
+        if (metrics == null) {
+            RouteMetrics newMetrics = new RouteMetrics();
+            metrics = this.routeMetrics.putIfAbsent(route, newMetrics);
+            if (metrics == null) {
+                metrics = newMetrics;
+            }
+        }
+        return metrics;
+    }
+
+    private HttpRoute findRoute(final String route) {
+        for (HttpRoute candidate: this.routeMetrics.keySet()) {
+            if (candidate.toString().equals(route)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    public void connectionLeased(final HttpRoute route, final long waitTime, final boolean reused) {
+        this.leaseCount.incrementAndGet();
+        if (reused) {
+            this.reusedCount.incrementAndGet();
+        }
+        this.leaseWaitTotal.addAndGet(waitTime);
+        updateMax(this.leaseWaitMax, waitTime);
+        this.leaseWaitHistogram.incrementAndGet(bucketOf(waitTime));
+        getRouteMetrics(route);
+    }
+
+    public void connectionLeaseTimeout(final HttpRoute route, final long waitTime) {
+        this.leaseTimeoutCount.incrementAndGet();
+        updateMax(this.leaseWaitMax, waitTime);
+        this.leaseWaitHistogram.incrementAndGet(bucketOf(waitTime));
+        getRouteMetrics(route).leaseTimeoutCount.incrementAndGet();
+    }
+
+    public void connectionOpened(final HttpRoute route, final long connectTime) {
+        this.openedCount.incrementAndGet();
+        RouteMetrics metrics = getRouteMetrics(route);
+        metrics.connectCount.incrementAndGet();
+        metrics.connectTimeTotal.addAndGet(connectTime);
+        updateMax(metrics.connectTimeMax, connectTime);
+    }
+
+    public void connectionReleased(final HttpRoute route, final boolean reusable) {
+        this.releasedCount.incrementAndGet();
+    }
+
+    public void connectionStale(final HttpRoute route) {
+        this.staleCount.incrementAndGet();
+    }
+
+    public void connectionExpired(final HttpRoute route) {
+        this.expiredCount.incrementAndGet();
+    }
+
+    public int getLeased() {
+        return this.pool.getTotalStats().getLeased();
+    }
+
+    public int getAvailable() {
+        return this.pool.getTotalStats().getAvailable();
+    }
+
+    public int getPending() {
+        return this.pool.getTotalStats().getPending();
+    }
+
+    public int getMaxTotal() {
+        return this.pool.getMaxTotal();
+    }
+
+    public long getLeaseCount() {
+        return this.leaseCount.get();
+    }
+
+    public long getReusedCount() {
+        return this.reusedCount.get();
+    }
+
+    public long getNewConnectionCount() {
+        return this.leaseCount.get() - this.reusedCount.get();
+    }
+
+    public double getReuseRatio() {
+        long leases = this.leaseCount.get();
+        return leases > 0 ? (double) this.reusedCount.get() / leases : 0;
+    }
+
+    public long getLeaseTimeoutCount() {
+        return this.leaseTimeoutCount.get();
+    }
+
+    public long getMaxLeaseWaitTime() {
+        return this.leaseWaitMax.get();
+    }
+
+    public double getMeanLeaseWaitTime() {
+        long leases = this.leaseCount.get();
+        return leases > 0 ? (double) this.leaseWaitTotal.get() / leases : 0;
+    }
+
+    /**
+     * Returns upper bounds (exclusive, in milliseconds) of the lease wait
+     * time histogram buckets. The histogram has one more bucket for wait
+     * times above the last bound.
+     */
+    public long[] getLeaseWaitTimeBuckets() {
+        return BUCKETS.clone();
+    }
+
+    public long[] getLeaseWaitTimeHistogram() {
+        long[] histogram = new long[this.leaseWaitHistogram.length()];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = this.leaseWaitHistogram.get(i);
+        }
+        return histogram;
+    }
+
+    public long getOpenedCount() {
+        return this.openedCount.get();
+    }
+
+    public long getReleasedCount() {
+        return this.releasedCount.get();
+    }
+
+    public long getStaleCount() {
+        return this.staleCount.get();
+    }
+
+    public long getExpiredCount() {
+        return this.expiredCount.get();
+    }
+
+    public String[] getRoutes() {
+        List<String> routes = new ArrayList<String>();
+        for (HttpRoute route: this.routeMetrics.keySet()) {
+            routes.add(route.toString());
+        }
+        return routes.toArray(new String[routes.size()]);
+    }
+
+    /**
+     * Returns statistics of the given route as reported by the pool.
+     */
+    public PoolStats getRouteStats(final HttpRoute route) {
+        return this.pool.getStats(route);
+    }
+
+    public int getRouteLeased(final String route) {
+        HttpRoute key = findRoute(route);
+        return key != null ? this.pool.getStats(key).getLeased() : 0;
+    }
+
+    public int getRouteAvailable(final String route) {
+        HttpRoute key = findRoute(route);
+        return key != null ? this.pool.getStats(key).getAvailable() : 0;
+    }
+
+    public int getRoutePending(final String route) {
+        HttpRoute key = findRoute(route);
+        return key != null ? this.pool.getStats(key).getPending() : 0;
+    }
+
+    /**
+     * Returns the mean time in milliseconds spent opening connections to the
+     * given route.
+     */
+    public double getRouteMeanConnectTime(final HttpRoute route) {
+        RouteMetrics metrics = this.routeMetrics.get(route);
+        if (metrics == null) {
+            return 0;
+        }
+        long count = metrics.connectCount.get();
+        return count > 0 ? (double) metrics.connectTimeTotal.get() / count : 0;
+    }
+
+    public double getRouteMeanConnectTime(final String route) {
+        HttpRoute key = findRoute(route);
+        return key != null ? getRouteMeanConnectTime(key) : 0;
+    }
+
+    /**
+     * Returns the maximum time in milliseconds spent opening a connection
+     * to the given route.
+     */
+    public long getRouteMaxConnectTime(final HttpRoute route) {
+        RouteMetrics metrics = this.routeMetrics.get(route);
+        return metrics != null ? metrics.connectTimeMax.get() : 0;
+    }
+
+    public long getRouteMaxConnectTime(final String route) {
+        HttpRoute key = findRoute(route);
+        return key != null ? getRouteMaxConnectTime(key) : 0;
+    }
+
+    public void reset() {
+        this.leaseCount.set(0);
+        this.reusedCount.set(0);
+        this.leaseTimeoutCount.set(0);
+        this.leaseWaitTotal.set(0);
+        this.leaseWaitMax.set(0);
+        for (int i = 0; i < this.leaseWaitHistogram.length(); i++) {
+            this.leaseWaitHistogram.set(i, 0);
+        }
+        this.openedCount.set(0);
+        this.releasedCount.set(0);
+        this.staleCount.set(0);
+        this.expiredCount.set(0);
+        this.routeMetrics.clear();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        buf.append("[leases: ").append(this.leaseCount.get());
+        buf.append("; reused: ").append(this.reusedCount.get());
+        buf.append("; timeouts: ").append(this.leaseTimeoutCount.get());
+        buf.append("; opened: ").append(this.openedCount.get());
+        buf.append("; stale: ").append(this.staleCount.get());
+        buf.append("; expired: ").append(this.expiredCount.get());
+        buf.append("]");
+        return buf.toString();
+    }
+
+    static class RouteMetrics {
+
+        final AtomicLong leaseTimeoutCount = new AtomicLong();
+        final AtomicLong connectCount = new AtomicLong();
+        final AtomicLong connectTimeTotal = new AtomicLong();
+        final AtomicLong connectTimeMax = new AtomicLong();
+
+    }
+
+}
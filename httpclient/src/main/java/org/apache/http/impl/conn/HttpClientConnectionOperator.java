@@ -27,15 +27,28 @@
 package org.apache.http.impl.conn;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.ConnectException;
+import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.HttpHost;
-import org.apache.http.annotation.Immutable;
+import org.apache.http.annotation.GuardedBy;
+import org.apache.http.annotation.ThreadSafe;
 import org.apache.http.client.protocol.ClientContext;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.config.Lookup;
@@ -53,15 +66,25 @@ import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.Args;
 import org.apache.http.util.Asserts;
 
-@Immutable
+@ThreadSafe
 class HttpClientConnectionOperator {
 
+    /**
+     * Upper bound on threads shared by all staggered connects of an operator.
+     */
+    static final int MAX_STAGGER_THREADS = 4;
+
     private final Log log = LogFactory.getLog(HttpClientConnectionManager.class);
 
     private final Lookup<ConnectionSocketFactory> socketFactoryRegistry;
     private final SchemePortResolver schemePortResolver;
     private final DnsResolver dnsResolver;
 
+    @GuardedBy("this")
+    private ScheduledExecutorService staggerExecutor;
+    @GuardedBy("this")
+    private boolean shutdown;
+
     HttpClientConnectionOperator(
             final Lookup<ConnectionSocketFactory> socketFactoryRegistry,
             final SchemePortResolver schemePortResolver,
@@ -92,6 +115,26 @@ class HttpClientConnectionOperator {
             final int connectTimeout,
             final SocketConfig socketConfig,
             final HttpContext context) throws IOException {
+        connect(conn, host, localAddress, connectTimeout, -1, socketConfig, context);
+    }
+
+    /**
+     * Connects to the given host. If <code>staggerDelay</code> is positive and
+     * the host resolves to multiple addresses, connection attempts are made
+     * in parallel: a new attempt is started every <code>staggerDelay</code>
+     * milliseconds (or as soon as the previous one fails) and the first socket
+     * to connect wins. The first attempt is made on the calling thread, later
+     * ones on a small pool of threads shared by all connects of this operator.
+     * Otherwise addresses are tried one after another.
+     */
+    public void connect(
+            final SocketClientConnection conn,
+            final HttpHost host,
+            final InetSocketAddress localAddress,
+            final int connectTimeout,
+            final int staggerDelay,
+            final SocketConfig socketConfig,
+            final HttpContext context) throws IOException {
         Lookup<ConnectionSocketFactory> registry = getSocketFactoryRegistry(context);
         ConnectionSocketFactory sf = registry.lookup(host.getSchemeName());
         if (sf == null) {
@@ -99,6 +142,11 @@ class HttpClientConnectionOperator {
         }
         InetAddress[] addresses = this.dnsResolver.resolve(host.getHostName());
         int port = this.schemePortResolver.resolve(host);
+        if (staggerDelay > 0 && addresses.length > 1) {
+            connectStaggered(conn, sf, host, addresses, port, localAddress,
+                    connectTimeout, staggerDelay, socketConfig, context);
+            return;
+        }
         for (int i = 0; i < addresses.length; i++) {
             InetAddress address = addresses[i];
             boolean last = i == addresses.length - 1;
@@ -115,12 +163,7 @@ class HttpClientConnectionOperator {
                 sock.setSoTimeout(socketConfig.getSoTimeout());
                 sock = sf.connectSocket(
                         connectTimeout, sock, host, remoteAddress, localAddress, context);
-                sock.setTcpNoDelay(socketConfig.isTcpNoDelay());
-                sock.setKeepAlive(socketConfig.isSoKeepAlive());
-                int linger = socketConfig.getSoLinger();
-                if (linger >= 0) {
-                    sock.setSoLinger(linger > 0, linger);
-                }
+                applySocketConfig(sock, socketConfig);
                 conn.bind(sock);
                 return;
             } catch (ConnectException ex) {
@@ -139,6 +182,479 @@ class HttpClientConnectionOperator {
         }
     }
 
+    private void applySocketConfig(final Socket sock, final SocketConfig socketConfig) throws IOException {
+        sock.setTcpNoDelay(socketConfig.isTcpNoDelay());
+        sock.setKeepAlive(socketConfig.isSoKeepAlive());
+        int linger = socketConfig.getSoLinger();
+        if (linger >= 0) {
+            sock.setSoLinger(linger > 0, linger);
+        }
+    }
+
+    private void connectStaggered(
+            final SocketClientConnection conn,
+            final ConnectionSocketFactory sf,
+            final HttpHost host,
+            final InetAddress[] addresses,
+            final int port,
+            final InetSocketAddress localAddress,
+            final int connectTimeout,
+            final int staggerDelay,
+            final SocketConfig socketConfig,
+            final HttpContext context) throws IOException {
+        StaggeredConnect staggered = new StaggeredConnect(
+                getStaggerExecutor(), sf, host, interleave(addresses), port, localAddress,
+                connectTimeout, staggerDelay, socketConfig, context);
+        // Like the raw socket in the sequential case, this lets a connection
+        // shutdown break the connect
+        conn.bind(new AbortTriggerSocket(staggered));
+        Socket sock = staggered.connect();
+        applySocketConfig(sock, socketConfig);
+        conn.bind(sock);
+    }
+
+    private synchronized ScheduledExecutorService getStaggerExecutor() {
+        if (this.shutdown) {
+            return null;
+        }
+        if (this.staggerExecutor == null) {
+            this.staggerExecutor = new ScheduledThreadPoolExecutor(
+                    MAX_STAGGER_THREADS, new StaggerThreadFactory());
+        }
+        return this.staggerExecutor;
+    }
+
+    /**
+     * Releases the threads used for staggered connection attempts. Connects
+     * initiated afterwards try all addresses on the calling thread.
+     */
+    public void shutdown() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            this.shutdown = true;
+            executor = this.staggerExecutor;
+            this.staggerExecutor = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Re-orders addresses so that IPv6 and IPv4 addresses alternate, starting
+     * with the address family of the first address.
+     */
+    static InetAddress[] interleave(final InetAddress[] addresses) {
+        if (addresses.length < 2) {
+            return addresses;
+        }
+        boolean ipv6First = addresses[0] instanceof Inet6Address;
+        List<InetAddress> primary = new ArrayList<InetAddress>(addresses.length);
+        List<InetAddress> secondary = new ArrayList<InetAddress>(addresses.length);
+        for (InetAddress address: addresses) {
+            if ((address instanceof Inet6Address) == ipv6First) {
+                primary.add(address);
+            } else {
+                secondary.add(address);
+            }
+        }
+        InetAddress[] ordered = new InetAddress[addresses.length];
+        int i = 0;
+        int p = 0;
+        int s = 0;
+        while (p < primary.size() || s < secondary.size()) {
+            if (p < primary.size()) {
+                ordered[i++] = primary.get(p++);
+            }
+            if (s < secondary.size()) {
+                ordered[i++] = secondary.get(s++);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Races connection attempts to several addresses of the same host.
+     * <p/>
+     * The first attempt runs on the calling thread. Each following attempt is
+     * scheduled on the shared executor <code>staggerDelay</code> milliseconds
+     * after the previous one was started, or immediately once an attempt fails.
+     * Attempts the executor could not pick up yet are taken over by the calling
+     * thread as soon as it is idle, so connects make progress even if all
+     * executor threads are busy or the executor has been shut down.
+     */
+    static class StaggeredConnect {
+
+        private final Log log = LogFactory.getLog(HttpClientConnectionManager.class);
+
+        private final ScheduledExecutorService executor;
+        private final ConnectionSocketFactory sf;
+        private final HttpHost host;
+        private final InetAddress[] addresses;
+        private final int port;
+        private final InetSocketAddress localAddress;
+        private final int connectTimeout;
+        private final int staggerDelay;
+        private final SocketConfig socketConfig;
+        private final HttpContext context;
+
+        @GuardedBy("this")
+        private final List<ConnectAttempt> attempts;
+        @GuardedBy("this")
+        private int next;
+        @GuardedBy("this")
+        private int pending;
+        @GuardedBy("this")
+        private ConnectAttempt winner;
+        @GuardedBy("this")
+        private IOException lastFailure;
+        @GuardedBy("this")
+        private ScheduledFuture<?> scheduled;
+        @GuardedBy("this")
+        private boolean done;
+        @GuardedBy("this")
+        private boolean aborted;
+
+        StaggeredConnect(
+                final ScheduledExecutorService executor,
+                final ConnectionSocketFactory sf,
+                final HttpHost host,
+                final InetAddress[] addresses,
+                final int port,
+                final InetSocketAddress localAddress,
+                final int connectTimeout,
+                final int staggerDelay,
+                final SocketConfig socketConfig,
+                final HttpContext context) {
+            super();
+            this.executor = executor;
+            this.sf = sf;
+            this.host = host;
+            this.addresses = addresses;
+            this.port = port;
+            this.localAddress = localAddress;
+            this.connectTimeout = connectTimeout;
+            this.staggerDelay = staggerDelay;
+            this.socketConfig = socketConfig;
+            this.context = context;
+            this.attempts = new ArrayList<ConnectAttempt>(addresses.length);
+        }
+
+        Socket connect() throws IOException {
+            ConnectAttempt attempt;
+            synchronized (this) {
+                attempt = newAttempt();
+                attempt.claim();
+                scheduleNext();
+            }
+            try {
+                for (;;) {
+                    attempt.execute();
+                    synchronized (this) {
+                        attempt = null;
+                        while (!this.aborted && this.winner == null && this.pending > 0) {
+                            attempt = unclaimedAttempt();
+                            if (attempt != null) {
+                                break;
+                            }
+                            wait();
+                        }
+                        if (this.aborted) {
+                            throw new InterruptedIOException("Connection has been shut down");
+                        }
+                        if (this.winner != null) {
+                            if (this.log.isDebugEnabled()) {
+                                this.log.debug("Connected to " + this.winner.getRemoteAddress());
+                            }
+                            return this.winner.getSocket();
+                        }
+                        if (attempt == null) {
+                            if (this.next >= this.addresses.length) {
+                                break;
+                            }
+                            attempt = newAttempt();
+                            attempt.claim();
+                        }
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Connect operation interrupted");
+            } finally {
+                finish();
+            }
+            IOException failure;
+            synchronized (this) {
+                failure = this.lastFailure;
+            }
+            if (failure instanceof ConnectException) {
+                throw new HttpHostConnectException(this.host, (ConnectException) failure);
+            }
+            throw failure;
+        }
+
+        @GuardedBy("this")
+        private ConnectAttempt newAttempt() {
+            InetSocketAddress remoteAddress = new InetSocketAddress(
+                    this.addresses[this.next], this.port);
+            this.next++;
+            this.pending++;
+            ConnectAttempt attempt = new ConnectAttempt(remoteAddress);
+            this.attempts.add(attempt);
+            return attempt;
+        }
+
+        @GuardedBy("this")
+        private ConnectAttempt unclaimedAttempt() {
+            for (ConnectAttempt attempt: this.attempts) {
+                if (attempt.claim()) {
+                    return attempt;
+                }
+            }
+            return null;
+        }
+
+        @GuardedBy("this")
+        private void scheduleNext() {
+            if (this.executor == null || this.next >= this.addresses.length) {
+                return;
+            }
+            try {
+                this.scheduled = this.executor.schedule(new Runnable() {
+
+                    public void run() {
+                        launchNext();
+                    }
+
+                }, this.staggerDelay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ex) {
+                this.scheduled = null;
+            }
+        }
+
+        synchronized void launchNext() {
+            if (this.done || this.winner != null || this.next >= this.addresses.length) {
+                return;
+            }
+            if (this.scheduled != null) {
+                this.scheduled.cancel(false);
+                this.scheduled = null;
+            }
+            ConnectAttempt attempt = newAttempt();
+            try {
+                this.executor.execute(attempt);
+            } catch (RejectedExecutionException ex) {
+                // Left for the calling thread to pick up
+            }
+            scheduleNext();
+            notifyAll();
+        }
+
+        void completed(final ConnectAttempt attempt) {
+            IOException failure = attempt.getFailure();
+            if (failure != null && this.log.isDebugEnabled()) {
+                this.log.debug("Connect to " + attempt.getRemoteAddress() + " failed: "
+                        + failure.getMessage());
+            }
+            synchronized (this) {
+                this.pending--;
+                if (failure == null) {
+                    if (this.winner == null) {
+                        this.winner = attempt;
+                    }
+                } else {
+                    this.lastFailure = failure;
+                    if (this.winner == null && this.executor != null) {
+                        launchNext();
+                    }
+                }
+                notifyAll();
+            }
+            if (failure == null) {
+                abortLosers();
+            }
+        }
+
+        /**
+         * Aborts all pending attempts and makes {@link #connect()} fail.
+         */
+        void abort() {
+            synchronized (this) {
+                this.aborted = true;
+                notifyAll();
+            }
+            finish();
+        }
+
+        private void finish() {
+            synchronized (this) {
+                this.done = true;
+                if (this.scheduled != null) {
+                    this.scheduled.cancel(false);
+                    this.scheduled = null;
+                }
+            }
+            abortLosers();
+        }
+
+        private void abortLosers() {
+            List<ConnectAttempt> losers;
+            synchronized (this) {
+                losers = new ArrayList<ConnectAttempt>(this.attempts);
+                if (this.winner != null && !this.aborted) {
+                    losers.remove(this.winner);
+                }
+            }
+            for (ConnectAttempt attempt: losers) {
+                attempt.abort();
+            }
+        }
+
+        class ConnectAttempt implements Runnable {
+
+            private final InetSocketAddress remoteAddress;
+            private final AtomicBoolean claimed;
+
+            @GuardedBy("this")
+            private Socket rawSocket;
+            @GuardedBy("this")
+            private Socket socket;
+            @GuardedBy("this")
+            private IOException failure;
+            @GuardedBy("this")
+            private boolean aborted;
+
+            ConnectAttempt(final InetSocketAddress remoteAddress) {
+                super();
+                this.remoteAddress = remoteAddress;
+                this.claimed = new AtomicBoolean(false);
+            }
+
+            boolean claim() {
+                return this.claimed.compareAndSet(false, true);
+            }
+
+            public void run() {
+                if (claim()) {
+                    execute();
+                }
+            }
+
+            void execute() {
+                if (log.isDebugEnabled()) {
+                    log.debug("Connecting to " + this.remoteAddress);
+                }
+                try {
+                    Socket sock = sf.createSocket(context);
+                    sock.setReuseAddress(socketConfig.isSoReuseAddress());
+                    sock.setSoTimeout(socketConfig.getSoTimeout());
+                    synchronized (this) {
+                        this.rawSocket = sock;
+                        if (this.aborted) {
+                            throw new InterruptedIOException("Connect attempt aborted");
+                        }
+                    }
+                    sock = sf.connectSocket(
+                            connectTimeout, sock, host, this.remoteAddress, localAddress, context);
+                    boolean discard;
+                    synchronized (this) {
+                        discard = this.aborted;
+                        if (!discard) {
+                            this.socket = sock;
+                        }
+                    }
+                    if (discard) {
+                        closeQuietly(sock);
+                        throw new InterruptedIOException("Connect attempt aborted");
+                    }
+                } catch (IOException ex) {
+                    setFailure(ex);
+                } catch (RuntimeException ex) {
+                    IOException ioex = new IOException(ex.getMessage());
+                    ioex.initCause(ex);
+                    setFailure(ioex);
+                }
+                completed(this);
+            }
+
+            private synchronized void setFailure(final IOException ex) {
+                this.failure = ex;
+            }
+
+            InetSocketAddress getRemoteAddress() {
+                return this.remoteAddress;
+            }
+
+            synchronized Socket getSocket() {
+                return this.socket;
+            }
+
+            synchronized IOException getFailure() {
+                return this.failure;
+            }
+
+            void abort() {
+                Socket raw;
+                Socket sock;
+                synchronized (this) {
+                    this.aborted = true;
+                    raw = this.rawSocket;
+                    sock = this.socket;
+                    this.socket = null;
+                }
+                if (raw != null) {
+                    closeQuietly(raw);
+                }
+                if (sock != null) {
+                    closeQuietly(sock);
+                }
+            }
+
+        }
+
+        private static void closeQuietly(final Socket sock) {
+            try {
+                sock.close();
+            } catch (IOException ignore) {
+            }
+        }
+
+    }
+
+    /**
+     * Unconnected placeholder bound to the connection while a staggered
+     * connect is in progress. Closing it, as the connection does when it
+     * gets shut down, aborts all pending attempts.
+     */
+    static class AbortTriggerSocket extends Socket {
+
+        private final StaggeredConnect staggered;
+
+        AbortTriggerSocket(final StaggeredConnect staggered) {
+            super();
+            this.staggered = staggered;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            this.staggered.abort();
+            super.close();
+        }
+
+    }
+
+    static class StaggerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(final Runnable r) {
+            Thread t = new Thread(r, "httpclient-connect-" + this.count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+
+    }
+
     public void upgrade(
             final SocketClientConnection conn,
             final HttpHost host,
@@ -0,0 +1,103 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.conn.ConnPoolListener;
+import org.apache.http.conn.routing.HttpRoute;
+
+/**
+ * Forwards pool events to the {@link ConnPoolListener} currently installed
+ * on {@link PoolingHttpClientConnectionManager}, if any. A single instance is
+ * shared by the connection manager, its pool and all pool entries.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+class InternalConnPoolListener implements ConnPoolListener {
+
+    private volatile ConnPoolListener listener;
+
+    InternalConnPoolListener() {
+        super();
+    }
+
+    public ConnPoolListener getListener() {
+        return this.listener;
+    }
+
+    public void setListener(final ConnPoolListener listener) {
+        this.listener = listener;
+    }
+
+    public boolean isEnabled() {
+        return this.listener != null;
+    }
+
+    public void connectionLeased(final HttpRoute route, final long waitTime, final boolean reused) {
+        ConnPoolListener local = this.listener;
+        if (local != null) {
+            local.connectionLeased(route, waitTime, reused);
+        }
+    }
+
+    public void connectionLeaseTimeout(final HttpRoute route, final long waitTime) {
+        ConnPoolListener local = this.listener;
+        if (local != null) {
+            local.connectionLeaseTimeout(route, waitTime);
+        }
+    }
+
+    public void connectionOpened(final HttpRoute route, final long connectTime) {
+        ConnPoolListener local = this.listener;
+        if (local != null) {
+            local.connectionOpened(route, connectTime);
+        }
+    }
+
+    public void connectionReleased(final HttpRoute route, final boolean reusable) {
+        ConnPoolListener local = this.listener;
+        if (local != null) {
+            local.connectionReleased(route, reusable);
+        }
+    }
+
+    public void connectionStale(final HttpRoute route) {
+        ConnPoolListener local = this.listener;
+        if (local != null) {
+            local.connectionStale(route);
+        }
+    }
+
+    public void connectionExpired(final HttpRoute route) {
+        ConnPoolListener local = this.listener;
+        if (local != null) {
+            local.connectionExpired(route);
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+/**
+ * Concurrency policy of the connection pool used by
+ * {@link PoolingHttpClientConnectionManager}.
+ *
+ * @since 4.3
+ */
+public enum PoolConcurrencyPolicy {
+
+    /**
+     * All routes share one pool lock. Connection requests are served in
+     * strict order across all routes.
+     */
+    STRICT,
+
+    /**
+     * Each route is guarded by its own lock while the total limit is
+     * enforced with an atomic counter. Connection requests for one route
+     * never wait for requests or releases on another route.
+     */
+    STRIPED
+
+}
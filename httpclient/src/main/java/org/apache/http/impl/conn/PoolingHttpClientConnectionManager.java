@@ -47,6 +47,7 @@ import org.apache.http.config.Lookup;
 import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
 import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.ConnPoolListener;
 import org.apache.http.conn.ConnectionPoolTimeoutException;
 import org.apache.http.conn.ConnectionRequest;
 import org.apache.http.conn.DnsResolver;
@@ -84,14 +85,19 @@ import org.apache.http.util.Asserts;
  * @since 4.3
  */
 @ThreadSafe
-public class PoolingHttpClientConnectionManager implements HttpClientConnectionManager, Closeable {
+public class PoolingHttpClientConnectionManager
+    implements HttpClientConnectionManager, ConnPoolControl<HttpRoute>, Closeable {
 
     private final Log log = LogFactory.getLog(getClass());
 
     private final ConfigData configData;
-    private final CPool pool;
+    private final InternalConnPoolListener poolListener;
+    private final ManagedConnPool pool;
     private final HttpClientConnectionOperator connectionOperator;
 
+    private volatile int validateAfterInactivity;
+    private volatile int connectStaggerDelay;
+
     private static Registry<ConnectionSocketFactory> getDefaultRegistry() {
         return RegistryBuilder.<ConnectionSocketFactory>create()
                 .register("http", PlainSocketFactory.getSocketFactory())
@@ -138,24 +144,53 @@ public class PoolingHttpClientConnectionManager implements HttpClientConnectionM
             final SchemePortResolver schemePortResolver,
             final DnsResolver dnsResolver,
             final long timeToLive, final TimeUnit tunit) {
+        this(socketFactoryRegistry, connFactory, schemePortResolver, dnsResolver,
+                timeToLive, tunit, PoolConcurrencyPolicy.STRICT);
+    }
+
+    /**
+     * @param poolConcurrencyPolicy determines whether all routes share
+     *   a single pool lock ({@link PoolConcurrencyPolicy#STRICT}) or each
+     *   route is locked individually ({@link PoolConcurrencyPolicy#STRIPED}).
+     */
+    public PoolingHttpClientConnectionManager(
+            final Registry<ConnectionSocketFactory> socketFactoryRegistry,
+            final HttpConnectionFactory<SocketClientConnection> connFactory,
+            final SchemePortResolver schemePortResolver,
+            final DnsResolver dnsResolver,
+            final long timeToLive, final TimeUnit tunit,
+            final PoolConcurrencyPolicy poolConcurrencyPolicy) {
         super();
         this.configData = new ConfigData();
-        this.pool = new CPool(
-                new InternalConnectionFactory(this.configData, connFactory), 2, 20, timeToLive, tunit);
+        this.poolListener = new InternalConnPoolListener();
+        InternalConnectionFactory internalConnFactory =
+            new InternalConnectionFactory(this.configData, connFactory);
+        if (poolConcurrencyPolicy == PoolConcurrencyPolicy.STRIPED) {
+            this.pool = new StripedCPool(
+                    internalConnFactory, 2, 20, timeToLive, tunit, this.poolListener);
+        } else {
+            this.pool = new CPool(
+                    internalConnFactory, 2, 20, timeToLive, tunit, this.poolListener);
+        }
         this.connectionOperator = new HttpClientConnectionOperator(
                 socketFactoryRegistry, schemePortResolver, dnsResolver);
+        this.validateAfterInactivity = -1;
+        this.connectStaggerDelay = -1;
     }
 
     PoolingHttpClientConnectionManager(
-            final CPool pool,
+            final ManagedConnPool pool,
             final Lookup<ConnectionSocketFactory> socketFactoryRegistry,
             final SchemePortResolver schemePortResolver,
             final DnsResolver dnsResolver) {
         super();
         this.configData = new ConfigData();
+        this.poolListener = new InternalConnPoolListener();
         this.pool = pool;
         this.connectionOperator = new HttpClientConnectionOperator(
                 socketFactoryRegistry, schemePortResolver, dnsResolver);
+        this.validateAfterInactivity = -1;
+        this.connectStaggerDelay = -1;
     }
 
     @Override
@@ -220,7 +255,19 @@ public class PoolingHttpClientConnectionManager implements HttpClientConnectionM
             public HttpClientConnection get(
                     final long timeout,
                     final TimeUnit tunit) throws InterruptedException, ConnectionPoolTimeoutException {
-                return leaseConnection(future, timeout, tunit);
+                if (!poolListener.isEnabled()) {
+                    return leaseConnection(future, timeout, tunit);
+                }
+                long start = System.currentTimeMillis();
+                HttpClientConnection conn;
+                try {
+                    conn = leaseConnection(future, timeout, tunit);
+                } catch (ConnectionPoolTimeoutException ex) {
+                    poolListener.connectionLeaseTimeout(route, System.currentTimeMillis() - start);
+                    throw ex;
+                }
+                poolListener.connectionLeased(route, System.currentTimeMillis() - start, conn.isOpen());
+                return conn;
             }
 
         };
@@ -238,6 +285,7 @@ public class PoolingHttpClientConnectionManager implements HttpClientConnectionM
                 throw new InterruptedException();
             }
             Asserts.check(entry.getConnection() != null, "Pool entry with no connection");
+            validate(entry);
             if (this.log.isDebugEnabled()) {
                 this.log.debug("Connection leased: " + format(entry) + formatStats(entry.getRoute()));
             }
@@ -255,37 +303,62 @@ public class PoolingHttpClientConnectionManager implements HttpClientConnectionM
         }
     }
 
+    private void validate(final CPoolEntry entry) {
+        int threshold = this.validateAfterInactivity;
+        if (threshold < 0) {
+            return;
+        }
+        SocketClientConnection conn = entry.getConnection();
+        if (!conn.isOpen()) {
+            return;
+        }
+        long lastUsed = entry.getUpdated();
+        if (lastUsed == 0) {
+            lastUsed = entry.getCreated();
+        }
+        if (lastUsed + threshold > System.currentTimeMillis()) {
+            return;
+        }
+        if (conn.isStale()) {
+            if (this.log.isDebugEnabled()) {
+                this.log.debug("Connection " + format(entry) + " is stale");
+            }
+            this.poolListener.connectionStale(entry.getRoute());
+            entry.close();
+        }
+    }
+
     public void releaseConnection(
             final HttpClientConnection managedConn,
             final Object state,
             final long keepalive, final TimeUnit tunit) {
         Args.notNull(managedConn, "Managed connection");
-        synchronized (managedConn) {
-            CPoolEntry entry = CPoolProxy.detach(managedConn);
-            if (entry == null) {
-                return;
-            }
-            SocketClientConnection conn = entry.getConnection();
-            try {
-                if (conn.isOpen()) {
-                    entry.setState(state);
-                    entry.updateExpiry(keepalive, tunit != null ? tunit : TimeUnit.MILLISECONDS);
-                    if (this.log.isDebugEnabled()) {
-                        String s;
-                        if (keepalive > 0) {
-                            s = "for " + (double) keepalive / 1000 + " seconds";
-                        } else {
-                            s = "indefinitely";
-                        }
-                        this.log.debug("Connection " + format(entry) + " can be kept alive " + s);
-                    }
-                }
-            } finally {
-                this.pool.release(entry, conn.isOpen());
+        // Detaching the pool entry is atomic, so only one caller can release the connection
+        CPoolEntry entry = CPoolProxy.detach(managedConn);
+        if (entry == null) {
+            return;
+        }
+        SocketClientConnection conn = entry.getConnection();
+        try {
+            if (conn.isOpen()) {
+                entry.setState(state);
+                entry.updateExpiry(keepalive, tunit != null ? tunit : TimeUnit.MILLISECONDS);
                 if (this.log.isDebugEnabled()) {
-                    this.log.debug("Connection released: " + format(entry) + formatStats(entry.getRoute()));
+                    String s;
+                    if (keepalive > 0) {
+                        s = "for " + (double) keepalive / 1000 + " seconds";
+                    } else {
+                        s = "indefinitely";
+                    }
+                    this.log.debug("Connection " + format(entry) + " can be kept alive " + s);
                 }
             }
+        } finally {
+            this.poolListener.connectionReleased(entry.getRoute(), conn.isOpen());
+            this.pool.release(entry, conn.isOpen());
+            if (this.log.isDebugEnabled()) {
+                this.log.debug("Connection released: " + format(entry) + formatStats(entry.getRoute()));
+            }
         }
     }
 
@@ -296,11 +369,9 @@ public class PoolingHttpClientConnectionManager implements HttpClientConnectionM
             final int connectTimeout,
             final HttpContext context) throws IOException {
         Args.notNull(managedConn, "Connection");
-        SocketClientConnection conn;
-        synchronized (managedConn) {
-            CPoolEntry entry = CPoolProxy.getPoolEntry(managedConn);
-            conn = entry.getConnection();
-        }
+        final CPoolEntry entry = CPoolProxy.getPoolEntry(managedConn);
+        final SocketClientConnection conn = entry.getConnection();
+        final HttpRoute route = entry.getRoute();
         SocketConfig socketConfig = this.configData.getSocketConfig(host);
         if (socketConfig == null) {
             socketConfig = this.configData.getDefaultSocketConfig();
@@ -309,8 +380,11 @@ public class PoolingHttpClientConnectionManager implements HttpClientConnectionM
             socketConfig = SocketConfig.DEFAULT;
         }
         InetSocketAddress localAddress = local != null ? new InetSocketAddress(local, 0) : null;
+        long start = System.currentTimeMillis();
         this.connectionOperator.connect(
-                conn, host, localAddress, connectTimeout, socketConfig, context);
+                conn, host, localAddress, connectTimeout, this.connectStaggerDelay,
+                socketConfig, context);
+        this.poolListener.connectionOpened(route, System.currentTimeMillis() - start);
     }
 
     public void upgrade(
@@ -318,11 +392,7 @@ public class PoolingHttpClientConnectionManager implements HttpClientConnectionM
             final HttpHost host,
             final HttpContext context) throws IOException {
         Args.notNull(managedConn, "Connection");
-        SocketClientConnection conn;
-        synchronized (managedConn) {
-            CPoolEntry entry = CPoolProxy.getPoolEntry(managedConn);
-            conn = entry.getConnection();
-        }
+        final SocketClientConnection conn = CPoolProxy.getPoolEntry(managedConn).getConnection();
         this.connectionOperator.upgrade(conn, host, context);
     }
 
@@ -333,6 +403,7 @@ public class PoolingHttpClientConnectionManager implements HttpClientConnectionM
         } catch (IOException ex) {
             this.log.debug("I/O exception shutting down connection manager", ex);
         }
+        this.connectionOperator.shutdown();
         this.log.debug("Connection manager shut down");
     }
 
@@ -348,6 +419,49 @@ public class PoolingHttpClientConnectionManager implements HttpClientConnectionM
         this.pool.closeExpired();
     }
 
+    /**
+     * Returns period of inactivity in milliseconds after which persistent
+     * connections must be checked for staleness before being leased.
+     * A negative value disables the check.
+     *
+     * @see #setValidateAfterInactivity(int)
+     */
+    public int getValidateAfterInactivity() {
+        return this.validateAfterInactivity;
+    }
+
+    /**
+     * Defines period of inactivity in milliseconds after which persistent
+     * connections must be re-validated prior to being leased to the consumer.
+     * Connections that were released more recently than that are handed out
+     * without the blocking stale check. A negative value disables
+     * the check altogether.
+     */
+    public void setValidateAfterInactivity(int ms) {
+        this.validateAfterInactivity = ms;
+    }
+
+    /**
+     * Returns delay in milliseconds between staggered parallel connection
+     * attempts. A non-positive value means addresses are tried sequentially.
+     *
+     * @see #setConnectStaggerDelay(int)
+     */
+    public int getConnectStaggerDelay() {
+        return this.connectStaggerDelay;
+    }
+
+    /**
+     * Enables staggered parallel connects for hosts that resolve to multiple
+     * addresses. Another connection attempt is started every <code>ms</code>
+     * milliseconds, alternating between IPv6 and IPv4 addresses, until one
+     * of them succeeds. The remaining attempts are then aborted.
+     * A non-positive value restores sequential connects.
+     */
+    public void setConnectStaggerDelay(int ms) {
+        this.connectStaggerDelay = ms;
+    }
+
     public int getMaxTotal() {
         return this.pool.getMaxTotal();
     }
@@ -380,6 +494,21 @@ public class PoolingHttpClientConnectionManager implements HttpClientConnectionM
         return this.pool.getStats(route);
     }
 
+    /**
+     * Returns the listener of connection pool events, if any.
+     */
+    public ConnPoolListener getConnPoolListener() {
+        return this.poolListener.getListener();
+    }
+
+    /**
+     * Installs a listener of connection pool events such as
+     * {@link ConnPoolMetrics}. Pass <code>null</code> to remove the listener.
+     */
+    public void setConnPoolListener(final ConnPoolListener listener) {
+        this.poolListener.setListener(listener);
+    }
+
     public SocketConfig getDefaultSocketConfig() {
         return this.configData.getDefaultSocketConfig();
     }
@@ -0,0 +1,734 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.annotation.GuardedBy;
+import org.apache.http.annotation.ThreadSafe;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnPoolListener;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.SocketClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnFactory;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.Args;
+import org.apache.http.util.Asserts;
+
+/**
+ * Connection pool that guards each route with its own lock and enforces
+ * the total connection limit with an atomic permit counter. Unlike
+ * {@link CPool} leasing or releasing a connection for one route never
+ * contends with operations on another route.
+ * <p/>
+ * Requests blocked by the total limit are woken up whenever a connection
+ * is closed or returned to the pool. Idle connections of other routes are
+ * evicted on demand if the total limit has been reached.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+class StripedCPool implements ManagedConnPool {
+
+    private static final AtomicLong COUNTER = new AtomicLong();
+
+    private final Log log = LogFactory.getLog(HttpClientConnectionManager.class);
+    private final ConnFactory<HttpRoute, SocketClientConnection> connFactory;
+    private final long timeToLive;
+    private final TimeUnit tunit;
+    private final ConnPoolListener listener;
+    private final ConcurrentMap<HttpRoute, RoutePool> routeToPool;
+    private final ConcurrentMap<HttpRoute, Integer> maxPerRoute;
+    private final AtomicInteger allocatedTotal;
+    private final AtomicInteger leasedTotal;
+    private final AtomicInteger availableTotal;
+    private final AtomicInteger pendingTotal;
+    private final AtomicLong releaseCount;
+
+    private volatile boolean isShutDown;
+    private volatile int defaultMaxPerRoute;
+    private volatile int maxTotal;
+
+    public StripedCPool(
+            final ConnFactory<HttpRoute, SocketClientConnection> connFactory,
+            final int defaultMaxPerRoute, final int maxTotal,
+            final long timeToLive, final TimeUnit tunit,
+            final ConnPoolListener listener) {
+        super();
+        this.connFactory = Args.notNull(connFactory, "Connection factory");
+        this.defaultMaxPerRoute = Args.notNegative(defaultMaxPerRoute, "Max per route value");
+        this.maxTotal = Args.notNegative(maxTotal, "Max total value");
+        this.timeToLive = timeToLive;
+        this.tunit = tunit;
+        this.listener = listener;
+        this.routeToPool = new ConcurrentHashMap<HttpRoute, RoutePool>();
+        this.maxPerRoute = new ConcurrentHashMap<HttpRoute, Integer>();
+        this.allocatedTotal = new AtomicInteger(0);
+        this.leasedTotal = new AtomicInteger(0);
+        this.availableTotal = new AtomicInteger(0);
+        this.pendingTotal = new AtomicInteger(0);
+        this.releaseCount = new AtomicLong(0);
+    }
+
+    public StripedCPool(
+            final ConnFactory<HttpRoute, SocketClientConnection> connFactory,
+            final int defaultMaxPerRoute, final int maxTotal,
+            final long timeToLive, final TimeUnit tunit) {
+        this(connFactory, defaultMaxPerRoute, maxTotal, timeToLive, tunit, null);
+    }
+
+    public boolean isShutdown() {
+        return this.isShutDown;
+    }
+
+    public void shutdown() throws IOException {
+        if (this.isShutDown) {
+            return;
+        }
+        this.isShutDown = true;
+        List<CPoolEntry> entries = new ArrayList<CPoolEntry>();
+        for (RoutePool pool: this.routeToPool.values()) {
+            pool.lock.lock();
+            try {
+                entries.addAll(pool.available);
+                entries.addAll(pool.leased);
+                this.availableTotal.addAndGet(-pool.available.size());
+                this.leasedTotal.addAndGet(-pool.leased.size());
+                this.allocatedTotal.addAndGet(-pool.allocated);
+                pool.available.clear();
+                pool.leased.clear();
+                pool.allocated = 0;
+                pool.condition.signalAll();
+            } finally {
+                pool.lock.unlock();
+            }
+        }
+        for (CPoolEntry entry: entries) {
+            entry.close();
+        }
+    }
+
+    private RoutePool getPool(final HttpRoute route) {
+        RoutePool pool = this.routeToPool.get(route);
+        if (pool == null) {
+            RoutePool newPool = new RoutePool(route);
+            pool = this.routeToPool.putIfAbsent(route, newPool);
+            if (pool == null) {
+                pool = newPool;
+            }
+        }
+        return pool;
+    }
+
+    private int getMax(final HttpRoute route) {
+        Integer v = this.maxPerRoute.get(route);
+        if (v != null) {
+            return v.intValue();
+        } else {
+            return this.defaultMaxPerRoute;
+        }
+    }
+
+    public Future<CPoolEntry> lease(
+            final HttpRoute route, final Object state,
+            final FutureCallback<CPoolEntry> callback) {
+        Args.notNull(route, "Route");
+        Asserts.check(!this.isShutDown, "Connection pool shut down");
+        return new LeaseFuture(route, state, callback);
+    }
+
+    private boolean tryAcquirePermit() {
+        for (;;) {
+            int current = this.allocatedTotal.get();
+            if (current >= this.maxTotal) {
+                return false;
+            }
+            if (this.allocatedTotal.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Notifies requests blocked on the given route. If there are none
+     * (or the route is <code>null</code>) requests blocked on any route
+     * are notified, as they may be waiting for the total limit.
+     */
+    private void signalPending(final RoutePool pool) {
+        this.releaseCount.incrementAndGet();
+        if (pool != null && pool.pending > 0) {
+            pool.signalAll();
+            return;
+        }
+        if (this.pendingTotal.get() > 0) {
+            for (RoutePool other: this.routeToPool.values()) {
+                if (other.pending > 0) {
+                    other.signalAll();
+                }
+            }
+        }
+    }
+
+    private void closeAll(final List<CPoolEntry> entries) {
+        for (CPoolEntry entry: entries) {
+            entry.close();
+        }
+    }
+
+    /**
+     * Closes the least recently used idle connection of a route other than
+     * the given one, freeing up one permit of the total limit.
+     */
+    private boolean evictIdle(final RoutePool exclude) {
+        if (this.availableTotal.get() == 0) {
+            return false;
+        }
+        for (RoutePool pool: this.routeToPool.values()) {
+            if (pool == exclude) {
+                continue;
+            }
+            CPoolEntry entry = null;
+            pool.lock.lock();
+            try {
+                entry = pool.removeLastUsed();
+            } finally {
+                pool.lock.unlock();
+            }
+            if (entry != null) {
+                entry.close();
+                this.allocatedTotal.decrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private CPoolEntry getPoolEntryBlocking(
+            final HttpRoute route, final Object state,
+            final long timeout, final TimeUnit tunit,
+            final LeaseFuture future) throws IOException, InterruptedException, TimeoutException {
+
+        Date deadline = null;
+        if (timeout > 0) {
+            deadline = new Date(System.currentTimeMillis() + tunit.toMillis(timeout));
+        }
+        RoutePool pool = getPool(route);
+        List<CPoolEntry> discarded = new ArrayList<CPoolEntry>();
+        for (;;) {
+            long stamp = this.releaseCount.get();
+            int max = getMax(route);
+            CPoolEntry entry = null;
+            CPoolEntry superseded = null;
+            boolean reserved = false;
+            boolean routeFull = true;
+            pool.lock.lock();
+            try {
+                Asserts.check(!this.isShutDown, "Connection pool shut down");
+                if (future.isCancelled()) {
+                    throw new InterruptedException("Operation interrupted");
+                }
+                for (;;) {
+                    entry = pool.getFree(state);
+                    if (entry == null) {
+                        break;
+                    }
+                    if (entry.isClosed() || entry.isExpired(System.currentTimeMillis())) {
+                        pool.leased.remove(entry);
+                        this.leasedTotal.decrementAndGet();
+                        pool.allocated--;
+                        discarded.add(entry);
+                    } else {
+                        break;
+                    }
+                }
+                if (entry == null) {
+                    // New connection is needed
+                    int excess = Math.max(0, pool.allocated + 1 - max);
+                    for (int i = 0; i < excess; i++) {
+                        CPoolEntry lastUsed = pool.removeLastUsed();
+                        if (lastUsed == null) {
+                            break;
+                        }
+                        discarded.add(lastUsed);
+                    }
+                    if (pool.allocated < max) {
+                        routeFull = false;
+                        if (!discarded.isEmpty()) {
+                            // Take over the permit of a discarded connection
+                            superseded = discarded.remove(discarded.size() - 1);
+                            pool.allocated++;
+                            reserved = true;
+                        } else if (tryAcquirePermit()) {
+                            pool.allocated++;
+                            reserved = true;
+                        } else {
+                            // Replace an idle connection with a different state
+                            superseded = pool.removeLastUsed();
+                            if (superseded != null) {
+                                pool.allocated++;
+                                reserved = true;
+                            }
+                        }
+                    }
+                }
+            } finally {
+                pool.lock.unlock();
+            }
+            if (superseded != null) {
+                superseded.close();
+            }
+            releaseDiscarded(discarded);
+            if (entry != null) {
+                return entry;
+            }
+            if (reserved) {
+                return createEntry(pool, route);
+            }
+            if (!routeFull && evictIdle(pool)) {
+                continue;
+            }
+            pool.lock.lock();
+            try {
+                pool.pending++;
+                this.pendingTotal.incrementAndGet();
+                try {
+                    if (this.releaseCount.get() == stamp
+                            && !this.isShutDown && !future.isCancelled()) {
+                        if (deadline != null) {
+                            pool.condition.awaitUntil(deadline);
+                        } else {
+                            pool.condition.await();
+                        }
+                    }
+                } finally {
+                    pool.pending--;
+                    this.pendingTotal.decrementAndGet();
+                }
+            } finally {
+                pool.lock.unlock();
+            }
+            if (future.isCancelled()) {
+                throw new InterruptedException("Operation interrupted");
+            }
+            if (deadline != null && deadline.getTime() <= System.currentTimeMillis()) {
+                throw new TimeoutException("Timeout waiting for connection");
+            }
+        }
+    }
+
+    private void releaseDiscarded(final List<CPoolEntry> discarded) {
+        if (discarded.isEmpty()) {
+            return;
+        }
+        closeAll(discarded);
+        this.allocatedTotal.addAndGet(-discarded.size());
+        discarded.clear();
+        signalPending(null);
+    }
+
+    private CPoolEntry createEntry(
+            final RoutePool pool, final HttpRoute route) throws IOException {
+        boolean success = false;
+        try {
+            SocketClientConnection conn = this.connFactory.create(route);
+            String id = Long.toString(COUNTER.getAndIncrement());
+            CPoolEntry entry = new CPoolEntry(
+                    this.log, id, route, conn, this.timeToLive, this.tunit, this.listener);
+            pool.lock.lock();
+            try {
+                if (this.isShutDown) {
+                    entry.close();
+                    return null;
+                }
+                pool.leased.add(entry);
+                this.leasedTotal.incrementAndGet();
+                success = true;
+                return entry;
+            } finally {
+                pool.lock.unlock();
+            }
+        } finally {
+            if (!success) {
+                pool.lock.lock();
+                try {
+                    if (!this.isShutDown) {
+                        pool.allocated--;
+                        this.allocatedTotal.decrementAndGet();
+                    }
+                } finally {
+                    pool.lock.unlock();
+                }
+                signalPending(null);
+                Asserts.check(!this.isShutDown, "Connection pool shut down");
+            }
+        }
+    }
+
+    public void release(final CPoolEntry entry, final boolean reusable) {
+        RoutePool pool = this.routeToPool.get(entry.getRoute());
+        if (pool == null) {
+            entry.close();
+            return;
+        }
+        boolean closed = false;
+        pool.lock.lock();
+        try {
+            if (!pool.leased.remove(entry)) {
+                return;
+            }
+            this.leasedTotal.decrementAndGet();
+            if (reusable && !this.isShutDown) {
+                pool.available.addFirst(entry);
+                this.availableTotal.incrementAndGet();
+            } else {
+                pool.allocated--;
+                this.allocatedTotal.decrementAndGet();
+                closed = true;
+            }
+        } finally {
+            pool.lock.unlock();
+        }
+        if (closed) {
+            entry.close();
+            signalPending(null);
+        } else {
+            signalPending(pool);
+        }
+    }
+
+    public void setMaxTotal(final int max) {
+        Args.notNegative(max, "Max value");
+        this.maxTotal = max;
+        signalPending(null);
+    }
+
+    public int getMaxTotal() {
+        return this.maxTotal;
+    }
+
+    public void setDefaultMaxPerRoute(final int max) {
+        Args.notNegative(max, "Max value");
+        this.defaultMaxPerRoute = max;
+        signalPending(null);
+    }
+
+    public int getDefaultMaxPerRoute() {
+        return this.defaultMaxPerRoute;
+    }
+
+    public void setMaxPerRoute(final HttpRoute route, final int max) {
+        Args.notNull(route, "Route");
+        Args.notNegative(max, "Max value");
+        this.maxPerRoute.put(route, Integer.valueOf(max));
+        signalPending(null);
+    }
+
+    public int getMaxPerRoute(final HttpRoute route) {
+        Args.notNull(route, "Route");
+        return getMax(route);
+    }
+
+    public PoolStats getTotalStats() {
+        return new PoolStats(
+                this.leasedTotal.get(),
+                this.pendingTotal.get(),
+                this.availableTotal.get(),
+                this.maxTotal);
+    }
+
+    public PoolStats getStats(final HttpRoute route) {
+        Args.notNull(route, "Route");
+        RoutePool pool = this.routeToPool.get(route);
+        if (pool == null) {
+            return new PoolStats(0, 0, 0, getMax(route));
+        }
+        pool.lock.lock();
+        try {
+            return new PoolStats(
+                    pool.leased.size(),
+                    pool.pending,
+                    pool.available.size(),
+                    getMax(route));
+        } finally {
+            pool.lock.unlock();
+        }
+    }
+
+    private void closeAvailable(final long idleDeadline, final boolean expired) {
+        long now = System.currentTimeMillis();
+        List<CPoolEntry> closed = new ArrayList<CPoolEntry>();
+        for (RoutePool pool: this.routeToPool.values()) {
+            pool.lock.lock();
+            try {
+                Iterator<CPoolEntry> it = pool.available.iterator();
+                while (it.hasNext()) {
+                    CPoolEntry entry = it.next();
+                    if (entry.getUpdated() <= idleDeadline || (expired && entry.isExpired(now))) {
+                        it.remove();
+                        pool.allocated--;
+                        this.availableTotal.decrementAndGet();
+                        closed.add(entry);
+                    }
+                }
+            } finally {
+                pool.lock.unlock();
+            }
+        }
+        releaseDiscarded(closed);
+    }
+
+    public void closeIdle(final long idletime, final TimeUnit tunit) {
+        Args.notNull(tunit, "Time unit");
+        long time = tunit.toMillis(idletime);
+        if (time < 0) {
+            time = 0;
+        }
+        closeAvailable(System.currentTimeMillis() - time, false);
+    }
+
+    public void closeExpired() {
+        closeAvailable(Long.MIN_VALUE, true);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append("[leased: ");
+        buffer.append(this.leasedTotal.get());
+        buffer.append("][available: ");
+        buffer.append(this.availableTotal.get());
+        buffer.append("][pending: ");
+        buffer.append(this.pendingTotal.get());
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+    class RoutePool {
+
+        private final HttpRoute route;
+        private final Lock lock;
+        private final Condition condition;
+        @GuardedBy("lock")
+        private final Set<CPoolEntry> leased;
+        @GuardedBy("lock")
+        private final LinkedList<CPoolEntry> available;
+        @GuardedBy("lock")
+        private int allocated;
+        private volatile int pending;
+
+        RoutePool(final HttpRoute route) {
+            super();
+            this.route = route;
+            this.lock = new ReentrantLock();
+            this.condition = this.lock.newCondition();
+            this.leased = new HashSet<CPoolEntry>();
+            this.available = new LinkedList<CPoolEntry>();
+        }
+
+        CPoolEntry getFree(final Object state) {
+            if (!this.available.isEmpty()) {
+                if (state != null) {
+                    Iterator<CPoolEntry> it = this.available.iterator();
+                    while (it.hasNext()) {
+                        CPoolEntry entry = it.next();
+                        if (state.equals(entry.getState())) {
+                            return lease(it, entry);
+                        }
+                    }
+                }
+                Iterator<CPoolEntry> it = this.available.iterator();
+                while (it.hasNext()) {
+                    CPoolEntry entry = it.next();
+                    if (entry.getState() == null) {
+                        return lease(it, entry);
+                    }
+                }
+            }
+            return null;
+        }
+
+        private CPoolEntry lease(final Iterator<CPoolEntry> it, final CPoolEntry entry) {
+            it.remove();
+            availableTotal.decrementAndGet();
+            this.leased.add(entry);
+            leasedTotal.incrementAndGet();
+            return entry;
+        }
+
+        /**
+         * Removes the least recently used idle connection. The caller is
+         * responsible for closing it and returning its permit.
+         */
+        CPoolEntry removeLastUsed() {
+            if (this.available.isEmpty()) {
+                return null;
+            }
+            CPoolEntry entry = this.available.removeLast();
+            availableTotal.decrementAndGet();
+            this.allocated--;
+            return entry;
+        }
+
+        void signalAll() {
+            this.lock.lock();
+            try {
+                this.condition.signalAll();
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "[route: " + this.route + "]";
+        }
+
+    }
+
+    class LeaseFuture implements Future<CPoolEntry> {
+
+        private final HttpRoute route;
+        private final Object state;
+        private final FutureCallback<CPoolEntry> callback;
+        private final Lock lock;
+
+        @GuardedBy("lock")
+        private CPoolEntry result;
+        private volatile boolean cancelled;
+        private volatile boolean completed;
+
+        LeaseFuture(
+                final HttpRoute route,
+                final Object state,
+                final FutureCallback<CPoolEntry> callback) {
+            super();
+            this.route = route;
+            this.state = state;
+            this.callback = callback;
+            this.lock = new ReentrantLock();
+        }
+
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            this.lock.lock();
+            try {
+                if (this.completed || this.cancelled) {
+                    return false;
+                }
+                this.cancelled = true;
+            } finally {
+                this.lock.unlock();
+            }
+            if (this.callback != null) {
+                this.callback.cancelled();
+            }
+            RoutePool pool = routeToPool.get(this.route);
+            if (pool != null) {
+                pool.signalAll();
+            }
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return this.cancelled;
+        }
+
+        public boolean isDone() {
+            return this.completed || this.cancelled;
+        }
+
+        public CPoolEntry get() throws InterruptedException, ExecutionException {
+            try {
+                return get(0, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                throw new ExecutionException(ex);
+            }
+        }
+
+        public CPoolEntry get(
+                final long timeout,
+                final TimeUnit tunit) throws InterruptedException, ExecutionException, TimeoutException {
+            this.lock.lock();
+            try {
+                if (this.completed) {
+                    return this.result;
+                }
+            } finally {
+                this.lock.unlock();
+            }
+            CPoolEntry entry;
+            try {
+                entry = getPoolEntryBlocking(this.route, this.state, timeout, tunit, this);
+            } catch (IOException ex) {
+                this.completed = true;
+                if (this.callback != null) {
+                    this.callback.failed(ex);
+                }
+                throw new ExecutionException(ex);
+            }
+            this.lock.lock();
+            try {
+                if (!this.cancelled) {
+                    this.result = entry;
+                    this.completed = true;
+                }
+            } finally {
+                this.lock.unlock();
+            }
+            if (!this.completed) {
+                release(entry, true);
+                throw new InterruptedException("Operation interrupted");
+            }
+            if (this.callback != null) {
+                this.callback.completed(entry);
+            }
+            return entry;
+        }
+
+    }
+
+}
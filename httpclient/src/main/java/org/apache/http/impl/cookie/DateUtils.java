@@ -144,14 +144,35 @@ public final class DateUtils {
         }
         // trim single quotes around date if present
         // see issue #5279
-        if (dateValue.length() > 1
-            && dateValue.startsWith("'")
-            && dateValue.endsWith("'")
+        int from = 0;
+        int to = dateValue.length();
+        if (to > 1
+            && dateValue.charAt(0) == '\''
+            && dateValue.charAt(to - 1) == '\''
         ) {
-            dateValue = dateValue.substring (1, dateValue.length() - 1);
+            from++;
+            to--;
         }
 
+        // Well-formed dates in one of the standard formats are handled
+        // without resorting to SimpleDateFormat
+        final boolean defaultPatterns = dateFormats == DEFAULT_PATTERNS;
+        if (defaultPatterns) {
+            final long millis = FastHttpDateFormat.parse(dateValue, from, to, startDate);
+            if (millis != FastHttpDateFormat.INVALID) {
+                return new Date(millis);
+            }
+        }
+        dateValue = dateValue.substring(from, to);
+
         for (String dateFormat : dateFormats) {
+            if (!defaultPatterns) {
+                final long millis = FastHttpDateFormat.parse(
+                        dateFormat, dateValue, 0, dateValue.length(), startDate);
+                if (millis != FastHttpDateFormat.INVALID) {
+                    return new Date(millis);
+                }
+            }
             SimpleDateFormat dateParser = DateFormatHolder.formatFor(dateFormat);
             dateParser.set2DigitYearStart(startDate);
             ParsePosition pos = new ParsePosition(0);
@@ -192,6 +213,12 @@ public final class DateUtils {
     public static String formatDate(Date date, String pattern) {
         Args.notNull(date, "Date");
         Args.notNull(pattern, "Pattern");
+        if (PATTERN_RFC1123.equals(pattern)) {
+            final String text = FastHttpDateFormat.formatRfc1123(date.getTime());
+            if (text != null) {
+                return text;
+            }
+        }
         SimpleDateFormat formatter = DateFormatHolder.formatFor(pattern);
         return formatter.format(date);
     }
@@ -0,0 +1,485 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.cookie;
+
+import java.util.Date;
+
+import org.apache.http.annotation.ThreadSafe;
+
+/**
+ * Hand-rolled parser and formatter for the three date formats mandated by
+ * RFC 2616 section 3.3.1. Well-formed values are handled without
+ * {@link java.text.SimpleDateFormat}, {@link java.util.Calendar} or any
+ * intermediate objects; anything this class does not recognize with
+ * certainty is reported as unparseable, leaving {@link DateUtils} to fall
+ * back on the lenient {@link java.text.SimpleDateFormat} based code path.
+ * <p/>
+ * Recently formatted RFC 1123 dates are cached with one second granularity.
+ *
+ * @since 4.3
+ */
+@ThreadSafe
+final class FastHttpDateFormat {
+
+    /**
+     * Value returned by the parse methods if the input could not be parsed.
+     */
+    static final long INVALID = Long.MIN_VALUE;
+
+    private static final String[] WEEKDAYS = {
+        "Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat"
+    };
+
+    private static final String[] WEEKDAYS_LONG = {
+        "Sunday", "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday"
+    };
+
+    private static final String[] MONTHS = {
+        "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"
+    };
+
+    // Dates outside this range are left to SimpleDateFormat, which switches to
+    // the Julian calendar before October 1582
+    private static final int MIN_YEAR = 1600;
+    private static final int MAX_YEAR = 9999;
+
+    private static final long MILLIS_PER_DAY = 24L * 60L * 60L * 1000L;
+
+    private static final int CACHE_SIZE = 16;
+
+    // Entries are immutable and safely published through final fields;
+    // a stale read merely results in a cache miss
+    private static final FormattedDate[] FORMAT_CACHE = new FormattedDate[CACHE_SIZE];
+
+    /**
+     * Parses the given range of <code>s</code> as an RFC 1123, RFC 1036 or
+     * asctime date, in that order.
+     *
+     * @return milliseconds since the epoch or {@link #INVALID}.
+     */
+    static long parse(final String s, final int from, final int to, final Date twoDigitYearStart) {
+        long millis = parseRfc1123(s, from, to);
+        if (millis == INVALID) {
+            millis = parseRfc1036(s, from, to, twoDigitYearStart);
+        }
+        if (millis == INVALID) {
+            millis = parseAsctime(s, from, to);
+        }
+        return millis;
+    }
+
+    /**
+     * Parses the given range of <code>s</code> using the given pattern if it is
+     * one of the standard {@link DateUtils} patterns.
+     *
+     * @return milliseconds since the epoch or {@link #INVALID} if the value
+     *   could not be parsed or the pattern is not supported.
+     */
+    static long parse(
+            final String pattern,
+            final String s, final int from, final int to,
+            final Date twoDigitYearStart) {
+        if (DateUtils.PATTERN_RFC1123.equals(pattern)) {
+            return parseRfc1123(s, from, to);
+        } else if (DateUtils.PATTERN_RFC1036.equals(pattern)) {
+            return parseRfc1036(s, from, to, twoDigitYearStart);
+        } else if (DateUtils.PATTERN_ASCTIME.equals(pattern)) {
+            return parseAsctime(s, from, to);
+        } else {
+            return INVALID;
+        }
+    }
+
+    /**
+     * <code>Sun, 06 Nov 1994 08:49:37 GMT</code>
+     */
+    static long parseRfc1123(final String s, final int from, final int to) {
+        int pos = skipWeekday(s, from, to);
+        pos = expect(s, pos, to, ',');
+        pos = expect(s, pos, to, ' ');
+        final int day = parseNumber(s, pos, to, 1, 2);
+        pos = advance(s, pos, to, 1, 2);
+        pos = expect(s, pos, to, ' ');
+        final int month = parseMonth(s, pos, to);
+        pos = pos >= 0 ? pos + 3 : pos;
+        pos = expect(s, pos, to, ' ');
+        final int year = parseNumber(s, pos, to, 4, 4);
+        pos = advance(s, pos, to, 4, 4);
+        pos = expect(s, pos, to, ' ');
+        final int time = parseTime(s, pos, to);
+        pos = advanceTime(s, pos, to);
+        pos = expect(s, pos, to, ' ');
+        if (pos < 0 || !isGMT(s, pos, to)) {
+            return INVALID;
+        }
+        return toMillis(year, month, day, time);
+    }
+
+    /**
+     * <code>Sunday, 06-Nov-94 08:49:37 GMT</code>
+     */
+    static long parseRfc1036(
+            final String s, final int from, final int to, final Date twoDigitYearStart) {
+        int pos = skipWeekday(s, from, to);
+        pos = expect(s, pos, to, ',');
+        pos = expect(s, pos, to, ' ');
+        final int day = parseNumber(s, pos, to, 1, 2);
+        pos = advance(s, pos, to, 1, 2);
+        pos = expect(s, pos, to, '-');
+        final int month = parseMonth(s, pos, to);
+        pos = pos >= 0 ? pos + 3 : pos;
+        pos = expect(s, pos, to, '-');
+        final int yearDigits = pos >= 0 ? countDigits(s, pos, to) : 0;
+        if (yearDigits != 2 && yearDigits != 4) {
+            return INVALID;
+        }
+        int year = parseNumber(s, pos, to, yearDigits, yearDigits);
+        pos = advance(s, pos, to, yearDigits, yearDigits);
+        pos = expect(s, pos, to, ' ');
+        final int time = parseTime(s, pos, to);
+        pos = advanceTime(s, pos, to);
+        pos = expect(s, pos, to, ' ');
+        if (pos < 0 || year < 0 || !isGMT(s, pos, to)) {
+            return INVALID;
+        }
+        if (yearDigits == 2) {
+            // Same rules as SimpleDateFormat#set2DigitYearStart
+            final long start = twoDigitYearStart.getTime();
+            final int startYear = yearOf(start);
+            final int ambiguous = startYear % 100;
+            year += (startYear / 100) * 100 + (year < ambiguous ? 100 : 0);
+            if (year % 100 == ambiguous) {
+                final long millis = toMillis(year, month, day, time);
+                if (millis != INVALID && millis < start) {
+                    year += 100;
+                }
+            }
+        }
+        return toMillis(year, month, day, time);
+    }
+
+    /**
+     * <code>Sun Nov  6 08:49:37 1994</code>
+     */
+    static long parseAsctime(final String s, final int from, final int to) {
+        int pos = skipWeekday(s, from, to);
+        pos = expect(s, pos, to, ' ');
+        final int month = parseMonth(s, pos, to);
+        pos = pos >= 0 ? pos + 3 : pos;
+        pos = expect(s, pos, to, ' ');
+        if (pos >= 0 && pos < to && s.charAt(pos) == ' ') {
+            pos++;
+        }
+        final int day = parseNumber(s, pos, to, 1, 2);
+        pos = advance(s, pos, to, 1, 2);
+        pos = expect(s, pos, to, ' ');
+        final int time = parseTime(s, pos, to);
+        pos = advanceTime(s, pos, to);
+        pos = expect(s, pos, to, ' ');
+        final int year = parseNumber(s, pos, to, 4, 4);
+        pos = advance(s, pos, to, 4, 4);
+        if (pos < 0 || (pos < to && isAlphaNumeric(s.charAt(pos)))) {
+            return INVALID;
+        }
+        return toMillis(year, month, day, time);
+    }
+
+    /**
+     * Formats the given time as an RFC 1123 date.
+     *
+     * @return the formatted date or <code>null</code> if the date is outside
+     *   the range supported by this class.
+     */
+    static String formatRfc1123(final long millis) {
+        final long seconds = floorDiv(millis, 1000L);
+        final int idx = (int) (seconds & (CACHE_SIZE - 1));
+        final FormattedDate cached = FORMAT_CACHE[idx];
+        if (cached != null && cached.seconds == seconds) {
+            return cached.text;
+        }
+        final String text = doFormatRfc1123(seconds);
+        if (text != null) {
+            FORMAT_CACHE[idx] = new FormattedDate(seconds, text);
+        }
+        return text;
+    }
+
+    private static String doFormatRfc1123(final long seconds) {
+        final long days = floorDiv(seconds, 24L * 60L * 60L);
+        final int secondOfDay = (int) (seconds - days * 24L * 60L * 60L);
+        final long ymd = civilFromDays(days);
+        final int year = (int) (ymd >> 16);
+        if (year < MIN_YEAR || year > MAX_YEAR) {
+            return null;
+        }
+        final int month = (int) ((ymd >> 8) & 0xff);
+        final int day = (int) (ymd & 0xff);
+        // 1 January 1970 was a Thursday
+        final int weekday = (int) (((days + 4) % 7 + 7) % 7);
+
+        final char[] buf = new char[29];
+        WEEKDAYS[weekday].getChars(0, 3, buf, 0);
+        buf[3] = ',';
+        buf[4] = ' ';
+        put2(buf, 5, day);
+        buf[7] = ' ';
+        MONTHS[month - 1].getChars(0, 3, buf, 8);
+        buf[11] = ' ';
+        put2(buf, 12, year / 100);
+        put2(buf, 14, year % 100);
+        buf[16] = ' ';
+        put2(buf, 17, secondOfDay / 3600);
+        buf[19] = ':';
+        put2(buf, 20, (secondOfDay / 60) % 60);
+        buf[22] = ':';
+        put2(buf, 23, secondOfDay % 60);
+        buf[25] = ' ';
+        buf[26] = 'G';
+        buf[27] = 'M';
+        buf[28] = 'T';
+        return new String(buf);
+    }
+
+    private static void put2(final char[] buf, final int off, final int n) {
+        buf[off] = (char) ('0' + n / 10);
+        buf[off + 1] = (char) ('0' + n % 10);
+    }
+
+    private static int expect(final String s, final int pos, final int to, final char ch) {
+        if (pos < 0 || pos >= to || s.charAt(pos) != ch) {
+            return -1;
+        }
+        return pos + 1;
+    }
+
+    private static int skipWeekday(final String s, final int from, final int to) {
+        int end = from;
+        while (end < to && isLetter(s.charAt(end))) {
+            end++;
+        }
+        final int len = end - from;
+        for (int i = 0; i < WEEKDAYS.length; i++) {
+            if (len == 3 && s.regionMatches(true, from, WEEKDAYS[i], 0, 3)) {
+                return end;
+            }
+            if (len == WEEKDAYS_LONG[i].length()
+                    && s.regionMatches(true, from, WEEKDAYS_LONG[i], 0, len)) {
+                return end;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return zero based month index or -1
+     */
+    private static int parseMonth(final String s, final int pos, final int to) {
+        if (pos < 0 || pos + 3 > to || (pos + 3 < to && isLetter(s.charAt(pos + 3)))) {
+            return -1;
+        }
+        for (int i = 0; i < MONTHS.length; i++) {
+            if (s.regionMatches(true, pos, MONTHS[i], 0, 3)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int countDigits(final String s, final int pos, final int to) {
+        int i = pos;
+        while (i < to && isDigit(s.charAt(i))) {
+            i++;
+        }
+        return i - pos;
+    }
+
+    /**
+     * @return the value of a run of <code>min</code> to <code>max</code>
+     *   digits at <code>pos</code> or -1
+     */
+    private static int parseNumber(
+            final String s, final int pos, final int to, final int min, final int max) {
+        if (pos < 0) {
+            return -1;
+        }
+        final int n = countDigits(s, pos, to);
+        if (n < min || n > max) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = pos; i < pos + n; i++) {
+            value = value * 10 + (s.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    private static int advance(
+            final String s, final int pos, final int to, final int min, final int max) {
+        if (pos < 0) {
+            return -1;
+        }
+        final int n = countDigits(s, pos, to);
+        return n >= min && n <= max ? pos + n : -1;
+    }
+
+    /**
+     * Parses <code>HH:mm:ss</code>.
+     *
+     * @return the second of the day or -1
+     */
+    private static int parseTime(final String s, final int pos, final int to) {
+        final int hour = parseNumber(s, pos, to, 1, 2);
+        int p = advance(s, pos, to, 1, 2);
+        p = expect(s, p, to, ':');
+        final int minute = parseNumber(s, p, to, 2, 2);
+        p = advance(s, p, to, 2, 2);
+        p = expect(s, p, to, ':');
+        final int second = parseNumber(s, p, to, 2, 2);
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return -1;
+        }
+        return hour * 3600 + minute * 60 + second;
+    }
+
+    private static int advanceTime(final String s, final int pos, final int to) {
+        int p = advance(s, pos, to, 1, 2);
+        p = expect(s, p, to, ':');
+        p = advance(s, p, to, 2, 2);
+        p = expect(s, p, to, ':');
+        return advance(s, p, to, 2, 2);
+    }
+
+    /**
+     * Accepts <code>GMT</code> or <code>UTC</code> not followed by an offset or
+     * any other zone name characters.
+     */
+    private static boolean isGMT(final String s, final int pos, final int to) {
+        if (pos + 3 > to) {
+            return false;
+        }
+        if (!s.startsWith("GMT", pos) && !s.startsWith("UTC", pos)) {
+            return false;
+        }
+        if (pos + 3 < to) {
+            final char ch = s.charAt(pos + 3);
+            return ch != '+' && ch != '-' && !isAlphaNumeric(ch);
+        }
+        return true;
+    }
+
+    private static long toMillis(final int year, final int month, final int day, final int time) {
+        if (year < MIN_YEAR || year > MAX_YEAR || month < 0 || day < 1 || time < 0) {
+            return INVALID;
+        }
+        if (day > daysInMonth(year, month + 1)) {
+            return INVALID;
+        }
+        return daysFromCivil(year, month + 1, day) * MILLIS_PER_DAY + time * 1000L;
+    }
+
+    private static int daysInMonth(final int year, final int month) {
+        switch (month) {
+        case 2:
+            final boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            return leap ? 29 : 28;
+        case 4:
+        case 6:
+        case 9:
+        case 11:
+            return 30;
+        default:
+            return 31;
+        }
+    }
+
+    private static int yearOf(final long millis) {
+        return (int) (civilFromDays(floorDiv(millis, MILLIS_PER_DAY)) >> 16);
+    }
+
+    /**
+     * Days since 1970-01-01 in the proleptic Gregorian calendar.
+     */
+    private static long daysFromCivil(final int year, final int month, final int day) {
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = (y >= 0 ? y : y - 399) / 400;
+        final int yoe = y - era * 400;
+        final int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        final int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097L + doe - 719468L;
+    }
+
+    /**
+     * Inverse of {@link #daysFromCivil(int, int, int)}.
+     *
+     * @return <code>year &lt;&lt; 16 | month &lt;&lt; 8 | day</code>
+     */
+    private static long civilFromDays(final long days) {
+        final long z = days + 719468L;
+        final long era = (z >= 0 ? z : z - 146096L) / 146097L;
+        final int doe = (int) (z - era * 146097L);
+        final int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        final int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        final int mp = (5 * doy + 2) / 153;
+        final int day = doy - (153 * mp + 2) / 5 + 1;
+        final int month = mp < 10 ? mp + 3 : mp - 9;
+        final long year = yoe + era * 400L + (month <= 2 ? 1 : 0);
+        return (year << 16) | (month << 8) | day;
+    }
+
+    private static long floorDiv(final long x, final long y) {
+        final long q = x / y;
+        return (x % y != 0 && ((x < 0) != (y < 0))) ? q - 1 : q;
+    }
+
+    private static boolean isDigit(final char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    private static boolean isLetter(final char ch) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z');
+    }
+
+    private static boolean isAlphaNumeric(final char ch) {
+        return isDigit(ch) || isLetter(ch);
+    }
+
+    private FastHttpDateFormat() {
+    }
+
+    static final class FormattedDate {
+
+        final long seconds;
+        final String text;
+
+        FormattedDate(final long seconds, final String text) {
+            this.seconds = seconds;
+            this.text = text;
+        }
+
+    }
+
+}
@@ -26,11 +26,10 @@
  */
 package org.apache.http.impl.cookie;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
 
-import org.apache.http.client.utils.Punycode;
+import org.apache.http.conn.util.PublicSuffixMatcher;
 import org.apache.http.cookie.Cookie;
 import org.apache.http.cookie.CookieAttributeHandler;
 import org.apache.http.cookie.CookieOrigin;
@@ -49,30 +48,51 @@ import org.apache.http.cookie.SetCookie;
  */
 public class PublicSuffixFilter implements CookieAttributeHandler {
     private final CookieAttributeHandler wrapped;
-    private Set<String> exceptions;
-    private Set<String> suffixes;
+    private Collection<String> exceptions;
+    private Collection<String> suffixes;
+    private volatile PublicSuffixMatcher matcher;
 
     public PublicSuffixFilter(CookieAttributeHandler wrapped) {
         this.wrapped = wrapped;
     }
 
+    /**
+     * @since 4.3
+     */
+    public PublicSuffixFilter(CookieAttributeHandler wrapped, PublicSuffixMatcher matcher) {
+        this.wrapped = wrapped;
+        this.matcher = matcher;
+    }
+
     /**
      * Sets the suffix blacklist patterns.
-     * A pattern can be "com", "*.jp"
-     * TODO add support for patterns like "lib.*.us"
+     * A pattern can be "com", "*.jp", "lib.*.us"
      * @param suffixes
      */
-    public void setPublicSuffixes(Collection<String> suffixes) {
-        this.suffixes = new HashSet<String>(suffixes);
+    public synchronized void setPublicSuffixes(Collection<String> suffixes) {
+        this.suffixes = new ArrayList<String>(suffixes);
+        this.matcher = new PublicSuffixMatcher(this.suffixes, this.exceptions);
     }
 
     /**
-     * Sets the exceptions from the blacklist. Exceptions can not be patterns.
-     * TODO add support for patterns
+     * Sets the exceptions from the blacklist.
      * @param exceptions
      */
-    public void setExceptions(Collection<String> exceptions) {
-        this.exceptions = new HashSet<String>(exceptions);
+    public synchronized void setExceptions(Collection<String> exceptions) {
+        this.exceptions = new ArrayList<String>(exceptions);
+        if (this.suffixes != null) {
+            this.matcher = new PublicSuffixMatcher(this.suffixes, this.exceptions);
+        }
+    }
+
+    /**
+     * Returns the compiled suffix matcher or <code>null</code> if no
+     * suffixes have been set.
+     *
+     * @since 4.3
+     */
+    public PublicSuffixMatcher getPublicSuffixMatcher() {
+        return this.matcher;
     }
 
     /**
@@ -92,27 +112,8 @@ public class PublicSuffixFilter implements CookieAttributeHandler {
     }
 
     private boolean isForPublicSuffix(Cookie cookie) {
-        String domain = cookie.getDomain();
-        if (domain.startsWith(".")) domain = domain.substring(1);
-        domain = Punycode.toUnicode(domain);
-
-        // An exception rule takes priority over any other matching rule.
-        if (this.exceptions != null) {
-            if (this.exceptions.contains(domain)) return false;
-        }
-
-
-        if (this.suffixes == null) return false;
-
-        do {
-            if (this.suffixes.contains(domain)) return true;
-            // patterns
-            if (domain.startsWith("*.")) domain = domain.substring(2);
-            int nextdot = domain.indexOf('.');
-            if (nextdot == -1) break;
-            domain = "*" + domain.substring(nextdot);
-        } while (domain.length() > 0);
-
-        return false;
+        PublicSuffixMatcher matcher = this.matcher;
+        if (matcher == null) return false;
+        return matcher.isPublicSuffix(cookie.getDomain());
     }
 }
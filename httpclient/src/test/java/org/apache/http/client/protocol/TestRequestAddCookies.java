@@ -45,6 +45,7 @@ import org.apache.http.cookie.CookieSpec;
 import org.apache.http.cookie.CookieSpecProvider;
 import org.apache.http.cookie.SM;
 import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.impl.client.ConcurrentCookieStore;
 import org.apache.http.impl.cookie.BasicClientCookie;
 import org.apache.http.impl.cookie.BasicClientCookie2;
 import org.apache.http.impl.cookie.BestMatchSpecFactory;
@@ -474,6 +475,35 @@ public class TestRequestAddCookies {
         Assert.assertEquals("name1=value; name2=value; name3=value", headers1[0].getValue());
     }
 
+    @Test
+    public void testIndexedCookieStore() throws Exception {
+        HttpRequest request = new BasicHttpRequest("GET", "/foobar/yada/yada");
+
+        CookieStore indexedStore = new ConcurrentCookieStore();
+        indexedStore.addCookie(makeCookie("nomatch", "value", "localhost.local", "/noway"));
+        indexedStore.addCookie(makeCookie("name2",   "value", "localhost.local", "/foobar/yada"));
+        indexedStore.addCookie(makeCookie("other",   "value", "otherhost.com", "/"));
+        indexedStore.addCookie(makeCookie("name3",   "value", ".local", "/foobar"));
+        indexedStore.addCookie(makeCookie("name1",   "value", "localhost.local", "/foobar/yada/yada"));
+
+        HttpRoute route = new HttpRoute(this.target, null, false);
+
+        HttpContext context = new BasicHttpContext();
+        context.setAttribute(ExecutionContext.HTTP_TARGET_HOST, this.target);
+        context.setAttribute(ClientContext.ROUTE, route);
+        context.setAttribute(ClientContext.COOKIE_STORE, indexedStore);
+        context.setAttribute(ClientContext.COOKIESPEC_REGISTRY, this.cookieSpecRegistry);
+
+        HttpRequestInterceptor interceptor = new RequestAddCookies();
+        interceptor.process(request, context);
+
+        Header[] headers1 = request.getHeaders(SM.COOKIE);
+        Assert.assertNotNull(headers1);
+        Assert.assertEquals(1, headers1.length);
+
+        Assert.assertEquals("name1=value; name2=value; name3=value", headers1[0].getValue());
+    }
+
     @Test
     public void testAddSpecVersionHeader() throws Exception {
         HttpRequest request = new BasicHttpRequest("GET", "/");
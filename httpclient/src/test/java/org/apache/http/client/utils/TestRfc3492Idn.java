@@ -76,4 +76,42 @@ public class TestRfc3492Idn {
                      idn.toUnicode("www.xn--gggeligl-0zaga.ch"));
     }
 
+    @Test
+    public void testEncode() throws Exception {
+        Rfc3492Idn idn = new Rfc3492Idn();
+        // (A) Arabic
+        Assert.assertEquals("egbpdaj6bu4bxfgehfvwxn",
+                idn.encode("\u0644\u064A\u0647\u0645\u0627\u0628\u062A\u0643\u0644" +
+                     "\u0645\u0648\u0634\u0639\u0631\u0628\u064A\u061F"));
+
+        // (B) Chinese (simplified)
+        Assert.assertEquals("ihqwcrb4cv8a8dqg056pqjye",
+                idn.encode("\u4ED6\u4EEC\u4E3A\u4EC0\u4E48\u4E0D\u8BF4\u4E2D\u6587"));
+
+        // (P) Maji<de>Koi<suru>5<byou><mae>
+        Assert.assertEquals("MajiKoi5-783gue6qz075azm5e",
+                idn.encode("\u004D\u0061\u006A\u0069\u3067\u004B\u006F\u0069\u3059" +
+                     "\u308B\u0035\u79D2\u524D"));
+    }
+
+    @Test
+    public void testToASCII() throws Exception {
+        Rfc3492Idn idn = new Rfc3492Idn();
+        Assert.assertEquals("www.xn--zrich-kva.ch", idn.toASCII("www.z\u00fcrich.ch"));
+        Assert.assertEquals("www.xn--gggeligl-0zaga.ch", idn.toASCII("www.g\u00e4ggelig\u00e4\u00e4l.ch"));
+        Assert.assertEquals("xn--h-2fa.no", idn.toASCII("h\u00e5.no"));
+        Assert.assertEquals("apache.org", idn.toASCII("apache.org"));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testEncodeOverflow() throws Exception {
+        Rfc3492Idn idn = new Rfc3492Idn();
+        StringBuilder buffer = new StringBuilder();
+        for (int i = 0; i < 33000; i++) {
+            buffer.append('a');
+        }
+        buffer.append('\uffff');
+        idn.encode(buffer.toString());
+    }
+
 }
@@ -0,0 +1,135 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.conn.util;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPublicSuffixMatcher {
+
+    private PublicSuffixMatcher matcher;
+
+    @Before
+    public void setUp() throws Exception {
+        matcher = new PublicSuffixMatcher(
+                Arrays.asList("jp", "ac.jp", "*.tokyo.jp", "no", "h\u00E5.no", "com", "lib.*.us", "us"),
+                Arrays.asList("metro.tokyo.jp"));
+    }
+
+    @Test
+    public void testIsPublicSuffix() throws Exception {
+        Assert.assertTrue(matcher.isPublicSuffix("jp"));
+        Assert.assertTrue(matcher.isPublicSuffix(".jp"));
+        Assert.assertTrue(matcher.isPublicSuffix("ac.jp"));
+        Assert.assertTrue(matcher.isPublicSuffix("AC.JP"));
+        Assert.assertFalse(matcher.isPublicSuffix("apache.jp"));
+        Assert.assertFalse(matcher.isPublicSuffix("apache.ac.jp"));
+        Assert.assertFalse(matcher.isPublicSuffix("unknown"));
+        Assert.assertFalse(matcher.isPublicSuffix(""));
+        Assert.assertFalse(matcher.isPublicSuffix(null));
+    }
+
+    @Test
+    public void testWildcardAndException() throws Exception {
+        Assert.assertTrue(matcher.isPublicSuffix("any.tokyo.jp"));
+        Assert.assertTrue(matcher.isPublicSuffix(".any.tokyo.jp"));
+        Assert.assertFalse(matcher.isPublicSuffix("tokyo.jp"));
+        Assert.assertFalse(matcher.isPublicSuffix("apache.any.tokyo.jp"));
+        Assert.assertFalse(matcher.isPublicSuffix("metro.tokyo.jp"));
+        Assert.assertTrue(matcher.isPublicSuffix("lib.ny.us"));
+        Assert.assertFalse(matcher.isPublicSuffix("ny.us"));
+    }
+
+    @Test
+    public void testWildcardNextToExactLabel() throws Exception {
+        PublicSuffixMatcher m = new PublicSuffixMatcher(
+                Arrays.asList("*.foo", "a.b.foo"), null);
+        Assert.assertTrue(m.isPublicSuffix("b.foo"));
+        Assert.assertTrue(m.isPublicSuffix("a.b.foo"));
+        Assert.assertFalse(m.isPublicSuffix("x.b.foo"));
+        Assert.assertEquals("b.foo", m.getPublicSuffix("x.b.foo"));
+        Assert.assertEquals("a.b.foo", m.getPublicSuffix("x.a.b.foo"));
+        Assert.assertEquals("x.b.foo", m.getRegistrableDomain("y.x.b.foo"));
+    }
+
+    @Test
+    public void testExceptionNextToWildcard() throws Exception {
+        PublicSuffixMatcher m = new PublicSuffixMatcher(
+                Arrays.asList("*.foo"), Arrays.asList("a.b.foo"));
+        Assert.assertEquals("x.b.foo", m.getRegistrableDomain("x.b.foo"));
+        Assert.assertEquals("b.foo", m.getPublicSuffix("x.b.foo"));
+        Assert.assertTrue(m.isPublicSuffix("b.foo"));
+        Assert.assertFalse(m.isPublicSuffix("a.b.foo"));
+        Assert.assertEquals("a.b.foo", m.getRegistrableDomain("www.a.b.foo"));
+    }
+
+    @Test
+    public void testExceptionTakesPriorityOverLongerRule() throws Exception {
+        PublicSuffixMatcher m = new PublicSuffixMatcher(
+                Arrays.asList("*.bar", "*.x.bar"), Arrays.asList("x.bar"));
+        Assert.assertEquals("bar", m.getPublicSuffix("y.x.bar"));
+        Assert.assertEquals("x.bar", m.getRegistrableDomain("y.x.bar"));
+    }
+
+    @Test
+    public void testUnicode() throws Exception {
+        Assert.assertTrue(matcher.isPublicSuffix("h\u00E5.no"));
+        Assert.assertTrue(matcher.isPublicSuffix("H\u00C5.no"));
+        Assert.assertTrue(matcher.isPublicSuffix("xn--h-2fa.no"));
+        Assert.assertFalse(matcher.isPublicSuffix("apache.xn--h-2fa.no"));
+        Assert.assertEquals("apache.xn--h-2fa.no", matcher.getRegistrableDomain("www.apache.xn--h-2fa.no"));
+        Assert.assertEquals("apache.h\u00E5.no", matcher.getRegistrableDomain("www.apache.h\u00E5.no"));
+    }
+
+    @Test
+    public void testPublicSuffix() throws Exception {
+        Assert.assertEquals("ac.jp", matcher.getPublicSuffix("www.apache.ac.jp"));
+        Assert.assertEquals("any.tokyo.jp", matcher.getPublicSuffix("www.apache.any.tokyo.jp"));
+        Assert.assertEquals("tokyo.jp", matcher.getPublicSuffix("www.metro.tokyo.jp"));
+        // default rule applies to unlisted top level domains
+        Assert.assertEquals("local", matcher.getPublicSuffix("somehost.local"));
+        Assert.assertNull(matcher.getPublicSuffix(""));
+    }
+
+    @Test
+    public void testRegistrableDomain() throws Exception {
+        Assert.assertEquals("apache.ac.jp", matcher.getRegistrableDomain("www.apache.ac.jp"));
+        Assert.assertEquals("apache.ac.jp", matcher.getRegistrableDomain("apache.ac.jp"));
+        Assert.assertEquals("apache.ac.jp", matcher.getRegistrableDomain(".Apache.AC.jp"));
+        Assert.assertEquals("apache.com", matcher.getRegistrableDomain("www.apache.com."));
+        Assert.assertEquals("apache.any.tokyo.jp", matcher.getRegistrableDomain("www.apache.any.tokyo.jp"));
+        Assert.assertEquals("metro.tokyo.jp", matcher.getRegistrableDomain("www.metro.tokyo.jp"));
+        Assert.assertEquals("somehost.local", matcher.getRegistrableDomain("www.somehost.local"));
+        Assert.assertNull(matcher.getRegistrableDomain("ac.jp"));
+        Assert.assertNull(matcher.getRegistrableDomain("any.tokyo.jp"));
+        Assert.assertNull(matcher.getRegistrableDomain("localhost"));
+    }
+
+}
@@ -0,0 +1,266 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.params.HttpParams;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.protocol.HttpContext;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Unit tests for {@link BatchRequestExecutor}.
+ */
+public class TestBatchRequestExecutor {
+
+    /**
+     * Client answering every request with a response whose content is
+     * produced by {@link #handle(HttpRequest)}.
+     */
+    @SuppressWarnings("deprecation")
+    static abstract class StubHttpClient extends CloseableHttpClient {
+
+        abstract String handle(HttpRequest request) throws IOException;
+
+        @Override
+        protected CloseableHttpResponse doExecute(
+                final HttpHost target,
+                final HttpRequest request,
+                final HttpContext context) throws IOException, ClientProtocolException {
+            final HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+            response.setEntity(new StringEntity(handle(request), ContentType.TEXT_PLAIN));
+            return CloseableHttpResponseProxy.newProxy(response);
+        }
+
+        public HttpParams getParams() {
+            return null;
+        }
+
+        public ClientConnectionManager getConnectionManager() {
+            return null;
+        }
+
+        public void close() {
+        }
+
+    }
+
+    /**
+     * Answers with the request URI after a short pause, recording the
+     * highest number of requests executed at the same time.
+     */
+    static class ConcurrencyRecorder extends StubHttpClient {
+
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+
+        @Override
+        String handle(final HttpRequest request) throws IOException {
+            final int n = active.incrementAndGet();
+            synchronized (this) {
+                if (n > maxActive.get()) {
+                    maxActive.set(n);
+                }
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ex) {
+                throw new InterruptedIOException();
+            } finally {
+                active.decrementAndGet();
+            }
+            return request.getRequestLine().getUri();
+        }
+
+    }
+
+    private ResponseHandler<String> handler;
+    private BatchRequestExecutor batchExecutor;
+
+    @Before
+    public void setUp() {
+        handler = new BasicResponseHandler();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (batchExecutor != null) {
+            batchExecutor.close();
+        }
+    }
+
+    private static List<HttpUriRequest> createRequests(final String host, final int count) {
+        final List<HttpUriRequest> requests = new ArrayList<HttpUriRequest>();
+        for (int i = 0; i < count; i++) {
+            requests.add(new HttpGet("http://" + host + "/" + i));
+        }
+        return requests;
+    }
+
+    @Test
+    public void testResultsAreReturnedAsTheyComplete() throws Exception {
+        batchExecutor = new BatchRequestExecutor(
+                new ConcurrencyRecorder(), null, Executors.newFixedThreadPool(4), 4);
+        final List<HttpUriRequest> requests = createRequests("somehost", 3);
+        requests.addAll(createRequests("otherhost", 3));
+        final RequestBatch<String> batch = batchExecutor.execute(requests, handler, 0, null);
+
+        final Set<String> results = new HashSet<String>();
+        HttpRequestFutureTask<String> task;
+        while ((task = batch.poll(5, TimeUnit.SECONDS)) != null) {
+            Assert.assertEquals(task.getRequest().getURI().toString(), task.get());
+            results.add(task.get());
+        }
+        Assert.assertEquals(6, results.size());
+        Assert.assertTrue(batch.isDone());
+        Assert.assertEquals(6, batch.getTasks().size());
+        Assert.assertSame(requests.get(2), batch.getTasks().get(2).getRequest());
+    }
+
+    @Test
+    public void testConcurrencyIsLimitedPerRoute() throws Exception {
+        final ConcurrencyRecorder recorder = new ConcurrencyRecorder();
+        batchExecutor = new BatchRequestExecutor(
+                recorder, null, Executors.newFixedThreadPool(10), 2);
+        final RequestBatch<String> batch = batchExecutor.execute(
+                createRequests("somehost", 10), handler, 0, null);
+        for (HttpRequestFutureTask<String> task: batch.getTasks()) {
+            task.get(5, TimeUnit.SECONDS);
+        }
+        Assert.assertEquals(2, recorder.maxActive.get());
+    }
+
+    @Test
+    public void testConcurrencyIsLimitedToPoolMaxPerRoute() throws Exception {
+        final ConcurrencyRecorder recorder = new ConcurrencyRecorder();
+        @SuppressWarnings("unchecked")
+        final ConnPoolControl<HttpRoute> connPool = Mockito.mock(ConnPoolControl.class);
+        Mockito.when(connPool.getMaxPerRoute(Mockito.any(HttpRoute.class))).thenReturn(1);
+        batchExecutor = new BatchRequestExecutor(
+                recorder, null, Executors.newFixedThreadPool(10), connPool);
+        final List<HttpUriRequest> requests = createRequests("somehost", 4);
+        final RequestBatch<String> batch = batchExecutor.execute(requests, handler, 0, null);
+        for (HttpRequestFutureTask<String> task: batch.getTasks()) {
+            task.get(5, TimeUnit.SECONDS);
+        }
+        Assert.assertEquals(1, recorder.maxActive.get());
+    }
+
+    @Test
+    public void testDeadlineCancelsUnfinishedRequests() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final StubHttpClient httpclient = new StubHttpClient() {
+
+            @Override
+            String handle(final HttpRequest request) throws IOException {
+                final String uri = request.getRequestLine().getUri();
+                if (!uri.endsWith("/0")) {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException ex) {
+                        throw new InterruptedIOException();
+                    }
+                }
+                return uri;
+            }
+
+        };
+        batchExecutor = new BatchRequestExecutor(
+                httpclient, null, Executors.newFixedThreadPool(2), 1);
+        final List<HttpUriRequest> requests = createRequests("somehost", 4);
+        final RequestBatch<String> batch = batchExecutor.execute(
+                requests, handler, 200, TimeUnit.MILLISECONDS);
+
+        int cancelled = 0;
+        HttpRequestFutureTask<String> task;
+        while ((task = batch.poll(5, TimeUnit.SECONDS)) != null) {
+            if (task.isCancelled()) {
+                cancelled++;
+                Assert.assertTrue(task.getRequest().isAborted());
+                try {
+                    task.get();
+                    Assert.fail("CancellationException expected");
+                } catch (CancellationException expected) {
+                }
+            } else {
+                Assert.assertEquals("http://somehost/0", task.get());
+            }
+        }
+        release.countDown();
+        Assert.assertEquals(3, cancelled);
+        Assert.assertTrue(batch.isDone());
+    }
+
+    @Test
+    public void testRequestWithoutTargetFails() throws Exception {
+        batchExecutor = new BatchRequestExecutor(
+                new ConcurrencyRecorder(), null, Executors.newFixedThreadPool(2), 2);
+        final List<HttpUriRequest> requests = new ArrayList<HttpUriRequest>();
+        requests.add(new HttpGet("/relative"));
+        requests.add(new HttpGet("http://somehost/"));
+        final RequestBatch<String> batch = batchExecutor.execute(requests, handler, 0, null);
+
+        try {
+            batch.getTasks().get(0).get(5, TimeUnit.SECONDS);
+            Assert.fail("ExecutionException expected");
+        } catch (ExecutionException ex) {
+            Assert.assertTrue(ex.getCause() instanceof ClientProtocolException);
+        }
+        Assert.assertEquals("http://somehost/", batch.getTasks().get(1).get(5, TimeUnit.SECONDS));
+    }
+
+}
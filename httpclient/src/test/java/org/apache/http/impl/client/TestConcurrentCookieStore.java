@@ -0,0 +1,207 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.http.cookie.Cookie;
+import org.apache.http.cookie.CookieOrigin;
+import org.apache.http.impl.cookie.BasicClientCookie;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ConcurrentCookieStore}.
+ */
+public class TestConcurrentCookieStore {
+
+    private static BasicClientCookie makeCookie(
+            final String name, final String value, final String domain, final String path) {
+        BasicClientCookie cookie = new BasicClientCookie(name, value);
+        cookie.setDomain(domain);
+        cookie.setPath(path);
+        return cookie;
+    }
+
+    @Test
+    public void testBasics() throws Exception {
+        ConcurrentCookieStore store = new ConcurrentCookieStore();
+        store.addCookie(new BasicClientCookie("name1", "value1"));
+        store.addCookies(new BasicClientCookie[] {new BasicClientCookie("name2", "value2")});
+        List<Cookie> l = store.getCookies();
+        Assert.assertNotNull(l);
+        Assert.assertEquals(2, l.size());
+        Assert.assertEquals("name1", l.get(0).getName());
+        Assert.assertEquals("name2", l.get(1).getName());
+        store.clear();
+        l = store.getCookies();
+        Assert.assertNotNull(l);
+        Assert.assertEquals(0, l.size());
+    }
+
+    @Test
+    public void testReplaceEquivalent() throws Exception {
+        ConcurrentCookieStore store = new ConcurrentCookieStore();
+        store.addCookie(makeCookie("name1", "value1", "somehost", "/"));
+        store.addCookie(makeCookie("name1", "value2", "SomeHost.local", "/"));
+        List<Cookie> l = store.getCookies();
+        Assert.assertEquals(1, l.size());
+        Assert.assertEquals("value2", l.get(0).getValue());
+    }
+
+    @Test
+    public void testExpiredCookie() throws Exception {
+        ConcurrentCookieStore store = new ConcurrentCookieStore();
+        store.addCookie(makeCookie("name1", "value1", "somehost.com", "/"));
+        BasicClientCookie cookie = makeCookie("name1", "value2", "somehost.com", "/");
+
+        Calendar c = Calendar.getInstance();
+        c.add(Calendar.DAY_OF_YEAR, -10);
+        cookie.setExpiryDate(c.getTime());
+        store.addCookie(cookie);
+        List<Cookie> l = store.getCookies();
+        Assert.assertNotNull(l);
+        Assert.assertEquals(0, l.size());
+    }
+
+    @Test
+    public void testLookupByOrigin() throws Exception {
+        ConcurrentCookieStore store = new ConcurrentCookieStore();
+        store.addCookie(makeCookie("a", "1", "www.example.com", "/"));
+        store.addCookie(makeCookie("b", "2", ".example.com", "/"));
+        store.addCookie(makeCookie("c", "3", "other.com", "/"));
+        store.addCookie(makeCookie("d", "4", "www.example.com", "/stuff"));
+        store.addCookie(makeCookie("e", "5", ".com", "/"));
+
+        List<Cookie> l = store.getCookies(
+                new CookieOrigin("WWW.example.com", 80, "/", false), new Date());
+        Assert.assertEquals(3, l.size());
+        for (Cookie cookie: l) {
+            Assert.assertFalse("c".equals(cookie.getName()));
+            Assert.assertFalse("d".equals(cookie.getName()));
+        }
+
+        l = store.getCookies(new CookieOrigin("www.example.com", 80, "/stuff/more", false), new Date());
+        Assert.assertEquals(4, l.size());
+
+        l = store.getCookies(new CookieOrigin("192.168.0.1", 80, "/", false), new Date());
+        Assert.assertEquals(0, l.size());
+    }
+
+    @Test
+    public void testLazyExpiry() throws Exception {
+        ConcurrentCookieStore store = new ConcurrentCookieStore();
+        BasicClientCookie cookie1 = makeCookie("name1", "value1", "somehost.com", "/");
+        Calendar c = Calendar.getInstance();
+        c.add(Calendar.DAY_OF_YEAR, 1);
+        cookie1.setExpiryDate(c.getTime());
+        store.addCookie(cookie1);
+        store.addCookie(makeCookie("name2", "value2", "somehost.com", "/"));
+        Assert.assertEquals(2, store.getCookies().size());
+
+        c.add(Calendar.DAY_OF_YEAR, 1);
+        List<Cookie> l = store.getCookies(
+                new CookieOrigin("somehost.com", 80, "/", false), c.getTime());
+        Assert.assertEquals(1, l.size());
+        Assert.assertEquals("name2", l.get(0).getName());
+        // expired cookie has been purged by the lookup
+        Assert.assertEquals(1, store.getCookies().size());
+    }
+
+    @Test
+    public void testClearExpired() throws Exception {
+        ConcurrentCookieStore store = new ConcurrentCookieStore();
+        BasicClientCookie cookie1 = makeCookie("name1", "value1", "somehost.com", "/");
+        Calendar c = Calendar.getInstance();
+        c.add(Calendar.DAY_OF_YEAR, 1);
+        cookie1.setExpiryDate(c.getTime());
+        store.addCookie(cookie1);
+        store.addCookie(makeCookie("name2", "value2", "otherhost.com", "/"));
+
+        Assert.assertFalse(store.clearExpired(new Date()));
+        c.add(Calendar.DAY_OF_YEAR, 1);
+        Assert.assertTrue(store.clearExpired(c.getTime()));
+        Assert.assertEquals(1, store.getCookies().size());
+    }
+
+    @Test
+    public void testConcurrentAdd() throws Exception {
+        final ConcurrentCookieStore store = new ConcurrentCookieStore();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final int n = i;
+            threads[i] = new Thread() {
+
+                @Override
+                public void run() {
+                    for (int j = 0; j < 500; j++) {
+                        store.addCookie(makeCookie("name" + n + "-" + j, "value", "somehost.com", "/"));
+                    }
+                }
+
+            };
+        }
+        for (Thread thread: threads) {
+            thread.start();
+        }
+        for (Thread thread: threads) {
+            thread.join();
+        }
+        Assert.assertEquals(2000, store.getCookies().size());
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        ConcurrentCookieStore orig = new ConcurrentCookieStore();
+        orig.addCookie(makeCookie("name1", "value1", "somehost.com", "/"));
+        orig.addCookie(makeCookie("name2", "value2", "otherhost.com", "/"));
+        ByteArrayOutputStream outbuffer = new ByteArrayOutputStream();
+        ObjectOutputStream outstream = new ObjectOutputStream(outbuffer);
+        outstream.writeObject(orig);
+        outstream.close();
+        byte[] raw = outbuffer.toByteArray();
+        ByteArrayInputStream inbuffer = new ByteArrayInputStream(raw);
+        ObjectInputStream instream = new ObjectInputStream(inbuffer);
+        ConcurrentCookieStore clone = (ConcurrentCookieStore) instream.readObject();
+        List<Cookie> expected = orig.getCookies();
+        List<Cookie> clones = clone.getCookies();
+        Assert.assertNotNull(expected);
+        Assert.assertNotNull(clones);
+        Assert.assertEquals(expected.size(), clones.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i).getName(), clones.get(i).getName());
+            Assert.assertEquals(expected.get(i).getValue(), clones.get(i).getValue());
+        }
+    }
+
+}
@@ -0,0 +1,224 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.protocol.HttpContext;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Unit tests for {@link FutureRequestExecutionService}.
+ */
+@SuppressWarnings({"unchecked"})
+public class TestFutureRequestExecutionService {
+
+    private HttpClient httpclient;
+    private ResponseHandler<String> handler;
+    private FutureCallback<String> callback;
+    private FutureRequestExecutionService service;
+
+    @Before
+    public void setUp() {
+        httpclient = Mockito.mock(HttpClient.class);
+        handler = Mockito.mock(ResponseHandler.class);
+        callback = Mockito.mock(FutureCallback.class);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (service != null) {
+            service.close();
+        }
+    }
+
+    private void whenExecuted(final Answer<String> answer) throws Exception {
+        Mockito.when(httpclient.execute(
+                Mockito.any(HttpUriRequest.class),
+                Mockito.any(ResponseHandler.class),
+                Mockito.any(HttpContext.class))).thenAnswer(answer);
+    }
+
+    private static Answer<String> blockUntil(final CountDownLatch started, final CountDownLatch release) {
+        return new Answer<String>() {
+
+            public String answer(final InvocationOnMock invocation) throws Throwable {
+                started.countDown();
+                release.await();
+                return "done";
+            }
+
+        };
+    }
+
+    @Test
+    public void testExecuteCompletesTaskAndNotifiesCallback() throws Exception {
+        whenExecuted(new Answer<String>() {
+
+            public String answer(final InvocationOnMock invocation) throws Throwable {
+                return "result";
+            }
+
+        });
+        service = new FutureRequestExecutionService(httpclient, Executors.newSingleThreadExecutor());
+        final HttpGet request = new HttpGet("http://localhost/");
+        final HttpRequestFutureTask<String> task = service.execute(request, null, handler, callback);
+
+        Assert.assertEquals("result", task.get(5, TimeUnit.SECONDS));
+        Assert.assertSame(request, task.getRequest());
+        Mockito.verify(httpclient).execute(request, handler, null);
+        Mockito.verify(callback, Mockito.timeout(5000)).completed("result");
+        Assert.assertEquals(1, service.getSuccessfulCount());
+        Assert.assertEquals(0, service.getFailedCount());
+        Assert.assertEquals(0, service.getActiveCount());
+    }
+
+    @Test
+    public void testExecutionFailureIsReported() throws Exception {
+        final IOException failure = new IOException("Oppsie");
+        whenExecuted(new Answer<String>() {
+
+            public String answer(final InvocationOnMock invocation) throws Throwable {
+                throw failure;
+            }
+
+        });
+        service = new FutureRequestExecutionService(httpclient, 1, 1);
+        final HttpRequestFutureTask<String> task = service.execute(
+                new HttpGet("http://localhost/"), null, handler, callback);
+        try {
+            task.get(5, TimeUnit.SECONDS);
+            Assert.fail("ExecutionException expected");
+        } catch (ExecutionException ex) {
+            Assert.assertSame(failure, ex.getCause());
+        }
+        Mockito.verify(callback, Mockito.timeout(5000)).failed(failure);
+        Assert.assertEquals(1, service.getFailedCount());
+    }
+
+    @Test
+    public void testCancelAbortsRequest() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        whenExecuted(blockUntil(started, release));
+        service = new FutureRequestExecutionService(httpclient, 1, 1);
+        final HttpGet request = new HttpGet("http://localhost/");
+        final HttpRequestFutureTask<String> task = service.execute(request, null, handler, callback);
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        Assert.assertTrue(task.cancel(false));
+        Assert.assertTrue(request.isAborted());
+        Mockito.verify(callback).cancelled();
+        try {
+            task.get();
+            Assert.fail("CancellationException expected");
+        } catch (CancellationException expected) {
+        }
+        release.countDown();
+        Assert.assertEquals(1, service.getCancelledCount());
+        Mockito.verify(callback, Mockito.never()).failed(Mockito.any(Exception.class));
+    }
+
+    @Test
+    public void testExecuteBlocksWhenLimitReached() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        whenExecuted(blockUntil(started, release));
+        service = new FutureRequestExecutionService(httpclient, 1, 0);
+        final HttpRequestFutureTask<String> first = service.execute(
+                new HttpGet("http://localhost/1"), null, handler);
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        final CountDownLatch submitted = new CountDownLatch(1);
+        final Thread producer = new Thread(new Runnable() {
+
+            public void run() {
+                service.execute(new HttpGet("http://localhost/2"), null, handler);
+                submitted.countDown();
+            }
+
+        });
+        producer.start();
+        Assert.assertFalse(submitted.await(200, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(1, service.getActiveCount());
+
+        release.countDown();
+        Assert.assertEquals("done", first.get(5, TimeUnit.SECONDS));
+        Assert.assertTrue(submitted.await(5, TimeUnit.SECONDS));
+        producer.join(5000);
+    }
+
+    @Test
+    public void testRequestsRunOnThreadsFromFactory() throws Exception {
+        final ThreadFactory threadFactory = Mockito.mock(ThreadFactory.class);
+        Mockito.when(threadFactory.newThread(Mockito.any(Runnable.class))).thenAnswer(new Answer<Thread>() {
+
+            public Thread answer(final InvocationOnMock invocation) throws Throwable {
+                return new Thread((Runnable) invocation.getArguments()[0], "custom-worker");
+            }
+
+        });
+        whenExecuted(new Answer<String>() {
+
+            public String answer(final InvocationOnMock invocation) throws Throwable {
+                return Thread.currentThread().getName();
+            }
+
+        });
+        service = new FutureRequestExecutionService(httpclient, 2, 0, threadFactory);
+        final HttpRequestFutureTask<String> task = service.execute(
+                new HttpGet("http://localhost/"), null, handler);
+        Assert.assertEquals("custom-worker", task.get(5, TimeUnit.SECONDS));
+        Mockito.verify(threadFactory).newThread(Mockito.any(Runnable.class));
+    }
+
+    @Test(expected=RejectedExecutionException.class)
+    public void testExecuteAfterCloseIsRejected() throws Exception {
+        service = new FutureRequestExecutionService(httpclient, 1, 1);
+        service.close();
+        service.execute(new HttpGet("http://localhost/"), null, handler);
+    }
+
+}
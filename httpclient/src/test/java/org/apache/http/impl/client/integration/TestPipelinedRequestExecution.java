@@ -0,0 +1,160 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.client.integration;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.PipeliningHttpClient;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.localserver.LocalServerTestBase;
+import org.apache.http.localserver.LocalTestServer;
+import org.apache.http.localserver.RandomHandler;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpProcessorBuilder;
+import org.apache.http.protocol.ResponseContent;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPipelinedRequestExecution extends LocalServerTestBase {
+
+    private PoolingHttpClientConnectionManager connManager;
+    private PipeliningHttpClient httpclient;
+
+    @Before
+    public void setUp() {
+        this.connManager = new PoolingHttpClientConnectionManager();
+        this.httpclient = new PipeliningHttpClient(this.connManager);
+    }
+
+    @After
+    public void shutDownClient() {
+        this.httpclient.close();
+    }
+
+    private List<HttpUriRequest> createRequests(final HttpHost target, final int count) {
+        final List<HttpUriRequest> requests = new ArrayList<HttpUriRequest>();
+        for (int i = 1; i <= count; i++) {
+            requests.add(new HttpGet(target.toURI() + "/random/" + (i * 100)));
+        }
+        return requests;
+    }
+
+    @Test
+    public void testResponsesAreReturnedInOrderOverOneConnection() throws Exception {
+        startServer();
+        final HttpHost target = getServerHttp();
+        final List<HttpResponse> responses = this.httpclient.executePipelined(
+                createRequests(target, 10));
+
+        Assert.assertEquals(10, responses.size());
+        for (int i = 0; i < responses.size(); i++) {
+            final HttpResponse response = responses.get(i);
+            Assert.assertEquals(HttpStatus.SC_OK, response.getStatusLine().getStatusCode());
+            Assert.assertEquals((i + 1) * 100, EntityUtils.toByteArray(response.getEntity()).length);
+        }
+        Assert.assertEquals(1, this.localServer.getAcceptedConnectionCount());
+        Assert.assertEquals(1, this.connManager.getTotalStats().getAvailable());
+    }
+
+    @Test
+    public void testErrorResponsesDoNotInterruptBatch() throws Exception {
+        startServer();
+        final HttpHost target = getServerHttp();
+        final List<HttpUriRequest> requests = new ArrayList<HttpUriRequest>();
+        requests.add(new HttpGet(target.toURI() + "/random/100"));
+        requests.add(new HttpGet(target.toURI() + "/random/oops"));
+        requests.add(new HttpGet(target.toURI() + "/random/200"));
+        final List<HttpResponse> responses = this.httpclient.executePipelined(requests);
+
+        Assert.assertEquals(100, EntityUtils.toByteArray(responses.get(0).getEntity()).length);
+        Assert.assertEquals(HttpStatus.SC_BAD_REQUEST, responses.get(1).getStatusLine().getStatusCode());
+        Assert.assertEquals(200, EntityUtils.toByteArray(responses.get(2).getEntity()).length);
+        // the server closes the connection after the error response
+        Assert.assertEquals(2, this.localServer.getAcceptedConnectionCount());
+    }
+
+    private static class AlwaysCloseConn implements HttpResponseInterceptor {
+
+        public void process(
+                final HttpResponse response,
+                final HttpContext context) throws HttpException, IOException {
+            response.setHeader(HTTP.CONN_DIRECTIVE, HTTP.CONN_CLOSE);
+        }
+
+    }
+
+    @Test
+    public void testUnansweredRequestsAreResentOnNewConnection() throws Exception {
+        this.localServer = new LocalTestServer(HttpProcessorBuilder.create()
+                .add(new ResponseContent())
+                .add(new AlwaysCloseConn()).build(), null);
+        this.localServer.register("/random/*", new RandomHandler());
+        startServer();
+        final HttpHost target = getServerHttp();
+        final List<HttpResponse> responses = this.httpclient.executePipelined(
+                createRequests(target, 5));
+
+        Assert.assertEquals(5, responses.size());
+        for (int i = 0; i < responses.size(); i++) {
+            Assert.assertEquals((i + 1) * 100,
+                    EntityUtils.toByteArray(responses.get(i).getEntity()).length);
+        }
+        Assert.assertEquals(5, this.localServer.getAcceptedConnectionCount());
+        Assert.assertEquals(0, this.connManager.getTotalStats().getLeased());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testNonIdempotentRequestsAreRejected() throws Exception {
+        final List<HttpUriRequest> requests = new ArrayList<HttpUriRequest>();
+        requests.add(new HttpGet("http://localhost/"));
+        requests.add(new HttpPost("http://localhost/"));
+        this.httpclient.executePipelined(requests);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testRequestsToDifferentTargetsAreRejected() throws Exception {
+        final List<HttpUriRequest> requests = new ArrayList<HttpUriRequest>();
+        requests.add(new HttpGet("http://localhost/"));
+        requests.add(new HttpGet("http://otherhost/"));
+        this.httpclient.executePipelined(requests);
+    }
+
+}
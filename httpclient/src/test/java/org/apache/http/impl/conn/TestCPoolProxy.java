@@ -0,0 +1,103 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.SocketClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.protocol.HttpContext;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * {@link CPoolProxy} tests.
+ */
+public class TestCPoolProxy {
+
+    private SocketClientConnection conn;
+    private CPoolEntry entry;
+
+    @Before
+    public void setup() throws Exception {
+        conn = Mockito.mock(SocketClientConnection.class);
+        entry = new CPoolEntry(LogFactory.getLog(getClass()), "id",
+                new HttpRoute(new HttpHost("localhost")), conn, -1, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testDelegation() throws Exception {
+        HttpClientConnection proxy = CPoolProxy.newProxy(entry);
+        Mockito.when(conn.isOpen()).thenReturn(Boolean.TRUE);
+        Mockito.when(conn.getSocketTimeout()).thenReturn(Integer.valueOf(1234));
+        Assert.assertTrue(proxy instanceof SocketClientConnection);
+        Assert.assertTrue(proxy instanceof HttpContext);
+        Assert.assertTrue(proxy.isOpen());
+        Assert.assertEquals(1234, proxy.getSocketTimeout());
+        proxy.flush();
+        proxy.shutdown();
+        proxy.close();
+        Mockito.verify(conn).flush();
+        Mockito.verify(conn).shutdown();
+        Mockito.verify(conn).close();
+        Assert.assertSame(entry, CPoolProxy.getPoolEntry(proxy));
+    }
+
+    @Test
+    public void testDetach() throws Exception {
+        HttpClientConnection proxy = CPoolProxy.newProxy(entry);
+        Assert.assertSame(entry, CPoolProxy.detach(proxy));
+        Assert.assertNull(CPoolProxy.detach(proxy));
+        Assert.assertFalse(proxy.isOpen());
+        Assert.assertTrue(proxy.isStale());
+        proxy.close();
+        proxy.shutdown();
+        Mockito.verify(conn, Mockito.never()).close();
+        Mockito.verify(conn, Mockito.never()).shutdown();
+        try {
+            proxy.flush();
+            Assert.fail("ConnectionShutdownException should have been thrown");
+        } catch (ConnectionShutdownException expected) {
+        }
+        try {
+            CPoolProxy.getPoolEntry(proxy);
+            Assert.fail("ConnectionShutdownException should have been thrown");
+        } catch (ConnectionShutdownException expected) {
+        }
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testForeignConnection() throws Exception {
+        CPoolProxy.getPoolEntry(conn);
+    }
+
+}
@@ -0,0 +1,284 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.impl.conn.CachingDnsResolver.AddressOrder;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class TestCachingDnsResolver {
+
+    private DnsResolver backend;
+    private InetAddress ip1;
+    private InetAddress ip2;
+    private InetAddress ip3;
+    private volatile long now;
+    private CachingDnsResolver resolver;
+
+    @Before
+    public void setup() throws Exception {
+        backend = Mockito.mock(DnsResolver.class);
+        ip1 = InetAddress.getByAddress(new byte[] {10, 0, 0, 1});
+        ip2 = InetAddress.getByAddress(new byte[] {10, 0, 0, 2});
+        ip3 = InetAddress.getByAddress(new byte[] {10, 0, 0, 3});
+        now = 1000000L;
+    }
+
+    @After
+    public void shutdown() throws Exception {
+        if (resolver != null) {
+            resolver.close();
+        }
+    }
+
+    private CachingDnsResolver createResolver(
+            final int maxEntries, final float refreshAheadFactor, final AddressOrder order) {
+        return new CachingDnsResolver(backend, maxEntries, 1000, 100, TimeUnit.MILLISECONDS,
+                refreshAheadFactor, order) {
+
+            @Override
+            long currentTimeMillis() {
+                return now;
+            }
+
+        };
+    }
+
+    @Test
+    public void testCachedUntilExpiry() throws Exception {
+        resolver = createResolver(10, 0, AddressOrder.AS_RESOLVED);
+        Mockito.when(backend.resolve("somehost")).thenReturn(new InetAddress[] { ip1, ip2 });
+
+        Assert.assertArrayEquals(new InetAddress[] { ip1, ip2 }, resolver.resolve("somehost"));
+        now += 500;
+        Assert.assertArrayEquals(new InetAddress[] { ip1, ip2 }, resolver.resolve("SomeHost"));
+        Mockito.verify(backend, Mockito.times(1)).resolve(Mockito.anyString());
+        Assert.assertEquals(1, resolver.getHitCount());
+        Assert.assertEquals(1, resolver.getMissCount());
+
+        now += 500;
+        resolver.resolve("somehost");
+        Mockito.verify(backend, Mockito.times(2)).resolve(Mockito.anyString());
+    }
+
+    @Test
+    public void testPerHostTimeToLive() throws Exception {
+        resolver = createResolver(10, 0, AddressOrder.AS_RESOLVED);
+        resolver.setTimeToLive("somehost", 5, TimeUnit.SECONDS);
+        Mockito.when(backend.resolve("somehost")).thenReturn(new InetAddress[] { ip1 });
+
+        resolver.resolve("somehost");
+        now += 4000;
+        resolver.resolve("somehost");
+        Mockito.verify(backend, Mockito.times(1)).resolve("somehost");
+    }
+
+    @Test
+    public void testNegativeCaching() throws Exception {
+        resolver = createResolver(10, 0, AddressOrder.AS_RESOLVED);
+        Mockito.when(backend.resolve("nohost")).thenThrow(new UnknownHostException("nohost"));
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                resolver.resolve("nohost");
+                Assert.fail("UnknownHostException expected");
+            } catch (UnknownHostException expected) {
+            }
+        }
+        Mockito.verify(backend, Mockito.times(1)).resolve("nohost");
+
+        now += 100;
+        try {
+            resolver.resolve("nohost");
+            Assert.fail("UnknownHostException expected");
+        } catch (UnknownHostException expected) {
+        }
+        Mockito.verify(backend, Mockito.times(2)).resolve("nohost");
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws Exception {
+        resolver = createResolver(2, 0, AddressOrder.AS_RESOLVED);
+        Mockito.when(backend.resolve(Mockito.anyString())).thenReturn(new InetAddress[] { ip1 });
+
+        resolver.resolve("host1");
+        resolver.resolve("host2");
+        resolver.resolve("host1");
+        resolver.resolve("host3");
+        Assert.assertEquals(2, resolver.size());
+
+        resolver.resolve("host1");
+        Mockito.verify(backend, Mockito.times(1)).resolve("host1");
+        resolver.resolve("host2");
+        Mockito.verify(backend, Mockito.times(2)).resolve("host2");
+    }
+
+    @Test
+    public void testRotate() throws Exception {
+        resolver = createResolver(10, 0, AddressOrder.ROTATE);
+        Mockito.when(backend.resolve("somehost")).thenReturn(new InetAddress[] { ip1, ip2, ip3 });
+
+        Assert.assertArrayEquals(new InetAddress[] { ip1, ip2, ip3 }, resolver.resolve("somehost"));
+        Assert.assertArrayEquals(new InetAddress[] { ip2, ip3, ip1 }, resolver.resolve("somehost"));
+        Assert.assertArrayEquals(new InetAddress[] { ip3, ip1, ip2 }, resolver.resolve("somehost"));
+        Assert.assertArrayEquals(new InetAddress[] { ip1, ip2, ip3 }, resolver.resolve("somehost"));
+    }
+
+    @Test
+    public void testShuffleReturnsAllAddresses() throws Exception {
+        resolver = createResolver(10, 0, AddressOrder.SHUFFLE);
+        Mockito.when(backend.resolve("somehost")).thenReturn(new InetAddress[] { ip1, ip2, ip3 });
+
+        InetAddress[] addresses = resolver.resolve("somehost");
+        Assert.assertEquals(3, addresses.length);
+        Assert.assertTrue(Arrays.asList(addresses).containsAll(
+                Arrays.asList(ip1, ip2, ip3)));
+    }
+
+    @Test
+    public void testRefreshAhead() throws Exception {
+        resolver = createResolver(10, 0.5f, AddressOrder.AS_RESOLVED);
+        Mockito.when(backend.resolve("somehost"))
+            .thenReturn(new InetAddress[] { ip1 })
+            .thenReturn(new InetAddress[] { ip2 });
+
+        Assert.assertArrayEquals(new InetAddress[] { ip1 }, resolver.resolve("somehost"));
+        now += 600;
+        // Stale entry is served while the host is re-resolved in the background
+        Assert.assertArrayEquals(new InetAddress[] { ip1 }, resolver.resolve("somehost"));
+        for (int i = 0; i < 50 && resolver.getRefreshCount() == 0; i++) {
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(1, resolver.getRefreshCount());
+        // Refreshed entry is fresh and not yet due for another refresh
+        now += 300;
+        Assert.assertArrayEquals(new InetAddress[] { ip2 }, resolver.resolve("somehost"));
+        Mockito.verify(backend, Mockito.times(2)).resolve("somehost");
+    }
+
+    @Test
+    public void testFailedRefreshKeepsCachedAddresses() throws Exception {
+        resolver = createResolver(10, 0.5f, AddressOrder.AS_RESOLVED);
+        final AtomicInteger lookups = new AtomicInteger();
+        Mockito.when(backend.resolve("somehost")).thenAnswer(new Answer<InetAddress[]>() {
+
+            public InetAddress[] answer(final InvocationOnMock invocation) throws Throwable {
+                if (lookups.incrementAndGet() == 1) {
+                    return new InetAddress[] { ip1 };
+                }
+                throw new UnknownHostException("somehost");
+            }
+
+        });
+
+        Assert.assertArrayEquals(new InetAddress[] { ip1 }, resolver.resolve("somehost"));
+        now += 600;
+        // A second refresh is only started once the first one has failed
+        for (int i = 0; i < 100 && lookups.get() < 3; i++) {
+            Assert.assertArrayEquals(new InetAddress[] { ip1 }, resolver.resolve("somehost"));
+            Thread.sleep(20);
+        }
+        Assert.assertTrue(lookups.get() >= 3);
+        Assert.assertArrayEquals(new InetAddress[] { ip1 }, resolver.resolve("somehost"));
+        Assert.assertEquals(0, resolver.getRefreshCount());
+
+        // Once the entry has expired the failure is reported and cached
+        now += 400;
+        try {
+            resolver.resolve("somehost");
+            Assert.fail("UnknownHostException expected");
+        } catch (UnknownHostException expected) {
+        }
+    }
+
+    @Test
+    public void testConcurrentMissesShareOneLookup() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger lookups = new AtomicInteger();
+        backend = new DnsResolver() {
+
+            public InetAddress[] resolve(final String host) throws UnknownHostException {
+                lookups.incrementAndGet();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    throw new UnknownHostException(host);
+                }
+                return new InetAddress[] { ip1 };
+            }
+
+        };
+        resolver = createResolver(10, 0, AddressOrder.AS_RESOLVED);
+        final List<InetAddress[]> results = Collections.synchronizedList(new ArrayList<InetAddress[]>());
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            final Thread t = new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        results.add(resolver.resolve("somehost"));
+                    } catch (UnknownHostException ex) {
+                        // result missing
+                    }
+                }
+
+            };
+            threads.add(t);
+            t.start();
+        }
+        for (int i = 0; i < 100 && resolver.getMissCount() < 4; i++) {
+            Thread.sleep(20);
+        }
+        release.countDown();
+        for (Thread t: threads) {
+            t.join(5000);
+        }
+        Assert.assertEquals(4, results.size());
+        for (InetAddress[] addresses: results) {
+            Assert.assertArrayEquals(new InetAddress[] { ip1 }, addresses);
+        }
+        Assert.assertEquals(1, lookups.get());
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.config.Lookup;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.SchemePortResolver;
+import org.apache.http.conn.SocketClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.pool.PoolStats;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * {@link ConnPoolMetrics} tests.
+ */
+public class TestConnPoolMetrics {
+
+    private SocketClientConnection conn;
+    private Future<CPoolEntry> future;
+    private CPool pool;
+    private PoolingHttpClientConnectionManager mgr;
+    private ConnPoolMetrics metrics;
+    private HttpRoute route;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setup() throws Exception {
+        conn = Mockito.mock(SocketClientConnection.class);
+        pool = Mockito.mock(CPool.class);
+        future = Mockito.mock(Future.class);
+        mgr = new PoolingHttpClientConnectionManager(
+                pool, Mockito.mock(Lookup.class), Mockito.mock(SchemePortResolver.class),
+                Mockito.mock(DnsResolver.class));
+        metrics = new ConnPoolMetrics(mgr);
+        mgr.setConnPoolListener(metrics);
+        route = new HttpRoute(new HttpHost("localhost"));
+    }
+
+    @Test
+    public void testLeaseRelease() throws Exception {
+        CPoolEntry entry = new CPoolEntry(LogFactory.getLog(getClass()), "id", route, conn,
+                -1, TimeUnit.MILLISECONDS);
+        Mockito.when(future.isCancelled()).thenReturn(Boolean.FALSE);
+        Mockito.when(future.get(1, TimeUnit.SECONDS)).thenReturn(entry);
+        Mockito.when(pool.lease(route, null, null)).thenReturn(future);
+        Mockito.when(conn.isOpen()).thenReturn(Boolean.FALSE, Boolean.TRUE);
+
+        ConnectionRequest connRequest1 = mgr.requestConnection(route, null);
+        HttpClientConnection conn1 = connRequest1.get(1, TimeUnit.SECONDS);
+        ConnectionRequest connRequest2 = mgr.requestConnection(route, null);
+        HttpClientConnection conn2 = connRequest2.get(1, TimeUnit.SECONDS);
+        mgr.releaseConnection(conn1, null, 0, TimeUnit.MILLISECONDS);
+
+        Assert.assertEquals(2, metrics.getLeaseCount());
+        Assert.assertEquals(1, metrics.getReusedCount());
+        Assert.assertEquals(1, metrics.getNewConnectionCount());
+        Assert.assertEquals(0.5, metrics.getReuseRatio(), 0.001);
+        Assert.assertEquals(1, metrics.getReleasedCount());
+        long[] histogram = metrics.getLeaseWaitTimeHistogram();
+        long total = 0;
+        for (long count: histogram) {
+            total += count;
+        }
+        Assert.assertEquals(2, total);
+        Assert.assertEquals(1, metrics.getRoutes().length);
+        Assert.assertEquals(route.toString(), metrics.getRoutes()[0]);
+        Assert.assertNotNull(conn2);
+    }
+
+    @Test
+    public void testLeaseTimeout() throws Exception {
+        Mockito.when(future.get(1, TimeUnit.SECONDS)).thenThrow(new TimeoutException());
+        Mockito.when(pool.lease(route, null, null)).thenReturn(future);
+
+        ConnectionRequest connRequest1 = mgr.requestConnection(route, null);
+        try {
+            connRequest1.get(1, TimeUnit.SECONDS);
+            Assert.fail("ConnectionPoolTimeoutException should have been thrown");
+        } catch (ConnectionPoolTimeoutException expected) {
+        }
+        Assert.assertEquals(0, metrics.getLeaseCount());
+        Assert.assertEquals(1, metrics.getLeaseTimeoutCount());
+    }
+
+    @Test
+    public void testStaleAndExpired() throws Exception {
+        CPoolEntry entry = new CPoolEntry(LogFactory.getLog(getClass()), "id", route, conn,
+                -1, TimeUnit.MILLISECONDS, metrics);
+        Mockito.when(conn.isStale()).thenReturn(Boolean.TRUE);
+        Assert.assertTrue(CPoolProxy.newProxy(entry).isStale());
+        entry.updateExpiry(1, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(entry.isExpired(System.currentTimeMillis() + 10));
+        Assert.assertEquals(1, metrics.getStaleCount());
+        Assert.assertEquals(1, metrics.getExpiredCount());
+    }
+
+    @Test
+    public void testConnectTime() throws Exception {
+        metrics.connectionOpened(route, 10);
+        metrics.connectionOpened(route, 30);
+        Assert.assertEquals(2, metrics.getOpenedCount());
+        Assert.assertEquals(20.0, metrics.getRouteMeanConnectTime(route), 0.001);
+        Assert.assertEquals(30, metrics.getRouteMaxConnectTime(route.toString()));
+        metrics.reset();
+        Assert.assertEquals(0, metrics.getOpenedCount());
+        Assert.assertEquals(0, metrics.getRoutes().length);
+    }
+
+    @Test
+    public void testJmxExport() throws Exception {
+        Mockito.when(pool.getTotalStats()).thenReturn(new PoolStats(3, 1, 2, 20));
+        Mockito.when(pool.getStats(route)).thenReturn(new PoolStats(3, 1, 2, 5));
+        metrics.connectionOpened(route, 10);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("org.apache.http.conn:type=ConnPool,name=test");
+        server.registerMBean(metrics, name);
+        try {
+            Assert.assertEquals(Integer.valueOf(3), server.getAttribute(name, "Leased"));
+            Assert.assertEquals(Integer.valueOf(2), server.getAttribute(name, "Available"));
+            Assert.assertEquals(Integer.valueOf(1), server.getAttribute(name, "Pending"));
+            Assert.assertEquals(Integer.valueOf(2), server.invoke(name, "getRouteAvailable",
+                    new Object[] { route.toString() }, new String[] { String.class.getName() }));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+}
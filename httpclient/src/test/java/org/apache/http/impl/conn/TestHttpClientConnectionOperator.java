@@ -27,23 +27,35 @@
 
 package org.apache.http.impl.conn;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import org.apache.http.HttpHost;
 import org.apache.http.config.Lookup;
 import org.apache.http.config.SocketConfig;
 import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.HttpHostConnectException;
 import org.apache.http.conn.SchemePortResolver;
 import org.apache.http.conn.SocketClientConnection;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainSocketFactory;
 import org.apache.http.protocol.BasicHttpContext;
 import org.apache.http.protocol.HttpContext;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 public class TestHttpClientConnectionOperator {
@@ -206,4 +218,250 @@ public class TestHttpClientConnectionOperator {
         connectionOperator.upgrade(conn, host, context);
     }
 
+    @Test
+    public void testInterleaveAddressFamilies() throws Exception {
+        InetAddress v6a = InetAddress.getByName("::1");
+        InetAddress v6b = InetAddress.getByName("fe80::1");
+        InetAddress v4a = InetAddress.getByAddress(new byte[] {10, 0, 0, 1});
+        InetAddress v4b = InetAddress.getByAddress(new byte[] {10, 0, 0, 2});
+        InetAddress v4c = InetAddress.getByAddress(new byte[] {10, 0, 0, 3});
+
+        InetAddress[] ordered = HttpClientConnectionOperator.interleave(
+                new InetAddress[] { v6a, v6b, v4a, v4b, v4c });
+        Assert.assertArrayEquals(new InetAddress[] { v6a, v4a, v6b, v4b, v4c }, ordered);
+
+        ordered = HttpClientConnectionOperator.interleave(
+                new InetAddress[] { v4a, v4b, v6a });
+        Assert.assertArrayEquals(new InetAddress[] { v4a, v6a, v4b }, ordered);
+    }
+
+    @Test
+    public void testStaggeredConnectSkipsUnroutableAddress() throws Exception {
+        ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        try {
+            HttpContext context = new BasicHttpContext();
+            HttpHost host = new HttpHost("somehost");
+            InetAddress ip1 = InetAddress.getByAddress(new byte[] {10, (byte) 255, (byte) 255, 1});
+            InetAddress ip2 = InetAddress.getByAddress(new byte[] {127, 0, 0, 1});
+
+            Mockito.when(dnsResolver.resolve("somehost")).thenReturn(new InetAddress[] { ip1, ip2 });
+            BlackHoleSocketFactory sf = new BlackHoleSocketFactory(ip1);
+            Mockito.when(socketFactoryRegistry.lookup("http")).thenReturn(sf);
+            Mockito.when(schemePortResolver.resolve(host)).thenReturn(serverSocket.getLocalPort());
+
+            long start = System.currentTimeMillis();
+            connectionOperator.connect(conn, host, null, 10000, 100, SocketConfig.DEFAULT, context);
+            long elapsed = System.currentTimeMillis() - start;
+            Assert.assertTrue("Connect took " + elapsed + " ms", elapsed < 5000);
+
+            // The first attempt is made by the caller, the staggered one by the shared pool
+            Assert.assertEquals(2, sf.getThreads().size());
+            Assert.assertSame(Thread.currentThread(), sf.getThreads().get(0));
+            Assert.assertTrue(sf.getThreads().get(1).getName().startsWith("httpclient-connect-"));
+
+            Socket accepted = serverSocket.accept();
+            accepted.close();
+
+            // The placeholder bound during the connect is replaced by the winner
+            ArgumentCaptor<Socket> socketCaptor = ArgumentCaptor.forClass(Socket.class);
+            Mockito.verify(conn, Mockito.times(2)).bind(socketCaptor.capture());
+            Assert.assertTrue(socketCaptor.getAllValues().get(0)
+                    instanceof HttpClientConnectionOperator.AbortTriggerSocket);
+            Socket sock = socketCaptor.getValue();
+            Assert.assertTrue(sock.isConnected());
+            Assert.assertEquals(ip2, sock.getInetAddress());
+            sock.close();
+        } finally {
+            serverSocket.close();
+        }
+    }
+
+    @Test
+    public void testStaggeredConnectFirstWins() throws Exception {
+        ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        try {
+            HttpContext context = new BasicHttpContext();
+            HttpHost host = new HttpHost("somehost");
+            InetAddress ip1 = InetAddress.getByAddress(new byte[] {127, 0, 0, 1});
+            InetAddress ip2 = InetAddress.getByAddress(new byte[] {127, 0, 0, 1});
+
+            Mockito.when(dnsResolver.resolve("somehost")).thenReturn(new InetAddress[] { ip1, ip2 });
+            Mockito.when(socketFactoryRegistry.lookup("http")).thenReturn(PlainSocketFactory.INSTANCE);
+            Mockito.when(schemePortResolver.resolve(host)).thenReturn(serverSocket.getLocalPort());
+
+            connectionOperator.connect(conn, host, null, 1000, 5000, SocketConfig.DEFAULT, context);
+
+            // The first attempt succeeds well before the stagger delay
+            Mockito.verify(conn, Mockito.times(2)).bind(Mockito.<Socket>any());
+        } finally {
+            serverSocket.close();
+        }
+    }
+
+    @Test
+    public void testStaggeredConnectFirstAttemptOnCallingThread() throws Exception {
+        ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        try {
+            HttpContext context = new BasicHttpContext();
+            HttpHost host = new HttpHost("somehost");
+            InetAddress ip1 = InetAddress.getByAddress(new byte[] {127, 0, 0, 1});
+            InetAddress ip2 = InetAddress.getByAddress(new byte[] {10, (byte) 255, (byte) 255, 1});
+
+            Mockito.when(dnsResolver.resolve("somehost")).thenReturn(new InetAddress[] { ip1, ip2 });
+            BlackHoleSocketFactory sf = new BlackHoleSocketFactory(ip2);
+            Mockito.when(socketFactoryRegistry.lookup("http")).thenReturn(sf);
+            Mockito.when(schemePortResolver.resolve(host)).thenReturn(serverSocket.getLocalPort());
+
+            connectionOperator.connect(conn, host, null, 1000, 5000, SocketConfig.DEFAULT, context);
+
+            // No thread is involved when the first address connects before the delay
+            Assert.assertEquals(1, sf.getThreads().size());
+            Assert.assertSame(Thread.currentThread(), sf.getThreads().get(0));
+            Mockito.verify(conn, Mockito.times(2)).bind(Mockito.<Socket>any());
+        } finally {
+            serverSocket.close();
+        }
+    }
+
+    @Test
+    public void testStaggeredConnectAfterShutdown() throws Exception {
+        ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        try {
+            HttpContext context = new BasicHttpContext();
+            HttpHost host = new HttpHost("somehost");
+            InetAddress ip1 = InetAddress.getByAddress(new byte[] {10, (byte) 255, (byte) 255, 1});
+            InetAddress ip2 = InetAddress.getByAddress(new byte[] {127, 0, 0, 1});
+
+            Mockito.when(dnsResolver.resolve("somehost")).thenReturn(new InetAddress[] { ip1, ip2 });
+            BlackHoleSocketFactory sf = new BlackHoleSocketFactory(ip1);
+            Mockito.when(socketFactoryRegistry.lookup("http")).thenReturn(sf);
+            Mockito.when(schemePortResolver.resolve(host)).thenReturn(serverSocket.getLocalPort());
+
+            connectionOperator.shutdown();
+            connectionOperator.connect(conn, host, null, 200, 50, SocketConfig.DEFAULT, context);
+
+            // Without the pool all addresses are tried by the caller in turn
+            Assert.assertEquals(2, sf.getThreads().size());
+            Assert.assertSame(Thread.currentThread(), sf.getThreads().get(0));
+            Assert.assertSame(Thread.currentThread(), sf.getThreads().get(1));
+            ArgumentCaptor<Socket> socketCaptor = ArgumentCaptor.forClass(Socket.class);
+            Mockito.verify(conn, Mockito.times(2)).bind(socketCaptor.capture());
+            Assert.assertEquals(ip2, socketCaptor.getValue().getInetAddress());
+            socketCaptor.getValue().close();
+        } finally {
+            serverSocket.close();
+        }
+    }
+
+    @Test
+    public void testShutdownAbortsStaggeredConnect() throws Exception {
+        HttpContext context = new BasicHttpContext();
+        HttpHost host = new HttpHost("somehost");
+        InetAddress ip1 = InetAddress.getByAddress(new byte[] {10, (byte) 255, (byte) 255, 1});
+        InetAddress ip2 = InetAddress.getByAddress(new byte[] {10, (byte) 255, (byte) 255, 2});
+
+        Mockito.when(dnsResolver.resolve("somehost")).thenReturn(new InetAddress[] { ip1, ip2 });
+        BlackHoleSocketFactory sf = new BlackHoleSocketFactory(ip1, ip2);
+        Mockito.when(socketFactoryRegistry.lookup("http")).thenReturn(sf);
+        Mockito.when(schemePortResolver.resolve(host)).thenReturn(80);
+
+        final SocketClientConnectionImpl realConn = new SocketClientConnectionImpl(1024);
+        Thread aborter = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(300);
+                    realConn.shutdown();
+                } catch (Exception ignore) {
+                }
+            }
+
+        };
+        aborter.start();
+        long start = System.currentTimeMillis();
+        try {
+            connectionOperator.connect(realConn, host, null, 10000, 50, SocketConfig.DEFAULT, context);
+            Assert.fail("InterruptedIOException expected");
+        } catch (InterruptedIOException expected) {
+        } finally {
+            aborter.join();
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        Assert.assertTrue("Connect took " + elapsed + " ms", elapsed < 5000);
+        // Both the caller's attempt and the staggered one were under way
+        Assert.assertEquals(2, sf.getThreads().size());
+    }
+
+    @Test(expected=HttpHostConnectException.class)
+    public void testStaggeredConnectAllFail() throws Exception {
+        ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        int port = serverSocket.getLocalPort();
+        serverSocket.close();
+
+        HttpContext context = new BasicHttpContext();
+        HttpHost host = new HttpHost("somehost");
+        InetAddress ip1 = InetAddress.getByAddress(new byte[] {127, 0, 0, 1});
+        InetAddress ip2 = InetAddress.getByAddress(new byte[] {127, 0, 0, 1});
+
+        Mockito.when(dnsResolver.resolve("somehost")).thenReturn(new InetAddress[] { ip1, ip2 });
+        Mockito.when(socketFactoryRegistry.lookup("http")).thenReturn(PlainSocketFactory.INSTANCE);
+        Mockito.when(schemePortResolver.resolve(host)).thenReturn(port);
+
+        connectionOperator.connect(conn, host, null, 1000, 100, SocketConfig.DEFAULT, context);
+    }
+
+    /**
+     * Plain socket factory that never completes connects to the given addresses,
+     * simulating a black-holed route regardless of the local network setup.
+     * Like a real blocked connect, the attempt fails once the socket is closed.
+     */
+    static class BlackHoleSocketFactory implements ConnectionSocketFactory {
+
+        private final List<InetAddress> blackHoles;
+        private final List<Thread> threads;
+
+        BlackHoleSocketFactory(final InetAddress... blackHoles) {
+            super();
+            this.blackHoles = Arrays.asList(blackHoles);
+            this.threads = Collections.synchronizedList(new ArrayList<Thread>());
+        }
+
+        List<Thread> getThreads() {
+            return this.threads;
+        }
+
+        public Socket createSocket(final HttpContext context) throws IOException {
+            return PlainSocketFactory.INSTANCE.createSocket(context);
+        }
+
+        public Socket connectSocket(
+                final int connectTimeout,
+                final Socket sock,
+                final HttpHost host,
+                final InetSocketAddress remoteAddress,
+                final InetSocketAddress localAddress,
+                final HttpContext context) throws IOException {
+            this.threads.add(Thread.currentThread());
+            if (this.blackHoles.contains(remoteAddress.getAddress())) {
+                long deadline = System.currentTimeMillis() + connectTimeout;
+                while (System.currentTimeMillis() < deadline) {
+                    if (sock.isClosed()) {
+                        throw new SocketException("Socket closed");
+                    }
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                throw new ConnectTimeoutException(host, remoteAddress);
+            }
+            return PlainSocketFactory.INSTANCE.connectSocket(
+                    connectTimeout, sock, host, remoteAddress, localAddress, context);
+        }
+
+    }
+
 }
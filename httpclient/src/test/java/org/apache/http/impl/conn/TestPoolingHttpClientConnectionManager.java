@@ -186,4 +186,50 @@ public class TestPoolingHttpClientConnectionManager {
         Mockito.verify(entry, Mockito.never()).updateExpiry(Mockito.anyLong(), Mockito.eq(TimeUnit.MILLISECONDS));
     }
 
+    @Test
+    public void testLeaseValidateAfterInactivityStale() throws Exception {
+        HttpHost target = new HttpHost("localhost");
+        HttpRoute route = new HttpRoute(target);
+
+        CPoolEntry entry = new CPoolEntry(LogFactory.getLog(getClass()), "id", route, conn,
+                -1, TimeUnit.MILLISECONDS);
+
+        Mockito.when(future.isCancelled()).thenReturn(Boolean.FALSE);
+        Mockito.when(future.get(1, TimeUnit.SECONDS)).thenReturn(entry);
+        Mockito.when(pool.lease(route, null, null)).thenReturn(future);
+        Mockito.when(conn.isOpen()).thenReturn(Boolean.TRUE);
+        Mockito.when(conn.isStale()).thenReturn(Boolean.TRUE);
+
+        mgr.setValidateAfterInactivity(0);
+        ConnectionRequest connRequest1 = mgr.requestConnection(route, null);
+        HttpClientConnection conn1 = connRequest1.get(1, TimeUnit.SECONDS);
+        Assert.assertNotNull(conn1);
+
+        Mockito.verify(conn).isStale();
+        Mockito.verify(conn).close();
+    }
+
+    @Test
+    public void testLeaseValidateAfterInactivityRecentlyUsed() throws Exception {
+        HttpHost target = new HttpHost("localhost");
+        HttpRoute route = new HttpRoute(target);
+
+        CPoolEntry entry = new CPoolEntry(LogFactory.getLog(getClass()), "id", route, conn,
+                -1, TimeUnit.MILLISECONDS);
+
+        Mockito.when(future.isCancelled()).thenReturn(Boolean.FALSE);
+        Mockito.when(future.get(1, TimeUnit.SECONDS)).thenReturn(entry);
+        Mockito.when(pool.lease(route, null, null)).thenReturn(future);
+        Mockito.when(conn.isOpen()).thenReturn(Boolean.TRUE);
+
+        mgr.setValidateAfterInactivity(60000);
+        ConnectionRequest connRequest1 = mgr.requestConnection(route, null);
+        HttpClientConnection conn1 = connRequest1.get(1, TimeUnit.SECONDS);
+        Assert.assertNotNull(conn1);
+        Assert.assertTrue(conn1.isOpen());
+
+        Mockito.verify(conn, Mockito.never()).isStale();
+        Mockito.verify(conn, Mockito.never()).close();
+    }
+
 }
@@ -0,0 +1,296 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.http.impl.conn;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.SocketClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnFactory;
+import org.apache.http.pool.PoolStats;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * {@link StripedCPool} tests.
+ */
+public class TestStripedCPool {
+
+    private ConnFactory<HttpRoute, SocketClientConnection> connFactory;
+    private HttpRoute route1;
+    private HttpRoute route2;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setup() throws Exception {
+        connFactory = Mockito.mock(ConnFactory.class);
+        Mockito.when(connFactory.create(Mockito.any(HttpRoute.class))).thenAnswer(
+                new Answer<SocketClientConnection>() {
+
+            public SocketClientConnection answer(
+                    final InvocationOnMock invocation) {
+                SocketClientConnection conn = Mockito.mock(SocketClientConnection.class);
+                Mockito.when(conn.isOpen()).thenReturn(Boolean.TRUE);
+                return conn;
+            }
+
+        });
+        route1 = new HttpRoute(new HttpHost("somehost", 80));
+        route2 = new HttpRoute(new HttpHost("otherhost", 80));
+    }
+
+    @Test
+    public void testLeaseReleaseReuse() throws Exception {
+        StripedCPool pool = new StripedCPool(connFactory, 2, 10, -1, TimeUnit.MILLISECONDS);
+        CPoolEntry entry1 = pool.lease(route1, null, null).get(1, TimeUnit.SECONDS);
+        Assert.assertNotNull(entry1);
+        PoolStats stats = pool.getTotalStats();
+        Assert.assertEquals(1, stats.getLeased());
+        Assert.assertEquals(0, stats.getAvailable());
+
+        pool.release(entry1, true);
+        stats = pool.getTotalStats();
+        Assert.assertEquals(0, stats.getLeased());
+        Assert.assertEquals(1, stats.getAvailable());
+
+        CPoolEntry entry2 = pool.lease(route1, null, null).get(1, TimeUnit.SECONDS);
+        Assert.assertSame(entry1, entry2);
+        Mockito.verify(connFactory, Mockito.times(1)).create(route1);
+
+        pool.release(entry2, false);
+        Mockito.verify(entry2.getConnection()).close();
+        stats = pool.getTotalStats();
+        Assert.assertEquals(0, stats.getLeased());
+        Assert.assertEquals(0, stats.getAvailable());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testLeaseStateMatching() throws Exception {
+        StripedCPool pool = new StripedCPool(connFactory, 2, 10, -1, TimeUnit.MILLISECONDS);
+        CPoolEntry entry1 = pool.lease(route1, null, null).get(1, TimeUnit.SECONDS);
+        CPoolEntry entry2 = pool.lease(route1, null, null).get(1, TimeUnit.SECONDS);
+        entry1.setState("a");
+        pool.release(entry1, true);
+        pool.release(entry2, true);
+
+        Assert.assertSame(entry1, pool.lease(route1, "a", null).get(1, TimeUnit.SECONDS));
+        Assert.assertSame(entry2, pool.lease(route1, "b", null).get(1, TimeUnit.SECONDS));
+        pool.shutdown();
+    }
+
+    @Test(expected=TimeoutException.class)
+    public void testMaxPerRouteTimeout() throws Exception {
+        StripedCPool pool = new StripedCPool(connFactory, 1, 10, -1, TimeUnit.MILLISECONDS);
+        Assert.assertNotNull(pool.lease(route1, null, null).get(1, TimeUnit.SECONDS));
+        Assert.assertNotNull(pool.lease(route2, null, null).get(1, TimeUnit.SECONDS));
+        pool.lease(route1, null, null).get(50, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testMaxTotalEvictsIdleOfOtherRoute() throws Exception {
+        StripedCPool pool = new StripedCPool(connFactory, 2, 2, -1, TimeUnit.MILLISECONDS);
+        CPoolEntry entry1 = pool.lease(route1, null, null).get(1, TimeUnit.SECONDS);
+        CPoolEntry entry2 = pool.lease(route1, null, null).get(1, TimeUnit.SECONDS);
+        pool.release(entry1, true);
+
+        CPoolEntry entry3 = pool.lease(route2, null, null).get(1, TimeUnit.SECONDS);
+        Assert.assertNotNull(entry3);
+        Mockito.verify(entry1.getConnection()).close();
+        Assert.assertEquals(0, pool.getStats(route1).getAvailable());
+        Assert.assertEquals(1, pool.getStats(route1).getLeased());
+        Assert.assertEquals(1, pool.getStats(route2).getLeased());
+
+        pool.release(entry2, true);
+        pool.release(entry3, true);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testWaiterWokenByReleaseOnOtherRoute() throws Exception {
+        final StripedCPool pool = new StripedCPool(connFactory, 2, 1, -1, TimeUnit.MILLISECONDS);
+        CPoolEntry entry1 = pool.lease(route1, null, null).get(1, TimeUnit.SECONDS);
+
+        final AtomicReference<Object> result = new AtomicReference<Object>();
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread t = new Thread(new Runnable() {
+
+            public void run() {
+                try {
+                    result.set(pool.lease(route2, null, null).get(5, TimeUnit.SECONDS));
+                } catch (Exception ex) {
+                    result.set(ex);
+                } finally {
+                    done.countDown();
+                }
+            }
+
+        });
+        t.start();
+        Thread.sleep(100);
+        Assert.assertEquals(1, pool.getTotalStats().getPending());
+        pool.release(entry1, true);
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(result.get() instanceof CPoolEntry);
+        Assert.assertEquals(route2, ((CPoolEntry) result.get()).getRoute());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testCancelWakesUpWaiter() throws Exception {
+        final StripedCPool pool = new StripedCPool(connFactory, 1, 10, -1, TimeUnit.MILLISECONDS);
+        Assert.assertNotNull(pool.lease(route1, null, null).get(1, TimeUnit.SECONDS));
+
+        final Future<CPoolEntry> future = pool.lease(route1, null, null);
+        final AtomicReference<Object> result = new AtomicReference<Object>();
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread t = new Thread(new Runnable() {
+
+            public void run() {
+                try {
+                    result.set(future.get(5, TimeUnit.SECONDS));
+                } catch (Exception ex) {
+                    result.set(ex);
+                } finally {
+                    done.countDown();
+                }
+            }
+
+        });
+        t.start();
+        Thread.sleep(100);
+        Assert.assertTrue(future.cancel(true));
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(result.get() instanceof InterruptedException);
+        Assert.assertTrue(future.isCancelled());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testCloseIdleAndExpired() throws Exception {
+        StripedCPool pool = new StripedCPool(connFactory, 2, 10, -1, TimeUnit.MILLISECONDS);
+        CPoolEntry entry1 = pool.lease(route1, null, null).get(1, TimeUnit.SECONDS);
+        CPoolEntry entry2 = pool.lease(route2, null, null).get(1, TimeUnit.SECONDS);
+        entry1.updateExpiry(1, TimeUnit.MILLISECONDS);
+        entry2.updateExpiry(1, TimeUnit.MINUTES);
+        pool.release(entry1, true);
+        pool.release(entry2, true);
+        Thread.sleep(20);
+
+        pool.closeExpired();
+        Mockito.verify(entry1.getConnection()).close();
+        Mockito.verify(entry2.getConnection(), Mockito.never()).close();
+        Assert.assertEquals(1, pool.getTotalStats().getAvailable());
+
+        pool.closeIdle(0, TimeUnit.MILLISECONDS);
+        Mockito.verify(entry2.getConnection()).close();
+        Assert.assertEquals(0, pool.getTotalStats().getAvailable());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        StripedCPool pool = new StripedCPool(connFactory, 2, 10, -1, TimeUnit.MILLISECONDS);
+        CPoolEntry entry1 = pool.lease(route1, null, null).get(1, TimeUnit.SECONDS);
+        CPoolEntry entry2 = pool.lease(route2, null, null).get(1, TimeUnit.SECONDS);
+        pool.release(entry2, true);
+        pool.shutdown();
+        Assert.assertTrue(pool.isShutdown());
+        Mockito.verify(entry1.getConnection()).close();
+        Mockito.verify(entry2.getConnection()).close();
+        try {
+            pool.lease(route1, null, null);
+            Assert.fail("IllegalStateException should have been thrown");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void testConcurrentLeaseRelease() throws Exception {
+        final int maxTotal = 5;
+        final StripedCPool pool = new StripedCPool(connFactory, 3, maxTotal, -1, TimeUnit.MILLISECONDS);
+        final HttpRoute[] routes = new HttpRoute[] {
+                route1, route2, new HttpRoute(new HttpHost("thirdhost", 80)) };
+        final AtomicInteger leased = new AtomicInteger();
+        final AtomicInteger maxLeased = new AtomicInteger();
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        Thread[] threads = new Thread[12];
+        for (int i = 0; i < threads.length; i++) {
+            final HttpRoute route = routes[i % routes.length];
+            threads[i] = new Thread(new Runnable() {
+
+                public void run() {
+                    try {
+                        for (int n = 0; n < 200; n++) {
+                            CPoolEntry entry = pool.lease(route, null, null).get(10, TimeUnit.SECONDS);
+                            int current = leased.incrementAndGet();
+                            for (;;) {
+                                int max = maxLeased.get();
+                                if (current <= max || maxLeased.compareAndSet(max, current)) {
+                                    break;
+                                }
+                            }
+                            leased.decrementAndGet();
+                            pool.release(entry, n % 10 != 0);
+                        }
+                    } catch (Throwable ex) {
+                        synchronized (failures) {
+                            failures.add(ex);
+                        }
+                    }
+                }
+
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(30000);
+        }
+        Assert.assertTrue(failures.toString(), failures.isEmpty());
+        Assert.assertTrue(maxLeased.get() <= maxTotal);
+        PoolStats stats = pool.getTotalStats();
+        Assert.assertEquals(0, stats.getLeased());
+        Assert.assertEquals(0, stats.getPending());
+        Assert.assertTrue(stats.getAvailable() <= maxTotal);
+        pool.shutdown();
+    }
+
+}
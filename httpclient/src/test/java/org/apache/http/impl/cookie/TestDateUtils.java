@@ -27,8 +27,10 @@
 
 package org.apache.http.impl.cookie;
 
+import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.Locale;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -138,6 +140,91 @@ public class TestDateUtils {
         Assert.assertEquals("Fri, 14 Oct 2005 00:00:00 GMT", DateUtils.formatDate(date, DateUtils.PATTERN_RFC1123));
     }
 
+    @Test
+    public void testAsctimeDateParse() throws Exception {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeZone(DateUtils.GMT);
+        calendar.set(1994, Calendar.NOVEMBER, 6, 8, 49, 37);
+        calendar.set(Calendar.MILLISECOND, 0);
+        Date date1 = calendar.getTime();
+
+        Assert.assertEquals(date1, DateUtils.parseDate("Sun Nov  6 08:49:37 1994"));
+        Assert.assertEquals(date1, DateUtils.parseDate("Sun Nov 6 08:49:37 1994"));
+        Assert.assertEquals(date1, DateUtils.parseDate("Sun Nov  6 08:49:37 1994",
+                new String[] { DateUtils.PATTERN_ASCTIME }));
+        Assert.assertEquals(date1, DateUtils.parseDate("Sun, 06 Nov 1994 08:49:37 GMT"));
+    }
+
+    @Test
+    public void testNonStandardDateParseFallback() throws Exception {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeZone(DateUtils.GMT);
+        calendar.set(2005, Calendar.OCTOBER, 14, 0, 0, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        Date date1 = calendar.getTime();
+
+        Assert.assertEquals(date1, DateUtils.parseDate("Fri, 14 Oct 2005 01:00:00 GMT+01:00"));
+        Assert.assertEquals(date1, DateUtils.parseDate("Thu, 13 Oct 2005 17:00:00 PDT"));
+        Assert.assertEquals(date1, DateUtils.parseDate("Fri, 14 October 2005 00:00:00 GMT"));
+        Assert.assertEquals(date1, DateUtils.parseDate("Thu, 13 Oct 2005 24:00:00 GMT"));
+        try {
+            DateUtils.parseDate("Fri, 14 Oct");
+            Assert.fail("DateParseException should habe been thrown");
+        } catch (DateParseException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDateParseMatchesSimpleDateFormat() throws Exception {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeZone(DateUtils.GMT);
+        calendar.set(1950, Calendar.JANUARY, 1, 0, 0, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        Date startDate = calendar.getTime();
+
+        String[] patterns = new String[] {
+                DateUtils.PATTERN_RFC1123,
+                DateUtils.PATTERN_RFC1036,
+                DateUtils.PATTERN_ASCTIME
+                };
+        calendar.set(1969, Calendar.DECEMBER, 25, 23, 59, 59);
+        for (int i = 0; i < 2000; i++) {
+            for (String pattern : patterns) {
+                SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+                format.setTimeZone(DateUtils.GMT);
+                format.set2DigitYearStart(startDate);
+                String s = format.format(calendar.getTime());
+                Assert.assertEquals(s, format.parse(s),
+                        DateUtils.parseDate(s, new String[] { pattern }, startDate));
+                Assert.assertEquals(s, format.parse(s),
+                        DateUtils.parseDate(s, null, startDate));
+            }
+            calendar.add(Calendar.SECOND, 7 * 24 * 3600 + 3 * 3600 + 61);
+        }
+    }
+
+    @Test
+    public void testDateFormatMatchesSimpleDateFormat() throws Exception {
+        DateUtils.clearThreadLocal();
+        SimpleDateFormat format = new SimpleDateFormat(DateUtils.PATTERN_RFC1123, Locale.US);
+        format.setTimeZone(DateUtils.GMT);
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeZone(DateUtils.GMT);
+        calendar.set(1960, Calendar.FEBRUARY, 28, 22, 59, 59);
+        calendar.set(Calendar.MILLISECOND, 999);
+        for (int i = 0; i < 2000; i++) {
+            Date date = calendar.getTime();
+            Assert.assertEquals(format.format(date), DateUtils.formatDate(date));
+            // second lookup is served from the cache
+            Assert.assertEquals(format.format(date), DateUtils.formatDate(date));
+            calendar.add(Calendar.SECOND, 7 * 24 * 3600 + 3 * 3600 + 61);
+        }
+        calendar.set(1500, Calendar.MARCH, 1, 12, 0, 0);
+        Date date = calendar.getTime();
+        Assert.assertEquals(format.format(date), DateUtils.formatDate(date));
+    }
+
     @Test
     public void testConstructor() {
         new DateParseException();